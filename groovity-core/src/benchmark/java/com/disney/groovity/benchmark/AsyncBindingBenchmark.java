@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.benchmark;
+
+import java.io.CharArrayWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.disney.groovity.GroovityConstants;
+import com.disney.groovity.tags.Async;
+
+/**
+ * The binding work done for each async call in a loop: capture the parent's variables, give the copy its own out
+ * and loop variable, and read a couple of variables back.  Compares the full HashMap copy used by earlier versions
+ * of the async tag with the copy-on-write snapshot; run with -prof gc to compare allocation per call.
+ *
+ * @author Alex Vigdor
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AsyncBindingBenchmark {
+	@Param({"10", "100"})
+	int variables;
+
+	Map<String, Object> binding;
+	int counter;
+
+	@Setup
+	public void setup() {
+		binding = new HashMap<>();
+		for(int i=0;i<variables;i++) {
+			binding.put("var"+i, "value"+i);
+		}
+		binding.put(GroovityConstants.OUT, new CharArrayWriter());
+		binding.put("._internal", new Object());
+	}
+
+	@Benchmark
+	public Object hashMapCopy() {
+		final HashMap<String,Object> asyncVariables = new HashMap<>(binding.size()*2);
+		for(Entry<String, Object> entry:binding.entrySet()){
+			final String k = entry.getKey();
+			if(k.startsWith(GroovityConstants.INTERNAL_BINDING_PREFIX)){
+				continue;
+			}
+			asyncVariables.put(k,  entry.getValue());
+		}
+		return exercise(asyncVariables);
+	}
+
+	@Benchmark
+	public Object snapshot() {
+		return exercise(Async.asyncCopy(binding));
+	}
+
+	private Object exercise(Map<String, Object> asyncVariables) {
+		asyncVariables.put(GroovityConstants.OUT, new CharArrayWriter());
+		asyncVariables.put("i", counter++);
+		asyncVariables.get("var0");
+		return asyncVariables.get("i");
+	}
+}
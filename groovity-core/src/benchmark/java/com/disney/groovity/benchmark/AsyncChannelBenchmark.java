@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.disney.groovity.util.AsyncChannel;
+import com.disney.groovity.util.AsyncChannel.Policy;
+import com.disney.groovity.util.DeadlockFreeExecutor;
+import com.disney.groovity.util.InterruptFactory;
+
+import groovy.lang.Binding;
+import groovy.lang.Closure;
+
+/**
+ * End-to-end throughput of offering messages to a single AsyncChannel from 1, 8 and 64 producer threads; the
+ * channel applies backpressure so the score reflects what the consumer actually processed.  Run against the
+ * previous revision of AsyncChannel for a before/after comparison, or see {@link MailboxBenchmark} for a side by side
+ * comparison of the old and new queueing schemes.
+ *
+ * @author Alex Vigdor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AsyncChannelBenchmark {
+	@Param({"1024"})
+	int queueSize;
+	@Param({"block"})
+	String policy;
+
+	DeadlockFreeExecutor executor;
+	AsyncChannel channel;
+	final Object message = new Object();
+
+	@Setup
+	public void setup() {
+		executor = new DeadlockFreeExecutor(new InterruptFactory());
+		@SuppressWarnings("serial")
+		Closure<Object> handler = new Closure<Object>(this) {
+			@SuppressWarnings("unused")
+			public Object doCall(Object message) {
+				return message;
+			}
+		};
+		channel = AsyncChannel.open(executor, null, queueSize, Policy.valueOf(policy), handler, null, this, new Binding(), null);
+	}
+
+	@TearDown
+	public void teardown() throws Exception {
+		channel.close();
+		channel.getFuture().get(1, TimeUnit.MINUTES);
+		executor.shutdown();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean producers1() throws InterruptedException {
+		return channel.offer(message);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public boolean producers8() throws InterruptedException {
+		return channel.offer(message);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public boolean producers64() throws InterruptedException {
+		return channel.offer(message);
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.disney.groovity.util.AsyncExecutorType;
+import com.disney.groovity.util.InterruptFactory;
+
+/**
+ * Nested async/await style fan-out, where every task submits width subtasks and waits on each of them until depth
+ * is reached, run from 8 request threads against each executor type.  Leaves burn a little CPU so the score
+ * reflects scheduling overhead rather than pure queue operations.
+ *
+ * @author Alex Vigdor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AsyncExecutorBenchmark {
+	@Param({"DEADLOCK_FREE", "WORK_STEALING"})
+	String executorType;
+	@Param({"3"})
+	int depth;
+	@Param({"8"})
+	int width;
+
+	InterruptFactory interruptFactory;
+	ExecutorService executor;
+
+	@Setup
+	public void setup() {
+		interruptFactory = new InterruptFactory();
+		executor = AsyncExecutorType.valueOf(executorType).create(interruptFactory);
+	}
+
+	@TearDown
+	public void teardown() throws Exception {
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+		interruptFactory.destroy();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public long fanOut(Blackhole blackhole) throws Exception {
+		return fanOut(depth, blackhole);
+	}
+
+	private long fanOut(int level, Blackhole blackhole) throws Exception {
+		if(level==0) {
+			Blackhole.consumeCPU(100);
+			return 1;
+		}
+		List<Future<Long>> futures = new ArrayList<>(width);
+		for(int i=0;i<width;i++) {
+			futures.add(executor.submit(() -> fanOut(level-1, blackhole)));
+		}
+		long sum = 0;
+		for(Future<Long> f: futures) {
+			sum += f.get();
+		}
+		return sum;
+	}
+}
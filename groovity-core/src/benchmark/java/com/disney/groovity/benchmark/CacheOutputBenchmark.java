@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.GroovityPhase;
+import com.disney.groovity.benchmark.TemplateFragmentBenchmark.FragmentSink;
+
+import groovy.lang.Binding;
+
+/**
+ * Cost of rendering a navigation section of 50 links to UTF-8 bytes on every request, compared with
+ * splicing its output from the cacheOutput tag.
+ *
+ * @author Alex Vigdor
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CacheOutputBenchmark {
+	static final String NAV = "<nav><g:each var=\"i\" in=\"${0..<50}\"><a class=\"nav-link\" href=\"/${locale}/section/${i}\">${locale} section ${i}</a>\n</g:each></nav>";
+	Groovity groovity;
+	File sourceDir;
+	FragmentSink sink;
+
+	@Setup
+	public void setup() throws Exception {
+		sourceDir = Files.createTempDirectory("groovity-output-benchmark").toFile();
+		write("rendered", "<~"+NAV+"~>");
+		write("cached", "<~<g:cacheOutput key=\"${locale}\" name=\"nav\">"+NAV+"</g:cacheOutput>~>");
+		groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(sourceDir.toURI()))
+				.setSourcePhases(EnumSet.of(GroovityPhase.STARTUP))
+				.build();
+		sink = new FragmentSink();
+	}
+
+	@TearDown
+	public void teardown() {
+		groovity.destroy();
+		for(File f: sourceDir.listFiles()) {
+			f.delete();
+		}
+		sourceDir.delete();
+	}
+
+	@Benchmark
+	public int rendered() throws Exception {
+		return render("/rendered");
+	}
+
+	@Benchmark
+	public int cached() throws Exception {
+		return render("/cached");
+	}
+
+	private int render(String path) throws Exception {
+		sink.bytes.reset();
+		Binding binding = new Binding();
+		binding.setVariable("out", sink);
+		binding.setVariable("locale", "en");
+		groovity.run(path, binding);
+		sink.flush();
+		return sink.bytes.size();
+	}
+
+	private void write(String name, String source) throws IOException {
+		Files.write(new File(sourceDir, name+".grvt").toPath(), source.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.benchmark;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.disney.groovity.util.MpscMailbox;
+
+/**
+ * Compares the queueing and scheduling protocol AsyncChannel used before MpscMailbox ("locked": a LinkedBlockingQueue
+ * plus a dirty flag guarded by a ReentrantLock on both enqueue and poll) against the lock-free mailbox with an atomic
+ * scheduling state ("mpsc"), with 1, 8 and 64 producers feeding one consumer thread.  Scheduling the consumer
+ * is modeled by unparking a dedicated thread rather than submitting to an executor.
+ *
+ * @author Alex Vigdor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MailboxBenchmark {
+	@Param({"mpsc", "locked"})
+	String mailbox;
+	@Param({"1024"})
+	int queueSize;
+
+	Channel channel;
+	Thread consumer;
+	volatile boolean running;
+	final Object message = new Object();
+
+	@Setup
+	public void setup() {
+		channel = "locked".equals(mailbox) ? new LockedChannel(queueSize) : new MpscChannel(queueSize);
+		running = true;
+		consumer = new Thread(() -> {
+			while(running) {
+				if(!channel.drain()) {
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+				}
+			}
+		}, "MailboxBenchmark consumer");
+		consumer.setDaemon(true);
+		channel.consumer = consumer;
+		consumer.start();
+	}
+
+	@TearDown
+	public void teardown() throws InterruptedException {
+		running = false;
+		LockSupport.unpark(consumer);
+		consumer.join();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void producers1() {
+		channel.offer(message);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void producers8() {
+		channel.offer(message);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public void producers64() {
+		channel.offer(message);
+	}
+
+	static abstract class Channel{
+		volatile Thread consumer;
+		//enqueue with backpressure and schedule the consumer
+		abstract void offer(Object message);
+		//process queued messages, returns false when the consumer should go idle
+		abstract boolean drain();
+	}
+
+	static final class LockedChannel extends Channel{
+		final LinkedBlockingQueue<Object> queue;
+		final AtomicBoolean dirty = new AtomicBoolean(false);
+		final ReentrantLock dirtyLock = new ReentrantLock();
+
+		LockedChannel(int queueSize){
+			queue = new LinkedBlockingQueue<>(queueSize);
+		}
+
+		@Override
+		void offer(Object message) {
+			try {
+				queue.put(message);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			boolean submit;
+			dirtyLock.lock();
+			try {
+				submit = dirty.compareAndSet(false, true);
+			}
+			finally {
+				dirtyLock.unlock();
+			}
+			if(submit) {
+				LockSupport.unpark(consumer);
+			}
+		}
+
+		@Override
+		boolean drain() {
+			while(true) {
+				Object o;
+				dirtyLock.lock();
+				try {
+					o = queue.poll();
+					if(o==null) {
+						dirty.compareAndSet(true, false);
+						return false;
+					}
+				}
+				finally {
+					dirtyLock.unlock();
+				}
+			}
+		}
+	}
+
+	static final class MpscChannel extends Channel{
+		final MpscMailbox<Object> mailbox;
+		final AtomicInteger schedule = new AtomicInteger();
+
+		MpscChannel(int queueSize){
+			mailbox = MpscMailbox.create(queueSize);
+		}
+
+		@Override
+		void offer(Object message) {
+			while(!mailbox.offer(message)) {
+				Thread.yield();
+			}
+			if(schedule.get()==0 && schedule.compareAndSet(0, 1)) {
+				LockSupport.unpark(consumer);
+			}
+		}
+
+		@Override
+		boolean drain() {
+			while(mailbox.poll()!=null) {
+			}
+			schedule.set(0);
+			return !mailbox.isEmpty() && schedule.compareAndSet(0, 1);
+		}
+	}
+}
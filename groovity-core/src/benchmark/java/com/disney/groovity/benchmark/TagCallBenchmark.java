@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.GroovityPhase;
+
+import groovy.lang.Binding;
+
+/**
+ * Cost of tag calls in a tight script loop, 100 calls per invocation, with attribute maps that are
+ * entirely constant and with one attribute that varies per call.
+ *
+ * @author Alex Vigdor
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TagCallBenchmark {
+	Groovity groovity;
+	File sourceDir;
+
+	@Setup
+	public void setup() throws Exception {
+		sourceDir = Files.createTempDirectory("groovity-tag-benchmark").toFile();
+		write("constantAttributes", "for(int i=0; i<100; i++){ set(var:'x', value:'y') }");
+		write("dynamicAttributes", "for(int i=0; i<100; i++){ set(var:'x', value:i) }");
+		groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(sourceDir.toURI()))
+				.setSourcePhases(EnumSet.of(GroovityPhase.STARTUP))
+				.build();
+	}
+
+	@TearDown
+	public void teardown() {
+		groovity.destroy();
+		for(File f: sourceDir.listFiles()) {
+			f.delete();
+		}
+		sourceDir.delete();
+	}
+
+	@Benchmark
+	public Object constantAttributes() throws Exception {
+		return run("/constantAttributes");
+	}
+
+	@Benchmark
+	public Object dynamicAttributes() throws Exception {
+		return run("/dynamicAttributes");
+	}
+
+	private Object run(String path) throws Exception {
+		Binding binding = new Binding();
+		binding.setVariable("out", NullWriter.INSTANCE);
+		return groovity.run(path, binding);
+	}
+
+	private void write(String name, String source) throws IOException {
+		Files.write(new File(sourceDir, name+".grvt").toPath(), source.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static class NullWriter extends Writer {
+		static final NullWriter INSTANCE = new NullWriter();
+		public void write(char[] cbuf, int off, int len) {}
+		public void flush() {}
+		public void close() {}
+	}
+}
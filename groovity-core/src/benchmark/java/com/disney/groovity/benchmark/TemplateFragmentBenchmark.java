@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.GroovityPhase;
+import com.disney.groovity.util.FragmentWriter;
+import com.disney.groovity.util.TemplateFragment;
+
+import groovy.lang.Binding;
+
+/**
+ * Cost of rendering a template that is mostly static markup to UTF-8 bytes, either encoding all of the
+ * template text as characters or copying static fragments in their pre-encoded form.
+ *
+ * @author Alex Vigdor
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TemplateFragmentBenchmark {
+	Groovity groovity;
+	File sourceDir;
+	CharSink charSink;
+	FragmentSink fragmentSink;
+
+	@Setup
+	public void setup() throws Exception {
+		sourceDir = Files.createTempDirectory("groovity-template-benchmark").toFile();
+		StringBuilder header = new StringBuilder("<html><head><title>Benchmark</title></head><body><nav>");
+		for(int i=0; i<20; i++) {
+			header.append("<a class=\"nav-link\" href=\"/section/").append(i).append("\">Section ").append(i).append("</a>\n");
+		}
+		header.append("</nav><ul class=\"items\">");
+		Files.write(new File(sourceDir, "page.grvt").toPath(), ("<~"+header+"\n<g:each var=\"i\" in=\"${0..<20}\">"
+				+ "<li class=\"item\"><a href=\"/items/${i}\" title=\"Item number\">Item ${i}</a> &mdash; a description of the item</li>\n"
+				+ "</g:each></ul><footer>Copyright &copy; Example, all rights reserved</footer></body></html>~>").getBytes(StandardCharsets.UTF_8));
+		groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(sourceDir.toURI()))
+				.setSourcePhases(EnumSet.of(GroovityPhase.STARTUP))
+				.build();
+		charSink = new CharSink();
+		fragmentSink = new FragmentSink();
+	}
+
+	@TearDown
+	public void teardown() {
+		groovity.destroy();
+		for(File f: sourceDir.listFiles()) {
+			f.delete();
+		}
+		sourceDir.delete();
+	}
+
+	@Benchmark
+	public int encodeChars() throws Exception {
+		return render(charSink);
+	}
+
+	@Benchmark
+	public int copyFragments() throws Exception {
+		return render(fragmentSink);
+	}
+
+	private int render(CharSink sink) throws Exception {
+		sink.bytes.reset();
+		Binding binding = new Binding();
+		binding.setVariable("out", sink);
+		groovity.run("/page", binding);
+		sink.flush();
+		return sink.bytes.size();
+	}
+
+	static class CharSink extends Writer {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+		final OutputStreamWriter encoder = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			encoder.write(cbuf, off, len);
+		}
+		public void write(String str, int off, int len) throws IOException {
+			encoder.write(str, off, len);
+		}
+		public void flush() throws IOException {
+			encoder.flush();
+		}
+		public void close() {}
+	}
+
+	static class FragmentSink extends CharSink implements FragmentWriter {
+		public void writeFragment(TemplateFragment fragment) throws IOException {
+			encoder.flush();
+			bytes.write(fragment.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
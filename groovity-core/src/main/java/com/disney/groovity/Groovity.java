@@ -62,14 +62,22 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
@@ -91,15 +99,18 @@ import org.codehaus.groovy.control.Janitor;
 import org.codehaus.groovy.control.Phases;
 import org.codehaus.groovy.control.SourceUnit;
 import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
 import org.codehaus.groovy.control.customizers.ImportCustomizer;
 import org.codehaus.groovy.tools.GroovyClass;
 import org.codehaus.groovy.tools.Utilities;
 
 import com.disney.groovity.cache.Caches;
+import com.disney.groovity.compile.CompiledClassCache;
 import com.disney.groovity.compile.CompilerConfigurationDecorator;
 import com.disney.groovity.compile.GroovityASTTransformation;
 import com.disney.groovity.compile.GroovityClassLoader;
 import com.disney.groovity.compile.GroovityCompilerEvent;
+import com.disney.groovity.compile.ScriptDependencyGraph;
 import com.disney.groovity.compile.GroovityCompilerEvent.Change;
 import com.disney.groovity.compile.GroovitySourceTransformer;
 import com.disney.groovity.compile.StatsASTTransformation;
@@ -116,12 +127,18 @@ import com.disney.groovity.doc.ClassDescriptor.TypedName;
 import com.disney.groovity.source.GroovitySource;
 import com.disney.groovity.source.GroovitySourceListener;
 import com.disney.groovity.source.GroovitySourceLocator;
+import com.disney.groovity.stats.GroovityMetrics;
 import com.disney.groovity.stats.GroovityStatistics;
+import com.disney.groovity.stats.MetricCollector;
 import com.disney.groovity.util.AsyncChannel;
+import com.disney.groovity.util.AsyncExecutorType;
+import com.disney.groovity.util.ChannelRouter;
+import com.disney.groovity.util.DurableChannelStore;
 import com.disney.groovity.util.ClosureWritable;
 import com.disney.groovity.util.InterruptFactory;
 import com.disney.groovity.util.ScriptHelper;
 import com.disney.groovity.util.TypeLabel;
+import com.disney.groovity.util.VirtualThreadExecutor;
 
 
 /**
@@ -133,7 +150,11 @@ import com.disney.groovity.util.TypeLabel;
  * changes for external frameworks
  * <p>
  * Groovity is safe for multithreaded access, however it enforces single-threaded compilation, so calls to compile or compileAll
- * should be prepared to handle an exception if concurrent compilation is attempted.
+ * should be prepared to handle an exception if concurrent compilation is attempted.  Within a single compilation, sources
+ * are compiled in parallel on up to compilerThreads threads, traits first and then plain scripts.
+ * <p>
+ * With lazyCompile enabled, only scripts with static init, web, conf or start methods, traits and tags are compiled or
+ * loaded at startup; all other scripts are compiled or loaded from their jar on first use.
  * 
  * @author Alex Vigdor
  *
@@ -146,6 +167,8 @@ public class Groovity implements GroovityConstants{
 	
 	private static final Pattern sourcePattern = Pattern.compile("(?i)(/.*)\\".concat(GROOVITY_SOURCE_EXTENSION));
 	private static final Pattern traitPattern = Pattern.compile("\\btrait\\b");
+	//sources matching this pattern participate in startup and are never compiled lazily
+	private static final Pattern eagerPattern = Pattern.compile("\\bstatic\\s+(?:\\w+\\s+)?(?:init|web|conf|start)\\b|\\btrait\\b|@Tag\\b");
 	private static final Script PLACEHOLDER_SCRIPT = new Script() {	
 		public Object run() {
 			return null;
@@ -159,6 +182,7 @@ public class Groovity implements GroovityConstants{
 	private final ConcurrentHashMap<String, GroovityCompilerEvent> compileEvents = new ConcurrentHashMap<String, GroovityCompilerEvent>();
 	private final ConcurrentHashMap<String, Class<Script>> embeddedScripts = new ConcurrentHashMap<String, Class<Script>>();
 	private File jarDirectory = null;
+	private File cacheSnapshotDirectory = null;
 	private ClassLoader parentLoader;
 	private List<GroovityObserver> observers = new ArrayList<GroovityObserver>();
 	private GroovitySourceLocator[] sourceLocators;
@@ -167,13 +191,21 @@ public class Groovity implements GroovityConstants{
 	private String scriptBaseClass;
 	private Taggables tagLib;
 	private HttpClient httpClient;
-	private AtomicBoolean inCompile = new AtomicBoolean();
+	private ReentrantLock compileLock = new ReentrantLock();
 	private int asyncThreads = Runtime.getRuntime().availableProcessors()*16;
+	private int compilerThreads = Runtime.getRuntime().availableProcessors();
 	private ExecutorService asyncExecutor;
+	private AsyncExecutorType asyncExecutorType = AsyncExecutorType.DEADLOCK_FREE;
 	private ScheduledExecutorService configExecutor;
 	private ScheduledExecutorService cacheRefreshExecutor;
 	private ScheduledExecutorService cacheTimeExecutor;
 	private InterruptFactory interruptFactory;
+	private ChannelRouter channelRouter = AsyncChannel.DEFAULT_ROUTER;
+	private DurableChannelStore durableChannelStore;
+	private CompiledClassCache compiledClassCache;
+	//fingerprints of trait bytecode by class name, so cached scripts are invalidated when a trait they may use changes
+	private final ConcurrentHashMap<String, String> traitFingerprints = new ConcurrentHashMap<>();
+	private final ScriptDependencyGraph dependencyGraph = new ScriptDependencyGraph();
 	private boolean caseSensitive = true;
 	private BindingDecorator bindingDecorator;
 	private ArgsLookup argsLookup = null;
@@ -197,6 +229,17 @@ public class Groovity implements GroovityConstants{
 	private ConcurrentHashMap<String, Class> inherentTraits = new ConcurrentHashMap<>();
 	private List<CompilerConfigurationDecorator> compilerConfigurationDecorators;
 	private AtomicBoolean started = new AtomicBoolean(false);
+	private boolean lazyCompile = false;
+	//sources deferred until first use in lazy mode, by case-fixed script name
+	private final ConcurrentHashMap<String, GroovitySource> lazySources = new ConcurrentHashMap<>();
+	//single-flight guard so concurrent first uses of a lazy script only compile it once
+	private final ConcurrentHashMap<String, FutureTask<Class<Script>>> lazyLoads = new ConcurrentHashMap<>();
+	private final ThreadLocal<Set<String>> lazyLoading = ThreadLocal.withInitial(HashSet::new);
+	private final AtomicLong lazyLoadCount = new AtomicLong();
+	private final String metricsId = "Groovity@"+Integer.toHexString(System.identityHashCode(this));
+	private volatile long startTime = -1;
+	private volatile long startupMillis = -1;
+	private volatile long firstRequestMillis = -1;
 	
 	//encourage use of the builder
 	protected Groovity(){
@@ -215,6 +258,9 @@ public class Groovity implements GroovityConstants{
 	protected Class<Script> getScriptClass(final String scriptName){
 		final String fixedName = fixCase(scriptName);
 		Class<Script> scriptClass = scripts.get(fixedName);
+		if(scriptClass==null && !lazySources.isEmpty()){
+			scriptClass = loadLazy(fixedName);
+		}
 		if(scriptClass==null){
 			//fall back on embedded scripts loaded from classpath
 			scriptClass = embeddedScripts.get(fixedName);
@@ -311,6 +357,10 @@ public class Groovity implements GroovityConstants{
 	 */
 	@SuppressWarnings("unchecked")
 	public Script load(final String scriptName, final Binding binding) throws InstantiationException, IllegalAccessException, ClassNotFoundException{
+		if(firstRequestMillis < 0 && started.get()){
+			firstRequestMillis = System.currentTimeMillis() - startTime;
+			log.info("Time to first request "+firstRequestMillis+" ms");
+		}
 		final String varName = GROOVITY_SCRIPT_BINDING_PREFIX.concat(fixCase(scriptName));
 		@SuppressWarnings("rawtypes")
 		final Map variables = binding.getVariables();
@@ -376,6 +426,14 @@ public class Groovity implements GroovityConstants{
 		this.jarDirectory = jarDirectory;
 	}
 	
+	public File getCacheSnapshotDirectory() {
+		return cacheSnapshotDirectory;
+	}
+
+	protected void setCacheSnapshotDirectory(File cacheSnapshotDirectory) {
+		this.cacheSnapshotDirectory = cacheSnapshotDirectory;
+	}
+	
 	protected void init(boolean init) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, IOException {
 		if(tagLib==null){
 			tagLib = new Taggables();
@@ -393,14 +451,108 @@ public class Groovity implements GroovityConstants{
 		if(log.isLoggable(Level.FINE)){
 			log.fine("Got observers from service loader "+observers);
 		}
+		boolean compileSources = sourcePhases!=null && sourcePhases.contains(GroovityPhase.STARTUP) && sourceLocators!=null && sourceLocators.length>0;
+		if(lazyCompile && init && compileSources){
+			deferLazySources();
+		}
 		loadClasses(init);
-		if(sourcePhases!=null && sourcePhases.contains(GroovityPhase.STARTUP) && sourceLocators!=null && sourceLocators.length>0){
+		if(compileSources){
 			compileAll(false, init);
 		}
 	}
 	
+	/**
+	 * Register sources that don't need to participate in startup to be compiled or loaded on first use instead
+	 */
+	protected void deferLazySources(){
+		int total = 0;
+		for(GroovitySourceLocator sourceLocator: sourceLocators){
+			for(GroovitySource source: sourceLocator){
+				try {
+					Matcher matcher = sourcePattern.matcher(source.getPath());
+					if(matcher.matches() && source.exists()){
+						total++;
+						if(!eagerPattern.matcher(source.getSourceCode()).find()){
+							lazySources.put(fixCase(matcher.group(1)), source);
+						}
+					}
+				} catch (Exception e) {
+					log.log(Level.SEVERE,"Unable to load source "+source.getPath(),e);
+				}
+			}
+		}
+		if(!lazySources.isEmpty()){
+			log.info("Deferring compilation of "+lazySources.size()+" of "+total+" scripts until first use");
+		}
+	}
+	
+	private Class<Script> loadLazy(final String name){
+		final GroovitySource source = lazySources.get(name);
+		if(source==null){
+			return null;
+		}
+		FutureTask<Class<Script>> task = new FutureTask<>(() -> {
+			Set<String> loading = lazyLoading.get();
+			loading.add(name);
+			try{
+				compileLazy(name, source);
+				return scripts.get(name);
+			}
+			finally{
+				loading.remove(name);
+				lazySources.remove(name, source);
+				lazyLoads.remove(name);
+			}
+		});
+		FutureTask<Class<Script>> existing = lazyLoads.putIfAbsent(name, task);
+		if(existing==null){
+			existing = task;
+			task.run();
+		}
+		else if(lazyLoading.get().contains(name)){
+			//a script whose static init loads itself
+			return null;
+		}
+		else if(compileLock.isHeldByCurrentThread()){
+			//the other loader may be waiting on the lock this thread holds, so compile here instead of waiting on it
+			compileLazy(name, source);
+			return scripts.get(name);
+		}
+		try {
+			return existing.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e) {
+			log.log(Level.SEVERE, "Error lazily loading "+source.getPath(), e.getCause());
+		}
+		return null;
+	}
+	
+	//compiled rather than read from the jar directory, whose entries don't record the traits they were compiled against;
+	//a compiled class cache provides the same shortcut with keys that do
+	//shares the compile lock with full compiles, waiting rather than failing when one is underway, and re-checks once
+	//the lock is held since that compile may have loaded the script already
+	private void compileLazy(String name, GroovitySource source){
+		compileLock.lock();
+		try{
+			if(scripts.containsKey(name)){
+				return;
+			}
+			long time1 = System.currentTimeMillis();
+			compile(false, true, source);
+			lazyLoadCount.incrementAndGet();
+			log.info("Lazily compiled "+source.getPath()+" in "+(System.currentTimeMillis()-time1)+" ms");
+		}
+		finally{
+			compileLock.unlock();
+		}
+	}
+	
 	protected void start() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, IOException{
 		log.info("Initializing Groovity");
+		startTime = System.currentTimeMillis();
 		if(httpClient==null){
 			httpClient = HttpClients.createDefault();
 		}
@@ -408,13 +560,20 @@ public class Groovity implements GroovityConstants{
 		if(argsLookup==null){
 			argsLookup = new ArgsLookup();
 		}
-		asyncExecutor = Executors.newFixedThreadPool(asyncThreads, new ThreadFactory() {
-			public Thread newThread(Runnable r) {
-				Thread t = new Thread(r);
-				t.setName("Groovity Async "+t.getName());
-				return t;
-			}
-		});
+		interruptFactory = new InterruptFactory();
+		if(asyncExecutorType==AsyncExecutorType.VIRTUAL){
+			//outbound http concurrency is then bounded by the connection pool rather than asyncThreads
+			asyncExecutor = new VirtualThreadExecutor("Groovity Async ", interruptFactory);
+		}
+		else{
+			asyncExecutor = Executors.newFixedThreadPool(asyncThreads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r);
+					t.setName("Groovity Async "+t.getName());
+					return t;
+				}
+			});
+		}
 		cacheRefreshExecutor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors()*4,new ThreadFactory() {
 			public Thread newThread(Runnable r) {
 				Thread t = new Thread(r);
@@ -428,6 +587,12 @@ public class Groovity implements GroovityConstants{
 				GroovityStatistics.warnStuckThreads();
 			}
 		}, 1, 1, TimeUnit.MINUTES);
+		cacheRefreshExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				GroovityStatistics.recordInterval();
+			}
+		}, GroovityStatistics.INTERVAL_SECONDS, GroovityStatistics.INTERVAL_SECONDS, TimeUnit.SECONDS);
 		cacheTimeExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
 			public Thread newThread(Runnable r) {
 				Thread t = new Thread(r);
@@ -441,7 +606,6 @@ public class Groovity implements GroovityConstants{
 				Caches.currentCacheTime = (System.currentTimeMillis()/1000);
 			}
 		}, 1, 1, TimeUnit.SECONDS);
-		interruptFactory = new InterruptFactory();
 		//intialize configurator first so class inits can pick up system properties
 		if(configurator!=null){
 			configurator.init();
@@ -481,9 +645,20 @@ public class Groovity implements GroovityConstants{
 				locator.init();
 			}
 		}
+		startupMillis = System.currentTimeMillis() - startTime;
+		GroovityMetrics.register(metricsId, this::collect);
 		started.set(true);
 	}
 	
+	private void collect(MetricCollector collector) {
+		collector.gauge("groovity_startup_seconds", "Time taken to start groovity", startupMillis/1000.0);
+		if(firstRequestMillis >= 0) {
+			collector.gauge("groovity_time_to_first_request_seconds", "Time from the start of groovity until the first script was loaded after startup", firstRequestMillis/1000.0);
+		}
+		collector.gauge("groovity_lazy_scripts_pending", "Scripts deferred by lazy compilation that have not been used yet", lazySources.size());
+		collector.counter("groovity_lazy_loads_total", "Scripts compiled or loaded on first use by lazy compilation", lazyLoadCount.get());
+	}
+	
 	void shutdownAndAwaitTermination(ExecutorService pool) {
 		 pool.shutdown(); // Disable new tasks from being submitted
 		 try {
@@ -505,6 +680,7 @@ public class Groovity implements GroovityConstants{
 	
 	public void destroy(){
 		if(started.compareAndSet(true, false)) {
+			GroovityMetrics.unregister(metricsId);
 			observers.forEach(o->{o.destroy(this);});
 			if(configExecutor!=null){
 				configExecutor.shutdownNow();
@@ -523,6 +699,15 @@ public class Groovity implements GroovityConstants{
 			}
 			shutdownAndAwaitTermination(asyncExecutor);
 			interruptFactory.destroy();
+			if(durableChannelStore!=null){
+				durableChannelStore.close();
+			}
+			if(compiledClassCache!=null){
+				compiledClassCache.destroy();
+			}
+			if(channelRouter!=AsyncChannel.DEFAULT_ROUTER){
+				channelRouter.close();
+			}
 			if(httpClient instanceof CloseableHttpClient){
 				try {
 					((CloseableHttpClient)httpClient).close();
@@ -560,7 +745,7 @@ public class Groovity implements GroovityConstants{
 	 * @param force if true, recompile all sources, if false recompile only changed sources
 	 */
 	public void compileAll(boolean force, boolean init){
-		if(inCompile.compareAndSet(false, true)){
+		if(!compileLock.isHeldByCurrentThread() && compileLock.tryLock()){
 			try{
 				compileEvents.clear();
 				List<GroovitySource> sources = new ArrayList<GroovitySource>();
@@ -573,6 +758,11 @@ public class Groovity implements GroovityConstants{
 							if(matcher.matches()){
 								String name = matcher.group(1);
 								oldViews.remove(fixCase(name));
+								if(!force && lazySources.containsKey(fixCase(name))){
+									//not yet used, so keep deferring with the latest source
+									lazySources.put(fixCase(name), source);
+									continue;
+								}
 								sources.add(source);
 							}
 						} catch (Exception e) {
@@ -609,7 +799,7 @@ public class Groovity implements GroovityConstants{
 				}
 				compile(force, init, sources.toArray(new GroovitySource[0]));
 			}finally{
-				inCompile.set(false);
+				compileLock.unlock();
 			}
 		}
 		else{
@@ -654,6 +844,13 @@ public class Groovity implements GroovityConstants{
 		}
 	}
 	
+	private void handoverCaches(Class<?> previous, Class<?> replacement){
+		if(previous!=null && replacement!=null && previous.getClassLoader()!=replacement.getClassLoader()
+				&& previous.getClassLoader() instanceof GroovityClassLoader && replacement.getClassLoader() instanceof GroovityClassLoader) {
+			((GroovityClassLoader)previous.getClassLoader()).handoverCaches((GroovityClassLoader)replacement.getClassLoader());
+		}
+	}
+	
 	protected void initClass(Class<?> clz){
 		if(clz!=null){
 			final GroovityClassLoader gcl = (GroovityClassLoader)clz.getClassLoader();
@@ -893,6 +1090,9 @@ public class Groovity implements GroovityConstants{
 		if(jarPhases!=null && jarPhases.contains(GroovityPhase.STARTUP) && jarDirectory!=null && jarDirectory.isDirectory()){
 			List<File> jarList = new ArrayList<>();
 			findJarFiles(jarDirectory, jarList);
+			if(!lazySources.isEmpty()){
+				jarList.removeIf(jar -> lazySources.containsKey(fixCase(getScriptName(getJarSourcePath(jar)))));
+			}
 			if(!jarList.isEmpty()){
 				long jarStart = System.currentTimeMillis();
 				Map<String,Throwable> jarErrors = new HashMap<>();
@@ -949,9 +1149,13 @@ public class Groovity implements GroovityConstants{
 		}
 	}
 	
-	protected void loadClasses(File file, HashMap<String,Collection<String>> newScriptDependencies, Map<String,Boolean> newScriptInits) throws IOException, IllegalAccessException, IllegalArgumentException, InvocationTargetException{
+	private String getJarSourcePath(File file){
 		String sourcePath = jarDirectory.toURI().relativize(file.toURI()).getPath();
-		sourcePath = "/".concat(sourcePath.substring(0, sourcePath.length()-4));
+		return "/".concat(sourcePath.substring(0, sourcePath.length()-4));
+	}
+	
+	protected void loadClasses(File file, HashMap<String,Collection<String>> newScriptDependencies, Map<String,Boolean> newScriptInits) throws IOException, IllegalAccessException, IllegalArgumentException, InvocationTargetException{
+		String sourcePath = getJarSourcePath(file);
 		long time1=System.currentTimeMillis();
 		FileInputStream jarStream = new FileInputStream(file);
 		try{
@@ -971,8 +1175,10 @@ public class Groovity implements GroovityConstants{
 	protected final Class<Script> loadGroovyClassesAndFindScript(GroovityClassLoader loader, GroovyClass[] classes, Map<String, Class>... loadTraits) throws IllegalAccessException {
 		Class<Script> scriptClass = null;
 		List<Class> defined = new ArrayList<>();
+		List<byte[]> bytecode = new ArrayList<>();
 		for(GroovyClass cl:classes){
 			defined.add(loader.defineClass(cl.getName(), cl.getBytes()));
+			bytecode.add(cl.getBytes());
 		}
 		//this seemingly useless call will force failure if there are referenced traits missing so we can retry ...
 		for(Class c: defined) {
@@ -987,7 +1193,8 @@ public class Groovity implements GroovityConstants{
 				m.getGenericExceptionTypes();
 			}
 		}
-		for(Class c: defined){
+		for(int i=0; i<defined.size(); i++){
+			Class c = defined.get(i);
 			if(Script.class.isAssignableFrom(c)){
 				scriptClass = c;
 				//log.info("Loaded groovy script from disk "+c.getName());
@@ -1011,10 +1218,12 @@ public class Groovity implements GroovityConstants{
 					for(Map<String,Class> traitMap: loadTraits) {
 						traitMap.put(c.getName(), c);
 					}
+					traitFingerprints.put(c.getName(), CompiledClassCache.fingerprint(classes[i].getBytes()));
 				}
 			} catch (Throwable e) {
 			} 
 		}
+		dependencyGraph.update(fixCase(loader.getScriptName()), (List) defined, bytecode);
 		return scriptClass;
 	}
 
@@ -1064,7 +1273,7 @@ public class Groovity implements GroovityConstants{
 	 * @throws Exception
 	 */
 	public void compile(boolean force, boolean init, List<String> sourcePaths) throws Exception{
-		if(inCompile.compareAndSet(false, true)){
+		if(!compileLock.isHeldByCurrentThread() && compileLock.tryLock()){
 			try{
 				compileEvents.clear();
 				List<GroovitySource> sources = new ArrayList<GroovitySource>();
@@ -1102,7 +1311,7 @@ public class Groovity implements GroovityConstants{
 				}	
 				compile(force, init, sources.toArray(new GroovitySource[0]));
 			}finally{
-				inCompile.set(false);
+				compileLock.unlock();
 			}
 		}
 		else{
@@ -1111,7 +1320,7 @@ public class Groovity implements GroovityConstants{
 	}
 	
 	public boolean isCompiling(){
-		return inCompile.get();
+		return compileLock.isLocked();
 	}
 	
 	private String getScriptName(String sourcePath){
@@ -1187,6 +1396,14 @@ public class Groovity implements GroovityConstants{
 	 */
 	@SuppressWarnings("rawtypes") 
 	protected void compile(boolean force, boolean init, ConcurrentHashMap<String, Class> compilerTraits, GroovitySource... sources){
+		if(!force) {
+			sources = selectChangedSources(compilerTraits, sources);
+			if(sources.length==0) {
+				return;
+			}
+			//dates were already compared during selection, and dependents must compile even though they are unchanged
+			force = true;
+		}
 		//take multiple sources and compile as a set, only initing() classes once all are loaded
 		HashMap<String, Class<Script>> newScripts = new HashMap<String, Class<Script>>();
 		HashMap<String, Long> newScriptDates = new HashMap<String, Long>();
@@ -1205,11 +1422,37 @@ public class Groovity implements GroovityConstants{
 			}
 			plainSources.add(source);
 		}
-		if(!traitSources.isEmpty()) {
-			compileLoop(newScripts, newScriptDates, deletedScripts, scriptDependencies, scriptInits, force, init, 0, compilerTraits, traitSources.toArray(new GroovitySource[0]));
+		ExecutorService compilerPool = null;
+		int numThreads = Math.min(compilerThreads, Math.max(traitSources.size(), plainSources.size()));
+		if(numThreads > 1) {
+			//worker threads must resolve classes the same way the calling thread would
+			final ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+			compilerPool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r);
+					t.setName("Groovity Compiler "+t.getName());
+					t.setContextClassLoader(contextLoader);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		try {
+			//traits must be compiled before the scripts that use them
+			if(!traitSources.isEmpty()) {
+				compileLoop(newScripts, newScriptDates, deletedScripts, scriptDependencies, scriptInits, force, init, 0, compilerTraits, compilerPool, "trait", traitSources.toArray(new GroovitySource[0]));
+			}
+			if(!plainSources.isEmpty()) {
+				compileLoop(newScripts, newScriptDates, deletedScripts, scriptDependencies, scriptInits, force, init, 0, compilerTraits, compilerPool, "script", plainSources.toArray(new GroovitySource[0]));
+			}
 		}
-		if(!plainSources.isEmpty()) {
-			compileLoop(newScripts, newScriptDates, deletedScripts, scriptDependencies, scriptInits, force, init, 0, compilerTraits, plainSources.toArray(new GroovitySource[0]));
+		finally {
+			if(compilerPool!=null) {
+				compilerPool.shutdown();
+			}
+		}
+		if(compiledClassCache!=null && log.isLoggable(Level.FINE)) {
+			log.fine("Compiled class cache "+compiledClassCache.getDirectory()+" has "+compiledClassCache.getHits()+" hits, "+compiledClassCache.getMisses()+" misses");
 		}
 		List<Class<Script>> toDestroy = new ArrayList<Class<Script>>();
 		HashSet<String> sourceNames = new HashSet<>();
@@ -1223,10 +1466,14 @@ public class Groovity implements GroovityConstants{
 			String scriptNameFixed= fixCase(scriptName);
 			Class<Script> theClass = newScripts.get(scriptName);
 			if(init) {
+				//hand caches over first, so the new version claims them if it creates them during static initialization
+				Class<Script> previous = scripts.get(scriptNameFixed);
+				handoverCaches(previous!=null ? previous : embeddedScripts.get(scriptNameFixed), theClass);
 				initClass(theClass);
 			}
 			scriptDates.put(scriptNameFixed,newScriptDates.get(scriptName));
 			Class<Script> oldClass = scripts.put(scriptNameFixed,theClass);
+			lazySources.remove(scriptNameFixed);
 			if(oldClass!=null){
 				toDestroy.add(oldClass);
 			}
@@ -1239,6 +1486,7 @@ public class Groovity implements GroovityConstants{
 			String nameCaseFixed = fixCase(name);
 			Class<Script> oldClass = scripts.remove(nameCaseFixed);
 			scriptDates.remove(nameCaseFixed);
+			dependencyGraph.remove(nameCaseFixed);
 			if(oldClass!=null){
 				log.info("Deleting removed source "+name+" / class "+oldClass.getName());
 				toDestroy.add(oldClass);
@@ -1301,6 +1549,64 @@ public class Groovity implements GroovityConstants{
 			log.severe(messageBuilder.toString());
 		}
 	}
+	/**
+	 * Narrow a set of sources down to those that have changed, plus any unchanged scripts that were compiled
+	 * against traits defined by a changed source; every other script keeps its classes and init state.
+	 * Traits that are not being recompiled are made available to the compiler up front rather than on retry.
+	 */
+	@SuppressWarnings("rawtypes")
+	private GroovitySource[] selectChangedSources(ConcurrentHashMap<String, Class> compilerTraits, GroovitySource... sources){
+		LinkedHashMap<String, GroovitySource> selected = new LinkedHashMap<>();
+		for(GroovitySource source: sources) {
+			String name = fixCase(getScriptName(source.getPath()));
+			if(source.exists()) {
+				Long cur = scriptDates.get(name);
+				if(cur!=null && cur.longValue()==source.getLastModified()){
+					continue;
+				}
+			}
+			selected.put(name, source);
+		}
+		if(selected.isEmpty()) {
+			return new GroovitySource[0];
+		}
+		Set<String> dependents = dependencyGraph.getDependents(selected.keySet());
+		for(String dependent: dependents) {
+			Class<Script> dependentClass = scripts.get(dependent);
+			GroovitySource source = dependentClass!=null ? findSource(getSourcePath(dependentClass)) : null;
+			if(source!=null && source.exists()) {
+				selected.put(dependent, source);
+			}
+		}
+		if(!dependents.isEmpty()) {
+			log.info("Recompiling "+dependents+" compiled against traits of changed sources");
+		}
+		for(Map.Entry<String, Class> trait: traits.entrySet()) {
+			String owner = dependencyGraph.getDefiningScript(trait.getKey());
+			if(owner==null || !selected.containsKey(owner)) {
+				compilerTraits.putIfAbsent(trait.getKey(), trait.getValue());
+			}
+		}
+		return selected.values().toArray(new GroovitySource[0]);
+	}
+	
+	private GroovitySource findSource(String path) {
+		if(sourceLocators!=null) {
+			for(GroovitySourceLocator sourceLocator: sourceLocators){
+				try{
+					GroovitySource source = sourceLocator.getGroovityScriptSource(path);
+					if(source!=null && source.exists()){
+						return source;
+					}
+				}
+				catch(Exception e){
+					log.log(Level.WARNING, "Unable to load source "+path, e);
+				}
+			}
+		}
+		return null;
+	}
+	
 	@SuppressWarnings("rawtypes")
 	private void compileLoop(Map<String, Class<Script>> newScripts, 
 			Map<String, Long> newScriptDates, 
@@ -1311,10 +1617,79 @@ public class Groovity implements GroovityConstants{
 			boolean init, 
 			int numErrors, 
 			ConcurrentHashMap<String, Class> compilerTraits, 
+			ExecutorService compilerPool,
+			String phase,
 			GroovitySource... sources){
+		long startTime = System.currentTimeMillis();
+		boolean[] failed = new boolean[sources.length];
+		if(compilerPool!=null && sources.length > 1) {
+			List<Future<Boolean>> futures = new ArrayList<>(sources.length);
+			for(GroovitySource source: sources) {
+				futures.add(compilerPool.submit(() -> 
+					compileSource(newScripts, newScriptDates, deletedScripts, scriptDependencies, scriptInits, force, compilerTraits, source)
+				));
+			}
+			for(int i=0; i<sources.length; i++) {
+				try {
+					failed[i] = futures.get(i).get();
+				}
+				catch(Exception e) {
+					log.log(Level.SEVERE,"Error compiling groovy "+sources[i].getPath(),e);
+				}
+			}
+		}
+		else {
+			for(int i=0; i<sources.length; i++) {
+				failed[i] = compileSource(newScripts, newScriptDates, deletedScripts, scriptDependencies, scriptInits, force, compilerTraits, sources[i]);
+			}
+		}
 		LinkedHashMap<String,GroovitySource> errorSources = new LinkedHashMap<>();
-		for(GroovitySource source: sources){
-			try{
+		for(int i=0; i<sources.length; i++) {
+			if(failed[i]) {
+				errorSources.put(fixCase(getScriptName(sources[i].getPath())), sources[i]);
+			}
+		}
+		if(sources.length > 1 || numErrors > 0) {
+			log.info("Compiled "+sources.length+" "+phase+" sources in "+(System.currentTimeMillis()-startTime)+" ms"+(compilerPool!=null ? " in parallel" : "")+", "+errorSources.size()+" failed");
+		}
+		
+		if(!errorSources.isEmpty()) {
+			boolean retry = (numErrors==0 || errorSources.size()<numErrors);
+			if(!retry) {
+				//let's check if the compiling set of traits is missing anything
+				for(Map.Entry<String, Class> entry: traits.entrySet()) {
+					if(!compilerTraits.containsKey(entry.getKey())) {
+						retry=true;
+						compilerTraits.put(entry.getKey(), entry.getValue());
+					}
+				}
+			}
+			if(retry) {
+				if(log.isLoggable(Level.FINE)) {
+					log.fine("Retrying error compile on "+errorSources.size());
+				}
+				//retry failed compiles after all the rest in case they just need to pick up traits
+				compileLoop(newScripts, newScriptDates, deletedScripts, scriptDependencies, scriptInits, force,init, errorSources.size(),compilerTraits,compilerPool,phase+" retry",errorSources.values().toArray(new GroovitySource[0]));
+			}
+		}
+	}
+	
+	/**
+	 * Compile a single source, safe to call concurrently for different sources
+	 * 
+	 * @return true if the source failed to compile and should be retried
+	 */
+	@SuppressWarnings("rawtypes")
+	private boolean compileSource(Map<String, Class<Script>> newScripts, 
+			Map<String, Long> newScriptDates, 
+			Map<String, File> deletedScripts, 
+			Map<String, Collection<String>> scriptDependencies,
+			Map<String, Boolean> scriptInits,
+			boolean force, 
+			ConcurrentHashMap<String, Class> compilerTraits, 
+			GroovitySource source){
+		boolean failed = false;
+		try{
 			GroovityCompilerEvent event = new GroovityCompilerEvent();
 			event.setPath(source.getPath());
 			event.setTime(System.currentTimeMillis());
@@ -1333,7 +1708,7 @@ public class Groovity implements GroovityConstants{
 					Long cur = scriptDates.get(nameCaseFixed);
 					//System.out.println("comparing "+cur+" to "+source.getLastModified()+" for "+name);
 					if(cur!=null && cur.longValue()==source.getLastModified()){
-						continue;
+						return false;
 					}
 				}
 				String sourceCode = null;
@@ -1350,20 +1725,44 @@ public class Groovity implements GroovityConstants{
 					//a classloader only gets the traits that are available when it is created, so we make a copy
 					ConcurrentHashMap<String, Class> traitsCopy = new ConcurrentHashMap<>(compilerTraits);
 					GroovityClassLoader loader = getParentLoader()!=null? new GroovityClassLoader(source.getPath(),getParentLoader(),compilerConfiguration,this,cacheRefreshExecutor,traitsCopy) : new GroovityClassLoader(source.getPath(),Thread.currentThread().getContextClassLoader(),compilerConfiguration,this,cacheRefreshExecutor,traitsCopy);
-					CompilationUnit cu = new CompilationUnit(compilerConfiguration,null,loader);
-					SourceUnit su =  new TransformedSourceUnit(className.concat(GROOVITY_SOURCE_EXTENSION), transformed, compilerConfiguration, loader, new ErrorCollector(compilerConfiguration));
-					//errorCollector.sourceUnit = su;
-					cu.addSource(su);
-		
-					//Don't compile all or extra class files get generated!
-					cu.compile(Phases.CLASS_GENERATION);
-					
-					@SuppressWarnings("unchecked")
-					GroovyClass[] gcs = (GroovyClass[]) cu.getClasses().toArray(new GroovyClass[0]);
+					String cacheKey = null;
+					GroovyClass[] gcs = null;
+					if(compiledClassCache!=null){
+						cacheKey = compiledClassCache.computeKey(className, transformed.source, getTraitsFingerprint(traitsCopy), getCompilerFingerprint(compilerConfiguration));
+						File cached = compiledClassCache.find(cacheKey);
+						if(cached!=null){
+							try(FileInputStream cachedStream = new FileInputStream(cached)){
+								gcs = loadGroovyClasses(cachedStream);
+							}
+							catch(IOException e){
+								log.log(Level.WARNING, "Unable to read compiled class cache entry "+cached, e);
+							}
+						}
+					}
+					final boolean fromCache = gcs!=null;
+					if(!fromCache){
+						gcs = compileClasses(className, transformed, compilerConfiguration, loader);
+					}
 					Class<Script> scriptClass=loadGroovyClassesAndFindScript(loader, gcs, compilerTraits, traitsCopy, traits);
 					if(scriptClass!=null){
 						long time2=System.currentTimeMillis();
-						log.info("Compiled Groovy Script: ".concat(source.getPath())+" in "+(time2-time1));
+						if(fromCache){
+							//dependencies are normally gathered by the AST transformation during compilation
+							dependencies.addAll(getDependencies(scriptClass));
+							log.info("Loaded cached Groovy Script: ".concat(source.getPath())+" in "+(time2-time1));
+						}
+						else{
+							log.info("Compiled Groovy Script: ".concat(source.getPath())+" in "+(time2-time1));
+							if(cacheKey!=null){
+								final GroovyClass[] toCache = gcs;
+								try{
+									compiledClassCache.store(cacheKey, file -> writeClasses(file, toCache));
+								}
+								catch(IOException e){
+									log.log(Level.WARNING, "Unable to store "+source.getPath()+" in compiled class cache", e);
+								}
+							}
+						}
 					}
 					else{
 						log.severe("UHOH!!  Unable to find main class for "+source.getPath());
@@ -1374,16 +1773,18 @@ public class Groovity implements GroovityConstants{
 					if(log.isLoggable(Level.FINE)){
 						log.fine("Registering script class "+scriptClass.getName()+" for name "+name);
 					}
-					newScripts.put(name,scriptClass);
-					newScriptDates.put(name,source.getLastModified());
-					scriptDependencies.put(name, dependencies);
-					scriptInits.put(name, hasInit((GroovityClassLoader)scriptClass.getClassLoader()));
+					synchronized(newScripts) {
+						newScripts.put(name,scriptClass);
+						newScriptDates.put(name,source.getLastModified());
+						scriptDependencies.put(name, dependencies);
+						scriptInits.put(name, hasInit((GroovityClassLoader)scriptClass.getClassLoader()));
+					}
 					if(log.isLoggable(Level.FINE)){
 						log.fine("Found dependencies "+dependencies+" for script "+name);
 					}
 				}
 				catch(Throwable th){
-					errorSources.put(nameCaseFixed,source);
+					failed = true;
 					log.log(Level.FINE,"Error compiling "+source.getPath(),th);
 					if(sourceCode!=null && log.isLoggable(Level.FINE)){
 						log.fine("Source code in trouble: \n"+sourceCode);
@@ -1396,42 +1797,55 @@ public class Groovity implements GroovityConstants{
 			}
 			else{
 				//remove from memory and disk
-				if(jarDirectory!=null){
-					deletedScripts.put(name, getClassesFile(source));
-				}
-				else{
-					deletedScripts.put(name, null);
+				synchronized(newScripts) {
+					deletedScripts.put(name, jarDirectory!=null ? getClassesFile(source) : null);
 				}
 				if(scripts.containsKey(nameCaseFixed)){
 					event.setChange(Change.remove);
 					compileEvents.put(fixCase(name), event);
 				}
 			}
-			}
-			catch(Exception e){
-				log.log(Level.SEVERE,"Error compiling groovy "+source.getPath(),e);
-			}
 		}
-		
-		if(!errorSources.isEmpty()) {
-			boolean retry = (numErrors==0 || errorSources.size()<numErrors);
-			if(!retry) {
-				//let's check if the compiling set of traits is missing anything
-				for(Map.Entry<String, Class> entry: traits.entrySet()) {
-					if(!compilerTraits.containsKey(entry.getKey())) {
-						retry=true;
-						compilerTraits.put(entry.getKey(), entry.getValue());
-					}
-				}
-			}
-			if(retry) {
-				if(log.isLoggable(Level.FINE)) {
-					log.fine("Retrying error compile on "+errorSources.size());
-				}
-				//retry failed compiles after all the rest in case they just need to pick up traits
-				compileLoop(newScripts, newScriptDates, deletedScripts, scriptDependencies, scriptInits, force,init, errorSources.size(),compilerTraits,errorSources.values().toArray(new GroovitySource[0]));
-			}
+		catch(Exception e){
+			log.log(Level.SEVERE,"Error compiling groovy "+source.getPath(),e);
 		}
+		return failed;
+	}
+	
+	private GroovyClass[] compileClasses(String className, TransformedSource transformed, CompilerConfiguration compilerConfiguration, GroovityClassLoader loader){
+		CompilationUnit cu = new CompilationUnit(compilerConfiguration,null,loader);
+		SourceUnit su =  new TransformedSourceUnit(className.concat(GROOVITY_SOURCE_EXTENSION), transformed, compilerConfiguration, loader, new ErrorCollector(compilerConfiguration));
+		//errorCollector.sourceUnit = su;
+		cu.addSource(su);
+		//Don't compile all or extra class files get generated!
+		cu.compile(Phases.CLASS_GENERATION);
+		@SuppressWarnings("unchecked")
+		GroovyClass[] gcs = (GroovyClass[]) cu.getClasses().toArray(new GroovyClass[0]);
+		return gcs;
+	}
+	
+	//the traits a script is compiled against, with a fingerprint of their bytecode where known
+	@SuppressWarnings("rawtypes")
+	private String getTraitsFingerprint(Map<String, Class> compilerTraits) {
+		StringBuilder builder = new StringBuilder();
+		for(String trait: new TreeSet<>(compilerTraits.keySet())) {
+			builder.append(trait).append('=').append(traitFingerprints.getOrDefault(trait, "")).append(';');
+		}
+		return builder.toString();
+	}
+	
+	//everything in the compiler configuration that shapes generated bytecode, including which method names compile to tag calls
+	private String getCompilerFingerprint(CompilerConfiguration compilerConfiguration) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(scriptBaseClass).append(';').append(compilerConfiguration.getTargetBytecode());
+		builder.append(';').append(new TreeMap<>(compilerConfiguration.getOptimizationOptions()));
+		for(CompilationCustomizer customizer: compilerConfiguration.getCompilationCustomizers()) {
+			builder.append(';').append(customizer.getClass().getName());
+		}
+		if(tagLib!=null) {
+			builder.append(';').append(tagLib.getTagNames());
+		}
+		return builder.toString();
 	}
 	
 	protected CompilerConfiguration createCompilerConfiguration(Map<Integer,Integer> sourceLineNumbers, Collection<String> initDependencies) {
@@ -1454,45 +1868,49 @@ public class Groovity implements GroovityConstants{
 			File f = getClassesFile(sourceFile);
 			f.mkdirs();
 			f.delete();
-			HashSet<String> directories = new HashSet<String>();
-			FileOutputStream fos = new FileOutputStream(f);
-			try{
-				Manifest manifest = new Manifest();
-				manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
-				JarOutputStream target = new JarOutputStream(fos, manifest);
-				JarEntry root = new JarEntry("/");
-				target.putNextEntry(root);
-				target.closeEntry();
-				for(GroovyClass gc: classes){
-					//System.out.println("Storing clas "+gc.getName());
-					String[] segments = gc.getName().split("\\.");
-					if(segments.length>0){
-						String dir = "/";
-						for(int i=0; i< (segments.length-1);i++){
-							dir = dir.concat(segments[i]).concat("/");
-							if(directories.add(dir)){
-								JarEntry entry = new JarEntry(dir);
-								//entry.setTime(sourceFile.getLastModified());
-								target.putNextEntry(entry);
-								target.closeEntry();
-								//System.out.println("Created zip directory entry "+dir);
-							}
+			writeClasses(f, classes);
+			f.setLastModified(sourceFile.getLastModified());
+		}
+
+	}
+	
+	protected void writeClasses(File f, GroovyClass[] classes) throws IOException{
+		HashSet<String> directories = new HashSet<String>();
+		FileOutputStream fos = new FileOutputStream(f);
+		try{
+			Manifest manifest = new Manifest();
+			manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+			JarOutputStream target = new JarOutputStream(fos, manifest);
+			JarEntry root = new JarEntry("/");
+			target.putNextEntry(root);
+			target.closeEntry();
+			for(GroovyClass gc: classes){
+				//System.out.println("Storing clas "+gc.getName());
+				String[] segments = gc.getName().split("\\.");
+				if(segments.length>0){
+					String dir = "/";
+					for(int i=0; i< (segments.length-1);i++){
+						dir = dir.concat(segments[i]).concat("/");
+						if(directories.add(dir)){
+							JarEntry entry = new JarEntry(dir);
+							//entry.setTime(sourceFile.getLastModified());
+							target.putNextEntry(entry);
+							target.closeEntry();
+							//System.out.println("Created zip directory entry "+dir);
 						}
 					}
-					JarEntry entry = new JarEntry(gc.getName().replaceAll("\\.", "/").concat(".class"));
-					target.putNextEntry(entry);
-					target.write(gc.getBytes());
-					target.closeEntry();
 				}
-	
-				target.close();
-			}
-			finally{
-				fos.close();
+				JarEntry entry = new JarEntry(gc.getName().replaceAll("\\.", "/").concat(".class"));
+				target.putNextEntry(entry);
+				target.write(gc.getBytes());
+				target.closeEntry();
 			}
-			f.setLastModified(sourceFile.getLastModified());
+	
+			target.close();
+		}
+		finally{
+			fos.close();
 		}
-
 	}
 	protected GroovyClass[] loadGroovyClasses(InputStream jarStream) throws IOException{
 		//System.out.println("Loading classes from "+f);
@@ -1589,6 +2007,13 @@ public class Groovity implements GroovityConstants{
 		this.httpClient = httpClient;
 	}
 	
+	/**
+	 * @return the graph of traits defined and used by loaded scripts, which drives incremental recompilation
+	 */
+	public ScriptDependencyGraph getDependencyGraph() {
+		return dependencyGraph;
+	}
+	
 	public List<GroovitySource> getChangedSources(){
 		ArrayList<GroovitySource> changedSources = new ArrayList<GroovitySource>();
 		if(sourceLocators!=null){
@@ -1605,6 +2030,10 @@ public class Groovity implements GroovityConstants{
 							changedSources.add(source);
 						}
 					}
+					else if(lazySources.containsKey(key)){
+						//not yet used, so keep deferring with the latest source
+						lazySources.put(key, source);
+					}
 					else if(source.exists()){
 						changedSources.add(source);
 					}
@@ -1866,10 +2295,49 @@ public class Groovity implements GroovityConstants{
 		this.asyncThreads = asyncThreads;
 	}
 	
+	public boolean isLazyCompile() {
+		return lazyCompile;
+	}
+
+	protected void setLazyCompile(boolean lazyCompile) {
+		this.lazyCompile = lazyCompile;
+	}
+	
+	public long getStartupMillis() {
+		return startupMillis;
+	}
+	
+	public long getFirstRequestMillis() {
+		return firstRequestMillis;
+	}
+	
+	public int getCompilerThreads() {
+		return compilerThreads;
+	}
+
+	protected void setCompilerThreads(int compilerThreads) {
+		this.compilerThreads = compilerThreads;
+	}
+	
 	public ExecutorService getAsyncExecutor(){
 		return asyncExecutor;
 	}
 
+	/**
+	 * @return the kind of thread pool used by async and await tags
+	 */
+	public AsyncExecutorType getAsyncExecutorType() {
+		return asyncExecutorType;
+	}
+
+	protected void setAsyncExecutorType(AsyncExecutorType asyncExecutorType) {
+		if(!asyncExecutorType.isAvailable()){
+			log.warning(asyncExecutorType+" async executor is not supported on Java "+System.getProperty("java.version")+", falling back to "+AsyncExecutorType.DEADLOCK_FREE);
+			asyncExecutorType = AsyncExecutorType.DEADLOCK_FREE;
+		}
+		this.asyncExecutorType = asyncExecutorType;
+	}
+
 	public boolean isCaseSensitive() {
 		return caseSensitive;
 	}
@@ -1978,4 +2446,37 @@ public class Groovity implements GroovityConstants{
 		return interruptFactory;
 	}
 
+	/**
+	 * @return the router used by accept and offer tags in this groovity to find channel subscribers
+	 */
+	public ChannelRouter getChannelRouter() {
+		return channelRouter;
+	}
+
+	protected void setChannelRouter(ChannelRouter channelRouter) {
+		this.channelRouter = channelRouter;
+	}
+
+	/**
+	 * @return the store of durable channel logs, or null if no channel directory was configured
+	 */
+	public DurableChannelStore getDurableChannelStore() {
+		return durableChannelStore;
+	}
+
+	protected void setDurableChannelStore(DurableChannelStore durableChannelStore) {
+		this.durableChannelStore = durableChannelStore;
+	}
+
+	/**
+	 * @return the persistent cache of compiled classes, or null if no compiled class cache directory was configured
+	 */
+	public CompiledClassCache getCompiledClassCache() {
+		return compiledClassCache;
+	}
+
+	protected void setCompiledClassCache(CompiledClassCache compiledClassCache) {
+		this.compiledClassCache = compiledClassCache;
+	}
+
 }
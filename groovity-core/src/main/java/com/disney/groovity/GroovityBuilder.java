@@ -42,6 +42,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.http.impl.client.HttpClientBuilder;
 
+import com.disney.groovity.compile.CompiledClassCache;
 import com.disney.groovity.conf.Configurator;
 import com.disney.groovity.conf.EnvConfigurator;
 import com.disney.groovity.conf.MultiConfigurator;
@@ -54,6 +55,10 @@ import com.disney.groovity.source.ClasspathGroovitySourceLocator;
 import com.disney.groovity.source.FileGroovitySourceLocator;
 import com.disney.groovity.source.GroovitySourceLocator;
 import com.disney.groovity.source.HttpGroovitySourceLocator;
+import com.disney.groovity.util.AsyncExecutorType;
+import com.disney.groovity.util.ChannelRouter;
+import com.disney.groovity.util.DurableChannelStore;
+import com.disney.groovity.util.ChannelTransport;
 
 /**
  * A fluent builder API to configure and instantiate a Groovity.  Each of the setter
@@ -65,12 +70,18 @@ import com.disney.groovity.source.HttpGroovitySourceLocator;
 public class GroovityBuilder {
 	private ArgsLookup argsLookup = null;
 	private int asyncThreads = 128;
+	private int compilerThreads = Runtime.getRuntime().availableProcessors();
+	private boolean lazyCompile = false;
+	private AsyncExecutorType asyncExecutorType = AsyncExecutorType.DEADLOCK_FREE;
 	private Map<String,Object> defaultBinding;
 	private BindingDecorator bindingDecorator;
 	private boolean caseSensitive = true;
 	private int maxHttpConnPerRoute = 128;
 	private int maxHttpConnTotal = 512;
 	private File jarDirectory = null;
+	private File cacheSnapshotDirectory = null;
+	private File compiledClassCacheDirectory = null;
+	private boolean compiledClassCacheReadOnly = false;
 	private EnumSet<GroovityPhase> sourcePhases = EnumSet.of(GroovityPhase.STARTUP);
 	private EnumSet<GroovityPhase> jarPhases = EnumSet.of(GroovityPhase.STARTUP);
 	private Collection<URI> sourceLocations = null;
@@ -83,6 +94,11 @@ public class GroovityBuilder {
 	private String propsResource;
 	private File propsFile;
 	private URL propsURL;
+	private ChannelTransport channelTransport;
+	private Collection<?> forwardedChannels = null;
+	private File channelDirectory = null;
+	private long channelRetentionBytes = DurableChannelStore.DEFAULT_RETENTION_BYTES;
+	private long channelRetentionMillis = DurableChannelStore.DEFAULT_RETENTION_MILLIS;
 	
 	public Map<String,Object> getDefaultBinding() {
 		return defaultBinding;
@@ -110,6 +126,58 @@ public class GroovityBuilder {
 		this.asyncThreads = asyncThreads;
 		return this;
 	}
+	public int getCompilerThreads() {
+		return compilerThreads;
+	}
+	/**
+	 * Set the maximum number of threads used to compile sources in parallel, defaults to the number of processors
+	 * 
+	 * @param compilerThreads
+	 * @return
+	 */
+	public GroovityBuilder setCompilerThreads(int compilerThreads) {
+		this.compilerThreads = compilerThreads;
+		return this;
+	}
+	public boolean isLazyCompile() {
+		return lazyCompile;
+	}
+	/**
+	 * Only compile scripts with static init, web, conf or start methods, traits and tags at startup; all other scripts 
+	 * are compiled on first use, so rarely used scripts don't slow down startup
+	 * 
+	 * @param lazyCompile
+	 * @return
+	 */
+	public GroovityBuilder setLazyCompile(boolean lazyCompile) {
+		this.lazyCompile = lazyCompile;
+		return this;
+	}
+	public AsyncExecutorType getAsyncExecutorType() {
+		return asyncExecutorType;
+	}
+	/**
+	 * Choose the thread pool implementation for async and await tags; DEADLOCK_FREE (the default) uses a shared queue 
+	 * suited to blocking work, WORK_STEALING uses per-worker deques and runs awaited tasks on the waiting thread, 
+	 * which favors deeply nested fan-outs.  VIRTUAL runs async and await tasks, channel processors and async http 
+	 * calls on virtual threads when running on JDK 21 or later, and falls back to DEADLOCK_FREE on older JVMs
+	 * 
+	 * @param asyncExecutorType
+	 * @return
+	 */
+	public GroovityBuilder setAsyncExecutorType(AsyncExecutorType asyncExecutorType) {
+		this.asyncExecutorType = asyncExecutorType;
+		return this;
+	}
+	/**
+	 * Choose the thread pool implementation for async and await tags by name, e.g. "WORK_STEALING"
+	 * 
+	 * @param asyncExecutorType
+	 * @return
+	 */
+	public GroovityBuilder setAsyncExecutorType(String asyncExecutorType) {
+		return setAsyncExecutorType(AsyncExecutorType.valueOf(asyncExecutorType.trim().toUpperCase()));
+	}
 	public boolean isCaseSensitive() {
 		return caseSensitive;
 	}
@@ -159,6 +227,43 @@ public class GroovityBuilder {
 		this.jarDirectory = jarDirectory;
 		return this;
 	}
+	public File getCacheSnapshotDirectory() {
+		return cacheSnapshotDirectory;
+	}
+	/**
+	 * Define the directory where caches declared with a snapshot option persist their contents across restarts
+	 * @param cacheSnapshotDirectory
+	 * @return
+	 */
+	public GroovityBuilder setCacheSnapshotDirectory(File cacheSnapshotDirectory) {
+		this.cacheSnapshotDirectory = cacheSnapshotDirectory;
+		return this;
+	}
+	public File getCompiledClassCacheDirectory() {
+		return compiledClassCacheDirectory;
+	}
+	/**
+	 * Define a directory where compiled classes are cached by a hash of their source and compiler inputs,
+	 * so unchanged sources can skip compilation across restarts and between nodes sharing the directory
+	 * @param compiledClassCacheDirectory
+	 * @return
+	 */
+	public GroovityBuilder setCompiledClassCacheDirectory(File compiledClassCacheDirectory) {
+		this.compiledClassCacheDirectory = compiledClassCacheDirectory;
+		return this;
+	}
+	public boolean isCompiledClassCacheReadOnly() {
+		return compiledClassCacheReadOnly;
+	}
+	/**
+	 * Only read from the compiled class cache, never write to it; useful for nodes consuming a cache populated by a build step
+	 * @param compiledClassCacheReadOnly
+	 * @return
+	 */
+	public GroovityBuilder setCompiledClassCacheReadOnly(boolean compiledClassCacheReadOnly) {
+		this.compiledClassCacheReadOnly = compiledClassCacheReadOnly;
+		return this;
+	}
 	public EnumSet<GroovityPhase> getSourcePhases() {
 		return sourcePhases;
 	}
@@ -280,14 +385,36 @@ public class GroovityBuilder {
 		}
 		Groovity groovity = new Groovity();
 		groovity.setJarDirectory(jarDirectory);
+		groovity.setCacheSnapshotDirectory(cacheSnapshotDirectory);
+		if(compiledClassCacheDirectory!=null){
+			groovity.setCompiledClassCache(new CompiledClassCache(compiledClassCacheDirectory, compiledClassCacheReadOnly));
+		}
 		groovity.setJarPhases(jarPhases);
 		groovity.setSourcePhases(sourcePhases);
 		groovity.setCaseSensitive(caseSensitive);
 		groovity.setArgsLookup(argsLookup);
 		groovity.setAsyncThreads(asyncThreads);
+		groovity.setCompilerThreads(compilerThreads);
+		groovity.setLazyCompile(lazyCompile);
+		groovity.setAsyncExecutorType(asyncExecutorType);
 		groovity.setScriptBaseClass(scriptBaseClass);
 		groovity.setParentLoader(parentClassLoader);
 		groovity.setConfigurator(new MultiConfigurator(configurators));
+		if(channelTransport!=null || channelDirectory!=null){
+			ChannelRouter channelRouter = new ChannelRouter();
+			channelRouter.setClassLoader(parentClassLoader!=null ? parentClassLoader : Thread.currentThread().getContextClassLoader());
+			if(forwardedChannels!=null){
+				channelRouter.setForwardedChannels(forwardedChannels);
+			}
+			channelRouter.setTransport(channelTransport);
+			groovity.setChannelRouter(channelRouter);
+			if(channelDirectory!=null){
+				DurableChannelStore durableChannelStore = new DurableChannelStore(channelRouter, channelDirectory);
+				durableChannelStore.setRetentionBytes(channelRetentionBytes);
+				durableChannelStore.setRetentionMillis(channelRetentionMillis);
+				groovity.setDurableChannelStore(durableChannelStore);
+			}
+		}
 		final AtomicReference<BindingDecorator> bindingDecoratorRef = new AtomicReference<BindingDecorator>(bindingDecorator);
 		if(defaultBinding!=null){
 			bindingDecoratorRef.set(new BindingMapDecorator(new ConcurrentHashMap<String,Object>(defaultBinding),bindingDecoratorRef.get()));
@@ -399,6 +526,76 @@ public class GroovityBuilder {
 		this.httpClientBuilder = httpClientBuilder;
 		return this;
 	}
+	public ChannelTransport getChannelTransport() {
+		return channelTransport;
+	}
+	/**
+	 * Provide a transport to carry messages offered to named channels to peer nodes; the groovity will route channel 
+	 * messages with its own ChannelRouter instead of the JVM-wide default, so that several groovity instances in one JVM 
+	 * can act as separate nodes.  Only channels opted in with {@link #setForwardedChannels(Collection)} are forwarded.
+	 * 
+	 * @param channelTransport
+	 * @return
+	 */
+	public GroovityBuilder setChannelTransport(ChannelTransport channelTransport) {
+		this.channelTransport = channelTransport;
+		return this;
+	}
+	public Collection<?> getForwardedChannels() {
+		return forwardedChannels;
+	}
+	/**
+	 * Opt channels in to forwarding by the channel transport; messages offered to other channels stay on this node,
+	 * and messages for other channels received from peers are dropped
+	 * 
+	 * @param forwardedChannels the keys of channels to forward
+	 * @return
+	 */
+	public GroovityBuilder setForwardedChannels(Collection<?> forwardedChannels) {
+		this.forwardedChannels = forwardedChannels;
+		return this;
+	}
+	public File getChannelDirectory() {
+		return channelDirectory;
+	}
+	/**
+	 * Define the directory where channels accepted or offered with the durable option log their messages, so that 
+	 * unprocessed messages survive restarts; without it durable channels fall back to in-memory delivery
+	 * 
+	 * @param channelDirectory
+	 * @return
+	 */
+	public GroovityBuilder setChannelDirectory(File channelDirectory) {
+		this.channelDirectory = channelDirectory;
+		return this;
+	}
+	public long getChannelRetentionBytes() {
+		return channelRetentionBytes;
+	}
+	/**
+	 * Set the maximum size in bytes of each durable channel log, beyond which the oldest messages are discarded 
+	 * even if they have not been processed; 0 for no limit, defaults to 1 GB
+	 * 
+	 * @param channelRetentionBytes
+	 * @return
+	 */
+	public GroovityBuilder setChannelRetentionBytes(long channelRetentionBytes) {
+		this.channelRetentionBytes = channelRetentionBytes;
+		return this;
+	}
+	public long getChannelRetentionMillis() {
+		return channelRetentionMillis;
+	}
+	/**
+	 * Set the maximum age in milliseconds of messages kept in durable channel logs; 0 for no limit, defaults to 7 days
+	 * 
+	 * @param channelRetentionMillis
+	 * @return
+	 */
+	public GroovityBuilder setChannelRetentionMillis(long channelRetentionMillis) {
+		this.channelRetentionMillis = channelRetentionMillis;
+		return this;
+	}
 	public ClassLoader getParentClassLoader() {
 		return parentClassLoader;
 	}
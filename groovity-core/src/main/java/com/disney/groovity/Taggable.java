@@ -44,6 +44,15 @@ import com.disney.groovity.util.ScriptHelper;
  *
  */
 public interface Taggable extends GroovityConstants {
+	/**
+	 * Execute the tag; attribute maps written entirely with constants are shared across calls
+	 * and are read-only, so tags should copy rather than modify the attributes they are given
+	 * 
+	 * @param attributes
+	 * @param body
+	 * @return
+	 * @throws Exception
+	 */
 	@SuppressWarnings("rawtypes")
 	public Object tag(Map attributes, Closure body) throws Exception;
 	/**
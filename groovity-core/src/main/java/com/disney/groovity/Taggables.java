@@ -33,6 +33,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -50,6 +52,8 @@ public class Taggables implements GroovityConstants{
 	
 	private Map<String, Taggable> groovyTags = new ConcurrentHashMap<String, Taggable>();
 	
+	private final Map<String, TagBinding> bindings = new ConcurrentHashMap<String, TagBinding>();
+	
 	public Taggables(){
 	}
 	
@@ -59,7 +63,15 @@ public class Taggables implements GroovityConstants{
 				tag.setGroovity(groovity);
 				tag.init();
 			}
-			Taggable oldtag = this.groovyTags.put(Introspector.decapitalize(tag.getClass().getSimpleName()), tag);
+			String tagName = Introspector.decapitalize(tag.getClass().getSimpleName());
+			Taggable oldtag;
+			synchronized(bindings) {
+				oldtag = this.groovyTags.put(tagName, tag);
+				TagBinding binding = bindings.get(tagName);
+				if(binding!=null) {
+					binding.taggable = tag;
+				}
+			}
 			if(oldtag!=null){
 				oldtag.destroy();
 			}
@@ -82,7 +94,12 @@ public class Taggables implements GroovityConstants{
 		for(Taggable tag: groovyTags.values()){
 			tag.destroy();
 		}
-		groovyTags.clear();
+		synchronized(bindings) {
+			groovyTags.clear();
+			for(TagBinding binding: bindings.values()) {
+				binding.taggable = null;
+			}
+		}
 	}
 	public void addAll(List<Taggable> tags){
 		add(tags.toArray(new Taggable[0]));
@@ -97,6 +114,36 @@ public class Taggables implements GroovityConstants{
 		return taggable.tag(attributes, body);
 	}
 	
+	/**
+	 * Resolve a stable binding for a tag name; compiled tag calls hold on to the binding rather than
+	 * looking up the tag by name on every call, and a tag that is later added under the same name
+	 * replaces the target of the existing binding.
+	 * 
+	 * @param tagName the name of the tag
+	 * @return the binding for the tag name, which may not yet or no longer have a tag behind it
+	 */
+	public TagBinding bind(final String tagName) {
+		TagBinding binding = bindings.get(tagName);
+		if(binding==null) {
+			synchronized(bindings) {
+				binding = bindings.get(tagName);
+				if(binding==null) {
+					binding = new TagBinding(tagName);
+					binding.taggable = groovyTags.get(tagName);
+					bindings.put(tagName, binding);
+				}
+			}
+		}
+		return binding;
+	}
+	
+	/**
+	 * @return the names of all registered tags, sorted
+	 */
+	public SortedSet<String> getTagNames(){
+		return new TreeSet<>(groovyTags.keySet());
+	}
+	
 	public boolean hasTag(final String tagName){
 		return groovyTags.containsKey(tagName);
 	}
@@ -165,4 +212,28 @@ public class Taggables implements GroovityConstants{
 		return docs;
 	}
 	
+	/**
+	 * A named reference to the currently registered tag, kept up to date as tags are added or destroyed
+	 */
+	public static final class TagBinding{
+		private final String tagName;
+		private volatile Taggable taggable;
+		
+		private TagBinding(final String tagName) {
+			this.tagName = tagName;
+		}
+		
+		public String getTagName() {
+			return tagName;
+		}
+		
+		@SuppressWarnings("rawtypes") 
+		public Object tag(final Map attributes, final groovy.lang.Closure body) throws Exception{
+			final Taggable t = taggable;
+			if(t==null){
+				throw new RuntimeException("Tag not found: ".concat(tagName));
+			}
+			return t.tag(attributes, body);
+		}
+	}
 }
@@ -23,20 +23,18 @@
  *******************************************************************************/
 package com.disney.groovity.cache;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -57,100 +55,241 @@ import groovy.lang.Closure;
  */
 public class Cache {
 	public static final String MAP = "map";
+	public static final String STORE_SOFT = "soft";
+	public static final String STORE_LFU = "lfu";
+	public static final String STORE_OFFHEAP = "offheap";
+	public static final String STORE_MAPPED = "mapped";
+	public static final String SNAPSHOT_KEYS = "keys";
+	public static final String SNAPSHOT_VALUES = "values";
 	private static Logger log = Logger.getLogger(Cache.class.getName());
 	private CacheValueStore valueStore;
-	private ScriptHelper scriptHelper;
-	private BlockingQueue<Object> refreshQueue = new LinkedBlockingQueue<>();
+	private volatile ScriptHelper scriptHelper;
+	private CacheRefresher refresher;
 	private ScheduledFuture<?> refreshFuture;
 	private int batchSize = 100;
+	private int refreshConcurrency = 4;
+	private int refreshRate = -1;
+	private int refreshBacklog = 10000;
+	private int negativeTtl = -1;
+	private int errorBackoff = 0;
+	private int maxErrorBackoff = 300;
+	private int staleIfError = 0;
+	private final ConcurrentHashMap<Object, LoadError> loadErrors = new ConcurrentHashMap<>();
 	@SuppressWarnings("rawtypes")
-	private Closure cacheLoader;
-	private BindingDecorator bindingDecorator;
+	private volatile Closure cacheLoader;
+	private volatile BindingDecorator bindingDecorator;
 	private CacheManager manager;
 	private ScheduledExecutorService scheduler;
 	private ConcurrentHashMap<Object, CompletableFuture<CacheValue>> syncLoadMap = new ConcurrentHashMap<>();
+	private int ttl = -1;
+	private CacheSnapshot snapshot;
+	private int snapshotInterval = -1;
+	private ScheduledFuture<?> snapshotFuture;
+	//open while a snapshot is waiting to be restored
+	private volatile CountDownLatch restoring;
+	private volatile int restoredKeys = 0;
+	private volatile long restoreTime = 0;
+	private CacheOptions options;
 	
 	public void init(){
 		manager = new CacheManager(this);
 		valueStore.init();
+		refresher = new CacheRefresher(this::load, this::clearPendingRefresh, scheduler);
+		refresher.setBatchSize(batchSize);
+		refresher.setConcurrency(refreshConcurrency);
+		refresher.setRate(refreshRate);
+		refresher.setMaxBacklog(refreshBacklog);
 		refreshFuture = scheduler.scheduleWithFixedDelay(new Runnable() {
 			public void run() {
 				try{
-					if(!refreshQueue.isEmpty()){
-						final HashSet<Object> refreshSet = new HashSet<>(getBatchSize()*2);
-						//draining to a set should weed out the duplicates
-						refreshQueue.drainTo(refreshSet);
-						if(!refreshSet.isEmpty()){
-							scheduler.execute(new Runnable(){
-								@SuppressWarnings("rawtypes")
-								public void run() {
-									List<Object> keys = new ArrayList<>(refreshSet);
-									Map<Object,Object> valueMap = new HashMap<Object,Object>(keys.size()*2);
-									LinkedHashMap<String, Object> variables = new LinkedHashMap<>();
-									Binding safeBinding = new Binding(variables);
-									if(bindingDecorator!=null){
-										bindingDecorator.decorateRecursive(variables);
-									}
-									safeBinding.setVariable(MAP, valueMap);
-									final Binding oldBinding = ScriptHelper.THREAD_BINDING.get();
-									ScriptHelper.THREAD_BINDING.set(safeBinding);
-									try {
-										Closure closure = getCacheLoader().rehydrate(getScriptHelper(), safeBinding, getScriptHelper());
-										//split up the work into batches
-										int numBatches = (int)Math.ceil(keys.size()/(double)getBatchSize());
-										for(int b=0;b<numBatches;b++){
-											valueMap.clear();
-											for(int i=(b*getBatchSize());i<(b+1)*getBatchSize() && i<keys.size();i++){
-												valueMap.put(keys.get(i), null);
-											}
-											closure.call(valueMap);
-											for(Entry<Object, Object> lentry: valueMap.entrySet()){
-												Object val = lentry.getValue();
-												if(val instanceof Future){
-													//auto-resolve futures
-													val = ((Future)lentry.getValue()).get();
-												}
-												//instantiate CacheValue
-												CacheValue cv = new CacheValue(val);
-												getValueStore().put(lentry.getKey(), cv);
-											}
-										}
-										//log.info("Cache async refreshed "+valueMap.size());
-									} catch (Exception e) {
-										log.log(Level.SEVERE,"Cache refresh error with "+valueMap,e);
-									} 
-									finally{
-										if(oldBinding==null){
-											ScriptHelper.THREAD_BINDING.remove();
-										}
-										else{
-											ScriptHelper.THREAD_BINDING.set(oldBinding);
-										}
-									}
-								}
-								
-							});
-						}
-					}
+					refresher.dispatch();
+					pruneLoadErrors();
 				}
 				catch(Throwable th){
 					log.log(Level.SEVERE,"Error refreshing caches", th);
 				}
 			}}, 1000, 1000, TimeUnit.MILLISECONDS);
+		if(snapshot!=null){
+			restoring = new CountDownLatch(1);
+		}
+	}
+	
+	/**
+	 * Restore values from the snapshot, if any, and start writing periodic snapshots; called once after init, outside of
+	 * any lock shared with other caches, since reading a large snapshot may take a while
+	 */
+	public void restore(){
+		final CountDownLatch latch = restoring;
+		if(latch==null){
+			return;
+		}
+		try{
+			restoreSnapshot();
+			if(snapshotInterval > 0){
+				snapshotFuture = scheduler.scheduleWithFixedDelay(new Runnable() {
+					public void run() {
+						writeSnapshot();
+					}
+				}, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+			}
+		}
+		finally{
+			restoring = null;
+			latch.countDown();
+		}
+	}
+	
+	/**
+	 * Wait for a snapshot restore in progress on another thread, so the first callers see warm values
+	 */
+	public void awaitRestore(){
+		final CountDownLatch latch = restoring;
+		if(latch!=null){
+			try{
+				latch.await();
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Refresh a batch of keys in the background
+	 */
+	@SuppressWarnings("rawtypes")
+	protected void load(List<Object> keys){
+		Map<Object,Object> valueMap = new HashMap<Object,Object>(keys.size()*2);
+		for(Object key: keys){
+			valueMap.put(key, null);
+		}
+		LinkedHashMap<String, Object> variables = new LinkedHashMap<>();
+		Binding safeBinding = new Binding(variables);
+		if(bindingDecorator!=null){
+			bindingDecorator.decorateRecursive(variables);
+		}
+		safeBinding.setVariable(MAP, valueMap);
+		final Binding oldBinding = ScriptHelper.THREAD_BINDING.get();
+		ScriptHelper.THREAD_BINDING.set(safeBinding);
+		try {
+			Closure closure = getCacheLoader().rehydrate(getScriptHelper(), safeBinding, getScriptHelper());
+			closure.call(valueMap);
+			for(Entry<Object, Object> lentry: valueMap.entrySet()){
+				Object val = lentry.getValue();
+				if(val instanceof Future){
+					//auto-resolve futures
+					val = ((Future)lentry.getValue()).get();
+				}
+				//instantiate CacheValue
+				CacheValue cv = new CacheValue(val);
+				store(lentry.getKey(), cv);
+			}
+		}
+		catch(Exception e){
+			recordLoadError(keys, e);
+			if(errorBackoff > 0){
+				//let a later hit offer these keys again once the backoff has elapsed
+				for(Object key: keys){
+					clearPendingRefresh(key);
+				}
+			}
+			if(e instanceof RuntimeException){
+				throw (RuntimeException) e;
+			}
+			throw new RuntimeException(e);
+		}
+		finally{
+			if(oldBinding==null){
+				ScriptHelper.THREAD_BINDING.remove();
+			}
+			else{
+				ScriptHelper.THREAD_BINDING.set(oldBinding);
+			}
+		}
+	}
+	
+	private void clearPendingRefresh(Object key){
+		CacheValue cv = valueStore.get(key);
+		if(cv!=null){
+			cv.pendingRefresh.set(false);
+		}
+	}
+	
+	private void offerRefresh(Object key){
+		if(!refresher.offer(key)){
+			clearPendingRefresh(key);
+		}
 	}
 	
+	protected void restoreSnapshot(){
+		final long start = System.currentTimeMillis();
+		final long tooOld = ttl>0 ? Caches.currentCacheTime-ttl : 0;
+		try{
+			int count = snapshot.read((key, cv) -> {
+				if(cv!=null && cv.getCreated()>=tooOld){
+					if(valueStore.get(key)==null){
+						valueStore.put(key, cv);
+					}
+				}
+				else{
+					//missing or expired values are loaded in the background rather than by the first caller
+					refresher.offer(key);
+				}
+			});
+			if(count >= 0){
+				restoreTime = System.currentTimeMillis()-start;
+				restoredKeys = count;
+				log.info("Restored "+count+" keys from cache snapshot "+snapshot.getFile()+" in "+restoreTime+" ms");
+			}
+		}
+		catch(Exception e){
+			log.log(Level.SEVERE, "Error restoring cache snapshot "+snapshot.getFile(), e);
+		}
+	}
+	
+	protected void writeSnapshot(){
+		try{
+			long start = System.currentTimeMillis();
+			int count = snapshot.write(valueStore);
+			if(log.isLoggable(Level.FINE)){
+				log.fine("Wrote "+count+" keys to cache snapshot "+snapshot.getFile()+" in "+(System.currentTimeMillis()-start)+" ms");
+			}
+		}
+		catch(Exception e){
+			log.log(Level.SEVERE, "Error writing cache snapshot "+snapshot.getFile(), e);
+		}
+	}
 	
 	public void destroy(){
+		if(snapshot!=null){
+			if(snapshotFuture!=null){
+				snapshotFuture.cancel(false);
+			}
+			writeSnapshot();
+		}
 		refreshFuture.cancel(true);
-		refreshQueue.clear();
+		refresher.close();
 		valueStore.destroy();
 	}
 	
+	/**
+	 * Hold background refreshes, for example while a cache is waiting to be claimed by a recompiled script, since its
+	 * loader still belongs to the previous compilation
+	 */
+	public void suspendRefresh(){
+		refresher.suspend();
+	}
+	
+	public void resumeRefresh(){
+		refresher.resume();
+	}
+	
 	public void refresh(Object key) {
 		CacheValue cv = getValueStore().get(key);
 		if(cv!=null) {
 			if(cv.pendingRefresh.compareAndSet(false, true)){
-				refreshQueue.offer(key);
+				offerRefresh(key);
 			}
 		}
 	}
@@ -158,32 +297,61 @@ public class Cache {
 	public Map<Object,Object> get(Iterable<Object> keys, int refresh, int ttl){
 		Map<Object,CacheValue> found = new LinkedHashMap<Object,CacheValue>();
 		Map<Object,CompletableFuture<CacheValue>> loadKeys = null;
+		//expired values kept aside to serve if loading fails
+		Map<Object,CacheValue> stale = null;
 		for(Object key: keys){
 			found.put(key, null);
 		}
 		long tooOld = ttl>0 ? Caches.currentCacheTime-ttl :0;
 		long toRefresh = refresh > 0 ? Caches.currentCacheTime-refresh : 0;
+		long negativeTooOld = negativeTtl > 0 ? Caches.currentCacheTime-negativeTtl : 0;
+		long now = loadErrors.isEmpty() ? 0 : System.currentTimeMillis();
 		//step 1, load from valueStore
 		getValueStore().getAll(found);
-		int hits = 0, misses = 0;
+		int hits = 0, misses = 0, staleHits = 0;
 		//step 2, expire TTL
 		for(Entry<Object, CacheValue> entry: found.entrySet()){
 			CacheValue cv = entry.getValue();
 			if(cv!=null){
-				if(cv.getCreated()<tooOld){
+				if(cv.getCreated()<tooOld || (cv.getValue()==null && cv.getCreated()<negativeTooOld)){
 					//expired, force sync load
 					entry.setValue(null);
-					getValueStore().remove(entry.getKey(), cv);
+					if(staleIfError > 0 && cv.getValue()!=null){
+						if(stale==null){
+							stale = new HashMap<>();
+						}
+						stale.put(entry.getKey(), cv);
+					}
+					else{
+						getValueStore().remove(entry.getKey(), cv);
+					}
 				}
 				else{
-					if(cv.getCreated()<toRefresh && cv.pendingRefresh.compareAndSet(false, true)){
-						//past refresh date, offer for async refresh
-						refreshQueue.offer(entry.getKey());
+					if(cv.getCreated()<toRefresh && getBackoff(entry.getKey(), now)==null){
+						if(cv.pendingRefresh.compareAndSet(false, true)){
+							//past refresh date, offer for async refresh
+							offerRefresh(entry.getKey());
+						}
+						else{
+							//already waiting, so move it up the backlog
+							refresher.touch(entry.getKey());
+						}
 					}
 					hits++;
 					continue;
 				}
 			}
+			LoadError error = getBackoff(entry.getKey(), now);
+			if(error!=null){
+				//don't hit the backend again until the backoff has elapsed
+				CacheValue staleValue = stale!=null ? stale.get(entry.getKey()) : null;
+				if(staleValue!=null){
+					entry.setValue(staleValue);
+					staleHits++;
+					continue;
+				}
+				throw new RuntimeException("Not loading value for "+entry.getKey()+" after "+error.failures+" consecutive errors, last error was "+error.error.getClass().getName()+": "+error.error.getMessage(), error.error);
+			}
 			//no value, load it
 			if(loadKeys==null) {
 				loadKeys = new LinkedHashMap<>();
@@ -248,15 +416,18 @@ public class Cache {
 							}
 							//instantiate CacheValue
 							CacheValue cv = new CacheValue(val);
-							getValueStore().put(lentry.getKey(), cv);
+							store(lentry.getKey(), cv);
 							myLoadFutures.get(lentry.getKey()).complete(cv);
 							//found.put(lentry.getKey(),cv);
 						}
 					} catch (Exception e) {
+						recordLoadError(myLoadKeys.keySet(), e);
 						for(CompletableFuture<CacheValue> future: myLoadFutures.values()){
 							future.completeExceptionally(e);
 						}
-						throw new RuntimeException("Could not load value for "+loadKeys+": "+e.getClass().getName()+": "+e.getMessage(),e);
+						if(stale==null){
+							throw new RuntimeException("Could not load value for "+loadKeys+": "+e.getClass().getName()+": "+e.getMessage(),e);
+						}
 					} 
 					finally{
 						if(oldBinding==null){
@@ -268,7 +439,19 @@ public class Cache {
 					}
 				}
 				for(Entry<Object, CompletableFuture<CacheValue>> entry:loadKeys.entrySet()){
-					found.put(entry.getKey(),entry.getValue().get());
+					CacheValue cv;
+					try{
+						cv = entry.getValue().get();
+					}
+					catch(ExecutionException e){
+						cv = stale!=null ? stale.get(entry.getKey()) : null;
+						if(cv==null){
+							throw e;
+						}
+						//stale-if-error
+						staleHits++;
+					}
+					found.put(entry.getKey(),cv);
 				}
 			}
 			catch(InterruptedException e){
@@ -295,9 +478,73 @@ public class Cache {
 			};
 		}
 		manager.update(hits, misses);
+		if(staleHits > 0){
+			manager.updateStale(staleHits);
+		}
 		return rval;
 	}
 	
+	/**
+	 * Put a freshly loaded value in the store, clearing any backoff for the key
+	 */
+	protected void store(Object key, CacheValue cv){
+		if(cv.getValue()==null && negativeTtl==0){
+			getValueStore().remove(key);
+		}
+		else{
+			getValueStore().put(key, cv);
+		}
+		if(!loadErrors.isEmpty()){
+			loadErrors.remove(key);
+		}
+	}
+	
+	private LoadError getBackoff(Object key, long now){
+		if(now==0){
+			return null;
+		}
+		LoadError error = loadErrors.get(key);
+		return error!=null && error.retryAt > now ? error : null;
+	}
+	
+	/**
+	 * Start or extend exponential backoff for keys whose loader failed
+	 */
+	protected void recordLoadError(Collection<Object> keys, Throwable error){
+		manager.updateLoadErrors(keys.size());
+		if(errorBackoff <= 0){
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		for(Object key: keys){
+			loadErrors.compute(key, (k, prior) -> {
+				int failures = prior==null ? 1 : prior.failures+1;
+				long delay = Math.min(maxErrorBackoff*1000L, (errorBackoff*1000L) << Math.min(failures-1, 20));
+				return new LoadError(failures, now+delay, error);
+			});
+		}
+	}
+	
+	private void pruneLoadErrors(){
+		if(!loadErrors.isEmpty()){
+			//forget errors once a key has gone unrequested for a full backoff period past its retry time
+			final long cutoff = System.currentTimeMillis()-(maxErrorBackoff*1000L);
+			loadErrors.values().removeIf(error -> error.retryAt < cutoff);
+		}
+	}
+	
+	private static class LoadError{
+		final int failures;
+		final long retryAt;
+		final Throwable error;
+		
+		LoadError(int failures, long retryAt, Throwable error){
+			this.failures=failures;
+			this.retryAt=retryAt;
+			this.error=error;
+		}
+	}
+	
 	public void put(Object key, Object value){
 		if(value!=null){
 			valueStore.put(key, new CacheValue(value));
@@ -343,6 +590,119 @@ public class Cache {
 
 	public void setBatchSize(int batchSize) {
 		this.batchSize = batchSize;
+		if(refresher!=null){
+			refresher.setBatchSize(batchSize);
+		}
+	}
+
+
+	public int getRefreshConcurrency() {
+		return refreshConcurrency;
+	}
+
+	/**
+	 * @param refreshConcurrency the maximum number of background refresh batches to run in parallel
+	 */
+	public void setRefreshConcurrency(int refreshConcurrency) {
+		this.refreshConcurrency = refreshConcurrency;
+		if(refresher!=null){
+			refresher.setConcurrency(refreshConcurrency);
+		}
+	}
+
+
+	public int getRefreshRate() {
+		return refreshRate;
+	}
+
+	/**
+	 * @param refreshRate the maximum number of keys to refresh in the background per second, unlimited if not positive
+	 */
+	public void setRefreshRate(int refreshRate) {
+		this.refreshRate = refreshRate;
+		if(refresher!=null){
+			refresher.setRate(refreshRate);
+		}
+	}
+
+
+	public int getRefreshBacklog() {
+		return refreshBacklog;
+	}
+
+	/**
+	 * @param refreshBacklog the number of keys awaiting background refresh beyond which the least recently hit are dropped
+	 */
+	public void setRefreshBacklog(int refreshBacklog) {
+		this.refreshBacklog = refreshBacklog;
+		if(refresher!=null){
+			refresher.setMaxBacklog(refreshBacklog);
+		}
+	}
+	
+	public int getNegativeTtl() {
+		return negativeTtl;
+	}
+
+	/**
+	 * @param negativeTtl seconds to cache a null loaded value before loading it again; 0 to never cache nulls, or
+	 * negative to treat nulls like any other value
+	 */
+	public void setNegativeTtl(int negativeTtl) {
+		this.negativeTtl = negativeTtl;
+	}
+
+
+	public int getErrorBackoff() {
+		return errorBackoff;
+	}
+
+	/**
+	 * @param errorBackoff seconds to wait before loading a key again after its loader fails, doubling with each consecutive
+	 * failure; if not positive, failed keys are retried on the next request
+	 */
+	public void setErrorBackoff(int errorBackoff) {
+		this.errorBackoff = errorBackoff;
+	}
+
+
+	public int getMaxErrorBackoff() {
+		return maxErrorBackoff;
+	}
+
+	/**
+	 * @param maxErrorBackoff upper bound in seconds for the error backoff of a key
+	 */
+	public void setMaxErrorBackoff(int maxErrorBackoff) {
+		this.maxErrorBackoff = maxErrorBackoff;
+	}
+
+
+	public int getStaleIfError() {
+		return staleIfError;
+	}
+
+	/**
+	 * @param staleIfError seconds past the ttl that an expired value is kept, to be served in place of a failed or
+	 * backed off load
+	 */
+	public void setStaleIfError(int staleIfError) {
+		this.staleIfError = staleIfError;
+	}
+	
+	protected int getKeysBackingOff() {
+		final long now = System.currentTimeMillis();
+		int count = 0;
+		for(LoadError error: loadErrors.values()){
+			if(error.retryAt > now){
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	protected CacheRefresher getRefresher() {
+		return refresher;
 	}
 
 
@@ -380,6 +740,46 @@ public class Cache {
 	}
 
 
+	public int getTtl() {
+		return ttl;
+	}
+
+
+	public void setTtl(int ttl) {
+		this.ttl = ttl;
+	}
+
+
+	public CacheSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+
+	public void setSnapshot(CacheSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+
+	public int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+
+	public void setSnapshotInterval(int snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+	}
+
+
+	public int getRestoredKeys() {
+		return restoredKeys;
+	}
+
+
+	public long getRestoreTime() {
+		return restoreTime;
+	}
+
+
 	public ScheduledExecutorService getScheduler() {
 		return scheduler;
 	}
@@ -389,4 +789,13 @@ public class Cache {
 		this.scheduler = scheduler;
 	}
 	
+
+	public CacheOptions getOptions() {
+		return options;
+	}
+
+
+	public void setOptions(CacheOptions options) {
+		this.options = options;
+	}
 }
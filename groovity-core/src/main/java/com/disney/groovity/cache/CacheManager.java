@@ -24,6 +24,9 @@
 package com.disney.groovity.cache;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.disney.groovity.stats.MetricCollector;
 /**
  * CacheManager MBean implementation for accessing and resetting cache stats using JMX
  *
@@ -31,8 +34,10 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class CacheManager implements CacheManagerMBean {
 	private final Cache cache;
-	private final AtomicLong hits = new AtomicLong();
-	private final AtomicLong misses = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final AtomicLong staleHits = new AtomicLong();
+	private final AtomicLong loadErrors = new AtomicLong();
 	
 	protected CacheManager(Cache cache) {
 		this.cache = cache;
@@ -40,17 +45,44 @@ public class CacheManager implements CacheManagerMBean {
 
 	@Override
 	public long getCacheHits() {
-		return hits.get();
+		return hits.sum();
 	}
 
 	@Override
 	public long getCacheMisses() {
-		return misses.get();
+		return misses.sum();
 	}
 	
 	protected void update(int hits, int misses){
-		this.hits.addAndGet(hits);
-		this.misses.addAndGet(misses);
+		if(hits > 0){
+			this.hits.add(hits);
+		}
+		if(misses > 0){
+			this.misses.add(misses);
+		}
+	}
+
+	protected void updateStale(int staleHits){
+		this.staleHits.addAndGet(staleHits);
+	}
+
+	protected void updateLoadErrors(int loadErrors){
+		this.loadErrors.addAndGet(loadErrors);
+	}
+
+	@Override
+	public long getStaleHits() {
+		return staleHits.get();
+	}
+
+	@Override
+	public long getLoadErrors() {
+		return loadErrors.get();
+	}
+
+	@Override
+	public int getKeysBackingOff() {
+		return cache.getKeysBackingOff();
 	}
 
 	@Override
@@ -63,6 +95,66 @@ public class CacheManager implements CacheManagerMBean {
 		return cache.getValueStore().getMax();
 	}
 
+	@Override
+	public long getEvictions() {
+		return cache.getValueStore().getEvictions();
+	}
+
+	@Override
+	public long getAdmissionRejections() {
+		return cache.getValueStore().getAdmissionRejections();
+	}
+
+	@Override
+	public long getBytesUsed() {
+		return cache.getValueStore().getBytesUsed();
+	}
+
+	@Override
+	public long getMaxBytes() {
+		return cache.getValueStore().getMaxBytes();
+	}
+
+	@Override
+	public int getRestoredKeys() {
+		return cache.getRestoredKeys();
+	}
+
+	@Override
+	public long getRestoreTime() {
+		return cache.getRestoreTime();
+	}
+
+	@Override
+	public int getRefreshBacklog() {
+		return cache.getRefresher().getBacklog();
+	}
+
+	@Override
+	public int getRefreshesInFlight() {
+		return cache.getRefresher().getInFlight();
+	}
+
+	@Override
+	public long getRefreshedKeys() {
+		return cache.getRefresher().getRefreshedKeys();
+	}
+
+	@Override
+	public long getRefreshErrors() {
+		return cache.getRefresher().getRefreshErrors();
+	}
+
+	@Override
+	public long getDroppedRefreshes() {
+		return cache.getRefresher().getDroppedKeys();
+	}
+
+	@Override
+	public long[] getRefreshLatencyHistogram() {
+		return cache.getRefresher().getLatencies();
+	}
+
 	@Override
 	public void clearCache() {
 		cache.getValueStore().clear();
@@ -70,7 +162,32 @@ public class CacheManager implements CacheManagerMBean {
 
 	@Override
 	public void resetStats() {
-		hits.set(0);
-		misses.set(0);
+		hits.reset();
+		misses.reset();
+		staleHits.set(0);
+		loadErrors.set(0);
+		cache.getValueStore().resetStats();
+		cache.getRefresher().resetStats();
+	}
+	
+	/**
+	 * Report the statistics of this cache to the metrics registry
+	 */
+	public void collect(MetricCollector collector, String script, String name){
+		final String[] labels = { "script", script, "name", name };
+		collector.counter("groovity_cache_hits_total", "Cache hits", getCacheHits(), labels);
+		collector.counter("groovity_cache_misses_total", "Cache misses", getCacheMisses(), labels);
+		collector.counter("groovity_cache_stale_hits_total", "Stale cache values served after load errors", getStaleHits(), labels);
+		collector.counter("groovity_cache_load_errors_total", "Cache load errors", getLoadErrors(), labels);
+		collector.counter("groovity_cache_evictions_total", "Cache evictions", getEvictions(), labels);
+		collector.counter("groovity_cache_admission_rejections_total", "Cache values rejected by the admission policy", getAdmissionRejections(), labels);
+		collector.counter("groovity_cache_refreshed_keys_total", "Cache keys refreshed in the background", getRefreshedKeys(), labels);
+		collector.counter("groovity_cache_refresh_errors_total", "Background cache refresh errors", getRefreshErrors(), labels);
+		collector.counter("groovity_cache_dropped_refreshes_total", "Background cache refreshes dropped due to backlog", getDroppedRefreshes(), labels);
+		collector.gauge("groovity_cache_size", "Number of values in cache", getSize(), labels);
+		collector.gauge("groovity_cache_max_size", "Maximum number of values in cache", getMaxSize(), labels);
+		collector.gauge("groovity_cache_bytes", "Bytes used by serialized cache values", getBytesUsed(), labels);
+		collector.gauge("groovity_cache_refresh_backlog", "Cache keys waiting for background refresh", getRefreshBacklog(), labels);
+		collector.gauge("groovity_cache_keys_backing_off", "Cache keys not being loaded due to recent errors", getKeysBackingOff(), labels);
 	}
 }
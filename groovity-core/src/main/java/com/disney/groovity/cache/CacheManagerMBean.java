@@ -30,8 +30,27 @@ package com.disney.groovity.cache;
 public interface CacheManagerMBean {
 	public long getCacheHits();
 	public long getCacheMisses();
+	public long getStaleHits();
+	public long getLoadErrors();
+	public int getKeysBackingOff();
 	public int getSize();
 	public int getMaxSize();
+	public long getEvictions();
+	public long getAdmissionRejections();
+	public long getBytesUsed();
+	public long getMaxBytes();
+	public int getRestoredKeys();
+	public long getRestoreTime();
+	public int getRefreshBacklog();
+	public int getRefreshesInFlight();
+	public long getRefreshedKeys();
+	public long getRefreshErrors();
+	public long getDroppedRefreshes();
+	/**
+	 * @return counts of background refresh batches by latency, where bucket 0 counts batches under 1 ms and bucket n counts
+	 * batches taking at least 2^(n-1) and less than 2^n ms; the last bucket counts everything slower
+	 */
+	public long[] getRefreshLatencyHistogram();
 	default public long getCacheRequests(){
 		return getCacheHits()+getCacheMisses();
 	}
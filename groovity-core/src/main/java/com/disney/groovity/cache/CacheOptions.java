@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.cache;
+
+import java.util.Objects;
+
+/**
+ * Settings used when a cache is first created by a script; the cache tag builds these from its attributes, and later
+ * requests for an existing cache of the same name ignore them.  When a script is recompiled, a cache is carried over to
+ * the new version only if its options are equal to the ones the new version requests; refresh, negative caching and error
+ * backoff settings are left out of that comparison and simply applied to the carried over cache.
+ *
+ * @author Alex Vigdor
+ */
+public class CacheOptions {
+	private int ttl = -1;
+	private int max = -1;
+	private String store;
+	private long maxBytes = -1;
+	private String snapshot;
+	private int snapshotInterval = -1;
+	private int refreshConcurrency = 4;
+	private int refreshRate = -1;
+	private int refreshBacklog = 10000;
+	private int negativeTtl = -1;
+	private int errorBackoff = 0;
+	private int maxErrorBackoff = 300;
+	private int staleIfError = 0;
+	private boolean carryOver = true;
+	private String schema;
+
+	public int getTtl() {
+		return ttl;
+	}
+
+	public CacheOptions setTtl(int ttl) {
+		this.ttl = ttl;
+		return this;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public CacheOptions setMax(int max) {
+		this.max = max;
+		return this;
+	}
+
+	public String getStore() {
+		return store;
+	}
+	/**
+	 * @param store one of Cache.STORE_SOFT (default), Cache.STORE_LFU, Cache.STORE_OFFHEAP or Cache.STORE_MAPPED
+	 */
+	public CacheOptions setStore(String store) {
+		this.store = store;
+		return this;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+	/**
+	 * @param maxBytes byte budget for off-heap stores
+	 */
+	public CacheOptions setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		return this;
+	}
+
+	public String getSnapshot() {
+		return snapshot;
+	}
+	/**
+	 * @param snapshot Cache.SNAPSHOT_KEYS to persist keys for background reloading on restart, or Cache.SNAPSHOT_VALUES
+	 * to persist serialized values as well
+	 */
+	public CacheOptions setSnapshot(String snapshot) {
+		this.snapshot = snapshot;
+		return this;
+	}
+
+	public int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+	/**
+	 * @param snapshotInterval seconds between periodic snapshots; if not positive, snapshots are only written on destroy
+	 */
+	public CacheOptions setSnapshotInterval(int snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+		return this;
+	}
+
+	public int getRefreshConcurrency() {
+		return refreshConcurrency;
+	}
+	/**
+	 * @param refreshConcurrency the maximum number of background refresh batches to run in parallel
+	 */
+	public CacheOptions setRefreshConcurrency(int refreshConcurrency) {
+		this.refreshConcurrency = refreshConcurrency;
+		return this;
+	}
+
+	public int getRefreshRate() {
+		return refreshRate;
+	}
+	/**
+	 * @param refreshRate the maximum number of keys to refresh in the background per second, unlimited if not positive
+	 */
+	public CacheOptions setRefreshRate(int refreshRate) {
+		this.refreshRate = refreshRate;
+		return this;
+	}
+
+	public int getRefreshBacklog() {
+		return refreshBacklog;
+	}
+	/**
+	 * @param refreshBacklog the number of keys awaiting background refresh beyond which the least recently hit are dropped
+	 */
+	public CacheOptions setRefreshBacklog(int refreshBacklog) {
+		this.refreshBacklog = refreshBacklog;
+		return this;
+	}
+
+	public int getNegativeTtl() {
+		return negativeTtl;
+	}
+	/**
+	 * @param negativeTtl seconds to cache a null loaded value; 0 to never cache nulls, or negative to treat nulls like
+	 * any other value
+	 */
+	public CacheOptions setNegativeTtl(int negativeTtl) {
+		this.negativeTtl = negativeTtl;
+		return this;
+	}
+
+	public int getErrorBackoff() {
+		return errorBackoff;
+	}
+	/**
+	 * @param errorBackoff seconds to wait before loading a key again after its loader fails, doubling with each
+	 * consecutive failure
+	 */
+	public CacheOptions setErrorBackoff(int errorBackoff) {
+		this.errorBackoff = errorBackoff;
+		return this;
+	}
+
+	public int getMaxErrorBackoff() {
+		return maxErrorBackoff;
+	}
+	/**
+	 * @param maxErrorBackoff upper bound in seconds for the error backoff of a key
+	 */
+	public CacheOptions setMaxErrorBackoff(int maxErrorBackoff) {
+		this.maxErrorBackoff = maxErrorBackoff;
+		return this;
+	}
+
+	public int getStaleIfError() {
+		return staleIfError;
+	}
+	/**
+	 * @param staleIfError seconds past the ttl that expired values are kept, to be served when loading fails
+	 */
+	public CacheOptions setStaleIfError(int staleIfError) {
+		this.staleIfError = staleIfError;
+		return this;
+	}
+
+	public boolean isCarryOver() {
+		return carryOver;
+	}
+	/**
+	 * @param carryOver false to discard this cache when the script is recompiled, rather than handing its values
+	 * to the new version of the script; on-heap values built from classes defined by the script are never handed over
+	 */
+	public CacheOptions setCarryOver(boolean carryOver) {
+		this.carryOver = carryOver;
+		return this;
+	}
+
+	public String getSchema() {
+		return schema;
+	}
+	/**
+	 * @param schema a label for the shape of cached values; change it when a recompiled script can no longer use
+	 * values loaded by the previous version
+	 */
+	public CacheOptions setSchema(String schema) {
+		this.schema = schema;
+		return this;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(ttl, max, store, maxBytes, snapshot, snapshotInterval, staleIfError, carryOver, schema);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj){
+			return true;
+		}
+		if(!(obj instanceof CacheOptions)){
+			return false;
+		}
+		CacheOptions other = (CacheOptions) obj;
+		return ttl == other.ttl && max == other.max && maxBytes == other.maxBytes && snapshotInterval == other.snapshotInterval
+				&& staleIfError == other.staleIfError && carryOver == other.carryOver && Objects.equals(store, other.store) && Objects.equals(snapshot, other.snapshot) && Objects.equals(schema, other.schema);
+	}
+}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background refresh pipeline for a cache; keys offered for refresh wait in a backlog ordered by most recent hit, and are
+ * dispatched to the executor in batches, running up to a fixed number of batches in parallel and optionally limited to
+ * a number of keys per second to protect the backend.  A backlog that outgrows its bound sheds the least recently hit keys,
+ * which become eligible for refresh again on their next hit.
+ * <p>
+ * Dispatch happens on a periodic tick from the cache and whenever a batch completes.
+ *
+ * @author Alex Vigdor
+ */
+class CacheRefresher {
+	private static final Logger log = Logger.getLogger(CacheRefresher.class.getName());
+	//latency buckets are powers of 2 in milliseconds, with a final bucket for anything slower
+	static final int LATENCY_BUCKETS = 18;
+	private final Consumer<List<Object>> loader;
+	private final Consumer<Object> dropped;
+	private final Executor executor;
+	private final ConcurrentHashMap<Object, Long> backlog = new ConcurrentHashMap<>();
+	//the backlog keys by hit sequence, kept in step with the backlog so dispatch never has to sort it; entries
+	//superseded by a later hit are removed by whoever supersedes them, and stale ones are skipped on the way out
+	private final ConcurrentSkipListMap<Long, Object> hits = new ConcurrentSkipListMap<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS);
+	private final LongAdder refreshedKeys = new LongAdder();
+	private final LongAdder refreshErrors = new LongAdder();
+	private final LongAdder droppedKeys = new LongAdder();
+	private volatile int batchSize = 100;
+	private volatile int concurrency = 4;
+	private volatile int rate = -1;
+	private volatile int maxBacklog = 10000;
+	private volatile boolean closed = false;
+	private volatile boolean suspended = false;
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * @param loader refreshes a batch of keys
+	 * @param dropped called for keys shed from an overfull backlog, so they can be offered again later
+	 * @param executor runs batches
+	 */
+	CacheRefresher(Consumer<List<Object>> loader, Consumer<Object> dropped, Executor executor){
+		this.loader=loader;
+		this.dropped=dropped;
+		this.executor=executor;
+	}
+
+	/**
+	 * Add a key to the backlog
+	 * 
+	 * @return false if the backlog is full and the key was not accepted
+	 */
+	boolean offer(Object key){
+		if(closed || backlog.size() >= maxBacklog*2){
+			droppedKeys.increment();
+			return false;
+		}
+		long seq = sequence.incrementAndGet();
+		Long previous = backlog.put(key, seq);
+		hits.put(seq, key);
+		if(previous!=null){
+			hits.remove(previous, key);
+		}
+		return true;
+	}
+
+	/**
+	 * Move a key already in the backlog to the front, as it was just hit again
+	 */
+	void touch(Object key){
+		Long previous = backlog.get(key);
+		if(previous!=null){
+			long seq = sequence.incrementAndGet();
+			if(backlog.replace(key, previous, seq)){
+				hits.put(seq, key);
+				hits.remove(previous, key);
+			}
+		}
+	}
+
+	synchronized void dispatch(){
+		if(closed || suspended || backlog.isEmpty() || inFlight.get() >= concurrency){
+			return;
+		}
+		for(int excess = backlog.size() - maxBacklog; excess > 0;){
+			Map.Entry<Long, Object> oldest = hits.pollFirstEntry();
+			if(oldest==null){
+				break;
+			}
+			if(backlog.remove(oldest.getValue(), oldest.getKey())){
+				excess--;
+				droppedKeys.increment();
+				dropped.accept(oldest.getValue());
+			}
+		}
+		if(rate > 0){
+			long now = System.nanoTime();
+			if(lastRefill == 0){
+				tokens = rate;
+			}
+			else{
+				tokens = Math.min(rate, tokens + ((now-lastRefill) * rate / 1000000000.0));
+			}
+			lastRefill = now;
+		}
+		while(inFlight.get() < concurrency && !backlog.isEmpty()){
+			int size = batchSize;
+			if(rate > 0){
+				size = Math.min(size, (int) tokens);
+				if(size < 1){
+					break;
+				}
+			}
+			final List<Object> batch = new ArrayList<>(Math.min(size, backlog.size()));
+			while(batch.size() < size){
+				Map.Entry<Long, Object> latest = hits.pollLastEntry();
+				if(latest==null){
+					break;
+				}
+				if(backlog.remove(latest.getValue(), latest.getKey())){
+					batch.add(latest.getValue());
+				}
+			}
+			if(batch.isEmpty()){
+				break;
+			}
+			if(rate > 0){
+				tokens -= batch.size();
+			}
+			inFlight.incrementAndGet();
+			try{
+				executor.execute(() -> refresh(batch));
+			}
+			catch(RejectedExecutionException e){
+				inFlight.decrementAndGet();
+				for(Object key: batch){
+					dropped.accept(key);
+				}
+				break;
+			}
+		}
+	}
+
+	private void refresh(List<Object> batch){
+		long start = System.nanoTime();
+		try{
+			loader.accept(batch);
+			refreshedKeys.add(batch.size());
+		}
+		catch(Throwable th){
+			refreshErrors.increment();
+			log.log(Level.SEVERE, "Cache refresh error with "+batch, th);
+		}
+		finally{
+			long millis = (System.nanoTime()-start)/1000000;
+			latencies.incrementAndGet(Math.min(LATENCY_BUCKETS-1, 64-Long.numberOfLeadingZeros(millis)));
+			inFlight.decrementAndGet();
+		}
+		dispatch();
+	}
+
+	/**
+	 * Stop dispatching batches until resumed; keys may still be offered, and batches already running complete
+	 */
+	void suspend(){
+		suspended = true;
+	}
+
+	void resume(){
+		suspended = false;
+	}
+
+	void close(){
+		closed = true;
+		backlog.clear();
+		hits.clear();
+	}
+
+	int getBacklog(){
+		return backlog.size();
+	}
+
+	int getInFlight(){
+		return inFlight.get();
+	}
+
+	long getRefreshedKeys(){
+		return refreshedKeys.sum();
+	}
+
+	long getRefreshErrors(){
+		return refreshErrors.sum();
+	}
+
+	long getDroppedKeys(){
+		return droppedKeys.sum();
+	}
+
+	/**
+	 * @return counts of batch latencies, where bucket 0 counts batches under 1 ms and bucket n counts batches taking
+	 * at least 2^(n-1) and less than 2^n ms; the final bucket counts everything slower
+	 */
+	long[] getLatencies(){
+		long[] counts = new long[LATENCY_BUCKETS];
+		for(int i=0; i<LATENCY_BUCKETS; i++){
+			counts[i] = latencies.get(i);
+		}
+		return counts;
+	}
+
+	void resetStats(){
+		refreshedKeys.reset();
+		refreshErrors.reset();
+		droppedKeys.reset();
+		for(int i=0; i<LATENCY_BUCKETS; i++){
+			latencies.set(i, 0);
+		}
+	}
+
+	void setBatchSize(int batchSize){
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	void setConcurrency(int concurrency){
+		this.concurrency = Math.max(1, concurrency);
+	}
+
+	int getConcurrency(){
+		return concurrency;
+	}
+
+	void setRate(int rate){
+		this.rate = rate;
+	}
+
+	int getRate(){
+		return rate;
+	}
+
+	void setMaxBacklog(int maxBacklog){
+		this.maxBacklog = Math.max(1, maxBacklog);
+	}
+
+	int getMaxBacklog(){
+		return maxBacklog;
+	}
+}
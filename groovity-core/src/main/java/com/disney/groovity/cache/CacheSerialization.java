@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+/**
+ * Java serialization helpers for cache values that leave the heap; deserialization resolves classes against the
+ * classloader of the script that owns the cache so values of script-defined types can be restored.
+ *
+ * @author Alex Vigdor
+ */
+public class CacheSerialization {
+
+	public static byte[] serialize(Object value) throws IOException{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+		try(ObjectOutputStream oos = new ObjectOutputStream(baos)){
+			oos.writeObject(value);
+		}
+		return baos.toByteArray();
+	}
+
+	public static Object deserialize(byte[] bytes, ClassLoader classLoader) throws IOException, ClassNotFoundException{
+		try(ObjectInputStream ois = new CacheObjectInputStream(new ByteArrayInputStream(bytes), classLoader)){
+			return ois.readObject();
+		}
+	}
+
+	public static ObjectInputStream createInputStream(InputStream in, ClassLoader classLoader) throws IOException{
+		return new CacheObjectInputStream(in, classLoader);
+	}
+
+	private static class CacheObjectInputStream extends ObjectInputStream{
+		private final ClassLoader classLoader;
+
+		private CacheObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+			super(in);
+			this.classLoader=classLoader;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			if(classLoader!=null){
+				try{
+					return Class.forName(desc.getName(), false, classLoader);
+				}
+				catch(ClassNotFoundException e){
+					//fall through to default resolution
+				}
+			}
+			return super.resolveClass(desc);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+/**
+ * Reads and writes a local disk snapshot of a cache's keys, and optionally its serialized values with their creation
+ * times, so a cache can be warmed from the previous process on restart.  Snapshots are written to a temporary file
+ * and renamed into place, so a crash mid-write leaves the prior snapshot intact.  Entries whose key or value cannot
+ * be serialized or deserialized are skipped.
+ *
+ * @author Alex Vigdor
+ */
+public class CacheSnapshot {
+	private static final Logger log = Logger.getLogger(CacheSnapshot.class.getName());
+	private static final int MAGIC = 0x47435331;
+	private final File file;
+	private final boolean includeValues;
+	private final ClassLoader classLoader;
+
+	public CacheSnapshot(File file, boolean includeValues, ClassLoader classLoader){
+		this.file=file;
+		this.includeValues=includeValues;
+		this.classLoader=classLoader;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public boolean isIncludeValues() {
+		return includeValues;
+	}
+
+	/**
+	 * Write the current contents of a value store to disk
+	 *
+	 * @return the number of entries written
+	 */
+	public int write(CacheValueStore store) throws IOException{
+		File dir = file.getParentFile();
+		if(dir!=null && !dir.exists() && !dir.mkdirs()){
+			throw new IOException("Unable to create cache snapshot directory "+dir.getAbsolutePath());
+		}
+		File tmp = new File(file.getPath()+".tmp");
+		final AtomicInteger count = new AtomicInteger();
+		final AtomicBoolean warned = new AtomicBoolean();
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))){
+			out.writeInt(MAGIC);
+			out.writeBoolean(includeValues);
+			final IOException[] error = new IOException[1];
+			store.forEach((key, cv) -> {
+				if(error[0]!=null){
+					return;
+				}
+				byte[] keyBytes;
+				byte[] valueBytes = null;
+				try{
+					keyBytes = CacheSerialization.serialize(key);
+					if(includeValues){
+						valueBytes = CacheSerialization.serialize(cv.getValue());
+					}
+				}
+				catch(IOException e){
+					if(warned.compareAndSet(false, true)){
+						log.log(Level.WARNING, "Skipping unserializable cache entries in snapshot "+file, e);
+					}
+					return;
+				}
+				try{
+					out.writeBoolean(true);
+					out.writeInt(keyBytes.length);
+					out.write(keyBytes);
+					if(includeValues){
+						out.writeLong(cv.getCreated());
+						out.writeInt(valueBytes.length);
+						out.write(valueBytes);
+					}
+					count.incrementAndGet();
+				}
+				catch(IOException e){
+					error[0]=e;
+				}
+			});
+			if(error[0]!=null){
+				throw error[0];
+			}
+			out.writeBoolean(false);
+		}
+		if(!tmp.renameTo(file)){
+			//some platforms will not rename over an existing file
+			file.delete();
+			if(!tmp.renameTo(file)){
+				tmp.delete();
+				throw new IOException("Unable to move cache snapshot into place at "+file.getAbsolutePath());
+			}
+		}
+		return count.get();
+	}
+
+	/**
+	 * Read a snapshot from disk, passing each restored key to the consumer along with its CacheValue, or null if
+	 * this snapshot only holds keys
+	 *
+	 * @return the number of entries read, or -1 if no snapshot exists
+	 */
+	public int read(BiConsumer<Object, CacheValue> consumer) throws IOException{
+		if(!file.exists()){
+			return -1;
+		}
+		int count = 0;
+		boolean warned = false;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))){
+			if(in.readInt()!=MAGIC){
+				throw new IOException("Not a cache snapshot: "+file.getAbsolutePath());
+			}
+			boolean hasValues = in.readBoolean();
+			while(in.readBoolean()){
+				byte[] keyBytes = new byte[in.readInt()];
+				in.readFully(keyBytes);
+				long created = 0;
+				byte[] valueBytes = null;
+				if(hasValues){
+					created = in.readLong();
+					valueBytes = new byte[in.readInt()];
+					in.readFully(valueBytes);
+				}
+				Object key;
+				CacheValue cv = null;
+				try{
+					key = CacheSerialization.deserialize(keyBytes, classLoader);
+					if(valueBytes!=null && includeValues){
+						cv = new CacheValue(CacheSerialization.deserialize(valueBytes, classLoader), created, new AtomicBoolean(false));
+					}
+				}
+				catch(IOException | ClassNotFoundException e){
+					if(!warned){
+						warned=true;
+						log.log(Level.WARNING, "Skipping unreadable cache entries in snapshot "+file, e);
+					}
+					continue;
+				}
+				consumer.accept(key, cv);
+				count++;
+			}
+		}
+		catch(EOFException e){
+			log.warning("Cache snapshot "+file+" is truncated, restored "+count+" entries");
+		}
+		return count;
+	}
+}
@@ -35,15 +35,25 @@ public class CacheValue implements Serializable{
 	private static final long serialVersionUID = 1330651206365886024L;
 	private Object value;
 	private long created;
-	protected final AtomicBoolean pendingRefresh = new AtomicBoolean(false);
+	protected final AtomicBoolean pendingRefresh;
 	
 	public CacheValue(){
-		
+		this.pendingRefresh = new AtomicBoolean(false);
 	}
 	
 	public CacheValue(Object value){
 		this.value=value;
 		this.created = Caches.currentCacheTime;
+		this.pendingRefresh = new AtomicBoolean(false);
+	}
+	
+	/**
+	 * Used by value stores that rebuild CacheValues on each read to preserve creation time and refresh state
+	 */
+	protected CacheValue(Object value, long created, AtomicBoolean pendingRefresh){
+		this.value=value;
+		this.created=created;
+		this.pendingRefresh=pendingRefresh;
 	}
 	
 	public int hashCode(){
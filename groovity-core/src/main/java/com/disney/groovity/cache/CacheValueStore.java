@@ -24,9 +24,10 @@
 package com.disney.groovity.cache;
 
 import java.util.Map;
+import java.util.function.BiConsumer;
 /**
- * Interface for a cache value store; currently only one implementation is provided but this extension point could be used to 
- * wire in other caching libraries to act as value stores.
+ * Interface for a cache value store; this extension point is used to choose between the soft reference, W-TinyLFU
+ * and off-heap implementations, and could be used to wire in other caching libraries to act as value stores.
  *
  * @author Alex Vigdor
  */
@@ -41,4 +42,39 @@ public interface CacheValueStore {
 	public void destroy();
 	public int size();
 	public int getMax();
+	/**
+	 * Visit every entry currently in the store without affecting eviction order; used to write cache snapshots.
+	 * Stores that cannot be iterated visit nothing, and so cannot be snapshotted.
+	 */
+	default public void forEach(BiConsumer<Object, CacheValue> consumer){
+	}
+	/**
+	 * @return the number of entries this store has removed to enforce its size limit
+	 */
+	default public long getEvictions(){
+		return 0;
+	}
+	/**
+	 * @return the number of new entries this store declined to keep because they were less popular than existing entries
+	 */
+	default public long getAdmissionRejections(){
+		return 0;
+	}
+	/**
+	 * @return the number of bytes of serialized values held by stores that keep values outside the heap
+	 */
+	default public long getBytesUsed(){
+		return 0;
+	}
+	default public long getMaxBytes(){
+		return 0;
+	}
+	default public void resetStats(){
+	}
+	/**
+	 * Called when the store is carried over to a recompiled script, so that stores holding serialized values resolve
+	 * classes through the new script
+	 */
+	default public void setClassLoader(ClassLoader classLoader){
+	}
 }
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.cache;
+
+/**
+ * A compact count-min sketch of 4-bit counters used by the TinyLFU admission policy to estimate how often a key
+ * has been accessed recently.  Counters are periodically halved so that the estimate ages out old popularity.
+ * <p>
+ * This class is not thread safe; callers are expected to guard access with the eviction lock of the owning store.
+ *
+ * @author Alex Vigdor
+ */
+class FrequencySketch {
+	private static final long[] SEED = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+	};
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int size;
+
+	FrequencySketch(int maximum){
+		int capacity = ceilingPowerOfTwo(Math.max(maximum, 1));
+		this.table = new long[capacity];
+		this.tableMask = capacity - 1;
+		this.sampleSize = (int) Math.min(10L * Math.max(maximum, 1), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return the estimated number of occurrences of the hashed key, up to 15
+	 */
+	int frequency(int hash){
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for(int i=0; i<4; i++){
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Increment the popularity of the hashed key, aging all counters once the sample size is reached
+	 */
+	void increment(int hash){
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for(int i=0; i<4; i++){
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if(added && (++size == sampleSize)){
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int index, int counter){
+		int offset = counter << 2;
+		long mask = (0xfL << offset);
+		if((table[index] & mask) != mask){
+			table[index] += (1L << offset);
+			return true;
+		}
+		return false;
+	}
+
+	private void reset(){
+		int odd = 0;
+		for(int i=0; i<table.length; i++){
+			odd += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (odd >>> 2);
+	}
+
+	private int indexOf(int hash, int i){
+		long h = (hash + SEED[i]) * SEED[i];
+		h += (h >>> 32);
+		return ((int) h) & tableMask;
+	}
+
+	static int spread(int x){
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	private static int ceilingPowerOfTwo(int x){
+		if(x >= (1 << 30)){
+			return 1 << 30;
+		}
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+}
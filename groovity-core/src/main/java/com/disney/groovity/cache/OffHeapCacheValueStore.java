@@ -0,0 +1,529 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.disney.groovity.util.DirectBuffers;
+/**
+ * Cache value store that keeps serialized values outside the java heap, in direct or memory-mapped buffers, under a
+ * fixed byte budget.  Only keys and a small slot descriptor remain on heap, so large caches neither grow the heap nor
+ * get cleared all at once under GC pressure; values are deserialized on read, and only if they have not expired.
+ * <p>
+ * The budget is split into a ring of segments that are filled like a log; when the ring wraps, the oldest segment is
+ * recycled, giving entries that were read since they were written a second chance in the recycled segment and
+ * evicting the rest.  Values must be Serializable; values that cannot be serialized or that do not fit in a segment
+ * are not stored and will be reloaded on each request.
+ * <p>
+ * Selected from the cache tag with store:"offheap" or store:"mapped" and a maxBytes budget; a max entry count may also be
+ * given, in which case the oldest entries are evicted first once it is exceeded.
+ *
+ * @author Alex Vigdor
+ */
+public class OffHeapCacheValueStore implements CacheValueStore {
+	private static final Logger log = Logger.getLogger(OffHeapCacheValueStore.class.getName());
+	private static final int NUM_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+	private final ConcurrentHashMap<Object, Slot> backingMap = new ConcurrentHashMap<Object, Slot>();
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private final AtomicLong bytesUsed = new AtomicLong();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder admissionRejections = new LongAdder();
+	private volatile ClassLoader classLoader;
+	private final Segment[] segments = new Segment[NUM_SEGMENTS];
+	private int currentSegment;
+	private int segmentSize;
+	private long maxBytes = 64 * 1024 * 1024;
+	private int ttl = -1;
+	private int max = -1;
+	private File mapDirectory;
+	private volatile boolean warnedUnserializable;
+
+	public OffHeapCacheValueStore(ClassLoader classLoader){
+		this.classLoader=classLoader;
+	}
+
+	public void init(){
+		segmentSize = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_SEGMENT_SIZE, maxBytes / NUM_SEGMENTS));
+		writeLock.lock();
+		try{
+			currentSegment = 0;
+			segments[0] = allocate();
+		}
+		catch(IOException e){
+			throw new RuntimeException("Unable to allocate off-heap cache segment", e);
+		}
+		finally{
+			writeLock.unlock();
+		}
+	}
+
+	public void destroy(){
+		writeLock.lock();
+		try{
+			backingMap.clear();
+			bytesUsed.set(0);
+			for(int i=0; i<NUM_SEGMENTS; i++){
+				Segment segment = segments[i];
+				if(segment!=null){
+					segments[i]=null;
+					long stamp = segment.lock.writeLock();
+					segment.generation++;
+					segment.lock.unlockWrite(stamp);
+					//readers that saw the old generation may still be copying from the buffer
+					while(segment.readers.get() > 0){
+						Thread.yield();
+					}
+					DirectBuffers.release(segment.buffer);
+					if(segment.file!=null && !segment.file.delete()){
+						segment.file.deleteOnExit();
+					}
+				}
+			}
+		}
+		finally{
+			writeLock.unlock();
+		}
+	}
+
+	public CacheValue get(Object key) {
+		Slot slot = backingMap.get(key);
+		if(slot==null){
+			return null;
+		}
+		if(ttl>0 && slot.created < Caches.currentCacheTime - ttl){
+			return null;
+		}
+		byte[] bytes = read(slot);
+		if(bytes==null){
+			//segment was recycled underneath us
+			backingMap.remove(key, slot);
+			return null;
+		}
+		Object value;
+		try {
+			value = CacheSerialization.deserialize(bytes, classLoader);
+		}
+		catch (Exception e) {
+			log.log(Level.WARNING, "Unable to deserialize off-heap cache value for "+key+", dropping it", e);
+			remove(key, slot);
+			return null;
+		}
+		slot.accessed = true;
+		return new OffHeapCacheValue(value, slot);
+	}
+
+	public void getAll(Map<Object, CacheValue> values) {
+		for(Entry<Object, CacheValue> entry: values.entrySet()){
+			CacheValue cv = get(entry.getKey());
+			if(cv!=null){
+				entry.setValue(cv);
+			}
+		}
+	}
+
+	public void put(Object key, CacheValue value) {
+		byte[] bytes;
+		try {
+			bytes = CacheSerialization.serialize(value.getValue());
+		}
+		catch (IOException e) {
+			if(!warnedUnserializable){
+				warnedUnserializable=true;
+				log.log(Level.WARNING, "Unable to serialize value for off-heap cache, values of this type will not be cached", e);
+			}
+			remove(key);
+			admissionRejections.increment();
+			return;
+		}
+		if(bytes.length > segmentSize){
+			remove(key);
+			admissionRejections.increment();
+			return;
+		}
+		writeLock.lock();
+		try{
+			Segment segment = segments[currentSegment];
+			if(segment==null){
+				//destroyed
+				return;
+			}
+			if(segment.position + bytes.length > segmentSize){
+				segment = advance();
+			}
+			Slot slot = append(segment, key, bytes, value.getCreated(), value.pendingRefresh);
+			Slot old = backingMap.put(key, slot);
+			bytesUsed.addAndGet(old!=null ? (bytes.length - old.length) : bytes.length);
+			if(old==null && max>0 && backingMap.size()>max){
+				evictOldest();
+			}
+		}
+		catch(IOException e){
+			log.log(Level.SEVERE, "Unable to allocate off-heap cache segment", e);
+		}
+		finally{
+			writeLock.unlock();
+		}
+	}
+
+	public void remove(Object key, CacheValue value) {
+		if(value instanceof OffHeapCacheValue){
+			remove(key, ((OffHeapCacheValue)value).slot);
+		}
+		else if(value!=null){
+			Slot slot = backingMap.get(key);
+			if(slot!=null && slot.created==value.getCreated()){
+				CacheValue current = get(key);
+				if(value.equals(current)){
+					remove(key, slot);
+				}
+			}
+		}
+	}
+
+	private void remove(Object key, Slot slot){
+		if(backingMap.remove(key, slot)){
+			bytesUsed.addAndGet(-slot.length);
+		}
+	}
+
+	public void remove(Object key) {
+		Slot slot = backingMap.remove(key);
+		if(slot!=null){
+			bytesUsed.addAndGet(-slot.length);
+		}
+	}
+
+	public void clear() {
+		writeLock.lock();
+		try{
+			backingMap.clear();
+			bytesUsed.set(0);
+			for(Segment segment: segments){
+				if(segment!=null){
+					reset(segment);
+				}
+			}
+		}
+		finally{
+			writeLock.unlock();
+		}
+	}
+
+	public int size(){
+		return backingMap.size();
+	}
+
+	public int getTtl() {
+		return ttl;
+	}
+
+	public void setTtl(int ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * An optional bound on the number of entries, enforced in addition to maxBytes
+	 */
+	public int getMax() {
+		return max;
+	}
+
+	public void setMax(int max) {
+		this.max = max;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public void setClassLoader(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public File getMapDirectory() {
+		return mapDirectory;
+	}
+
+	/**
+	 * When set, segments are memory-mapped from temporary files in this directory instead of allocated as direct buffers
+	 */
+	public void setMapDirectory(File mapDirectory) {
+		this.mapDirectory = mapDirectory;
+	}
+
+	public void forEach(BiConsumer<Object, CacheValue> consumer){
+		backingMap.forEach((key, slot) -> {
+			byte[] bytes = read(slot);
+			if(bytes!=null){
+				Object value;
+				try {
+					value = CacheSerialization.deserialize(bytes, classLoader);
+				}
+				catch (Exception e) {
+					log.log(Level.FINE, "Skipping undeserializable off-heap cache value for "+key, e);
+					return;
+				}
+				consumer.accept(key, new OffHeapCacheValue(value, slot));
+			}
+		});
+	}
+
+	public long getBytesUsed(){
+		return bytesUsed.get();
+	}
+
+	public long getEvictions(){
+		return evictions.sum();
+	}
+
+	public long getAdmissionRejections(){
+		return admissionRejections.sum();
+	}
+
+	public void resetStats(){
+		evictions.reset();
+		admissionRejections.reset();
+	}
+
+	private Segment allocate() throws IOException{
+		if(mapDirectory==null){
+			return new Segment(ByteBuffer.allocateDirect(segmentSize), null);
+		}
+		mapDirectory.mkdirs();
+		File file = File.createTempFile("groovity-cache-", ".seg", mapDirectory);
+		file.deleteOnExit();
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+			raf.setLength(segmentSize);
+			//the mapping remains valid after the channel is closed
+			return new Segment(raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize), file);
+		}
+	}
+
+	/**
+	 * Move the write head to the next segment in the ring, recycling it if it is already in use;
+	 * must be called holding the write lock
+	 */
+	private Segment advance() throws IOException{
+		currentSegment = (currentSegment + 1) % NUM_SEGMENTS;
+		Segment segment = segments[currentSegment];
+		if(segment==null){
+			segment = allocate();
+			segments[currentSegment] = segment;
+			return segment;
+		}
+		List<Object> survivorKeys = new ArrayList<>();
+		List<Slot> survivorSlots = new ArrayList<>();
+		List<byte[]> survivorBytes = new ArrayList<>();
+		int survivorSize = 0;
+		HashSet<Object> seen = new HashSet<>();
+		for(Object key: segment.keys){
+			if(!seen.add(key)){
+				continue;
+			}
+			Slot slot = backingMap.get(key);
+			if(slot==null || slot.segment!=segment || slot.generation!=segment.generation){
+				continue;
+			}
+			if(slot.accessed && (survivorSize + slot.length) <= (segmentSize / 2)){
+				byte[] bytes = read(slot);
+				if(bytes!=null){
+					survivorKeys.add(key);
+					survivorSlots.add(slot);
+					survivorBytes.add(bytes);
+					survivorSize += bytes.length;
+					continue;
+				}
+			}
+			if(backingMap.remove(key, slot)){
+				bytesUsed.addAndGet(-slot.length);
+				evictions.increment();
+			}
+		}
+		reset(segment);
+		for(int i=0; i<survivorKeys.size(); i++){
+			Slot old = survivorSlots.get(i);
+			Slot slot = append(segment, survivorKeys.get(i), survivorBytes.get(i), old.created, old.pendingRefresh);
+			backingMap.replace(survivorKeys.get(i), old, slot);
+		}
+		return segment;
+	}
+
+	/**
+	 * Evict entries in write order, starting from the oldest segment in the ring, until the entry count is back within
+	 * max; must be called holding the write lock
+	 */
+	private void evictOldest(){
+		for(int i=1; i<=NUM_SEGMENTS && backingMap.size()>max; i++){
+			Segment segment = segments[(currentSegment + i) % NUM_SEGMENTS];
+			if(segment==null){
+				continue;
+			}
+			while(segment.evictPosition < segment.keys.size() && backingMap.size()>max){
+				Object key = segment.keys.get(segment.evictPosition++);
+				Slot slot = backingMap.get(key);
+				if(slot!=null && slot.segment==segment && slot.generation==segment.generation && backingMap.remove(key, slot)){
+					bytesUsed.addAndGet(-slot.length);
+					evictions.increment();
+				}
+			}
+		}
+	}
+
+	private void reset(Segment segment){
+		long stamp = segment.lock.writeLock();
+		try{
+			segment.generation++;
+			segment.position = 0;
+			segment.evictPosition = 0;
+			segment.keys.clear();
+		}
+		finally{
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Must be called holding the write lock
+	 */
+	private Slot append(Segment segment, Object key, byte[] bytes, long created, AtomicBoolean pendingRefresh){
+		int offset = segment.position;
+		segment.writer.position(offset);
+		segment.writer.put(bytes);
+		segment.position += bytes.length;
+		segment.keys.add(key);
+		return new Slot(segment, segment.generation, offset, bytes.length, created, pendingRefresh);
+	}
+
+	private byte[] read(Slot slot){
+		Segment segment = slot.segment;
+		//counted so destroy can wait for copies in progress before releasing the buffer
+		segment.readers.incrementAndGet();
+		try{
+			return read(segment, slot);
+		}
+		finally{
+			segment.readers.decrementAndGet();
+		}
+	}
+
+	private byte[] read(Segment segment, Slot slot){
+		StampedLock lock = segment.lock;
+		long stamp = lock.tryOptimisticRead();
+		byte[] bytes = copy(slot);
+		if(!lock.validate(stamp)){
+			stamp = lock.readLock();
+			try{
+				bytes = copy(slot);
+			}
+			finally{
+				lock.unlockRead(stamp);
+			}
+		}
+		return bytes;
+	}
+
+	private byte[] copy(Slot slot){
+		if(slot.generation != slot.segment.generation){
+			return null;
+		}
+		byte[] bytes = new byte[slot.length];
+		ByteBuffer reader = slot.segment.buffer.duplicate();
+		reader.position(slot.offset);
+		reader.get(bytes);
+		return bytes;
+	}
+
+	private static final class Segment {
+		private final ByteBuffer buffer;
+		private final ByteBuffer writer;
+		private final File file;
+		private final StampedLock lock = new StampedLock();
+		private final AtomicInteger readers = new AtomicInteger();
+		private final ArrayList<Object> keys = new ArrayList<>();
+		private volatile int generation;
+		private int position;
+		//index into keys of the next entry to evict when over the entry count
+		private int evictPosition;
+
+		private Segment(ByteBuffer buffer, File file){
+			this.buffer=buffer;
+			this.writer=buffer.duplicate();
+			this.file=file;
+		}
+	}
+
+	private static final class Slot {
+		private final Segment segment;
+		private final int generation;
+		private final int offset;
+		private final int length;
+		private final long created;
+		private final AtomicBoolean pendingRefresh;
+		private volatile boolean accessed;
+
+		private Slot(Segment segment, int generation, int offset, int length, long created, AtomicBoolean pendingRefresh){
+			this.segment=segment;
+			this.generation=generation;
+			this.offset=offset;
+			this.length=length;
+			this.created=created;
+			this.pendingRefresh=pendingRefresh;
+		}
+	}
+
+	private static final class OffHeapCacheValue extends CacheValue {
+		private static final long serialVersionUID = -1504263911204458114L;
+		private final transient Slot slot;
+
+		private OffHeapCacheValue(Object value, Slot slot){
+			super(value, slot.created, slot.pendingRefresh);
+			this.slot=slot;
+		}
+	}
+}
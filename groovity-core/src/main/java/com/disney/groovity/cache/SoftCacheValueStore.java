@@ -35,6 +35,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 /**
  * Default cache value store implementation; uses soft references along with a hard limit to provide forgiving memory management
  *
@@ -44,6 +46,7 @@ public class SoftCacheValueStore implements CacheValueStore {
 	private ConcurrentHashMap<Object, SoftCacheReference> backingMap = new ConcurrentHashMap<Object, SoftCacheReference>();
 	private int ttl =-1;
 	private int max = -1;
+	private final AtomicLong evictions = new AtomicLong();
 	private ReferenceQueue<CacheValue> queue;
 	@SuppressWarnings("rawtypes")
 	private Future pruneFuture;
@@ -82,7 +85,9 @@ public class SoftCacheValueStore implements CacheValueStore {
 						int toDelete = values.size()-max;
 						for(int i=0;i<toDelete;i++){
 							SoftCacheReference ref = values.get(i);
-							backingMap.remove(ref.key);
+							if(backingMap.remove(ref.key)!=null){
+								evictions.incrementAndGet();
+							}
 							//System.out.println("Removing least recently used "+ref.key+" last accessed "+ref.lastAccess);
 						}
 					}
@@ -151,6 +156,23 @@ public class SoftCacheValueStore implements CacheValueStore {
 		this.max = max;
 	}
 
+	public void forEach(BiConsumer<Object, CacheValue> consumer){
+		backingMap.forEach((key, ref) -> {
+			CacheValue cv = ref.peek();
+			if(cv!=null){
+				consumer.accept(key, cv);
+			}
+		});
+	}
+
+	public long getEvictions(){
+		return evictions.get();
+	}
+
+	public void resetStats(){
+		evictions.set(0);
+	}
+
 	private class SoftCacheReference extends SoftReference<CacheValue> implements Comparable<SoftCacheReference>{
 		protected final Object key;
 		protected long lastAccess;
@@ -166,6 +188,13 @@ public class SoftCacheValueStore implements CacheValueStore {
 			return super.get();
 		}
 
+		/**
+		 * Get the referent without counting as an access
+		 */
+		public CacheValue peek(){
+			return super.get();
+		}
+
 		public int compareTo(SoftCacheReference o) {
 			return (int)(o.lastAccess-lastAccess);
 		}
@@ -0,0 +1,437 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.cache;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+/**
+ * Size bounded cache value store implementing the W-TinyLFU policy; new entries enter a small LRU admission window, and
+ * entries leaving the window must compete on estimated access frequency against the least recently used entry of a
+ * segmented LRU main space before they are admitted.  The maximum size is enforced at insert time with amortized
+ * constant time bookkeeping, and reads are recorded in a lossy buffer that is drained under a try-lock so that hits
+ * never block on eviction.
+ * <p>
+ * Selected from the cache tag with store:"lfu"; requires a max greater than zero.
+ *
+ * @author Alex Vigdor
+ */
+public class TinyLfuCacheValueStore implements CacheValueStore {
+	private static final int READ_BUFFER_SIZE = 128;
+	private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+	private static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
+	private static final int NEW = 0;
+	private static final int WINDOW = 1;
+	private static final int PROBATION = 2;
+	private static final int PROTECTED = 3;
+	private static final int DEAD = 4;
+	private final ConcurrentHashMap<Object, Node> backingMap = new ConcurrentHashMap<Object, Node>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final AtomicReferenceArray<Node> readBuffer = new AtomicReferenceArray<Node>(READ_BUFFER_SIZE);
+	private final AtomicLong readTail = new AtomicLong();
+	private volatile long readHead;
+	private final NodeList window = new NodeList();
+	private final NodeList probation = new NodeList();
+	private final NodeList protect = new NodeList();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder admissionRejections = new LongAdder();
+	private FrequencySketch sketch;
+	private int ttl = -1;
+	private int max = -1;
+	private int maxWindow;
+	private int maxMain;
+	private int maxProtected;
+	@SuppressWarnings("rawtypes")
+	private Future drainFuture;
+	private ScheduledExecutorService scheduler;
+
+	public TinyLfuCacheValueStore(ScheduledExecutorService scheduler){
+		this.scheduler=scheduler;
+	}
+
+	public void init(){
+		if(max<1){
+			throw new IllegalArgumentException("TinyLfuCacheValueStore requires a max greater than zero");
+		}
+		sketch = new FrequencySketch(max);
+		maxWindow = Math.max(1, max/100);
+		maxMain = max - maxWindow;
+		maxProtected = (int) (maxMain * 0.8);
+		//periodically apply buffered reads so access order stays current for read-mostly caches
+		drainFuture = scheduler.scheduleWithFixedDelay(new Runnable(){
+			public void run() {
+				evictionLock.lock();
+				try{
+					drainReadBuffer();
+				}
+				finally{
+					evictionLock.unlock();
+				}
+			}
+		}, 2000, 2000, TimeUnit.MILLISECONDS);
+	}
+
+	public void destroy(){
+		if(drainFuture!=null){
+			drainFuture.cancel(true);
+		}
+		clear();
+	}
+
+	public CacheValue get(Object key) {
+		Node node = backingMap.get(key);
+		if(node==null){
+			return null;
+		}
+		CacheValue cv = node.value;
+		if(ttl>0 && cv.getCreated() < Caches.currentCacheTime - ttl){
+			return null;
+		}
+		afterRead(node);
+		return cv;
+	}
+
+	public void getAll(Map<Object, CacheValue> values) {
+		for(Entry<Object, CacheValue> entry: values.entrySet()){
+			CacheValue cv = get(entry.getKey());
+			if(cv!=null){
+				entry.setValue(cv);
+			}
+		}
+	}
+
+	public void put(Object key, CacheValue value) {
+		Node node = new Node(key, value);
+		Node prior = backingMap.put(key, node);
+		evictionLock.lock();
+		try{
+			if(prior!=null){
+				unlink(prior);
+			}
+			//a concurrent remove or clear may already have displaced this node
+			if(node.queue==NEW && backingMap.get(key)==node){
+				sketch.increment(node.hash);
+				node.queue=WINDOW;
+				window.add(node);
+				evict();
+			}
+			drainReadBuffer();
+		}
+		finally{
+			evictionLock.unlock();
+		}
+	}
+
+	public void remove(Object key, CacheValue value) {
+		if(value!=null){
+			Node node = backingMap.get(key);
+			if(node!=null && value.equals(node.value) && backingMap.remove(key, node)){
+				retire(node);
+			}
+		}
+	}
+
+	public void remove(Object key) {
+		Node node = backingMap.remove(key);
+		if(node!=null){
+			retire(node);
+		}
+	}
+
+	public void clear() {
+		evictionLock.lock();
+		try{
+			backingMap.clear();
+			clear(window);
+			clear(probation);
+			clear(protect);
+			for(int i=0; i<READ_BUFFER_SIZE; i++){
+				readBuffer.lazySet(i, null);
+			}
+			readHead = readTail.get();
+		}
+		finally{
+			evictionLock.unlock();
+		}
+	}
+
+	public int size(){
+		return backingMap.size();
+	}
+
+	public int getTtl() {
+		return ttl;
+	}
+
+	public void setTtl(int ttl) {
+		this.ttl = ttl;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public void setMax(int max) {
+		this.max = max;
+	}
+
+	public void forEach(BiConsumer<Object, CacheValue> consumer){
+		backingMap.forEach((key, node) -> consumer.accept(key, node.value));
+	}
+
+	public long getEvictions(){
+		return evictions.sum();
+	}
+
+	public long getAdmissionRejections(){
+		return admissionRejections.sum();
+	}
+
+	public void resetStats(){
+		evictions.reset();
+		admissionRejections.reset();
+	}
+
+	private void retire(Node node){
+		evictionLock.lock();
+		try{
+			unlink(node);
+		}
+		finally{
+			evictionLock.unlock();
+		}
+	}
+
+	private void afterRead(Node node){
+		long head = readHead;
+		long tail = readTail.get();
+		long pending = tail - head;
+		//lossy: when the buffer is full or contended the access simply goes unrecorded
+		if(pending < READ_BUFFER_SIZE && readTail.compareAndSet(tail, tail+1)){
+			readBuffer.lazySet((int) (tail & READ_BUFFER_MASK), node);
+		}
+		if(pending >= READ_BUFFER_DRAIN_THRESHOLD && evictionLock.tryLock()){
+			try{
+				drainReadBuffer();
+			}
+			finally{
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Must be called holding the eviction lock
+	 */
+	private void drainReadBuffer(){
+		long head = readHead;
+		final long tail = readTail.get();
+		for(; head < tail; head++){
+			int index = (int) (head & READ_BUFFER_MASK);
+			Node node = readBuffer.get(index);
+			if(node==null){
+				//claimed but not yet published; pick it up next time
+				break;
+			}
+			readBuffer.lazySet(index, null);
+			onAccess(node);
+		}
+		readHead = head;
+	}
+
+	private void onAccess(Node node){
+		switch(node.queue){
+			case WINDOW:
+				sketch.increment(node.hash);
+				window.moveToTail(node);
+				break;
+			case PROBATION:
+				sketch.increment(node.hash);
+				probation.remove(node);
+				node.queue=PROTECTED;
+				protect.add(node);
+				while(protect.size > maxProtected){
+					Node demoted = protect.poll();
+					demoted.queue=PROBATION;
+					probation.add(demoted);
+				}
+				break;
+			case PROTECTED:
+				sketch.increment(node.hash);
+				protect.moveToTail(node);
+				break;
+			default:
+				//not yet linked or already gone
+		}
+	}
+
+	private void evict(){
+		while(window.size > maxWindow){
+			Node candidate = window.poll();
+			if(probation.size + protect.size < maxMain){
+				candidate.queue=PROBATION;
+				probation.add(candidate);
+				continue;
+			}
+			Node victim = probation.head != null ? probation.head : protect.head;
+			if(victim==null){
+				//no main space at all, the window is the whole cache
+				candidate.queue=DEAD;
+				evict(candidate);
+				continue;
+			}
+			if(admit(candidate.hash, victim.hash)){
+				unlink(victim);
+				evict(victim);
+				candidate.queue=PROBATION;
+				probation.add(candidate);
+			}
+			else{
+				candidate.queue=DEAD;
+				evict(candidate);
+				admissionRejections.increment();
+			}
+		}
+	}
+
+	private boolean admit(int candidateHash, int victimHash){
+		int candidateFreq = sketch.frequency(candidateHash);
+		int victimFreq = sketch.frequency(victimHash);
+		if(candidateFreq > victimFreq){
+			return true;
+		}
+		//admit a small random fraction of warm candidates so an attacker cannot pin the victim with hash collisions
+		if(candidateFreq > 5 && candidateFreq == victimFreq){
+			return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+		}
+		return false;
+	}
+
+	private void evict(Node node){
+		backingMap.remove(node.key, node);
+		evictions.increment();
+	}
+
+	private void unlink(Node node){
+		switch(node.queue){
+			case WINDOW:
+				window.remove(node);
+				break;
+			case PROBATION:
+				probation.remove(node);
+				break;
+			case PROTECTED:
+				protect.remove(node);
+				break;
+			default:
+		}
+		node.queue=DEAD;
+	}
+
+	private void clear(NodeList list){
+		Node node;
+		while((node = list.poll())!=null){
+			node.queue=DEAD;
+		}
+	}
+
+	private static final class Node {
+		private final Object key;
+		private final int hash;
+		private final CacheValue value;
+		private Node prev;
+		private Node next;
+		private int queue = NEW;
+
+		private Node(Object key, CacheValue value){
+			this.key=key;
+			this.value=value;
+			this.hash=FrequencySketch.spread(key.hashCode());
+		}
+	}
+
+	/**
+	 * Intrusive doubly linked list in access order, head is least recently used
+	 */
+	private static final class NodeList {
+		private Node head;
+		private Node tail;
+		private int size;
+
+		private void add(Node node){
+			node.prev=tail;
+			node.next=null;
+			if(tail==null){
+				head=node;
+			}
+			else{
+				tail.next=node;
+			}
+			tail=node;
+			size++;
+		}
+
+		private void remove(Node node){
+			if(node.prev==null){
+				head=node.next;
+			}
+			else{
+				node.prev.next=node.next;
+			}
+			if(node.next==null){
+				tail=node.prev;
+			}
+			else{
+				node.next.prev=node.prev;
+			}
+			node.prev=null;
+			node.next=null;
+			size--;
+		}
+
+		private Node poll(){
+			Node node = head;
+			if(node!=null){
+				remove(node);
+			}
+			return node;
+		}
+
+		private void moveToTail(Node node){
+			if(node!=tail){
+				remove(node);
+				add(node);
+			}
+		}
+	}
+}
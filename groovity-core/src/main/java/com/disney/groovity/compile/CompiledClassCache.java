@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.compile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.disney.groovity.stats.GroovityMetrics;
+import com.disney.groovity.stats.MetricCollector;
+
+import groovy.lang.GroovySystem;
+
+/**
+ * A persistent cache of compiled script classes, addressed by a SHA-256 hash of everything that determines the
+ * generated bytecode; the script name, transformed source, available traits, compiler configuration and groovy and
+ * groovity versions.  Unchanged sources can then be loaded without compiling even after a fresh checkout, and a
+ * cache directory populated by one node can be mounted read-only by others.
+ * <p>
+ * Entries are jar files in the same format used for the groovity jar directory, stored under a two character
+ * prefix directory; entries are written to a temporary file and moved into place, so concurrent readers never
+ * see a partial entry.
+ *
+ * @author Alex Vigdor
+ */
+public class CompiledClassCache {
+	//bump to invalidate all entries when the key or entry format changes
+	private static final String FORMAT_VERSION = "1";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final String BUILD_FINGERPRINT = buildFingerprint();
+	private final File directory;
+	private final boolean readOnly;
+	private final String metricsId;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong stores = new AtomicLong();
+
+	/**
+	 * Write the classes for a cache entry to the given file
+	 */
+	@FunctionalInterface
+	public interface EntryWriter {
+		void write(File file) throws IOException;
+	}
+
+	public CompiledClassCache(File directory, boolean readOnly) {
+		this.directory = directory;
+		this.readOnly = readOnly;
+		this.metricsId = "CompiledClassCache@"+Integer.toHexString(System.identityHashCode(this));
+		GroovityMetrics.register(metricsId, this::collect);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getStores() {
+		return stores.get();
+	}
+
+	/**
+	 * Compute a cache key from the given parts, in order
+	 */
+	public String computeKey(String... parts) {
+		MessageDigest digest = newDigest();
+		digest.update(FORMAT_VERSION.getBytes(StandardCharsets.UTF_8));
+		digest.update(BUILD_FINGERPRINT.getBytes(StandardCharsets.UTF_8));
+		for(String part: parts) {
+			digest.update((byte) 0);
+			if(part!=null) {
+				digest.update(part.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return hex(digest.digest());
+	}
+
+	/**
+	 * A short fingerprint of compiled class bytes, e.g. to tell whether a trait has changed
+	 */
+	public static String fingerprint(byte[] bytes) {
+		return hex(newDigest().digest(bytes));
+	}
+
+	/**
+	 * @return the entry file for the key, or null if the cache does not contain it
+	 */
+	public File find(String key) {
+		File file = getFile(key);
+		if(file.isFile()) {
+			hits.incrementAndGet();
+			return file;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Store an entry unless this cache is read-only
+	 */
+	public void store(String key, EntryWriter writer) throws IOException {
+		if(readOnly) {
+			return;
+		}
+		File file = getFile(key);
+		File parent = file.getParentFile();
+		if(!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Unable to create compiled class cache directory "+parent);
+		}
+		File temp = File.createTempFile(key, ".tmp", parent);
+		try {
+			writer.write(temp);
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			stores.incrementAndGet();
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	public void destroy() {
+		GroovityMetrics.unregister(metricsId);
+	}
+
+	private File getFile(String key) {
+		return new File(new File(directory, key.substring(0, 2)), key.concat(".jar"));
+	}
+
+	private void collect(MetricCollector collector) {
+		String dir = directory.getPath();
+		collector.counter("groovity_compile_cache_hits_total", "Scripts loaded from the compiled class cache instead of compiling", hits.get(), "directory", dir);
+		collector.counter("groovity_compile_cache_misses_total", "Scripts not found in the compiled class cache", misses.get(), "directory", dir);
+		collector.counter("groovity_compile_cache_stores_total", "Compiled scripts written to the compiled class cache", stores.get(), "directory", dir);
+	}
+
+	//groovy and groovity versions; snapshot builds share a version, so the groovity jar timestamp is included too
+	private static String buildFingerprint() {
+		StringBuilder builder = new StringBuilder(GroovySystem.getVersion());
+		builder.append(';').append(CompiledClassCache.class.getPackage().getImplementationVersion());
+		try {
+			File codeSource = new File(CompiledClassCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			if(codeSource.isFile()) {
+				builder.append(';').append(codeSource.length()).append(';').append(codeSource.lastModified());
+			}
+		}
+		catch(Exception e) {
+		}
+		return builder.toString();
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for(int i=0; i<bytes.length; i++) {
+			chars[i*2] = HEX[(bytes[i] >> 4) & 0xF];
+			chars[i*2+1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(chars);
+	}
+}
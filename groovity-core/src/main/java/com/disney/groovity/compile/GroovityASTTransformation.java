@@ -36,6 +36,8 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -130,6 +132,8 @@ import com.disney.groovity.Taggable;
 import com.disney.groovity.Taggables;
 import com.disney.groovity.doc.Arg;
 import com.disney.groovity.util.ScriptHelper;
+import com.disney.groovity.util.TagCallSite;
+import com.disney.groovity.util.TemplateFragment;
 /**
  * Perform AST transformations on groovity sources including adding marker APIs, fixing line numbers, instrumenting
  * statistics, adding built-in load, run, stream and tag functions, and wiring missing property support to expose the binding
@@ -216,6 +220,7 @@ public class GroovityASTTransformation implements ASTTransformation, Opcodes, Gr
 				InitDependencyVisitor initVisitor = new InitDependencyVisitor(sourceUnit);
 				TagFinder tagFinder = new TagFinder(sourceUnit);
 				TagCallFinder tagCallFinder = new TagCallFinder(sourceUnit, scriptClassNode, factory.getTaggables());
+				TemplateFragmentVisitor templateFragmentVisitor = new TemplateFragmentVisitor(sourceUnit);
 				StaticBindingTransformer staticBindingTransformer = new StaticBindingTransformer(sourceUnit);
 				StaticFieldVisitor staticFieldVisitor = new StaticFieldVisitor(sourceUnit);
 				staticFieldVisitor.visitClass(scriptClassNode);
@@ -245,6 +250,7 @@ public class GroovityASTTransformation implements ASTTransformation, Opcodes, Gr
 						lineNumberVisitor.visitClass(cn);
 					}
 					tagCallFinder.visitClass(cn);
+					templateFragmentVisitor.visitClass(cn);
 					//add arg annotations to methods to preserve parameter names
 					argVisitor.visitClass(cn);
 					if(cn.isInterface()){
@@ -511,6 +517,29 @@ public class GroovityASTTransformation implements ASTTransformation, Opcodes, Gr
 						doTagShortBodyMethod.setSynthetic(true);
 						doTagShortBodyMethod.putNodeMetaData(StaticCompilationMetadataKeys.STATIC_COMPILE_NODE,true);
 						cn.addMethod(doTagShortBodyMethod);
+						
+						BytecodeExpression doTagSiteFactoryCall = new BytecodeExpression() {
+							@Override
+							public void visit(MethodVisitor mv) {
+								mv.visitFieldInsn(GETSTATIC, internalClassName, GROOVITY_SCRIPT_HELPER_FIELD, BytecodeHelper.getTypeDescription(ScriptHelper.class));
+								mv.visitVarInsn(ALOAD, 0);
+								mv.visitVarInsn(ALOAD, 1);
+								mv.visitVarInsn(ALOAD, 2);
+								mv.visitMethodInsn(INVOKEVIRTUAL, BytecodeHelper.getClassInternalName(ScriptHelper.class), TAG, BytecodeHelper.getMethodDescriptor(Object.class,new Class[] {TagCallSite.class,Map.class,Closure.class}),false);
+								mv.visitInsn(ARETURN);
+							}
+						};
+						MethodNode doTagSiteMethod = new MethodNode(TAG, ACC_PUBLIC | ACC_STATIC | ACC_SYNTHETIC, 
+								ClassHelper.OBJECT_TYPE, 
+								new Parameter[]{new Parameter(ClassHelper.make(TagCallSite.class), "tagSite"), new Parameter(new ClassNode(Map.class), "attributes"), new Parameter(new ClassNode(Closure.class), "body")}, 
+								new ClassNode[]{new ClassNode(Exception.class)}, 
+								new BlockStatement(new Statement[] { 
+										new ReturnStatement(doTagSiteFactoryCall)
+								},new VariableScope())
+						);
+						doTagSiteMethod.setSynthetic(true);
+						doTagSiteMethod.putNodeMetaData(StaticCompilationMetadataKeys.STATIC_COMPILE_NODE,true);
+						cn.addMethod(doTagSiteMethod);
 
 					}
 					
@@ -596,9 +625,71 @@ public class GroovityASTTransformation implements ASTTransformation, Opcodes, Gr
 		}
 	}
 	
+	private static boolean hasStaticMembers(ClassNode cn) {
+		if(cn.isInterface() || (cn instanceof InnerClassNode && !cn.isStaticClass())) {
+			return false;
+		}
+		if(cn.getAnnotations()!=null) {
+			for(AnnotationNode anno:cn.getAnnotations()) {
+				if(anno.getClassNode().getName().equals("groovy.transform.Trait")) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	private class TemplateFragmentVisitor extends ClassCodeVisitorSupport{
+		final SourceUnit sourceUnit;
+		ClassNode classNode;
+		List<FieldNode> newFields;
+
+		public TemplateFragmentVisitor(SourceUnit sourceUnit){
+			this.sourceUnit=sourceUnit;
+		}
+
+		@Override
+		protected SourceUnit getSourceUnit() {
+			return sourceUnit;
+		}
+		
+		public void visitClass(ClassNode cn) {
+			//leave classes that declare their own stream method to receive plain strings
+			if(!hasStaticMembers(cn) || !cn.getMethods(STREAM).isEmpty()) {
+				return;
+			}
+			classNode = cn;
+			newFields = new ArrayList<>();
+			super.visitClass(cn);
+			for(FieldNode field: newFields) {
+				cn.addField(field);
+			}
+		}
+		
+		public void visitMethodCallExpression(MethodCallExpression ex){
+			Expression oe = ex.getObjectExpression();
+			if(oe instanceof VariableExpression && ((VariableExpression)oe).isThisExpression() && STREAM.equals(ex.getMethodAsString())){
+				List<Expression> args = ((TupleExpression)ex.getArguments()).getExpressions();
+				if(args.size()==1 && args.get(0) instanceof ConstantExpression && ((ConstantExpression)args.get(0)).getValue() instanceof String){
+					//static template text is held in a static fragment that caches its encoded bytes
+					FieldNode field = new FieldNode("$templateFragment$"+newFields.size(), ACC_PUBLIC | ACC_STATIC | ACC_FINAL | ACC_SYNTHETIC, 
+							ClassHelper.make(TemplateFragment.class), classNode, 
+							new ConstructorCallExpression(ClassHelper.make(TemplateFragment.class), new ArgumentListExpression(args.get(0))));
+					newFields.add(field);
+					ex.setArguments(new ArgumentListExpression(new FieldExpression(field)));
+				}
+			}
+			super.visitMethodCallExpression(ex);
+		}
+	}
+	
 	private class TagCallFinder extends ClassCodeVisitorSupport{
 		final SourceUnit sourceUnit;
 		final Taggables tags;
+		ClassNode classNode;
+		boolean bindSites;
+		Map<String, FieldNode> siteFields;
+		List<FieldNode> newFields;
 
 		public TagCallFinder(SourceUnit sourceUnit, ClassNode scriptClassNode, Taggables tags){
 			this.sourceUnit=sourceUnit;
@@ -610,6 +701,53 @@ public class GroovityASTTransformation implements ASTTransformation, Opcodes, Gr
 			return sourceUnit;
 		}
 		
+		public void visitClass(ClassNode cn) {
+			classNode = cn;
+			//only classes that receive the synthetic static tag methods can hold bound call sites
+			bindSites = hasStaticMembers(cn);
+			siteFields = new HashMap<>();
+			newFields = new ArrayList<>();
+			super.visitClass(cn);
+			//fields are added after the visit since field initializers are visited too
+			for(FieldNode field: newFields) {
+				cn.addField(field);
+			}
+		}
+		
+		private FieldExpression getSiteField(String tagName) {
+			FieldNode field = siteFields.get(tagName);
+			if(field==null) {
+				field = new FieldNode("$tagSite$".concat(tagName), ACC_PUBLIC | ACC_STATIC | ACC_FINAL | ACC_SYNTHETIC, 
+						ClassHelper.make(TagCallSite.class), classNode, 
+						new ConstructorCallExpression(ClassHelper.make(TagCallSite.class), new ArgumentListExpression(new ConstantExpression(tagName))));
+				siteFields.put(tagName, field);
+				newFields.add(field);
+			}
+			return new FieldExpression(field);
+		}
+		
+		private boolean isConstant(MapExpression map) {
+			for(MapEntryExpression entry: map.getMapEntryExpressions()) {
+				if(!(entry.getKeyExpression() instanceof ConstantExpression) || !(entry.getValueExpression() instanceof ConstantExpression)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		private Expression getAttributes(Expression attributes) {
+			if(attributes instanceof MapExpression && isConstant((MapExpression) attributes)) {
+				//constant attributes are built once into a shared read-only map
+				MapExpression map = new MapExpression(((MapExpression) attributes).getMapEntryExpressions());
+				FieldNode field = new FieldNode("$tagAttributes$"+newFields.size(), ACC_PUBLIC | ACC_STATIC | ACC_FINAL | ACC_SYNTHETIC, 
+						ClassHelper.MAP_TYPE.getPlainNodeReference(), classNode, 
+						new StaticMethodCallExpression(ClassHelper.make(Collections.class), "unmodifiableMap", new ArgumentListExpression(map)));
+				newFields.add(field);
+				return new FieldExpression(field);
+			}
+			return attributes;
+		}
+		
 		private boolean isTagCall(MethodCallExpression ex){
 			Expression oe = ex.getObjectExpression();
 			if(oe instanceof VariableExpression && ((VariableExpression)oe).isThisExpression()){
@@ -646,11 +784,29 @@ public class GroovityASTTransformation implements ASTTransformation, Opcodes, Gr
 				//System.out.println("FOUND TAG CALL "+ex+" and rewriting ");
 				List<Expression> args = ((TupleExpression)ex.getArguments()).getExpressions();
 				List<Expression> newArgs= new ArrayList<>();
-				newArgs.add(new ConstantExpression(ex.getMethodAsString()));
-				newArgs.addAll(args);
-				//Automatically add a closure so that scope is available to the tag
-				if(newArgs.size()==0 || !(newArgs.get(newArgs.size()-1) instanceof ClosureExpression)){
-					newArgs.add(new ClosureExpression(new Parameter[0], new EmptyStatement()));
+				if(bindSites) {
+					//bind the call to a static call site to skip the lookup of the tag by name on each call
+					newArgs.add(getSiteField(ex.getMethodAsString()));
+					if(args.isEmpty() || !args.get(0).getType().isDerivedFrom(ClassHelper.MAP_TYPE)) {
+						newArgs.add(new FieldExpression(ClassHelper.make(Collections.class).getField("EMPTY_MAP")));
+						newArgs.addAll(args);
+					}
+					else {
+						newArgs.add(getAttributes(args.get(0)));
+						newArgs.addAll(args.subList(1, args.size()));
+					}
+					//Automatically add a closure so that scope is available to the tag
+					if(newArgs.size()<3) {
+						newArgs.add(new ClosureExpression(new Parameter[0], new EmptyStatement()));
+					}
+				}
+				else {
+					newArgs.add(new ConstantExpression(ex.getMethodAsString()));
+					newArgs.addAll(args);
+					//Automatically add a closure so that scope is available to the tag
+					if(newArgs.size()==0 || !(newArgs.get(newArgs.size()-1) instanceof ClosureExpression)){
+						newArgs.add(new ClosureExpression(new Parameter[0], new EmptyStatement()));
+					}
 				}
 				ex.setArguments(new TupleExpression(newArgs));
 				ex.setMethod(new ConstantExpression(TAG));
@@ -23,17 +23,22 @@
  *******************************************************************************/
 package com.disney.groovity.compile;
 
+import java.io.File;
+import java.io.UnsupportedEncodingException;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLEncoder;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -42,9 +47,11 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
 import org.codehaus.groovy.control.CompilerConfiguration;
@@ -55,8 +62,15 @@ import com.disney.groovity.Groovity;
 import com.disney.groovity.GroovityConstants;
 import com.disney.groovity.GroovityObjectConverter;
 import com.disney.groovity.cache.Cache;
+import com.disney.groovity.cache.CacheManager;
+import com.disney.groovity.cache.CacheOptions;
+import com.disney.groovity.cache.CacheSnapshot;
+import com.disney.groovity.cache.CacheValueStore;
+import com.disney.groovity.cache.OffHeapCacheValueStore;
 import com.disney.groovity.cache.SoftCacheValueStore;
+import com.disney.groovity.cache.TinyLfuCacheValueStore;
 import com.disney.groovity.conf.Configurator;
+import com.disney.groovity.stats.GroovityMetrics;
 import com.disney.groovity.util.AsyncChannel;
 import com.disney.groovity.util.AsyncChannelObserver;
 import com.disney.groovity.util.ScriptHelper;
@@ -74,12 +88,15 @@ import groovy.lang.Script;
  */
 public class GroovityClassLoader extends GroovyClassLoader implements GroovityConstants, AsyncChannelObserver{
 	private static final Logger log = Logger.getLogger(GroovityClassLoader.class.getName());
+	//how long caches handed over from a previous compilation wait to be claimed before they are destroyed
+	private static final int CACHE_HANDOVER_SECONDS = 300;
 	private ProtectionDomain protectionDomain;
 	private ScriptHelper helper;
 	private Groovity groovity;
 	private String sourcePath;
 	private String scriptName;
 	private ConcurrentHashMap<String,Cache> caches;
+	private ConcurrentHashMap<String,Cache> inheritedCaches = new ConcurrentHashMap<>();
 	private BindingDecorator bindingDecorator;
 	private ArgsResolver argsResolver;
 	private List<ObjectName> mbeanNames = new ArrayList<ObjectName>();
@@ -165,35 +182,271 @@ public class GroovityClassLoader extends GroovyClassLoader implements GroovityCo
 	}
 	
 	public Cache getCache(String name, Closure<?> loader, int ttl, int max){
+		return getCache(name, loader, new CacheOptions().setTtl(ttl).setMax(max));
+	}
+	
+	public Cache getCache(String name, Closure<?> loader, CacheOptions options){
 		Cache cache = caches.get(name);
 		if(cache==null && loader!=null){
-			//TODO support other caching backends
-			cache = new Cache();
-			cache.setScriptHelper(helper);
-			cache.setCacheLoader(loader.dehydrate());
-			cache.setBindingDecorator(bindingDecorator);
-			SoftCacheValueStore scvs = new SoftCacheValueStore(scheduler);
-			scvs.setTtl(ttl);
-			scvs.setMax(max);
-			cache.setValueStore(scvs);
-			cache.setScheduler(scheduler);
-			cache.init();
-			Cache oc = caches.putIfAbsent(name, cache);
-			if(oc!=null){
-				cache.destroy();
-				cache = oc;
+			boolean created = false;
+			//creation is serialized so that only one cache per name ever restores or writes a snapshot
+			synchronized(caches){
+				cache = caches.get(name);
+				if(cache==null){
+					Cache inherited = inheritedCaches.remove(name);
+					if(inherited!=null){
+						if(options.equals(inherited.getOptions())){
+							//keep the values, but load and refresh with the new script
+							cache = inherited;
+							cache.setScriptHelper(helper);
+							cache.setCacheLoader(loader.dehydrate());
+							cache.setBindingDecorator(bindingDecorator);
+							cache.getValueStore().setClassLoader(this);
+							cache.setSnapshot(createSnapshot(name, options));
+							applyOptions(cache, options);
+							cache.resumeRefresh();
+							if(log.isLoggable(Level.FINE)){
+								log.fine("Carried over cache "+name+" from previous compilation of "+sourcePath);
+							}
+						}
+						else{
+							log.info("Discarding cache "+name+" from previous compilation of "+sourcePath+" due to changed options");
+							inherited.destroy();
+						}
+					}
+					if(cache==null){
+						cache = new Cache();
+						cache.setScriptHelper(helper);
+						cache.setCacheLoader(loader.dehydrate());
+						cache.setBindingDecorator(bindingDecorator);
+						cache.setValueStore(createValueStore(name, options));
+						cache.setScheduler(scheduler);
+						cache.setTtl(options.getTtl());
+						cache.setSnapshot(createSnapshot(name, options));
+						cache.setSnapshotInterval(options.getSnapshotInterval());
+						applyOptions(cache, options);
+						cache.setOptions(options);
+						cache.init();
+						created = true;
+					}
+					caches.put(name, cache);
+					try {
+						ObjectName mbeanName = getCacheManagerName(name);
+						ManagementFactory.getPlatformMBeanServer().registerMBean(cache.getCacheManager(), mbeanName);
+						mbeanNames.add(mbeanName);
+						final CacheManager manager = cache.getCacheManager();
+						GroovityMetrics.register(mbeanName.toString(), collector -> manager.collect(collector, sourcePath, name));
+					} catch (Exception e) {
+						log.log(Level.SEVERE, "Error registering Cache MBean for "+name+" in "+sourcePath, e);
+					} 
+				}
 			}
-			else{
+			if(created){
+				//restore outside the lock so a large snapshot does not hold up other caches of this script
+				cache.restore();
+				return cache;
+			}
+		}
+		if(cache!=null){
+			cache.awaitRestore();
+		}
+		return cache;
+	}
+	
+	/**
+	 * Apply the options that may change between compilations without discarding a carried over cache
+	 */
+	private void applyOptions(Cache cache, CacheOptions options){
+		cache.setRefreshConcurrency(options.getRefreshConcurrency());
+		cache.setRefreshRate(options.getRefreshRate());
+		cache.setRefreshBacklog(options.getRefreshBacklog());
+		cache.setNegativeTtl(options.getNegativeTtl());
+		cache.setErrorBackoff(options.getErrorBackoff());
+		cache.setMaxErrorBackoff(options.getMaxErrorBackoff());
+		cache.setStaleIfError(options.getStaleIfError());
+	}
+	
+	private ObjectName getCacheManagerName(String name) throws MalformedObjectNameException{
+		return new ObjectName("com.disney.groovity:type=CacheManager,script="+sourcePath+",name="+name);
+	}
+	
+	/**
+	 * Pass caches to the classloader of a recompiled version of this script, which adopts each one the first time it asks
+	 * for a cache of the same name with equal options.  Caches created with carryOver false are left to be destroyed with
+	 * this classloader, and entries of on-heap caches built from classes defined by this script are dropped first, since
+	 * they would pin this classloader and could not be used by the new version.
+	 * 
+	 * @param successor the classloader of the new version of this script
+	 */
+	public void handoverCaches(GroovityClassLoader successor){
+		synchronized(caches){
+			for(Iterator<Entry<String, Cache>> iter = caches.entrySet().iterator(); iter.hasNext();){
+				Entry<String, Cache> entry = iter.next();
+				Cache cache = entry.getValue();
+				if(cache.getOptions()==null || !cache.getOptions().isCarryOver()){
+					continue;
+				}
+				iter.remove();
+				//the loader belongs to this script until the successor claims the cache
+				cache.suspendRefresh();
+				removeScriptValues(cache);
 				try {
-					ObjectName mbeanName = new ObjectName("com.disney.groovity:type=CacheManager,script="+sourcePath+",name="+name);
-					ManagementFactory.getPlatformMBeanServer().registerMBean(cache.getCacheManager(), mbeanName);
-					mbeanNames.add(mbeanName);
+					ObjectName mbeanName = getCacheManagerName(entry.getKey());
+					mbeanNames.remove(mbeanName);
+					GroovityMetrics.unregister(mbeanName.toString());
+					ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
 				} catch (Exception e) {
-					log.log(Level.SEVERE, "Error registering Cache MBean for "+name+" in "+sourcePath, e);
-				} 
+					log.log(Level.FINE, "Error unregistering Cache MBean for "+entry.getKey()+" in "+sourcePath, e);
+				}
+				successor.inheritCache(entry.getKey(), cache);
 			}
 		}
-		return cache;
+	}
+	
+	private void removeScriptValues(Cache cache){
+		CacheValueStore store = cache.getValueStore();
+		if(store instanceof OffHeapCacheValueStore){
+			//values are serialized and will be resolved through the new version of the script
+			return;
+		}
+		List<Object> removals = new ArrayList<>();
+		store.forEach((key, value) -> {
+			if(isScriptDefined(key, null) || isScriptDefined(value.getValue(), null)){
+				removals.add(key);
+			}
+		});
+		for(Object key: removals){
+			store.remove(key);
+		}
+		if(!removals.isEmpty() && log.isLoggable(Level.FINE)){
+			log.fine("Dropped "+removals.size()+" values of script classes from cache carried over from "+sourcePath);
+		}
+	}
+	
+	//checks the object and the contents of collections, maps and arrays, but not the fields of other objects
+	private boolean isScriptDefined(Object o, Set<Object> visited){
+		if(o==null){
+			return false;
+		}
+		Class<?> c = o.getClass();
+		while(c.isArray()){
+			c = c.getComponentType();
+		}
+		if(c.getClassLoader()==this){
+			return true;
+		}
+		if(!(o instanceof Collection || o instanceof Map || o instanceof Object[])){
+			return false;
+		}
+		if(visited==null){
+			visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		}
+		if(!visited.add(o)){
+			return false;
+		}
+		if(o instanceof Map){
+			for(Entry<?, ?> entry: ((Map<?, ?>) o).entrySet()){
+				if(isScriptDefined(entry.getKey(), visited) || isScriptDefined(entry.getValue(), visited)){
+					return true;
+				}
+			}
+			return false;
+		}
+		for(Object item: o instanceof Collection ? (Collection<?>) o : Arrays.asList((Object[]) o)){
+			if(isScriptDefined(item, visited)){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	protected void inheritCache(String name, Cache cache){
+		synchronized(caches){
+			if(caches.containsKey(name)){
+				//the new script already created this cache during initialization
+				cache.destroy();
+				return;
+			}
+			Cache prior = inheritedCaches.put(name, cache);
+			if(prior!=null){
+				prior.destroy();
+			}
+		}
+		scheduler.schedule(()->{
+			if(inheritedCaches.remove(name, cache)){
+				if(log.isLoggable(Level.FINE)){
+					log.fine("Destroying unclaimed cache "+name+" from previous compilation of "+sourcePath);
+				}
+				cache.destroy();
+			}
+		}, CACHE_HANDOVER_SECONDS, TimeUnit.SECONDS);
+	}
+	
+	protected CacheValueStore createValueStore(String name, CacheOptions options){
+		String store = options.getStore();
+		int ttl = options.getTtl();
+		if(ttl > 0 && options.getStaleIfError() > 0){
+			//keep expired values around long enough to serve them if loading fails
+			ttl += options.getStaleIfError();
+		}
+		int max = options.getMax();
+		if(Cache.STORE_OFFHEAP.equals(store) || Cache.STORE_MAPPED.equals(store)){
+			OffHeapCacheValueStore ohcvs = new OffHeapCacheValueStore(this);
+			ohcvs.setTtl(ttl);
+			ohcvs.setMax(max);
+			if(options.getMaxBytes() > 0){
+				ohcvs.setMaxBytes(options.getMaxBytes());
+			}
+			if(Cache.STORE_MAPPED.equals(store)){
+				ohcvs.setMapDirectory(new File(System.getProperty("java.io.tmpdir"), "groovity-cache"));
+			}
+			return ohcvs;
+		}
+		if(Cache.STORE_LFU.equals(store)){
+			if(max > 0){
+				TinyLfuCacheValueStore tlcvs = new TinyLfuCacheValueStore(scheduler);
+				tlcvs.setTtl(ttl);
+				tlcvs.setMax(max);
+				return tlcvs;
+			}
+			log.warning("Cache "+name+" in "+sourcePath+" requested store "+store+" without a max, falling back to soft store");
+		}
+		else if(store!=null && !Cache.STORE_SOFT.equals(store)){
+			log.warning("Unknown store "+store+" for cache "+name+" in "+sourcePath+", falling back to soft store");
+		}
+		SoftCacheValueStore scvs = new SoftCacheValueStore(scheduler);
+		scvs.setTtl(ttl);
+		scvs.setMax(max);
+		return scvs;
+	}
+	
+	protected CacheSnapshot createSnapshot(String name, CacheOptions options){
+		String snapshot = options.getSnapshot();
+		if(snapshot==null){
+			return null;
+		}
+		if(!Cache.SNAPSHOT_KEYS.equals(snapshot) && !Cache.SNAPSHOT_VALUES.equals(snapshot)){
+			log.warning("Unknown snapshot mode "+snapshot+" for cache "+name+" in "+sourcePath+", snapshots disabled");
+			return null;
+		}
+		File snapshotDirectory = groovity.getCacheSnapshotDirectory();
+		if(snapshotDirectory==null){
+			log.warning("Cache "+name+" in "+sourcePath+" requested snapshots but no cache snapshot directory is configured");
+			return null;
+		}
+		File scriptDirectory = new File(snapshotDirectory, scriptName.startsWith("/") ? scriptName.substring(1) : scriptName);
+		File file = new File(scriptDirectory, getSnapshotFileName(name));
+		return new CacheSnapshot(file, Cache.SNAPSHOT_VALUES.equals(snapshot), this);
+	}
+	
+	//url encoding keeps distinct cache names in distinct files, and leaves simple names readable
+	private static String getSnapshotFileName(String name){
+		try {
+			return URLEncoder.encode(name, "UTF-8").concat(".snapshot");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
 	}
 	
 	private void setConfiguration(ConcurrentHashMap<String, Object> config) throws IllegalArgumentException, IllegalAccessException {
@@ -315,6 +568,7 @@ public class GroovityClassLoader extends GroovyClassLoader implements GroovityCo
 			} */
 		}	
 		for(ObjectName mbeanName: mbeanNames){
+			GroovityMetrics.unregister(mbeanName.toString());
 			try {
 				ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
 			} catch (Exception e) {
@@ -325,6 +579,10 @@ public class GroovityClassLoader extends GroovyClassLoader implements GroovityCo
 			cache.destroy();
 		}
 		caches.clear();
+		for(Cache cache: inheritedCaches.values()){
+			cache.destroy();
+		}
+		inheritedCaches.clear();
 	}
 	
 	public Class<Script> getScriptClass(){
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.compile;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import groovy.transform.Trait;
+import groovyjarjarasm.asm.ClassReader;
+import groovyjarjarasm.asm.Type;
+
+/**
+ * Tracks which traits each script defines and which traits its compiled classes are bound to, either by
+ * implementing them, referencing them in field and method signatures, or referencing them from method bodies
+ * as found in the constant pool of the class bytecode.  Since traits are the only types shared between script
+ * classloaders, this tells the compiler exactly which scripts must be recompiled when a source changes; every
+ * other script keeps its classes, classloader and init state.
+ * <p>
+ * The graph is derived from class metadata and bytecode every time a script is loaded, whether compiled from
+ * source or read from the jar directory or compiled class cache, so it is rebuilt from the persisted classes on restart.
+ *
+ * @author Alex Vigdor
+ */
+public class ScriptDependencyGraph {
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private final Map<String, Set<String>> traitsDefined = new HashMap<>();
+	private final Map<String, Set<String>> traitsUsed = new HashMap<>();
+	private final Map<String, Set<String>> typesReferenced = new HashMap<>();
+	private final Map<String, String> traitOwners = new HashMap<>();
+
+	/**
+	 * Record the traits defined and used by the classes loaded for a script, replacing any previous record;
+	 * the bytecode of those classes is scanned for types referenced only from method bodies, which leave no
+	 * trace in class metadata, so they can be matched against the traits defined by other scripts
+	 */
+	public void update(String script, Collection<Class<?>> classes, Collection<byte[]> bytecode) {
+		Set<String> defined = new HashSet<>();
+		Set<String> used = new HashSet<>();
+		Set<String> referenced = new HashSet<>();
+		for(Class<?> c: classes) {
+			if(c.isAnnotationPresent(Trait.class)) {
+				defined.add(c.getName());
+			}
+			collectTraits(c, used);
+		}
+		for(byte[] b: bytecode) {
+			collectReferences(b, referenced);
+		}
+		for(Class<?> c: classes) {
+			referenced.remove(c.getName());
+		}
+		used.removeAll(defined);
+		referenced.removeAll(used);
+		synchronized(this) {
+			remove(script);
+			traitsDefined.put(script, defined);
+			traitsUsed.put(script, used);
+			typesReferenced.put(script, referenced);
+			for(String trait: defined) {
+				traitOwners.put(trait, script);
+			}
+		}
+	}
+
+	public synchronized void remove(String script) {
+		Set<String> defined = traitsDefined.remove(script);
+		if(defined!=null) {
+			for(String trait: defined) {
+				traitOwners.remove(trait, script);
+			}
+		}
+		traitsUsed.remove(script);
+		typesReferenced.remove(script);
+	}
+
+	/**
+	 * @return the name of the script that defines a trait, or null if it is not defined by a known script
+	 */
+	public synchronized String getDefiningScript(String trait) {
+		return traitOwners.get(trait);
+	}
+
+	public synchronized Set<String> getTraitsDefined(String script) {
+		Set<String> defined = traitsDefined.get(script);
+		return defined==null ? Collections.emptySet() : new TreeSet<>(defined);
+	}
+
+	public synchronized Set<String> getTraitsUsed(String script) {
+		Set<String> used = traitsUsed.get(script);
+		if(used==null) {
+			return Collections.emptySet();
+		}
+		Set<String> all = new TreeSet<>(used);
+		for(String type: typesReferenced.get(script)) {
+			if(traitOwners.containsKey(type)) {
+				all.add(type);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Find all scripts whose compiled classes are bound to traits defined by the given scripts, transitively,
+	 * so a trait extending a changed trait also brings in the scripts that use it
+	 *
+	 * @return names of dependent scripts, not including the given scripts
+	 */
+	public synchronized Set<String> getDependents(Collection<String> scripts) {
+		Set<String> dependents = new TreeSet<>();
+		Deque<String> pending = new ArrayDeque<>(scripts);
+		Set<String> visited = new HashSet<>(scripts);
+		while(!pending.isEmpty()) {
+			Set<String> defined = traitsDefined.get(pending.pop());
+			if(defined==null || defined.isEmpty()) {
+				continue;
+			}
+			for(Map.Entry<String, Set<String>> entry: traitsUsed.entrySet()) {
+				String user = entry.getKey();
+				if(!visited.contains(user) && (!Collections.disjoint(entry.getValue(), defined) || !Collections.disjoint(typesReferenced.get(user), defined))) {
+					visited.add(user);
+					dependents.add(user);
+					pending.add(user);
+				}
+			}
+		}
+		return dependents;
+	}
+
+	private static void collectTraits(Class<?> c, Set<String> accumulator) {
+		try {
+			collectTypeTraits(c.getSuperclass(), accumulator);
+			for(Class<?> i: c.getInterfaces()) {
+				collectTypeTraits(i, accumulator);
+			}
+			for(Field f: c.getDeclaredFields()) {
+				collectTypeTraits(f.getType(), accumulator);
+			}
+			for(Method m: c.getDeclaredMethods()) {
+				collectTypeTraits(m.getReturnType(), accumulator);
+				for(Class<?> p: m.getParameterTypes()) {
+					collectTypeTraits(p, accumulator);
+				}
+			}
+		}
+		catch(LinkageError e) {
+			//a missing type will already have failed the load
+		}
+	}
+
+	/**
+	 * Collect the names of classes referenced from the constant pool, along with the types in the descriptors
+	 * of fields and methods the bytecode accesses
+	 */
+	private static void collectReferences(byte[] bytecode, Set<String> accumulator) {
+		ClassReader reader = new ClassReader(bytecode);
+		char[] buf = new char[reader.getMaxStringLength()];
+		for(int i=1; i<reader.getItemCount(); i++) {
+			int offset = reader.getItem(i);
+			if(offset==0) {
+				//second slot of a long or double constant
+				continue;
+			}
+			int tag = reader.readByte(offset-1);
+			if(tag==CONSTANT_CLASS) {
+				String name = reader.readUTF8(offset, buf);
+				collectType(name.charAt(0)=='[' ? Type.getType(name) : Type.getObjectType(name), accumulator);
+			}
+			else if(tag==CONSTANT_NAME_AND_TYPE) {
+				String descriptor = reader.readUTF8(offset+2, buf);
+				if(descriptor.charAt(0)=='(') {
+					collectType(Type.getReturnType(descriptor), accumulator);
+					for(Type arg: Type.getArgumentTypes(descriptor)) {
+						collectType(arg, accumulator);
+					}
+				}
+				else {
+					collectType(Type.getType(descriptor), accumulator);
+				}
+			}
+		}
+	}
+
+	private static void collectType(Type type, Set<String> accumulator) {
+		if(type.getSort()==Type.ARRAY) {
+			type = type.getElementType();
+		}
+		if(type.getSort()==Type.OBJECT) {
+			accumulator.add(type.getClassName());
+		}
+	}
+
+	private static void collectTypeTraits(Class<?> type, Set<String> accumulator) {
+		while(type!=null && type.isArray()) {
+			type = type.getComponentType();
+		}
+		if(type==null || type.isPrimitive() || type.getClassLoader()==null) {
+			return;
+		}
+		if(type.isAnnotationPresent(Trait.class) && accumulator.add(type.getName())) {
+			//traits extending other traits bind the user to those too
+			for(Class<?> i: type.getInterfaces()) {
+				collectTypeTraits(i, accumulator);
+			}
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.stats;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Pull-based registry of groovity operational metrics; execution statistics, caches and named channels register a
+ * MetricSource under a unique id, and nothing is computed until the registry is read.  All metrics can be written in
+ * Prometheus text exposition format in a single pass, and are also exposed through one JMX bean named
+ * com.disney.groovity:type=GroovityMetrics, so monitoring does not have to walk the per-cache and per-channel beans.
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public final class GroovityMetrics implements GroovityMetricsMXBean{
+	private static final Log log = LogFactory.getLog(GroovityMetrics.class);
+	private static final ConcurrentHashMap<String, MetricSource> sources = new ConcurrentHashMap<>();
+	private static final GroovityMetrics instance = new GroovityMetrics();
+	//latency histogram buckets exported as Prometheus buckets, one per power of 4 microseconds up to about a minute
+	private static final int[] LATENCY_BUCKETS = new int[13];
+	private static final String[] LATENCY_BOUNDS = new String[LATENCY_BUCKETS.length];
+	
+	static{
+		for(int i=0; i<LATENCY_BUCKETS.length; i++){
+			long micros = 4L << (2*i);
+			LATENCY_BUCKETS[i] = LatencyHistogram.bucket(micros*1000-1);
+			LATENCY_BOUNDS[i] = BigDecimal.valueOf(micros, 6).toPlainString();
+		}
+		sources.put("GroovityStatistics", GroovityMetrics::collectStatistics);
+		try{
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("com.disney.groovity:type=GroovityMetrics");
+			if(!mbs.isRegistered(name)){
+				mbs.registerMBean(instance, name);
+			}
+		}
+		catch(Exception e){
+			log.error("Error registering GroovityMetrics MBean", e);
+		}
+	}
+	
+	private GroovityMetrics(){
+	}
+	
+	public static GroovityMetrics getInstance(){
+		return instance;
+	}
+	
+	/**
+	 * Add a metric source, replacing any previously registered with the same id
+	 */
+	public static void register(String id, MetricSource source){
+		sources.put(id, source);
+	}
+	
+	public static void unregister(String id){
+		sources.remove(id);
+	}
+	
+	@Override
+	public int getSourceCount(){
+		return sources.size();
+	}
+	
+	@Override
+	public Map<String, Double> getMetrics(){
+		TreeMap<String, Double> metrics = new TreeMap<>();
+		for(Family family: collect().values()){
+			for(Entry<String, double[]> series: family.series.entrySet()){
+				metrics.put(family.name+series.getKey(), series.getValue()[0]);
+			}
+		}
+		return metrics;
+	}
+	
+	/**
+	 * Write all metrics in the Prometheus text exposition format, version 0.0.4
+	 */
+	public static void writePrometheus(Writer writer) throws IOException{
+		for(Family family: collect().values()){
+			writer.write("# HELP ");
+			writer.write(family.name);
+			writer.write(' ');
+			writer.write(family.help.replace("\\", "\\\\").replace("\n", "\\n"));
+			writer.write("\n# TYPE ");
+			writer.write(family.name);
+			writer.write(' ');
+			writer.write(family.type);
+			writer.write('\n');
+			for(Entry<String, double[]> series: family.series.entrySet()){
+				writer.write(family.name);
+				writer.write(series.getKey());
+				writer.write(' ');
+				writer.write(formatValue(series.getValue()[0]));
+				writer.write('\n');
+			}
+		}
+	}
+	
+	private static TreeMap<String, Family> collect(){
+		Collection collection = new Collection();
+		for(Entry<String, MetricSource> source: new ArrayList<>(sources.entrySet())){
+			try{
+				source.getValue().collect(collection);
+			}
+			catch(Exception e){
+				log.warn("Error collecting metrics from "+source.getKey(), e);
+			}
+		}
+		return collection.families;
+	}
+	
+	private static void collectStatistics(MetricCollector collector){
+		for(GroovityStatistics.Statistics statistics: GroovityStatistics.getStatistics()){
+			String key = String.valueOf(statistics.key);
+			collector.counter("groovity_executions_total", "Executions of scripts, methods and tags", statistics.executionCount.get(), "key", key);
+			collector.counter("groovity_execution_seconds_total", "Time spent executing including callees", statistics.grossTime.get()/1e9, "key", key);
+			collector.counter("groovity_execution_net_seconds_total", "Time spent executing excluding callees", statistics.netTime.get()/1e9, "key", key);
+			collector.histogram("groovity_execution_latency_seconds", "Execution time since the last statistics reset", statistics.histogram, statistics.grossTime.get()/1e9, "key", key);
+		}
+		for(Entry<String, Long> cancelled: GroovityStatistics.getCancellations().entrySet()){
+			collector.counter("groovity_cancelled_total", "Work cancelled by a failed or expired await scope", cancelled.getValue(), "kind", cancelled.getKey());
+		}
+	}
+	
+	private static String formatValue(double value){
+		if(value == Math.rint(value) && Math.abs(value) < 1e15){
+			return Long.toString((long) value);
+		}
+		if(Double.isNaN(value)){
+			return "NaN";
+		}
+		if(Double.isInfinite(value)){
+			return value > 0 ? "+Inf" : "-Inf";
+		}
+		return Double.toString(value);
+	}
+	
+	private static final class Family{
+		final String name;
+		final String type;
+		final String help;
+		final LinkedHashMap<String, double[]> series = new LinkedHashMap<>();
+		
+		Family(String name, String type, String help){
+			this.name=name;
+			this.type=type;
+			this.help=help;
+		}
+	}
+	
+	private static final class Collection implements MetricCollector{
+		final TreeMap<String, Family> families = new TreeMap<>();
+		final StringBuilder builder = new StringBuilder();
+
+		@Override
+		public void counter(String name, String help, double value, String... labels) {
+			add(name, "counter", help, "", value, labels);
+		}
+
+		@Override
+		public void gauge(String name, String help, double value, String... labels) {
+			add(name, "gauge", help, "", value, labels);
+		}
+		
+		@Override
+		public void histogram(String name, String help, LatencyHistogram histogram, double sumSeconds, String... labels) {
+			String[] bucketLabels = Arrays.copyOf(labels, labels.length+2);
+			bucketLabels[labels.length] = "le";
+			for(int i=0; i<LATENCY_BUCKETS.length; i++){
+				bucketLabels[labels.length+1] = LATENCY_BOUNDS[i];
+				add(name, "histogram", help, "_bucket", histogram.getCount(LATENCY_BUCKETS[i]), bucketLabels);
+			}
+			long count = histogram.getCount();
+			bucketLabels[labels.length+1] = "+Inf";
+			add(name, "histogram", help, "_bucket", count, bucketLabels);
+			add(name, "histogram", help, "_sum", sumSeconds, labels);
+			add(name, "histogram", help, "_count", count, labels);
+		}
+		
+		//suffix distinguishes the _bucket, _sum and _count series of a histogram
+		private void add(String name, String type, String help, String suffix, double value, String[] labels){
+			Family family = families.get(name);
+			if(family==null){
+				family = new Family(name, type, help);
+				families.put(name, family);
+			}
+			builder.setLength(0);
+			builder.append(suffix);
+			if(labels.length > 1){
+				builder.append('{');
+				for(int i=0; i+1<labels.length; i+=2){
+					if(i>0){
+						builder.append(',');
+					}
+					builder.append(labels[i]).append("=\"");
+					escape(labels[i+1]);
+					builder.append('"');
+				}
+				builder.append('}');
+			}
+			String key = builder.toString();
+			double[] current = family.series.get(key);
+			if(current==null){
+				family.series.put(key, new double[] { value });
+			}
+			else{
+				current[0] += value;
+			}
+		}
+		
+		private void escape(String value){
+			if(value==null){
+				return;
+			}
+			for(int i=0; i<value.length(); i++){
+				char c = value.charAt(i);
+				if(c=='\\' || c=='"'){
+					builder.append('\\').append(c);
+				}
+				else if(c=='\n'){
+					builder.append("\\n");
+				}
+				else{
+					builder.append(c);
+				}
+			}
+		}
+	}
+}
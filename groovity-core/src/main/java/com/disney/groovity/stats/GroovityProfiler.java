@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.stats;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.Thread.State;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.disney.groovity.stats.GroovityStatistics.Execution;
+
+/**
+ * Sampling profiler over groovity execution stacks; when started, a single daemon thread periodically walks the
+ * current script, method and tag stack of every busy thread and counts how often each distinct stack is seen.
+ * <p>
+ * Because samples are taken by wall clock, time a thread spends blocked or waiting (e.g. in Future.get() or await)
+ * is counted like any other; such samples end with a [waiting] or [blocked] frame so they stand out in a flame graph.
+ * Results are available in the collapsed stack format consumed by common flame graph tools, one line per distinct
+ * stack with frames from root to leaf separated by semicolons, followed by a space and the sample count.
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class GroovityProfiler {
+	private static final Log log = LogFactory.getLog(GroovityProfiler.class);
+	public static final long DEFAULT_INTERVAL_MILLIS = 20;
+	//bound memory use when stacks are highly variable; further samples are counted against their deepest known frame
+	private static final int MAX_NODES = 100000;
+	private static final String WAITING = "[waiting]";
+	private static final String BLOCKED = "[blocked]";
+	private static final Node root = new Node(null);
+	private static int nodeCount = 0;
+	private static long sampleCount = 0;
+	private static long started = 0;
+	private static long interval = DEFAULT_INTERVAL_MILLIS;
+	private static ScheduledExecutorService sampler;
+
+	/**
+	 * Start sampling at the given interval, or change the interval if already running; previously gathered samples are kept
+	 */
+	public static synchronized void start(long intervalMillis){
+		if(intervalMillis <= 0){
+			throw new IllegalArgumentException("Profiler interval must be positive, got "+intervalMillis);
+		}
+		if(sampler!=null){
+			sampler.shutdownNow();
+		}
+		else{
+			started = System.currentTimeMillis();
+		}
+		interval = intervalMillis;
+		sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Groovity Profiler");
+			t.setDaemon(true);
+			return t;
+		});
+		sampler.scheduleWithFixedDelay(GroovityProfiler::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		log.info("Started groovity profiler sampling every "+intervalMillis+" ms");
+	}
+	
+	public static synchronized void stop(){
+		if(sampler!=null){
+			sampler.shutdownNow();
+			sampler = null;
+			log.info("Stopped groovity profiler after "+getSampleCount()+" samples");
+		}
+	}
+	
+	public static synchronized boolean isRunning(){
+		return sampler!=null;
+	}
+	
+	public static synchronized long getInterval(){
+		return interval;
+	}
+	
+	/**
+	 * @return the time at which sampling was last started, or 0 if it never has been
+	 */
+	public static synchronized long getStarted(){
+		return started;
+	}
+	
+	public static void reset(){
+		synchronized(root){
+			root.children.clear();
+			root.count = 0;
+			nodeCount = 0;
+			sampleCount = 0;
+		}
+		synchronized(GroovityProfiler.class){
+			if(sampler!=null){
+				started = System.currentTimeMillis();
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of thread stacks sampled since the last reset
+	 */
+	public static long getSampleCount(){
+		synchronized(root){
+			return sampleCount;
+		}
+	}
+	
+	/**
+	 * Take a single sample of all busy threads; called periodically while the profiler is running
+	 */
+	public static void sample(){
+		final ArrayList<Object> frames = new ArrayList<>();
+		GroovityStatistics.sampleStacks((thread, current) -> {
+			frames.clear();
+			Execution stack = current;
+			while(stack!=null && frames.size() < GroovityStatistics.MAX_STACK_WALK){
+				frames.add(stack.key);
+				stack = stack.parent;
+			}
+			State state = thread.getState();
+			synchronized(root){
+				Node node = root;
+				for(int i=frames.size()-1; i>=0; i--){
+					node = node.child(frames.get(i));
+				}
+				if(state == State.BLOCKED){
+					node = node.child(BLOCKED);
+				}
+				else if(state == State.WAITING || state == State.TIMED_WAITING){
+					node = node.child(WAITING);
+				}
+				node.count++;
+				sampleCount++;
+			}
+		});
+	}
+	
+	/**
+	 * @return a map of collapsed stacks to sample counts
+	 */
+	public static Map<String, Long> getCollapsedStacks(){
+		LinkedHashMap<String, Long> stacks = new LinkedHashMap<>();
+		synchronized(root){
+			collapse(root, new StringBuilder(), stacks);
+		}
+		return stacks;
+	}
+	
+	public static void writeCollapsedStacks(Writer writer) throws IOException{
+		for(Entry<String, Long> entry: getCollapsedStacks().entrySet()){
+			writer.write(entry.getKey());
+			writer.write(' ');
+			writer.write(entry.getValue().toString());
+			writer.write('\n');
+		}
+	}
+	
+	private static void collapse(Node node, StringBuilder path, Map<String, Long> stacks){
+		final int length = path.length();
+		for(Node child: node.children.values()){
+			if(length > 0){
+				path.append(';');
+			}
+			appendFrame(path, child.key);
+			if(child.count > 0){
+				stacks.put(path.toString(), child.count);
+			}
+			collapse(child, path, stacks);
+			path.setLength(length);
+		}
+	}
+	
+	private static void appendFrame(StringBuilder path, Object key){
+		//semicolons and line breaks would corrupt the collapsed format
+		String frame = String.valueOf(key);
+		for(int i=0; i<frame.length(); i++){
+			char c = frame.charAt(i);
+			if(c == ';'){
+				c = ',';
+			}
+			else if(c == '\n' || c == '\r'){
+				c = ' ';
+			}
+			path.append(c);
+		}
+	}
+	
+	private final static class Node{
+		final Object key;
+		final HashMap<Object, Node> children = new HashMap<>();
+		long count;
+		
+		Node(Object key){
+			this.key=key;
+		}
+		
+		Node child(Object childKey){
+			Node child = children.get(childKey);
+			if(child==null){
+				if(nodeCount >= MAX_NODES){
+					return this;
+				}
+				child = new Node(childKey);
+				children.put(childKey, child);
+				nodeCount++;
+			}
+			return child;
+		}
+	}
+}
@@ -23,12 +23,21 @@
  *******************************************************************************/
 package com.disney.groovity.stats;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.BiConsumer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,22 +48,52 @@ import com.disney.groovity.model.ModelConsumer;
 
 /**
  * Gather statistics on groovity script execution, and monitor for stuck threads
+ * <p>
+ * To keep the cost of instrumentation low on busy multi-core hosts, each thread records into its own accumulators using
+ * a preallocated stack of executions, so the hot path performs no shared atomic updates and no allocation once warmed up;
+ * per-thread accumulators are merged into Statistics when they are read.
+ * <p>
+ * Each key also keeps a latency histogram for percentiles; recordInterval() retains periodic copies of the histograms
+ * so that getStatistics(seconds) can report percentiles for a recent window rather than since the last reset.
  * 
  * @author Alex Vigdor
  *
  */
 public class GroovityStatistics implements GroovityConstants{
 	private static Log log = LogFactory.getLog(GroovityStatistics.class);
-	private static final ConcurrentHashMap<Object, Statistics> timingMap = new ConcurrentHashMap<Object, Statistics>();
 	private static final ConcurrentHashMap<Thread,CurrentExecution> threadStackMap = new ConcurrentHashMap<>();
+	private static final ThreadLocal<CurrentExecution> threadStack = new ThreadLocal<CurrentExecution>(){
+		protected CurrentExecution initialValue() {
+			CurrentExecution stack = new CurrentExecution(Thread.currentThread());
+			threadStackMap.put(stack.thread, stack);
+			return stack;
+		}
+	};
+	//statistics accumulated by threads that have since died
+	private static final HashMap<Object, Statistics> retiredMap = new HashMap<>();
+	//stacks of retired threads waiting to be merged into retiredMap, so short-lived threads don't take its lock one by one
+	private static final ConcurrentLinkedQueue<CurrentExecution> retiring = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger retiringCount = new AtomicInteger();
+	private static final int RETIRE_BATCH = 256;
+	private static volatile long resetCount = 0;
 	public static long lastReset=System.currentTimeMillis();
 	private static final long stuckThreadTimeout=60000000000l;
+	//guard against walking a damaged stack while another thread is modifying it
+	static final int MAX_STACK_WALK = 1024;
+	//how often interval histograms should be recorded, and how many are kept
+	public static final int INTERVAL_SECONDS = 15;
+	private static final int MAX_INTERVALS = 60;
+	private static final ArrayDeque<Interval> intervals = new ArrayDeque<>();
+	//work cancelled by failed or expired await scopes, by kind of work
+	private static final ConcurrentHashMap<String, AtomicLong> cancellations = new ConcurrentHashMap<>();
 
 	public static void warnStuckThreads() {
+		retireDeadThreads();
 		long tooOld = System.nanoTime()-stuckThreadTimeout;
 		for(Entry<Thread, CurrentExecution> entry: threadStackMap.entrySet()){
 			Execution stack = entry.getValue().current;
-			while(stack!=null){
+			int walked = 0;
+			while(stack!=null && walked++ < MAX_STACK_WALK){
 				if(stack.startTime < tooOld){
 					log.warn("Thread "+entry.getKey().getName()+" may be stuck, it has been executing "+stack.key+" for "+((System.nanoTime()-stack.startTime)/1000000000l)+" seconds");
 					break;
@@ -72,17 +111,19 @@ public class GroovityStatistics implements GroovityConstants{
 		long curTime = System.nanoTime();
 		ArrayList<GroovityThreadProfile> profiles = new ArrayList<GroovityThreadProfile>();
 		for(Entry<Thread, CurrentExecution> entry: threadStackMap.entrySet()){
+			Execution stack = entry.getValue().current;
+			if(stack==null){
+				continue;
+			}
 			final GroovityThreadProfile profile = new GroovityThreadProfile();
 			profile.setName(entry.getKey().getName());
-			
-			Execution stack = entry.getValue().current;
 			final List<String> stackElements = new ArrayList<>();
-			while(stack!=null){
+			while(stack!=null && stackElements.size() < MAX_STACK_WALK){
 				if(stack.parent==null){
 					long runTime = curTime - stack.startTime;
 					profile.setRunTime(runTime/1000000);
 				}
-				stackElements.add(stack.key.toString());
+				stackElements.add(String.valueOf(stack.key));
 				stack=stack.parent;
 			}
 			profile.setStack(stackElements);
@@ -91,80 +132,96 @@ public class GroovityStatistics implements GroovityConstants{
 		return profiles;
 	}
 	
+	/**
+	 * Visit the current groovity execution of every live thread that has one; used by the GroovityProfiler to sample stacks
+	 */
+	static void sampleStacks(BiConsumer<Thread, Execution> sampler){
+		for(CurrentExecution stack: threadStackMap.values()){
+			Execution current = stack.current;
+			if(current!=null && stack.thread.isAlive()){
+				sampler.accept(stack.thread, current);
+			}
+		}
+	}
+	
 	public static void reset(){
-		timingMap.clear();
+		synchronized(retiredMap){
+			//threads notice the new reset count and discard their accumulators on their next execution
+			resetCount++;
+			retiredMap.clear();
+		}
+		synchronized(intervals){
+			intervals.clear();
+		}
+		cancellations.clear();
 		lastReset=System.currentTimeMillis();
 	}
 	
-	public final static void startExecution(final Object key){
-		long time = System.nanoTime();
-		final Thread thread = Thread.currentThread();
-		CurrentExecution stack = threadStackMap.get(thread);
-		Statistics statistics = timingMap.get(key);
-		if(statistics==null){
-			statistics = new Statistics(key);
-			final Statistics oldStats = timingMap.putIfAbsent(key, statistics);
-			if(oldStats!=null){
-				statistics = oldStats;
-			}
-		}
-		Execution parent = stack!=null?stack.current:null;
-		Execution exec = new Execution(parent,key,statistics,time);
-		if(stack!=null){
-			stack.current=exec;
+	/**
+	 * Count a unit of work, e.g. an async body or http request, that was cancelled before it completed
+	 */
+	public static void recordCancellation(final String kind){
+		cancellations.computeIfAbsent(kind, k -> new AtomicLong()).incrementAndGet();
+	}
+	
+	/**
+	 * @return the number of cancelled units of work since the last reset, by kind
+	 */
+	public static Map<String, Long> getCancellations(){
+		TreeMap<String, Long> counts = new TreeMap<>();
+		for(Entry<String, AtomicLong> entry: cancellations.entrySet()){
+			counts.put(entry.getKey(), entry.getValue().get());
 		}
-		else{
-			CurrentExecution holder = new CurrentExecution();
-			holder.current= exec;
-			threadStackMap.put(thread,holder);
+		return counts;
+	}
+	
+	public final static void startExecution(final Object key){
+		final long time = System.nanoTime();
+		final CurrentExecution stack = threadStack.get();
+		if(stack.resetSeen != resetCount){
+			stack.reset();
 		}
+		final Execution exec = stack.push();
+		exec.key = key;
+		exec.accumulator = stack.accumulator(key);
+		exec.parent = stack.current;
+		exec.calleeTime = 0;
+		exec.remoteCalleeTime.lazySet(0);
+		exec.startTime = time;
+		stack.current = exec;
 	}
 	
 	public final static void endExecution(){
-		final Thread thread = Thread.currentThread();
-		final CurrentExecution stack = threadStackMap.get(thread);
-		if(stack!=null){
-			Execution exec = stack.current;
-			if(exec.parent!=null){
-				stack.current=exec.parent;
+		final long endTime = System.nanoTime();
+		final CurrentExecution stack = threadStack.get();
+		final Execution exec = stack.current;
+		if(exec==null){
+			return;
+		}
+		final Execution parent = exec.parent;
+		stack.current = parent;
+		if(exec.owner!=stack){
+			//unbalanced end of an execution registered from another thread
+			return;
+		}
+		stack.pop(exec);
+		final Object key = exec.key;
+		final long totalTime = endTime-exec.startTime;
+		long netTime = totalTime-exec.calleeTime-exec.remoteCalleeTime.get();
+		if(netTime< 0){
+			netTime=0;
+		}
+		exec.accumulator.record(totalTime, netTime);
+		if(parent!=null){
+			if(parent.owner==stack){
+				parent.calleeTime += totalTime;
+				parent.accumulator.addCallee(key, totalTime);
 			}
 			else{
-				threadStackMap.remove(thread);
-			}
-			final Object key = exec.key;
-			final Statistics statistics = exec.statistics;
-			statistics.executionCount.incrementAndGet();
-			AtomicLong t = null;
-			if(exec.parent!=null){
-				final ConcurrentHashMap<Object,AtomicLong> parentStats = exec.parent.statistics.callees;
-				t = parentStats.get(key);
-				if(t==null){
-					t = new AtomicLong();
-					final AtomicLong p = parentStats.putIfAbsent(key,t);
-					if(p!=null){
-						t = p;
-					}
-				}
-			}
-			final long totalTime = System.nanoTime()-exec.startTime;
-			if(t!=null){
-				t.addAndGet(totalTime);
-				exec.parent.calleeTime.addAndGet(totalTime);
-			}
-			statistics.grossTime.addAndGet(totalTime);
-			long netTime = totalTime-exec.calleeTime.get();
-			if(netTime< 0){
-				netTime=0;
-			}
-			statistics.netTime.addAndGet(netTime);
-			boolean done = false;
-			while(!done){
-				long prevMax = statistics.maxTime.get();
-				if(totalTime>prevMax){
-					done = statistics.maxTime.compareAndSet(prevMax, totalTime);
-				}
-				else{
-					done = true;
+				//the parent is running on another thread, e.g. waiting on this async execution
+				parent.remoteCalleeTime.addAndGet(totalTime);
+				if(stack.resetSeen == resetCount){
+					stack.accumulator(parent.key).addCallee(key, totalTime);
 				}
 			}
 		}
@@ -176,6 +233,7 @@ public class GroovityStatistics implements GroovityConstants{
 		public final AtomicLong netTime = new AtomicLong();
 		public final AtomicLong maxTime = new AtomicLong();
 		public final ConcurrentHashMap<Object,AtomicLong> callees = new ConcurrentHashMap<Object,AtomicLong>();
+		public final LatencyHistogram histogram = new LatencyHistogram();
 		public final Object key;
 		public Statistics(Object key){
 			this.key=key;
@@ -203,65 +261,324 @@ public class GroovityStatistics implements GroovityConstants{
 			c.call("netTime",netTime.get());
 			c.call("maxTime",maxTime.get());
 			c.call("callees",callees);
+			c.call("p50",histogram.getPercentile(0.5));
+			c.call("p90",histogram.getPercentile(0.9));
+			c.call("p99",histogram.getPercentile(0.99));
+			c.call("p999",histogram.getPercentile(0.999));
+			c.call("histogram",histogram.toMap());
+		}
+		
+		private void add(Accumulator accumulator){
+			executionCount.addAndGet(accumulator.executionCount);
+			grossTime.addAndGet(accumulator.grossTime);
+			netTime.addAndGet(accumulator.netTime);
+			if(accumulator.maxTime > maxTime.get()){
+				maxTime.set(accumulator.maxTime);
+			}
+			for(Entry<Object, Accumulator.CalleeTime> callee: accumulator.callees.entrySet()){
+				addCallee(callee.getKey(), callee.getValue().time);
+			}
+			histogram.add(accumulator.histogram);
+		}
+		
+		private void add(Statistics statistics){
+			executionCount.addAndGet(statistics.executionCount.get());
+			grossTime.addAndGet(statistics.grossTime.get());
+			netTime.addAndGet(statistics.netTime.get());
+			if(statistics.maxTime.get() > maxTime.get()){
+				maxTime.set(statistics.maxTime.get());
+			}
+			for(Entry<Object, AtomicLong> callee: statistics.callees.entrySet()){
+				addCallee(callee.getKey(), callee.getValue().get());
+			}
+			histogram.add(statistics.histogram);
+		}
+		
+		private void addCallee(Object calleeKey, long time){
+			AtomicLong t = callees.get(calleeKey);
+			if(t==null){
+				t = new AtomicLong();
+				callees.put(calleeKey, t);
+			}
+			t.addAndGet(time);
+		}
+	}
+	
+	/**
+	 * Per-thread totals for one key; only the owning thread writes, using ordered stores so that readers merging
+	 * statistics see consistent values without the writer paying for atomic read-modify-write operations
+	 */
+	private final static class Accumulator {
+		private static final AtomicLongFieldUpdater<Accumulator> EXECUTION_COUNT = AtomicLongFieldUpdater.newUpdater(Accumulator.class, "executionCount");
+		private static final AtomicLongFieldUpdater<Accumulator> GROSS_TIME = AtomicLongFieldUpdater.newUpdater(Accumulator.class, "grossTime");
+		private static final AtomicLongFieldUpdater<Accumulator> NET_TIME = AtomicLongFieldUpdater.newUpdater(Accumulator.class, "netTime");
+		private static final AtomicLongFieldUpdater<Accumulator> MAX_TIME = AtomicLongFieldUpdater.newUpdater(Accumulator.class, "maxTime");
+		volatile long executionCount;
+		volatile long grossTime;
+		volatile long netTime;
+		volatile long maxTime;
+		final ConcurrentHashMap<Object, CalleeTime> callees = new ConcurrentHashMap<>();
+		//plain writes; readers may briefly see stale bucket counts or miss a page allocated since
+		final long[][] histogram = new long[LatencyHistogram.PAGES][];
+		
+		final void record(final long totalTime, final long net){
+			LatencyHistogram.record(histogram, totalTime);
+			EXECUTION_COUNT.lazySet(this, executionCount+1);
+			GROSS_TIME.lazySet(this, grossTime+totalTime);
+			NET_TIME.lazySet(this, netTime+net);
+			if(totalTime > maxTime){
+				MAX_TIME.lazySet(this, totalTime);
+			}
+		}
+		
+		final void addCallee(final Object key, final long totalTime){
+			CalleeTime t = callees.get(key);
+			if(t==null){
+				t = new CalleeTime();
+				callees.put(key, t);
+			}
+			CalleeTime.TIME.lazySet(t, t.time+totalTime);
+		}
+		
+		private final static class CalleeTime{
+			private static final AtomicLongFieldUpdater<CalleeTime> TIME = AtomicLongFieldUpdater.newUpdater(CalleeTime.class, "time");
+			volatile long time;
 		}
 	}
 	
 	public final static class CurrentExecution {
 		public Execution current;
+		private final Thread thread;
+		private Execution[] frames = new Execution[16];
+		private int depth = 0;
+		private long resetSeen = resetCount;
+		private volatile boolean retired = false;
+		private final ConcurrentHashMap<Object, Accumulator> accumulators = new ConcurrentHashMap<>();
+		
+		private CurrentExecution(Thread thread){
+			this.thread=thread;
+			for(int i=0;i<frames.length;i++){
+				frames[i] = new Execution(this, i);
+			}
+		}
+		
+		private Execution push(){
+			if(depth == frames.length){
+				Execution[] grown = new Execution[frames.length*2];
+				System.arraycopy(frames, 0, grown, 0, frames.length);
+				for(int i=frames.length;i<grown.length;i++){
+					grown[i] = new Execution(this, i);
+				}
+				frames = grown;
+			}
+			return frames[depth++];
+		}
+		
+		private void pop(Execution exec){
+			depth = exec.index;
+			if(exec.escaped){
+				//another thread may still hold this frame as a parent, so it must not be reused
+				frames[depth] = new Execution(this, depth);
+			}
+		}
+		
+		private Accumulator accumulator(Object key){
+			Accumulator accumulator = accumulators.get(key);
+			if(accumulator==null){
+				accumulator = new Accumulator();
+				accumulators.put(key, accumulator);
+			}
+			return accumulator;
+		}
+		
+		private void reset(){
+			accumulators.clear();
+			resetSeen = resetCount;
+		}
 	}
 	
 	public final static class Execution {
-		public final Object key;
-		public final long startTime;
-		public final Statistics statistics;
-		public final AtomicLong calleeTime;
-		public final Execution parent;
+		public Object key;
+		public long startTime;
+		public Execution parent;
+		private final CurrentExecution owner;
+		private final int index;
+		private Accumulator accumulator;
+		//time spent in callees on the owning thread
+		private long calleeTime;
+		//time spent in callees on other threads
+		private final AtomicLong remoteCalleeTime = new AtomicLong();
+		private boolean escaped = false;
 		
-		public Execution(final Execution parent, final Object key, final Statistics stats, final long startTime){
-			this.parent=parent;
-			this.key=key;
-			this.statistics=stats;
-			this.startTime = startTime;
-			this.calleeTime=new AtomicLong(0);
+		private Execution(final CurrentExecution owner, final int index){
+			this.owner=owner;
+			this.index=index;
 		}
-		
 	}
 
 	public static List<Statistics> getStatistics(){
-		ArrayList<Statistics> list = new ArrayList<Statistics>(timingMap.values());
+		retireDeadThreads();
+		mergeRetiring();
+		final long currentReset = resetCount;
+		HashMap<Object, Statistics> merged = new HashMap<>();
+		synchronized(retiredMap){
+			for(Statistics retired: retiredMap.values()){
+				merged.computeIfAbsent(retired.key, Statistics::new).add(retired);
+			}
+		}
+		for(CurrentExecution stack: threadStackMap.values()){
+			if(stack.resetSeen == currentReset && !stack.retired){
+				merge(stack, merged);
+			}
+		}
+		ArrayList<Statistics> list = new ArrayList<Statistics>(merged.values());
 		Collections.sort(list);
 		return list;
 	}
 	
+	/**
+	 * @param seconds if positive, limit the latency histograms and percentiles to roughly the last number of seconds,
+	 * to the extent recorded intervals are available
+	 */
+	public static List<Statistics> getStatistics(int seconds){
+		List<Statistics> list = getStatistics();
+		if(seconds > 0){
+			final long cutoff = System.currentTimeMillis()-(seconds*1000L);
+			Interval baseline = null;
+			synchronized(intervals){
+				for(Interval interval: intervals){
+					if(baseline!=null && interval.time > cutoff){
+						break;
+					}
+					baseline = interval;
+				}
+			}
+			if(baseline!=null){
+				for(Statistics statistics: list){
+					LatencyHistogram earlier = baseline.histograms.get(statistics.key);
+					if(earlier!=null){
+						statistics.histogram.subtract(earlier);
+					}
+				}
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Retain a copy of the current latency histograms; should be called every INTERVAL_SECONDS
+	 */
+	public static void recordInterval(){
+		final long now = System.currentTimeMillis();
+		synchronized(intervals){
+			Interval last = intervals.peekLast();
+			if(last!=null && (now-last.time) < INTERVAL_SECONDS*500L){
+				//already recorded, e.g. by another groovity instance in the same JVM
+				return;
+			}
+		}
+		HashMap<Object, LatencyHistogram> histograms = new HashMap<>();
+		for(Statistics statistics: getStatistics()){
+			histograms.put(statistics.key, statistics.histogram.trim());
+		}
+		synchronized(intervals){
+			intervals.addLast(new Interval(now, histograms));
+			while(intervals.size() > MAX_INTERVALS){
+				intervals.removeFirst();
+			}
+		}
+	}
+	
+	private final static class Interval{
+		final long time;
+		final Map<Object, LatencyHistogram> histograms;
+		
+		Interval(long time, Map<Object, LatencyHistogram> histograms){
+			this.time=time;
+			this.histograms=histograms;
+		}
+	}
+	
+	private static void merge(CurrentExecution stack, Map<Object, Statistics> merged){
+		for(Entry<Object, Accumulator> entry: stack.accumulators.entrySet()){
+			merged.computeIfAbsent(entry.getKey(), Statistics::new).add(entry.getValue());
+		}
+	}
+	
+	/**
+	 * Fold the statistics of the current thread into the retired totals and forget its stack; for short-lived 
+	 * threads such as virtual threads, which would otherwise linger in the thread map until the next sweep.  Retired
+	 * stacks are merged in batches, or when statistics are read, so retiring a thread takes no lock.
+	 */
+	public static void retireCurrentThread(){
+		final CurrentExecution stack = threadStackMap.get(Thread.currentThread());
+		if(stack==null){
+			//never recorded anything
+			return;
+		}
+		threadStack.remove();
+		//queued before leaving the thread map, and flagged once merged, so readers never count it twice
+		retiring.add(stack);
+		threadStackMap.remove(stack.thread, stack);
+		if(retiringCount.incrementAndGet() >= RETIRE_BATCH){
+			mergeRetiring();
+		}
+	}
+	
+	private static void mergeRetiring(){
+		synchronized(retiredMap){
+			CurrentExecution stack;
+			while((stack = retiring.poll())!=null){
+				retiringCount.decrementAndGet();
+				stack.retired = true;
+				if(stack.resetSeen == resetCount){
+					merge(stack, retiredMap);
+				}
+			}
+		}
+	}
+	
+	private static void retireDeadThreads(){
+		for(Iterator<CurrentExecution> iter = threadStackMap.values().iterator(); iter.hasNext();){
+			CurrentExecution stack = iter.next();
+			if(!stack.thread.isAlive()){
+				synchronized(retiredMap){
+					if(threadStackMap.remove(stack.thread, stack) && stack.resetSeen == resetCount){
+						merge(stack, retiredMap);
+					}
+				}
+			}
+		}
+	}
+	
 	public static Object currentStackKey(){
-		CurrentExecution fs = threadStackMap.get(Thread.currentThread());
-		if(fs!=null){
-			return fs.current.key;
+		Execution current = threadStack.get().current;
+		if(current!=null){
+			return current.key;
 		}
 		return null;
 	}
 	
 	public static Execution snapshot(){
-		CurrentExecution fs = threadStackMap.get(Thread.currentThread());
-		return fs !=null ? fs.current : null;
+		Execution current = threadStack.get().current;
+		if(current!=null){
+			//the snapshot may become the parent of executions on other threads
+			current.escaped = true;
+		}
+		return current;
 	}
 	
 	public static Execution registerStack(Execution stack){
-		final Thread t = Thread.currentThread();
+		final CurrentExecution fs = threadStack.get();
+		Execution old = fs.current;
+		fs.current=stack;
 		if(stack==null){
-			CurrentExecution rm = threadStackMap.remove(t);
-			return rm !=null ? rm.current : null;
-		}
-		CurrentExecution fs = threadStackMap.get(t);
-		if(fs!=null){
-			Execution old = fs.current;
-			fs.current=stack;
-			return old;
-		}
-		CurrentExecution curr = new CurrentExecution();
-		curr.current=stack;
-		threadStackMap.put(t, curr);
-		return null;
+			fs.depth=0;
+		}
+		else if(stack.owner==fs){
+			fs.depth = stack.index+1;
+		}
+		return old;
 	}
 
 }
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Fixed-size latency histogram with log-scaled buckets; each power of two of microseconds is split into 4 buckets,
+ * so recorded values are accurate to within about 19%, from 1 microsecond up to about 19 hours.  Histograms of the same
+ * shape can be added together to merge threads or hosts, or subtracted to isolate an interval.
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 36;
+	public static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	//buckets per lazily allocated page of a single-writer accumulator; latencies for one key rarely span more than a few
+	static final int PAGE_BITS = 4;
+	static final int PAGE_BUCKETS = 1 << PAGE_BITS;
+	static final int PAGES = (BUCKETS + PAGE_BUCKETS - 1) / PAGE_BUCKETS;
+	private final long[] counts;
+	//index of counts[0], non-zero only for trimmed read-only copies
+	private final int offset;
+	
+	public LatencyHistogram(){
+		this(new long[BUCKETS], 0);
+	}
+	
+	private LatencyHistogram(long[] counts, int offset){
+		this.counts = counts;
+		this.offset = offset;
+	}
+	
+	/**
+	 * @return the bucket index for a latency in nanoseconds
+	 */
+	public static int bucket(final long nanos){
+		final long micros = nanos / 1000;
+		if(micros < SUB_BUCKETS){
+			return micros <= 0 ? 0 : (int) micros;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if(exponent > MAX_EXPONENT){
+			return BUCKETS-1;
+		}
+		final int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS-1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+	
+	/**
+	 * @return the largest latency in nanoseconds that falls in a bucket
+	 */
+	public static long upperBound(final int bucket){
+		if(bucket < SUB_BUCKETS){
+			return (bucket + 1) * 1000L - 1;
+		}
+		final int exponent = (bucket / SUB_BUCKETS) + SUB_BUCKET_BITS - 1;
+		final long sub = bucket % SUB_BUCKETS;
+		final long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+		final long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((lower + width) * 1000L) - 1;
+	}
+	
+	/**
+	 * Record a latency in an array of PAGES bucket pages, allocating the page on first use; used by single-writer
+	 * accumulators that keep their own counts, so threads only pay for the latency ranges they actually see
+	 */
+	static void record(final long[][] pages, final long nanos){
+		final int bucket = bucket(nanos);
+		final int page = bucket >>> PAGE_BITS;
+		long[] counts = pages[page];
+		if(counts == null){
+			counts = new long[PAGE_BUCKETS];
+			pages[page] = counts;
+		}
+		counts[bucket & (PAGE_BUCKETS-1)]++;
+	}
+	
+	public void record(final long nanos){
+		counts[bucket(nanos)]++;
+	}
+	
+	/**
+	 * Add the counts of an array of bucket pages populated by record(long[][], long); pages not yet allocated are empty
+	 */
+	public void add(final long[][] pages){
+		for(int p=0; p<pages.length; p++){
+			final long[] page = pages[p];
+			if(page != null){
+				final int base = p << PAGE_BITS;
+				for(int i=0; i<page.length && base+i < BUCKETS; i++){
+					counts[base+i] += page[i];
+				}
+			}
+		}
+	}
+	
+	public void add(final LatencyHistogram other){
+		for(int i=0; i<other.counts.length; i++){
+			counts[i+other.offset] += other.counts[i];
+		}
+	}
+	
+	/**
+	 * Remove counts recorded in an earlier copy of the same histogram, leaving the counts for the interval since
+	 */
+	public void subtract(final LatencyHistogram earlier){
+		for(int i=0; i<earlier.counts.length; i++){
+			final int b = i+earlier.offset;
+			counts[b] = Math.max(0, counts[b] - earlier.counts[i]);
+		}
+	}
+	
+	public long getCount(){
+		long total = 0;
+		for(int i=0; i<counts.length; i++){
+			total += counts[i];
+		}
+		return total;
+	}
+	
+	/**
+	 * @return the number of latencies recorded in buckets up to and including the given one
+	 */
+	public long getCount(final int maxBucket){
+		long total = 0;
+		for(int i=0; i<counts.length && i+offset<=maxBucket; i++){
+			total += counts[i];
+		}
+		return total;
+	}
+	
+	/**
+	 * @param percentile a fraction between 0 and 1, e.g. 0.99
+	 * @return the upper bound in nanoseconds of the bucket containing the requested percentile, or 0 if empty
+	 */
+	public long getPercentile(final double percentile){
+		final long total = getCount();
+		if(total == 0){
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(percentile * total));
+		long seen = 0;
+		for(int i=0; i<counts.length; i++){
+			seen += counts[i];
+			if(seen >= rank){
+				return upperBound(i+offset);
+			}
+		}
+		return upperBound(BUCKETS-1);
+	}
+	
+	public LatencyHistogram copy(){
+		return new LatencyHistogram(counts.clone(), offset);
+	}
+	
+	/**
+	 * @return a read-only copy holding only the range of non-empty buckets, for retaining many snapshots cheaply
+	 */
+	public LatencyHistogram trim(){
+		int first = 0;
+		while(first < counts.length && counts[first]==0){
+			first++;
+		}
+		int last = counts.length-1;
+		while(last >= first && counts[last]==0){
+			last--;
+		}
+		long[] trimmed = new long[Math.max(0, last-first+1)];
+		System.arraycopy(counts, first, trimmed, 0, trimmed.length);
+		return new LatencyHistogram(trimmed, offset+first);
+	}
+	
+	/**
+	 * @return non-empty buckets as a map of bucket index to count, a compact form for transport
+	 */
+	public Map<Integer, Long> toMap(){
+		LinkedHashMap<Integer, Long> map = new LinkedHashMap<>();
+		for(int i=0; i<counts.length; i++){
+			if(counts[i] > 0){
+				map.put(i+offset, counts[i]);
+			}
+		}
+		return map;
+	}
+	
+	/**
+	 * Rebuild a histogram from the output of toMap, for example after it has been parsed from JSON with string keys
+	 */
+	public static LatencyHistogram fromMap(final Map<?, ?> map){
+		LatencyHistogram histogram = new LatencyHistogram();
+		if(map!=null){
+			for(Entry<?, ?> entry: map.entrySet()){
+				int bucket = Integer.parseInt(entry.getKey().toString());
+				if(bucket >= 0 && bucket < BUCKETS){
+					histogram.counts[bucket] += ((Number) entry.getValue()).longValue();
+				}
+			}
+		}
+		return histogram;
+	}
+}
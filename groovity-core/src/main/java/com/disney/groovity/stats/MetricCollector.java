@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.stats;
+
+/**
+ * Receives metric values from a MetricSource; labels are passed as alternating names and values.  Metric names should
+ * follow Prometheus conventions, e.g. counters end in _total and durations are in seconds.  If more than one source reports
+ * the same metric with the same labels, the values are summed.
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public interface MetricCollector {
+	public void counter(String name, String help, double value, String... labels);
+	public void gauge(String name, String help, double value, String... labels);
+	/**
+	 * Report a latency histogram recorded in nanoseconds as a histogram in seconds, with cumulative buckets at fixed
+	 * bounds, a _sum of sumSeconds and a _count
+	 */
+	public void histogram(String name, String help, LatencyHistogram histogram, double sumSeconds, String... labels);
+}
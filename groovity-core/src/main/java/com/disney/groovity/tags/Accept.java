@@ -25,7 +25,9 @@ package com.disney.groovity.tags;
 
 import java.io.CharArrayWriter;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 import com.disney.groovity.Groovity;
 import com.disney.groovity.GroovityConstants;
@@ -35,7 +37,10 @@ import com.disney.groovity.doc.Tag;
 import com.disney.groovity.stats.GroovityStatistics.Execution;
 import com.disney.groovity.tags.Await.AwaitContext;
 import com.disney.groovity.util.AsyncChannel;
-import com.disney.groovity.util.DeadlockFreeExecutor;
+import com.disney.groovity.util.ChannelRouter;
+import com.disney.groovity.util.AsyncExecutorType;
+import com.disney.groovity.util.DurableChannelLog;
+import com.disney.groovity.util.DurableChannelStore;
 import com.disney.groovity.util.InterruptFactory;
 import com.disney.groovity.util.AsyncChannel.Policy;
 import com.disney.groovity.util.ScriptHelper;
@@ -56,8 +61,14 @@ import groovy.lang.Closure;
  *	Optionally, a maximum queue size for this acceptor, defaults to unbounded. Behavior with a full queue is determined by policy</li>
  *	<li><i>policy</i>: 
  *	what to do with new messages when queue is full, one of (drop|evict|block), defaults to block (backpressure),</li>
+ *	<li><i>batch</i>: 
+ *	Optionally, the maximum number of queued messages to pass to the closure at once as a List, defaults to 1 which passes individual messages,</li>
+ *	<li><i>linger</i>: 
+ *	Optionally, the maximum number of milliseconds to wait for more messages to fill a batch, defaults to 0 which passes whatever is already queued,</li>
+ *	<li><i>durable</i>: 
+ *	Optionally, true to log messages for the named channel to the groovity channel directory and replay unprocessed ones after a restart; only one durable acceptor may be open per channel,</li>
  *  </ul>{
- *	<blockquote>// the closure to execute to process each received message on another thread; the incoming variable is bound to 'it'. The closure may call halt() to stop processing and trigger completion</blockquote>
+ *	<blockquote>// the closure to execute to process each received message on another thread; the incoming variable is bound to 'it', which is a List of messages when batch is greater than 1. The closure may call halt() to stop processing and trigger completion</blockquote>
  * 	});
  * 
  * <p><b>returns</b> an AsyncChannel that can be used that can be used to close and unregister this acceptor, or check its state
@@ -65,13 +76,15 @@ import groovy.lang.Closure;
  *	<p>Sample
  *	<pre>
  *	accept(channel:'weather',q:1,policy:'drop'){ load('/client/weather').update(it) }
+ *	accept(channel:'clicks',batch:500,linger:100){ load('/db/clicks').insertAll(it) }
+ *	accept(channel:'orders',durable:true){ load('/db/orders').save(it) }
  *	</pre>	
  * @author Alex Vigdor
  */
 @Tag(
 		info = "Create a message accepting queue that may optionally subscribe to a named channel",
 		body = "the closure to execute to process each received message on another thread; "+
-				"the incoming variable is bound to 'it'. "+
+				"the incoming variable is bound to 'it', which is a List of messages when batch is greater than 1. "+
 				"The closure may call halt() to stop processing and trigger completion ",
 		sample="accept(channel:'weather',q:1,policy:'drop'){ load('/client/weather').update(it) }",
 		returns="an AsyncChannel that can be used that can be used to close and unregister this acceptor, or check its state",
@@ -102,19 +115,41 @@ import groovy.lang.Closure;
 						name = "policy",
 						info="what to do with new messages when queue is full, one of (drop|evict|block), defaults to block (backpressure)",
 						required = false
+				),
+				@Attr(
+						name = "batch",
+						info="Optionally, the maximum number of queued messages to pass to the closure at once as a List, defaults to 1 which passes individual messages",
+						required = false
+				),
+				@Attr(
+						name = "linger",
+						info="Optionally, the maximum number of milliseconds to wait for more messages to fill a batch, defaults to 0 which passes whatever is already queued",
+						required = false
+				),
+				@Attr(
+						name = "durable",
+						info="Optionally, true to log messages for the named channel to the groovity channel directory and replay unprocessed ones after a restart; only one durable acceptor may be open per channel",
+						required = false
 				)
 			} 
 	)
 public class Accept implements Taggable, GroovityConstants {
-	DeadlockFreeExecutor sharedThreadPool;
+	private static final Logger log = Logger.getLogger(Accept.class.getName());
+	ExecutorService sharedThreadPool;
 	InterruptFactory interruptFactory;
+	AsyncExecutorType executorType = AsyncExecutorType.DEADLOCK_FREE;
+	ChannelRouter channelRouter;
+	DurableChannelStore durableChannelStore;
 
 	public void setGroovity(Groovity groovity) {
 		this.interruptFactory = groovity.getInterruptFactory();
+		this.executorType = groovity.getAsyncExecutorType();
+		this.channelRouter = groovity.getChannelRouter();
+		this.durableChannelStore = groovity.getDurableChannelStore();
 	}
 	
 	public void init(){
-		sharedThreadPool = new DeadlockFreeExecutor(interruptFactory);
+		sharedThreadPool = executorType.createChannelExecutor(interruptFactory);
 	}
 
 	public void destroy(){
@@ -139,17 +174,23 @@ public class Accept implements Taggable, GroovityConstants {
 		if(policyStr!=null){
 			policy = Policy.valueOf(policyStr);
 		}
-		int qSize = -1;
-		Object qDef = resolve(attributes, "q");
-		if(qDef!=null){
-			if(qDef instanceof Number){
-				qSize = ((Number)qDef).intValue();
+		int qSize = resolveInt(attributes, "q", -1);
+		int batch = resolveInt(attributes, "batch", 1);
+		int linger = resolveInt(attributes, "linger", 0);
+		Closure completed = resolve(attributes,"completed",Closure.class);
+		DurableChannelLog durableLog = null;
+		Object durable = resolve(attributes, "durable");
+		if(durable!=null && Boolean.parseBoolean(durable.toString())){
+			if(channel==null){
+				throw new IllegalArgumentException("accept tag requires a channel name to be durable");
+			}
+			if(durableChannelStore!=null){
+				durableLog = durableChannelStore.open(channel);
 			}
 			else{
-				qSize = Integer.valueOf(qDef.toString());
+				log.warning("No channel directory configured, durable channel "+channel+" will be held in memory");
 			}
 		}
-		Closure completed = resolve(attributes,"completed",Closure.class);
 		final ScriptHelper scriptHelper = getScriptHelper(body);
 		final Binding binding = scriptHelper.getBinding();
 		final Map variables = binding.getVariables();
@@ -184,16 +225,29 @@ public class Accept implements Taggable, GroovityConstants {
 			}
 		}
 		final Execution parentStack = asyncContext!=null?asyncContext.getWaitingExecution():null;
-		AsyncChannel asyncChan = AsyncChannel.open(sharedThreadPool, channel, qSize, policy, body, completed, owner, asyncBinding, parentStack);
+		AsyncChannel asyncChan = AsyncChannel.open(channelRouter, durableLog, sharedThreadPool, channel, qSize, policy, batch, linger, body, completed, owner, asyncBinding, parentStack);
 		String var = resolve(attributes, "var", String.class);
 		if(var!=null && var.length()>0){
 			bind(body,var,asyncChan);
 		}
 		if(asyncContext!=null){
 			asyncContext.add(asyncChan.getFuture());
+			asyncContext.link("accept", asyncChan.getFuture());
 		}
 		return asyncChan;
 	}
 
+	@SuppressWarnings("rawtypes")
+	private int resolveInt(Map attributes, String name, int defaultValue){
+		Object def = resolve(attributes, name);
+		if(def==null){
+			return defaultValue;
+		}
+		if(def instanceof Number){
+			return ((Number)def).intValue();
+		}
+		return Integer.valueOf(def.toString());
+	}
+
 
 }
@@ -24,10 +24,9 @@
 package com.disney.groovity.tags;
 
 import java.io.CharArrayWriter;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -42,7 +41,8 @@ import com.disney.groovity.doc.Tag;
 import com.disney.groovity.stats.GroovityStatistics;
 import com.disney.groovity.stats.GroovityStatistics.Execution;
 import com.disney.groovity.tags.Await.AwaitContext;
-import com.disney.groovity.util.DeadlockFreeExecutor;
+import com.disney.groovity.util.AsyncExecutorType;
+import com.disney.groovity.util.BindingSnapshot;
 import com.disney.groovity.util.InterruptFactory;
 import com.disney.groovity.util.ScriptHelper;
 
@@ -97,15 +97,17 @@ import groovy.lang.Script;
 public class Async implements Taggable, GroovityConstants {
 	final static Logger log = Logger.getLogger(Async.class.getName());
 	final static String EXECUTOR_BINDING = "..Async$Executor";//use a non-internal prefix to allow copying to async bindings
-	DeadlockFreeExecutor sharedThreadPool;
+	ExecutorService sharedThreadPool;
 	InterruptFactory interruptFactory;
+	AsyncExecutorType executorType = AsyncExecutorType.DEADLOCK_FREE;
 
 	public void setGroovity(Groovity groovity) {
 		this.interruptFactory = groovity.getInterruptFactory();
+		this.executorType = groovity.getAsyncExecutorType();
 	}
 	
 	public void init(){
-		sharedThreadPool = new DeadlockFreeExecutor(interruptFactory);
+		sharedThreadPool = executorType.create(interruptFactory);
 	}
 
 	public void destroy(){
@@ -120,25 +122,18 @@ public class Async implements Taggable, GroovityConstants {
 		}
 	}
 	
-	public final DeadlockFreeExecutor getExecutor(Map<String, Object> variables){
-		DeadlockFreeExecutor dfe = (DeadlockFreeExecutor) variables.get(EXECUTOR_BINDING);
-		if(dfe!=null){
-			return dfe;
+	public final ExecutorService getExecutor(Map<String, Object> variables){
+		ExecutorService executor = (ExecutorService) variables.get(EXECUTOR_BINDING);
+		if(executor!=null){
+			return executor;
 		}
 		return sharedThreadPool;
 	}
 	public static final Map<String,Object> asyncCopy(final Map<String,Object> variables){
-		final HashMap<String,Object> asyncVariables = new HashMap<>(variables.size()*2);
-		//we will copy the binding, e.g. to capture loop variables,
-		//but NOT out or internal groovity state
-		for(Entry<String, Object> entry:variables.entrySet()){
-			final String k = entry.getKey();
-			if(k.startsWith(INTERNAL_BINDING_PREFIX)){
-				continue;
-			}
-			asyncVariables.put(k,  entry.getValue());
-		}
-		return asyncVariables;
+		//we will snapshot the binding, e.g. to capture loop variables,
+		//but NOT internal groovity state; the snapshot shares unchanged
+		//variables with the parent and copies only on write
+		return BindingSnapshot.of(variables);
 	}
 	@SuppressWarnings({"rawtypes","unchecked"})
 	@Override
@@ -148,17 +143,25 @@ public class Async implements Taggable, GroovityConstants {
 		final Binding binding = scriptHelper.getBinding();
 		final Map variables = binding.getVariables();
 		final AwaitContext asyncContext = AwaitContext.get(variables);
-		DeadlockFreeExecutor createdThreadPool = null;
+		//the scope may also come from an await further up, when running inside another async body
+		final AwaitContext scope = asyncContext!=null ? asyncContext : AwaitContext.scope(variables);
+		if(scope!=null){
+			scope.checkCancelled();
+		}
+		ExecutorService createdThreadPool = null;
 		//make a copy of current binding for async
 		final Map asyncVariables = asyncCopy(variables);
+		if(scope!=null){
+			asyncVariables.put(Await.SCOPE_BINDING, scope);
+		}
 		if(asyncContext==null || !asyncVariables.containsKey(Async.EXECUTOR_BINDING)){
 			Integer numThreads = resolve(attributes,POOL,Integer.class);
 			if(numThreads!=null){
-				createdThreadPool = new DeadlockFreeExecutor(interruptFactory, numThreads);
+				createdThreadPool = executorType.create(interruptFactory, numThreads);
 				asyncVariables.put(EXECUTOR_BINDING, createdThreadPool);
 			}
 		}
-		final DeadlockFreeExecutor asyncPool = createdThreadPool!=null ? createdThreadPool: ((asyncContext !=null) ? getExecutor(asyncVariables) : sharedThreadPool);
+		final ExecutorService asyncPool = createdThreadPool!=null ? createdThreadPool: ((asyncContext !=null) ? getExecutor(asyncVariables) : sharedThreadPool);
 		final boolean shutdownPool = createdThreadPool!=null;
 		final CharArrayWriter out = new CharArrayWriter();
 		asyncVariables.put(OUT,out);
@@ -177,7 +180,11 @@ public class Async implements Taggable, GroovityConstants {
 		label.append("[async]");
 		el = label.toString();
 		String scriptPath = scriptHelper.getClassLoader().getScriptName();
-		final long timeoutTime = timeoutSeconds==null?-1:System.currentTimeMillis()+(timeoutSeconds*1000);
+		long asyncTimeout = timeoutSeconds==null?-1:System.currentTimeMillis()+(timeoutSeconds*1000);
+		if(scope!=null && scope.getDeadline()>=0 && (asyncTimeout<0 || scope.getDeadline()<asyncTimeout)){
+			asyncTimeout = scope.getDeadline();
+		}
+		final long timeoutTime = asyncTimeout;
 		final Callable<Object> bodyRunner = new Callable<Object>() {
 			@Override
 			public Object call() throws Exception {
@@ -187,6 +194,9 @@ public class Async implements Taggable, GroovityConstants {
 				final Execution restoreStack = parentStack !=null ? GroovityStatistics.registerStack(parentStack) : null;
 				GroovityStatistics.startExecution(el);
 				try{
+					if(scope!=null){
+						scope.checkCancelled();
+					}
 					Closure asyncBody;
 					if(body.getThisObject() instanceof Class){
 						//if the parent script is not available it is a special case (static) and we may share the context
@@ -219,6 +229,10 @@ public class Async implements Taggable, GroovityConstants {
 						//with no known waiters this exception could get lost, let's log it
 						log.log(Level.SEVERE, "Error in async", e);
 					}
+					else{
+						//fail fast, cancelling sibling asyncs and everything they started
+						asyncContext.fail(e);
+					}
 					throw e;
 				}
 				finally{
@@ -256,6 +270,9 @@ public class Async implements Taggable, GroovityConstants {
 		if(asyncContext!=null){
 			asyncContext.add(future);
 		}
+		if(scope!=null){
+			scope.link("async", future);
+		}
 		String var = resolve(attributes, VAR, String.class);
 		if(var!=null && var.length()>0){
 			variables.put(var, future);
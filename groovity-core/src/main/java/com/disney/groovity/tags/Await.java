@@ -30,9 +30,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.disney.groovity.Groovity;
 import com.disney.groovity.GroovityConstants;
@@ -41,7 +46,7 @@ import com.disney.groovity.doc.Attr;
 import com.disney.groovity.doc.Tag;
 import com.disney.groovity.stats.GroovityStatistics;
 import com.disney.groovity.stats.GroovityStatistics.Execution;
-import com.disney.groovity.util.DeadlockFreeExecutor;
+import com.disney.groovity.util.AsyncExecutorType;
 import com.disney.groovity.util.InterruptFactory;
 import com.disney.groovity.util.ScriptHelper;
 
@@ -50,11 +55,14 @@ import groovy.lang.Closure;
 /**
  * Await and aggregate the results of all async tags in the body; also buffers and replays asynchronous output in order with synchronous output
  * <p>
+ * The await defines a scope for all work started within it, including in nested async bodies; if any async fails
+ * or the timeout is reached, everything still running in the scope is cancelled and the first failure is thrown.
+ * <p>
  * param( <ul>	
  *	<li><i>var</i>: 
  *	the name of the variable to bind the results list,</li>	
  *	<li><i>timeout</i>: 
- *	number of seconds to wait before throwing an exception,</li>	
+ *	number of seconds to wait before throwing an exception; nested awaits, asyncs, http calls and offers share the deadline,</li>	
  *	<li><i>pool</i>: 
  *	max number of threads to occupy - allocates an isolated pool allocates an isolated pool unless already running in an isolated pool,</li>
  *	</ul>{
@@ -82,7 +90,7 @@ import groovy.lang.Closure;
 						),
 				@Attr(
 						name = GroovityConstants.TIMEOUT, 
-						info="number of seconds to wait before throwing an exception",
+						info="number of seconds to wait before throwing an exception; nested awaits, asyncs, http calls and offers share the deadline",
 						required = false
 						),
 				@Attr(
@@ -94,11 +102,15 @@ import groovy.lang.Closure;
 		)
 public class Await implements Taggable {
 	final static String ASYNC_CONTEXT_BINDING = INTERNAL_BINDING_PREFIX.concat("Await$Context");
+	//links async bindings to the await scope they were started from
+	final static String SCOPE_BINDING = INTERNAL_BINDING_PREFIX.concat("Await$Scope");
 	
 	InterruptFactory interruptFactory;
+	AsyncExecutorType executorType = AsyncExecutorType.DEADLOCK_FREE;
 
 	public void setGroovity(Groovity groovity) {
 		this.interruptFactory = groovity.getInterruptFactory();
+		this.executorType = groovity.getAsyncExecutorType();
 	}
 
 	@SuppressWarnings({"rawtypes","unchecked"})
@@ -108,13 +120,13 @@ public class Await implements Taggable {
 		final ScriptHelper scriptHelper = getScriptHelper(body);
 		final Binding binding = scriptHelper.getBinding();
 		final Map variables = binding.getVariables();
-		DeadlockFreeExecutor createdThreadPool = null;
-		DeadlockFreeExecutor oldThreadPool = null;
+		ExecutorService createdThreadPool = null;
+		ExecutorService oldThreadPool = null;
 		if(!variables.containsKey(Async.EXECUTOR_BINDING)){
 			Integer numThreads = resolve(attributes,POOL,Integer.class);
 			if(numThreads!=null){
-				createdThreadPool = new DeadlockFreeExecutor(interruptFactory, numThreads);
-				oldThreadPool = (DeadlockFreeExecutor) variables.put(Async.EXECUTOR_BINDING, createdThreadPool);
+				createdThreadPool = executorType.create(interruptFactory, numThreads);
+				oldThreadPool = (ExecutorService) variables.put(Async.EXECUTOR_BINDING, createdThreadPool);
 			}
 		}
 		final Writer origOut = (Writer) variables.get(OUT);
@@ -126,10 +138,9 @@ public class Await implements Taggable {
 		label.append("[await]");
 		final String el = label.toString();
 		GroovityStatistics.startExecution(el);
-		final AwaitContext awaitContext = AwaitContext.create(variables);
+		final AwaitContext awaitContext = AwaitContext.create(variables, timeoutSeconds);
 		try{
 			Collection<Object> resultsList ;
-			final long timeoutTime = timeoutSeconds==null?-1:System.currentTimeMillis()+(timeoutSeconds*1000);
 			Throwable error=null;
 			try{
 				body.call();
@@ -140,9 +151,12 @@ public class Await implements Taggable {
 			ArrayDeque<Future> futuresList=awaitContext.getFutures();
 			resultsList = new ArrayList<>(futuresList.size());
 			for(Future f : futuresList){
+				if(error==null && awaitContext.isCancelled()){
+					//fail fast when a later async has already failed
+					error = new ExecutionException(awaitContext.getFailure());
+				}
 				if(error!=null){
-					f.cancel(true);
-					continue;
+					break;
 				}
 				//flush any pending writers before waiting
 				Optional<CharArrayWriter> ocw;
@@ -152,7 +166,7 @@ public class Await implements Taggable {
 						cw.writeTo(origOut);
 					}
 				}
-				if(timeoutTime==-1 || f.isDone()){
+				if(awaitContext.getDeadline()==-1 || f.isDone()){
 					try{
 						resultsList.add(f.get());
 					}
@@ -161,10 +175,9 @@ public class Await implements Taggable {
 					}
 				}
 				else{
-					long timeoutDelta = timeoutTime - System.currentTimeMillis();
+					long timeoutDelta = awaitContext.getDeadline() - System.currentTimeMillis();
 					if(timeoutDelta <= 0){
-						error = new InterruptedException("Await reached timeout of "+timeoutSeconds);
-						f.cancel(true);
+						error = new InterruptedException(timeoutSeconds!=null ? "Await reached timeout of "+timeoutSeconds : "Await reached deadline of enclosing await");
 					}
 					else{
 						try{
@@ -184,6 +197,16 @@ public class Await implements Taggable {
 				}
 			}
 			if(error !=null){
+				//cancel everything still running in this scope, and report the original failure rather than a cancellation it caused
+				awaitContext.fail(error);
+				for(Future f: futuresList){
+					f.cancel(true);
+				}
+				Throwable failure = awaitContext.getFailure();
+				Throwable cause = error instanceof ExecutionException ? error.getCause() : error;
+				if(failure!=cause){
+					error = new ExecutionException(failure);
+				}
 				if(error instanceof Exception){
 					throw (Exception) error;
 				}
@@ -238,12 +261,24 @@ public class Await implements Taggable {
 		}
 	}
 	
+	/**
+	 * The scope of an await tag: collects the futures of async calls in the body in order, and links any other work
+	 * started within the scope, including in async bodies and nested awaits, so that it can all be cancelled when one
+	 * of the asyncs fails or the scope deadline is reached.  A nested scope inherits the deadline of its enclosing
+	 * scope if that is sooner than its own.
+	 */
 	@SuppressWarnings({"rawtypes","unchecked"})
 	public static class AwaitContext implements GroovityConstants {
 		final ArrayDeque<Future> futures = new ArrayDeque<>();
 		final ArrayDeque<Optional<CharArrayWriter>> fragmentWriters = new ArrayDeque<>();
 		final Execution waitingExecution = GroovityStatistics.snapshot();
+		final ConcurrentLinkedQueue<Link> links = new ConcurrentLinkedQueue<>();
+		final ConcurrentLinkedQueue<AwaitContext> children = new ConcurrentLinkedQueue<>();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		volatile boolean cancelled = false;
 		AwaitContext parentContext = null;
+		AwaitContext enclosingScope = null;
+		long deadline = -1;
 		
 		public final Execution getWaitingExecution(){
 			return waitingExecution;
@@ -253,6 +288,43 @@ public class Await implements Taggable {
 			return futures;
 		}
 		
+		/**
+		 * @return the absolute time in millis when this scope expires, or -1 for no deadline
+		 */
+		public final long getDeadline(){
+			return deadline;
+		}
+		
+		/**
+		 * @return the smaller of the given timeout and the time left until the scope deadline, or -1 for no limit
+		 */
+		public final long remainingMillis(long timeoutMillis){
+			if(deadline < 0){
+				return timeoutMillis;
+			}
+			long remaining = Math.max(1, deadline - System.currentTimeMillis());
+			return (timeoutMillis > 0 && timeoutMillis < remaining) ? timeoutMillis : remaining;
+		}
+		
+		public final boolean isCancelled(){
+			return cancelled;
+		}
+		
+		/**
+		 * @return the error that caused this scope to be cancelled, or null
+		 */
+		public final Throwable getFailure(){
+			return failure.get();
+		}
+		
+		public final void checkCancelled(){
+			if(cancelled){
+				CancellationException ce = new CancellationException("Await scope was cancelled");
+				ce.initCause(failure.get());
+				throw ce;
+			}
+		}
+		
 		public final void close(final Map variables){
 			if(parentContext!=null){
 				variables.put(ASYNC_CONTEXT_BINDING, parentContext);
@@ -260,6 +332,10 @@ public class Await implements Taggable {
 			else{
 				variables.remove(ASYNC_CONTEXT_BINDING);
 			}
+			if(enclosingScope!=null){
+				enclosingScope.children.remove(this);
+			}
+			links.clear();
 		}
 		public void signalAsync(Map variables,CharArrayWriter asyncOut){
 			if(fragmentWriters.isEmpty()){
@@ -281,6 +357,57 @@ public class Await implements Taggable {
 		public void add(Future future){
 			futures.add(future);
 		}
+		
+		/**
+		 * Link work started within this scope so it is cancelled along with the scope; work linked after the scope
+		 * is cancelled is cancelled right away
+		 * 
+		 * @param kind a label for the kind of work, used to count cancellations in GroovityStatistics
+		 */
+		public <T extends Future> T link(String kind, T future){
+			links.add(new Link(kind, future));
+			if(cancelled){
+				cancelLinks();
+			}
+			return future;
+		}
+		
+		/**
+		 * Link blocking work running on the current thread, such as a synchronous http request or a channel offer
+		 * waiting for capacity; the returned handle must be passed to unlink when the work completes
+		 */
+		public Future<?> linkAction(String kind, Runnable onCancel){
+			return link(kind, new CancelAction(onCancel));
+		}
+		
+		public void unlink(Future<?> future){
+			if(future instanceof CancelAction){
+				((CancelAction)future).done.set(true);
+			}
+			links.removeIf(link -> link.future==future);
+		}
+		
+		/**
+		 * Fail this scope; the first failure is reported by the await tag, and all linked work and nested scopes are cancelled
+		 */
+		public void fail(Throwable cause){
+			failure.compareAndSet(null, cause);
+			cancelled = true;
+			cancelLinks();
+			for(AwaitContext child: children){
+				child.fail(cause);
+			}
+		}
+		
+		private void cancelLinks(){
+			Link link;
+			while((link = links.poll())!=null){
+				if(link.future.cancel(true)){
+					GroovityStatistics.recordCancellation(link.kind);
+				}
+			}
+		}
+		
 		public Optional<CharArrayWriter> nextFragmentWriter(){
 			return fragmentWriters.removeFirst();
 		}
@@ -288,12 +415,89 @@ public class Await implements Taggable {
 			return (AwaitContext) variables.get(ASYNC_CONTEXT_BINDING);
 		}
 		
+		/**
+		 * Find the innermost scope for the given variables, either an await in the same binding or the await
+		 * scope an async body was started from
+		 */
+		public static final AwaitContext scope(Map variables){
+			AwaitContext context = get(variables);
+			if(context==null){
+				context = (AwaitContext) variables.get(SCOPE_BINDING);
+			}
+			return context;
+		}
+		
 		public static final AwaitContext create(Map variables){
+			return create(variables, null);
+		}
+		
+		public static final AwaitContext create(Map variables, Integer timeoutSeconds){
 			AwaitContext context = new AwaitContext();
+			AwaitContext enclosing = scope(variables);
+			if(timeoutSeconds!=null){
+				context.deadline = System.currentTimeMillis()+(timeoutSeconds*1000);
+			}
+			if(enclosing!=null){
+				if(enclosing.deadline >= 0 && (context.deadline < 0 || enclosing.deadline < context.deadline)){
+					context.deadline = enclosing.deadline;
+				}
+				context.enclosingScope = enclosing;
+				enclosing.children.add(context);
+				if(enclosing.cancelled){
+					context.fail(enclosing.getFailure());
+				}
+			}
 			context.parentContext = (AwaitContext) variables.put(ASYNC_CONTEXT_BINDING, context);
 			return context;
 		}
 		
+		private static final class Link{
+			final String kind;
+			final Future<?> future;
+			
+			Link(String kind, Future<?> future){
+				this.kind=kind;
+				this.future=future;
+			}
+		}
+		
+		private static final class CancelAction implements Future<Object>{
+			final Runnable onCancel;
+			final AtomicBoolean done = new AtomicBoolean();
+			
+			CancelAction(Runnable onCancel){
+				this.onCancel=onCancel;
+			}
+
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				if(done.compareAndSet(false, true)){
+					onCancel.run();
+					return true;
+				}
+				return false;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return false;
+			}
+
+			@Override
+			public boolean isDone() {
+				return done.get();
+			}
+
+			@Override
+			public Object get() {
+				return null;
+			}
+
+			@Override
+			public Object get(long timeout, TimeUnit unit) {
+				return null;
+			}
+		}
 	}
 
 }
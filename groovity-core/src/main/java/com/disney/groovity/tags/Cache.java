@@ -32,6 +32,7 @@ import java.util.logging.Logger;
 import com.disney.groovity.Groovity;
 import com.disney.groovity.GroovityConstants;
 import com.disney.groovity.Taggable;
+import com.disney.groovity.cache.CacheOptions;
 import com.disney.groovity.compile.GroovityClassLoader;
 import com.disney.groovity.doc.Attr;
 import com.disney.groovity.doc.Tag;
@@ -55,7 +56,34 @@ import groovy.lang.Closure;
  *	<li><i>ttl</i>: 
  *	specify seconds until cache entries are evicted after being created or refreshed,</li>	
  *	<li><i>max</i>: 
- *	maximum number of items to store in this cache,</li>
+ *	maximum number of items to store in this cache,</li>	
+ *	<li><i>store</i>: 
+ *	value store for a new cache, 'soft' (default) prunes soft references periodically, 'lfu' enforces max on insert with W-TinyLFU admission, 'offheap' or 'mapped' keep serialized values in direct or memory-mapped buffers,</li>	
+ *	<li><i>maxBytes</i>: 
+ *	byte budget for an offheap or mapped store, defaults to 64MB,</li>	
+ *	<li><i>snapshot</i>: 
+ *	'keys' or 'values' to persist this cache to the groovity cache snapshot directory on shutdown and restore it on startup,</li>	
+ *	<li><i>snapshotInterval</i>: 
+ *	seconds between periodic snapshots in addition to the one taken on shutdown,</li>	
+ *	<li><i>refreshConcurrency</i>: 
+ *	maximum number of background refresh batches to run in parallel, defaults to 4,</li>	
+ *	<li><i>refreshRate</i>: 
+ *	maximum number of keys per second to refresh in the background, unlimited by default,</li>	
+ *	<li><i>refreshBacklog</i>: 
+ *	maximum number of keys awaiting background refresh, defaults to 10000; the least recently hit keys are dropped first,</li>	
+ *	<li><i>negativeTtl</i>: 
+ *	seconds to cache a null value produced by the loader, 0 to never cache nulls; by default nulls are cached like other values,</li>	
+ *	<li><i>errorBackoff</i>: 
+ *	seconds to wait before loading a key again after the loader fails, doubling with each consecutive failure; requests during the backoff fail fast,</li>	
+ *	<li><i>maxErrorBackoff</i>: 
+ *	upper bound in seconds for the error backoff, defaults to 300,</li>	
+ *	<li><i>staleIfError</i>: 
+ *	seconds past the ttl to keep expired values, which are served instead of an error when loading fails or is backing off,</li>	
+ *	<li><i>carryOver</i>: 
+ *	defaults to true to keep the values of this cache when the script is recompiled with the same cache options, false to start empty; 
+ *	on-heap values built from classes defined by the script itself are reloaded regardless,</li>	
+ *	<li><i>schema</i>: 
+ *	a label for the shape of cached values; changing it keeps a recompiled script from carrying over values loaded by the previous version,</li>
  *	</ul>{
  *	<blockquote>// Code that takes takes a 'map' and fills in values for the keys</blockquote>
  * 	});
@@ -99,7 +127,20 @@ import groovy.lang.Closure;
 			@Attr(name="name",required=false,info="specify a named cache to use"),
 			@Attr(name="refresh",required=false,info="specify number of seconds after which access triggers background refresh"),
 			@Attr(name="ttl",required=false,info="specify seconds until cache entries are evicted after being created or refreshed"),
-			@Attr(name="max",required=false,info="maximum number of items to store in this cache")
+			@Attr(name="max",required=false,info="maximum number of items to store in this cache"),
+			@Attr(name="store",required=false,info="value store for a new cache, 'soft' (default) prunes soft references periodically, 'lfu' enforces max on insert with W-TinyLFU admission, 'offheap' or 'mapped' keep serialized values in direct or memory-mapped buffers"),
+			@Attr(name="maxBytes",required=false,info="byte budget for an offheap or mapped store, defaults to 64MB"),
+			@Attr(name="snapshot",required=false,info="'keys' or 'values' to persist this cache to the groovity cache snapshot directory on shutdown and restore it on startup"),
+			@Attr(name="snapshotInterval",required=false,info="seconds between periodic snapshots in addition to the one taken on shutdown"),
+			@Attr(name="refreshConcurrency",required=false,info="maximum number of background refresh batches to run in parallel, defaults to 4"),
+			@Attr(name="refreshRate",required=false,info="maximum number of keys per second to refresh in the background, unlimited by default"),
+			@Attr(name="refreshBacklog",required=false,info="maximum number of keys awaiting background refresh, defaults to 10000; the least recently hit keys are dropped first"),
+			@Attr(name="negativeTtl",required=false,info="seconds to cache a null value produced by the loader, 0 to never cache nulls; by default nulls are cached like other values"),
+			@Attr(name="errorBackoff",required=false,info="seconds to wait before loading a key again after the loader fails, doubling with each consecutive failure; requests during the backoff fail fast"),
+			@Attr(name="maxErrorBackoff",required=false,info="upper bound in seconds for the error backoff, defaults to 300"),
+			@Attr(name="staleIfError",required=false,info="seconds past the ttl to keep expired values, which are served instead of an error when loading fails or is backing off"),
+			@Attr(name="carryOver",required=false,info="defaults to true to keep the values of this cache when the script is recompiled with the same cache options, false to start empty"),
+			@Attr(name="schema",required=false,info="a label for the shape of cached values; changing it keeps a recompiled script from carrying over values loaded by the previous version")
 	}
 	
 )
@@ -107,48 +148,117 @@ public class Cache implements Taggable{
 	
 	@SuppressWarnings("rawtypes")
 	protected com.disney.groovity.cache.Cache getCache(Map attributes, Closure body, int ttl, int max, boolean isLoader) throws NoSuchMethodException, SecurityException, URISyntaxException{
+		return getCache(attributes, body, isLoader ? body : null, ttl, max);
+	}
+	
+	/**
+	 * @return the name of the cache to use when no name attribute is given
+	 */
+	protected String getDefaultCacheName(){
+		return "defaultCache";
+	}
+	
+	/**
+	 * Look up a named cache for the script calling the tag, creating it with the given loader and the cache options
+	 * in the attributes if it does not exist yet; without a loader only an existing cache is returned
+	 */
+	@SuppressWarnings("rawtypes")
+	protected com.disney.groovity.cache.Cache getCache(Map attributes, Closure body, Closure loader, int ttl, int max) throws NoSuchMethodException, SecurityException, URISyntaxException{
 		Object namea = resolve(attributes,"name");
 		GroovityClassLoader classLoader = getScriptHelper(body).getClassLoader();
-		String name="defaultCache";
+		String name=getDefaultCacheName();
 		if(namea!=null){
 			name=namea.toString();
 		}
-		return classLoader.getCache(name, isLoader ? body : null, ttl, max);
-	}
-	
-	@SuppressWarnings({"rawtypes","unchecked"})
-	public Object tag(Map attributes, Closure body) throws Exception {
-		
-		Object refresha = resolve(attributes,"refresh");
-		int refresh = -1;
-		if(refresha!=null){
-			if(refresha instanceof Number){
-				refresh = ((Number)refresha).intValue();
+		CacheOptions options = new CacheOptions().setTtl(ttl).setMax(max);
+		if(loader!=null){
+			Object storea = resolve(attributes,"store");
+			if(storea!=null){
+				options.setStore(storea.toString());
 			}
-			else{
-				refresh = Integer.parseInt(refresha.toString());
+			Object maxBytesa = resolve(attributes,"maxBytes");
+			if(maxBytesa!=null){
+				if(maxBytesa instanceof Number){
+					options.setMaxBytes(((Number)maxBytesa).longValue());
+				}
+				else{
+					options.setMaxBytes(Long.parseLong(maxBytesa.toString()));
+				}
 			}
-		}
-		Object ttla = resolve(attributes,"ttl");
-		int ttl = -1;
-		if(ttla!=null){
-			if(ttla instanceof Number){
-				ttl = ((Number)ttla).intValue();
+			Object snapshota = resolve(attributes,"snapshot");
+			if(snapshota!=null){
+				options.setSnapshot(snapshota.toString());
 			}
-			else{
-				ttl = Integer.parseInt(ttla.toString());
+			Object snapshotIntervala = resolve(attributes,"snapshotInterval");
+			if(snapshotIntervala!=null){
+				if(snapshotIntervala instanceof Number){
+					options.setSnapshotInterval(((Number)snapshotIntervala).intValue());
+				}
+				else{
+					options.setSnapshotInterval(Integer.parseInt(snapshotIntervala.toString()));
+				}
 			}
-		}
-		Object maxa = resolve(attributes,"max");
-		int max = -1;
-		if(maxa!=null){
-			if(maxa instanceof Number){
-				max = ((Number)maxa).intValue();
+			Integer refreshConcurrency = resolve(attributes,"refreshConcurrency",Integer.class);
+			if(refreshConcurrency!=null){
+				options.setRefreshConcurrency(refreshConcurrency);
+			}
+			Integer refreshRate = resolve(attributes,"refreshRate",Integer.class);
+			if(refreshRate!=null){
+				options.setRefreshRate(refreshRate);
+			}
+			Integer refreshBacklog = resolve(attributes,"refreshBacklog",Integer.class);
+			if(refreshBacklog!=null){
+				options.setRefreshBacklog(refreshBacklog);
+			}
+			Integer negativeTtl = resolve(attributes,"negativeTtl",Integer.class);
+			if(negativeTtl!=null){
+				options.setNegativeTtl(negativeTtl);
 			}
-			else{
-				max = Integer.parseInt(maxa.toString());
+			Integer errorBackoff = resolve(attributes,"errorBackoff",Integer.class);
+			if(errorBackoff!=null){
+				options.setErrorBackoff(errorBackoff);
 			}
+			Integer maxErrorBackoff = resolve(attributes,"maxErrorBackoff",Integer.class);
+			if(maxErrorBackoff!=null){
+				options.setMaxErrorBackoff(maxErrorBackoff);
+			}
+			Integer staleIfError = resolve(attributes,"staleIfError",Integer.class);
+			if(staleIfError!=null){
+				options.setStaleIfError(staleIfError);
+			}
+			Object carryOvera = resolve(attributes,"carryOver");
+			if(carryOvera!=null){
+				options.setCarryOver(Boolean.parseBoolean(carryOvera.toString()));
+			}
+			Object schemaa = resolve(attributes,"schema");
+			if(schemaa!=null){
+				options.setSchema(schemaa.toString());
+			}
+		}
+		return classLoader.getCache(name, loader, options);
+	}
+	
+	/**
+	 * Resolve a numeric attribute such as a number of seconds, returning -1 if it is not set
+	 */
+	@SuppressWarnings("rawtypes")
+	protected int resolveInt(Map attributes, String name){
+		Object value = resolve(attributes,name);
+		if(value==null){
+			return -1;
+		}
+		if(value instanceof Number){
+			return ((Number)value).intValue();
 		}
+		return Integer.parseInt(value.toString());
+	}
+	
+	@SuppressWarnings({"rawtypes","unchecked"})
+	public Object tag(Map attributes, Closure body) throws Exception {
+		
+		int refresh = resolveInt(attributes,"refresh");
+		int ttl = resolveInt(attributes,"ttl");
+		int max = resolveInt(attributes,"max");
 		Object keya = resolve(attributes,"key");
 		Object keysa = resolve(attributes,"keys");
 		Object vara = attributes.get(VAR);
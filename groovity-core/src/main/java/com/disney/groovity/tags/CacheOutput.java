@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.tags;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.disney.groovity.GroovityConstants;
+import com.disney.groovity.Taggable;
+import com.disney.groovity.doc.Attr;
+import com.disney.groovity.doc.Tag;
+import com.disney.groovity.util.FragmentWriter;
+import com.disney.groovity.util.TemplateFragment;
+
+import groovy.lang.Closure;
+/**
+ * Cache the rendered output of the body for a key, writing the cached output in place of running the body
+ * <p>
+ * cacheOutput( <ul>	
+ *	<li><b>key</b>: 
+ *	the key the output is cached under, covering everything the output of the body depends on,</li>	
+ *	<li><i>name</i>: 
+ *	specify a named cache to use, defaults to 'outputCache',</li>	
+ *	<li><i>ttl</i>: 
+ *	specify seconds until cached output is evicted and the body is rendered again,</li>	
+ *	<li><i>max</i>: 
+ *	maximum number of outputs to store in this cache,</li>
+ *	<li><i>timeout</i>: 
+ *	seconds to wait for another request already rendering the same key before rendering it here, defaults to 30,</li>
+ *	</ul>{
+ *	<blockquote>// the template to render and cache</blockquote>
+ * 	});
+ *	
+ *	<p>Cached output is kept pre-encoded, so it is copied into byte-oriented response writers without encoding
+ *	or escaping it again.  cacheRemove with the same name and key drops the output, and cacheRefresh marks it so
+ *	the body is rendered again on the next request, since rendering needs the variables of the request.  Other 
+ *	options of the cache tag, such as store and snapshot, apply to the output cache as well.  Concurrent requests
+ *	that miss the same key wait for the first one to render it rather than rendering it again.
+ *	
+ *	<p>Sample
+ *	<pre>
+ *	&lt;~ &lt;g:cacheOutput key=&quot;${locale}&quot; name=&quot;nav&quot; ttl=&quot;300&quot;&gt;
+ *		&lt;nav&gt;&lt;g:each var=&quot;link&quot; in=&quot;${links}&quot;&gt;&lt;a href=&quot;${link.href}&quot;&gt;${link.title}&lt;/a&gt;&lt;/g:each&gt;&lt;/nav&gt;
+ *	&lt;/g:cacheOutput&gt; ~&gt;
+ *	</pre>	
+ * 
+ * @author Alex Vigdor
+ */
+@Tag(
+	info="Cache the rendered output of the body for a key, writing the cached output in place of running the body",
+	body="the template to render and cache",
+	sample="<~ <g:cacheOutput key=\"${locale}\" name=\"nav\" ttl=\"300\">\n" + 
+			"\t<nav><g:each var=\"link\" in=\"${links}\"><a href=\"${link.href}\">${link.title}</a></g:each></nav>\n" + 
+			"</g:cacheOutput> ~>",
+	attrs={
+			@Attr(name="key",required=true,info="the key the output is cached under, covering everything the output of the body depends on"),
+			@Attr(name="name",required=false,info="specify a named cache to use, defaults to 'outputCache'"),
+			@Attr(name="ttl",required=false,info="specify seconds until cached output is evicted and the body is rendered again"),
+			@Attr(name="max",required=false,info="maximum number of outputs to store in this cache"),
+			@Attr(name="timeout",required=false,info="seconds to wait for another request already rendering the same key before rendering it here, defaults to 30")
+	}
+)
+public class CacheOutput extends Cache implements Taggable{
+	//rendering depends on the calling request, so a refresh only clears the output for the next request to render
+	@SuppressWarnings("rawtypes")
+	private static final Closure CLEAR_ON_REFRESH = new Closure(null) {
+		private static final long serialVersionUID = -3093167014364528718L;
+
+		@SuppressWarnings("unused")
+		public Object doCall(Object map) {
+			return null;
+		}
+	};
+	static final int DEFAULT_RENDER_WAIT_SECONDS = 30;
+	//renders in progress by cache and key, so concurrent misses wait for a single render
+	private final ConcurrentHashMap<List<Object>, Render> rendering = new ConcurrentHashMap<>();
+	
+	@Override
+	protected String getDefaultCacheName(){
+		return "outputCache";
+	}
+	
+	@SuppressWarnings("rawtypes")
+	public Object tag(Map attributes, Closure body) throws Exception {
+		Object keya = resolve(attributes,"key");
+		if(keya==null){
+			throw new IllegalArgumentException("cacheOutput requires a key attribute");
+		}
+		final Object out = get(body,GroovityConstants.OUT);
+		if(out==null){
+			throw new IllegalArgumentException("cacheOutput requires non-null 'out'");
+		}
+		int ttl = resolveInt(attributes,"ttl");
+		int max = resolveInt(attributes,"max");
+		com.disney.groovity.cache.Cache cache = getCache(attributes, body, CLEAR_ON_REFRESH, ttl, max);
+		Object cached = cache.get(Arrays.asList(keya), -1, ttl).get(keya);
+		TemplateFragment output;
+		if(cached==null){
+			int timeout = resolveInt(attributes,"timeout");
+			output = renderOnce(cache, keya, body, out, timeout > 0 ? timeout : DEFAULT_RENDER_WAIT_SECONDS);
+		}
+		else if(cached instanceof TemplateFragment){
+			output = (TemplateFragment) cached;
+		}
+		else{
+			throw new IllegalArgumentException("cacheOutput found a value that is not rendered output for "+keya+", use a cache name that is not shared with the cache tag");
+		}
+		if(out instanceof FragmentWriter){
+			((FragmentWriter)out).writeFragment(output);
+		}
+		else{
+			((Writer)out).write(output.toString());
+		}
+		return null;
+	}
+	
+	@SuppressWarnings("rawtypes")
+	private TemplateFragment renderOnce(com.disney.groovity.cache.Cache cache, Object key, Closure body, Object out, int timeout) throws Exception {
+		final List<Object> renderKey = Arrays.asList(cache, key);
+		final Render render = new Render();
+		final Render inProgress = rendering.putIfAbsent(renderKey, render);
+		if(inProgress!=null){
+			if(inProgress.thread==render.thread){
+				//a nested cacheOutput for the same key would otherwise wait on itself
+				return render(body, out);
+			}
+			try{
+				return inProgress.future.get(timeout, TimeUnit.SECONDS);
+			}
+			catch(ExecutionException | TimeoutException e){
+				//the other render failed, which may not apply to this request, or is taking too long
+				return render(body, out);
+			}
+		}
+		try{
+			TemplateFragment output = render(body, out);
+			cache.put(key, output);
+			render.future.complete(output);
+			return output;
+		}
+		catch(Throwable th){
+			render.future.completeExceptionally(th);
+			throw th;
+		}
+		finally{
+			rendering.remove(renderKey, render);
+		}
+	}
+	
+	@SuppressWarnings("rawtypes")
+	private TemplateFragment render(Closure body, Object out){
+		StringWriter writer = new StringWriter();
+		bind(body,OUT, writer);
+		try{
+			body.call();
+		}
+		finally{
+			bind(body,OUT, out);
+		}
+		return new TemplateFragment(writer.toString());
+	}
+	
+	private static final class Render{
+		final Thread thread = Thread.currentThread();
+		final CompletableFuture<TemplateFragment> future = new CompletableFuture<>();
+	}
+}
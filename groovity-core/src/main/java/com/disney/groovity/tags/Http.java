@@ -108,6 +108,7 @@ import com.disney.groovity.doc.Tag;
 import com.disney.groovity.model.ModelJsonWriter;
 import com.disney.groovity.model.ModelXmlWriter;
 import com.disney.groovity.stats.GroovityStatistics;
+import com.disney.groovity.tags.Await.AwaitContext;
 import com.disney.groovity.tags.Credentials.UserPass;
 import com.disney.groovity.util.ScriptHelper;
 import com.disney.http.auth.client.signer.HttpSignatureSigner;
@@ -290,6 +291,12 @@ public class Http implements Taggable {
 		}
 		final HttpClientContext fContext = clientContext;
 		ScriptHelper context = getScriptHelper(body);
+		final AwaitContext scope = AwaitContext.scope(context.getBinding().getVariables());
+		if(scope!=null){
+			scope.checkCancelled();
+		}
+		//requests started within an await scope must finish before its deadline
+		final long timeoutMillis = scope!=null ? scope.remainingMillis(timeoutSeconds*1000L) : timeoutSeconds*1000L;
 		Object oldOut = get(context,OUT);
 			//execute body to assemble URL params, headers, post body
 			Map variables = context.getBinding().getVariables();
@@ -560,9 +567,9 @@ public class Http implements Taggable {
 			Callable<Object> requester = new Callable(){
 				public Object call() throws Exception {
 					TimeoutTask timeoutTask = null;
-					if(timeoutSeconds > 0){
+					if(timeoutMillis > 0){
 						timeoutTask = new TimeoutTask(request);
-						timeoutTimer.schedule(timeoutTask, timeoutSeconds*1000);
+						timeoutTimer.schedule(timeoutTask, timeoutMillis);
 					}
 					try{
 						Binding oldThreadBinding = null;
@@ -625,7 +632,12 @@ public class Http implements Taggable {
 
 					@Override
 					public boolean cancel(boolean mayInterruptIfRunning) {
-						return f.cancel(mayInterruptIfRunning);
+						boolean cancelled = f.cancel(mayInterruptIfRunning);
+						if(cancelled){
+							//a blocking socket read will not notice the interrupt
+							request.abort();
+						}
+						return cancelled;
 					}
 
 					@Override
@@ -660,14 +672,21 @@ public class Http implements Taggable {
 					}
 					
 				};
+				if(scope!=null){
+					scope.link("http", (Future<?>) responseVar);
+				}
 			}
 			else{
 				//return the parsed/handled response object
+				final Future<?> link = scope!=null ? scope.linkAction("http", request::abort) : null;
 				GroovityStatistics.startExecution("http(sync)");
 				try {
 					responseVar = requester.call();
 				}finally {
 					GroovityStatistics.endExecution();
+					if(link!=null){
+						scope.unlink(link);
+					}
 				}
 			}
 			if(varName!=null){
@@ -24,13 +24,21 @@
 package com.disney.groovity.tags;
 
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
+import com.disney.groovity.Groovity;
 import com.disney.groovity.Taggable;
 import com.disney.groovity.doc.Attr;
 import com.disney.groovity.doc.Tag;
+import com.disney.groovity.tags.Await.AwaitContext;
 import com.disney.groovity.util.AsyncChannel;
+import com.disney.groovity.util.ChannelRouter;
+import com.disney.groovity.util.DurableChannelStore;
+import com.disney.groovity.util.ScriptHelper;
 
+import groovy.lang.Binding;
 import groovy.lang.Closure;
 /**
  * Offer a message to acceptor queues for asynchronous processing
@@ -42,6 +50,8 @@ import groovy.lang.Closure;
  *	The name of a registered channel topic to distribute the message to, or a direct reference to an AsyncChannel opened by an accept() call,</li>	
  *	<li><i>timeout</i>: 
  *	number of seconds to try and enqueue the message to acceptors,</li>
+ *	<li><i>durable</i>: 
+ *	Optionally, true to log the message for a named channel to the groovity channel directory even if no durable acceptor is open yet,</li>
  *  </ul>{
  *	<blockquote>// optional alternative to value attribute, the streaming output or return value of the body closure may be used to produce the message value</blockquote>
  * 	});
@@ -71,10 +81,25 @@ import groovy.lang.Closure;
 						name = "timeout", 
 						info="number of seconds to try and enqueue the message to acceptors",
 						required = false
+				),
+				@Attr(
+						name = "durable", 
+						info="Optionally, true to log the message for a named channel to the groovity channel directory even if no durable acceptor is open yet",
+						required = false
 				)
 			} 
 	)
 public class Offer implements Taggable{
+	private static final Logger log = Logger.getLogger(Offer.class.getName());
+	ChannelRouter channelRouter = AsyncChannel.DEFAULT_ROUTER;
+	DurableChannelStore durableChannelStore;
+	volatile boolean warnedNoChannelDirectory = false;
+
+	@Override
+	public void setGroovity(Groovity groovity) {
+		this.channelRouter = groovity.getChannelRouter();
+		this.durableChannelStore = groovity.getDurableChannelStore();
+	}
 
 	@SuppressWarnings("rawtypes")
 	@Override
@@ -88,13 +113,81 @@ public class Offer implements Taggable{
 			value = body;
 		}
 		final Integer timeoutSeconds = resolve(attributes, "timeout", Integer.class);
+		final Map scopeVariables = getScopeVariables(body);
+		final AwaitContext scope = scopeVariables!=null ? AwaitContext.scope(scopeVariables) : null;
+		if(scope==null){
+			offer(channel, value, timeoutSeconds!=null ? timeoutSeconds*1000L : -1, attributes);
+			return null;
+		}
+		scope.checkCancelled();
+		//an offer blocked on a full channel is interrupted if the await scope fails, and gives up at its deadline
+		final OfferInterrupt interrupt = new OfferInterrupt(Thread.currentThread());
+		final Future<?> link = scope.linkAction("offer", interrupt);
+		try{
+			offer(channel, value, scope.remainingMillis(timeoutSeconds!=null ? timeoutSeconds*1000L : -1), attributes);
+		}
+		finally{
+			if(interrupt.finish()){
+				//the scope failed after the offer completed; don't leak the interrupt to unrelated code
+				Thread.interrupted();
+			}
+			scope.unlink(link);
+		}
+		return null;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private Map getScopeVariables(Closure body){
+		if(body!=null){
+			return getScriptHelper(body).getBinding().getVariables();
+		}
+		Binding binding = ScriptHelper.THREAD_BINDING.get();
+		return binding!=null ? binding.getVariables() : null;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void offer(Object channel, Object value, long timeoutMillis, Map attributes) throws Exception {
 		if(channel instanceof AsyncChannel){
-			((AsyncChannel)channel).offer(value, timeoutSeconds!=null ? timeoutSeconds : -1, TimeUnit.SECONDS);
+			((AsyncChannel)channel).offer(value, timeoutMillis, TimeUnit.MILLISECONDS);
 		}
 		else{
-			AsyncChannel.offer(channel,value, timeoutSeconds!=null ? timeoutSeconds : -1, TimeUnit.SECONDS);
+			Object durable = resolve(attributes, "durable");
+			if(durable!=null && Boolean.parseBoolean(durable.toString())){
+				if(durableChannelStore!=null){
+					durableChannelStore.open(channel);
+				}
+				else if(!warnedNoChannelDirectory){
+					warnedNoChannelDirectory = true;
+					log.warning("No channel directory configured, durable messages for channel "+channel+" and others will be held in memory");
+				}
+			}
+			channelRouter.offer(channel,value, timeoutMillis, TimeUnit.MILLISECONDS);
 		}
-		return null;
 	}
 
+	/**
+	 * Interrupts the offering thread only while the offer is still in progress
+	 */
+	private static class OfferInterrupt implements Runnable{
+		private final Thread thread;
+		private boolean active = true;
+		private boolean fired = false;
+
+		private OfferInterrupt(Thread thread){
+			this.thread = thread;
+		}
+
+		@Override
+		public synchronized void run() {
+			if(active){
+				fired = true;
+				thread.interrupt();
+			}
+		}
+
+		private synchronized boolean finish(){
+			active = false;
+			return fired;
+		}
+	}
 }
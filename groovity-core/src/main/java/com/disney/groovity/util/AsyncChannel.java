@@ -24,6 +24,7 @@
 package com.disney.groovity.util;
 
 import com.disney.groovity.GroovityConstants;
+import com.disney.groovity.cache.CacheSerialization;
 import com.disney.groovity.stats.GroovityStatistics;
 import com.disney.groovity.stats.GroovityStatistics.Execution;
 
@@ -31,35 +32,56 @@ import groovy.lang.Binding;
 import groovy.lang.Closure;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.NotSerializableException;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Represents an asynchronous message queue
+ * Represents an asynchronous message queue; messages are buffered in a lock-free {@link MpscMailbox} and
+ * the channel is scheduled on its executor at most once at a time, tracked by an atomic scheduling state.
+ * <p>
+ * A durable channel instead reads its messages from a {@link DurableChannelLog} and acknowledges each one once
+ * the handler has processed it; closing a durable channel leaves unprocessed messages in the log for the next
+ * acceptor, and messages that cannot be serialized fall back to the in-memory mailbox.
  *
  * @author Alex Vigdor
  */
 public class AsyncChannel implements Closeable, GroovityConstants{
 	public static enum Policy{ drop, evict, block }
 	public static final String ASYNC_CHANNEL_OBSERVER_KEY = "__Async.Channel.Observer__";
-	public static final ConcurrentHashMap<Object, Collection<AsyncChannel>> ASYNC_CHANNEL_ROUTING = new ConcurrentHashMap<>();
+	public static final ChannelRouter DEFAULT_ROUTER = new ChannelRouter();
+	public static final ConcurrentHashMap<Object, Collection<AsyncChannel>> ASYNC_CHANNEL_ROUTING = DEFAULT_ROUTER.routes;
 	private static final Logger log = Logger.getLogger(AsyncChannel.class.getName());
+	private static final int IDLE = 0;
+	private static final int SCHEDULED = 1;
+	//upper bound on how long a blocked producer parks before re-checking for space
+	private static final long MAX_BLOCKED_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
 	final Object key;
-	final public LinkedBlockingQueue<AsyncMessage> messageQueue;
+	final ChannelRouter router;
+	final MpscMailbox<AsyncMessage> mailbox;
+	final DurableChannelLog durableLog;
 	final public Policy policy;
+	final int batchSize;
+	final long lingerNanos;
 	final AtomicBoolean closed = new AtomicBoolean(false);
 	final AtomicBoolean halted = new AtomicBoolean(false);
 	@SuppressWarnings("rawtypes")
@@ -69,9 +91,13 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 	final Binding binding;
 	@SuppressWarnings("rawtypes")
 	final Map variables;
-	final AtomicBoolean dirty = new AtomicBoolean(false);
-	final ReentrantLock dirtyLock = new ReentrantLock();
-	final DeadlockFreeExecutor asyncChannelExecutor;
+	final AtomicInteger schedule = new AtomicInteger(IDLE);
+	final AtomicBoolean finished = new AtomicBoolean(false);
+	final ConcurrentLinkedQueue<Thread> blockedProducers = new ConcurrentLinkedQueue<>();
+	//set while the processor is parked waiting to fill a batch, along with how many queued messages would complete it
+	volatile Thread lingeringThread;
+	volatile int lingerWanted;
+	final ExecutorService asyncChannelExecutor;
 	final String statsLabel;
 	final Execution parentStack;
 	AsyncChannelObserver observer;
@@ -98,19 +124,31 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 	Thread runningThread;
 	Object lastResult;
 	Throwable error;
+	final ReentrantLock processing = new ReentrantLock();
 	//we'll keep the Runnable private so nobody can call externally
 	final Runnable processor = new Runnable(){
 		
 		/**
 		 * To be called by messaging threads, do the work of invoking the handler on messages in the queue,
-		 * does NOT wait for work, just handles already queued work and closes the acceptor if either the 
+		 * does NOT wait for work beyond an optional batch linger, just handles already queued work and closes the acceptor if either the 
 		 * queue contains a shutdown signal OR the handler returns a falsy value
 		 * 
 		 * @throws Exception
 		 */
 		@SuppressWarnings("unchecked")
 		@Override
-		public synchronized void run() {
+		public void run() {
+			//a lock rather than a monitor, so a virtual thread blocking in the handler doesn't pin its carrier thread
+			processing.lock();
+			try{
+				process();
+			}
+			finally{
+				processing.unlock();
+			}
+		}
+		
+		private void process() {
 			runningThread = Thread.currentThread();
 			Binding oldThreadBinding = ScriptHelper.THREAD_BINDING.get();
 			ScriptHelper.THREAD_BINDING.set(binding);
@@ -118,24 +156,11 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 				final Execution restoreStack = parentStack !=null ? GroovityStatistics.registerStack(parentStack) : null;
 				Object oldIt = variables.get("it");
 				try{
-					AsyncMessage message = null;
-					while(!halted.get() && (message = poll())!=null){
-						GroovityStatistics.startExecution(statsLabel);
-						try{
-							long startTime = System.currentTimeMillis();
-							variables.put("it",message.payload);
-							lastResult = handler.call(message.payload);
-							long endTime = System.currentTimeMillis();
-							long processingTime = endTime-startTime;
-							if(asyncChannelManager!=null){
-								asyncChannelManager.updateMBeanForMessageProcessed();
-								asyncChannelManager.updateMBeanForMessageProcessingTime(processingTime);
-							}
-						}
-						finally{
-							GroovityStatistics.endExecution();
-							message.consumed();
-						}
+					if(batchSize>1){
+						processBatches();
+					}
+					else{
+						processMessages();
 					}
 				}
 				catch(Exception e){
@@ -148,7 +173,17 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 						GroovityStatistics.registerStack(restoreStack);
 					}
 				}
-				if(closed.get()){
+				if(halted.get() || finished.get()){
+					//discard anything left over after a halt, or that slipped in after the channel completed
+					AsyncMessage m;
+					while((m = mailbox.poll())!=null){
+						m.dropped();
+					}
+				}
+				if(closed.get() && finished.compareAndSet(false, true)){
+					if(durableLog!=null){
+						durableLog.detach(AsyncChannel.this);
+					}
 					if(closer!=null){
 						//give handler the shutdown signal, a chance to clean resources, flush buffers, etc.
 						lastResult = closer.call(lastResult);
@@ -180,6 +215,12 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 			}
 			finally{
 				runningThread=null;
+				//go idle, then pick up any message published after our last poll whose producer saw us still scheduled,
+				//or a close that landed after we checked for it
+				schedule.set(IDLE);
+				if(hasPending() || (closed.get() && !finished.get())){
+					scheduleProcessing();
+				}
 				if(oldThreadBinding==null){
 					ScriptHelper.THREAD_BINDING.remove();
 				}
@@ -191,6 +232,194 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 		
 	};
 
+	@SuppressWarnings("unchecked")
+	private void processMessages(){
+		AsyncMessage message = null;
+		while(!halted.get() && !finished.get() && (message = nextMessage())!=null){
+			GroovityStatistics.startExecution(statsLabel);
+			try{
+				long startTime = System.currentTimeMillis();
+				variables.put("it",message.payload);
+				lastResult = handler.call(message.payload);
+				long endTime = System.currentTimeMillis();
+				if(message.sequence>=0){
+					durableLog.ack(message.sequence);
+				}
+				long processingTime = endTime-startTime;
+				if(asyncChannelManager!=null){
+					asyncChannelManager.updateMBeanForMessageProcessed();
+					asyncChannelManager.updateMBeanForMessageProcessingTime(processingTime);
+				}
+			}
+			finally{
+				GroovityStatistics.endExecution();
+				message.consumed();
+			}
+		}
+	}
+
+	/**
+	 * Batch mode: hand the handler a list of up to batchSize payloads per call, lingering up to lingerNanos
+	 * for a partial batch to fill; the message counters are per message while processing time is per batch
+	 */
+	@SuppressWarnings("unchecked")
+	private void processBatches(){
+		final List<AsyncMessage> batch = new ArrayList<>(batchSize);
+		AsyncMessage message = null;
+		while(!halted.get() && !finished.get() && (message = nextMessage())!=null){
+			batch.add(message);
+			long waitTime = fillBatch(batch);
+			//each batch gets its own list, since the handler may keep it or hand it off to another thread
+			final List<Object> payloads = new ArrayList<>(batch.size());
+			for(int i=0;i<batch.size();i++){
+				payloads.add(batch.get(i).payload);
+			}
+			GroovityStatistics.startExecution(statsLabel);
+			try{
+				long startTime = System.currentTimeMillis();
+				variables.put("it",payloads);
+				lastResult = handler.call(payloads);
+				long endTime = System.currentTimeMillis();
+				long lastSequence = -1;
+				for(int i=0;i<batch.size();i++){
+					lastSequence = Math.max(lastSequence, batch.get(i).sequence);
+				}
+				if(lastSequence>=0){
+					durableLog.ack(lastSequence);
+				}
+				if(asyncChannelManager!=null){
+					for(int i=0;i<batch.size();i++){
+						asyncChannelManager.updateMBeanForMessageProcessed();
+					}
+					asyncChannelManager.updateMBeanForMessageProcessingTime(endTime-startTime);
+					asyncChannelManager.updateMBeanForBatchProcessed(batch.size(), TimeUnit.NANOSECONDS.toMillis(waitTime));
+				}
+			}
+			finally{
+				GroovityStatistics.endExecution();
+				for(int i=0;i<batch.size();i++){
+					batch.get(i).consumed();
+				}
+				batch.clear();
+			}
+		}
+	}
+
+	//top up a batch from the mailbox, lingering for more messages if allowed; returns nanoseconds spent waiting
+	private long fillBatch(List<AsyncMessage> batch){
+		long start = 0;
+		long deadline = 0;
+		while(batch.size()<batchSize){
+			AsyncMessage m = nextMessage();
+			if(m!=null){
+				batch.add(m);
+				continue;
+			}
+			if(lingerNanos<=0 || closed.get() || halted.get()){
+				break;
+			}
+			long now = System.nanoTime();
+			if(start==0){
+				start = now;
+				deadline = now + lingerNanos;
+			}
+			long remaining = deadline - now;
+			if(remaining<=0){
+				break;
+			}
+			lingerWanted = batchSize - batch.size();
+			lingeringThread = Thread.currentThread();
+			try{
+				//recheck after advertising, producers check lingeringThread after publishing
+				if(queuedMessages() < lingerWanted && !closed.get()){
+					LockSupport.parkNanos(this, remaining);
+				}
+			}
+			finally{
+				lingeringThread = null;
+			}
+			if(Thread.interrupted()){
+				//errorCondition interrupts the running thread; let the handler observe it
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return start==0 ? 0 : System.nanoTime() - start;
+	}
+
+	//called by producers after enqueueing, wake a lingering processor once its batch can be filled
+	private void wakeLingerer(){
+		Thread t = lingeringThread;
+		if(t!=null && queuedMessages() >= lingerWanted){
+			LockSupport.unpark(t);
+		}
+	}
+
+	//the next message to process, from the mailbox or, for durable channels that are still open, the log
+	private AsyncMessage nextMessage(){
+		AsyncMessage m = mailbox.poll();
+		if(m!=null){
+			unblockProducer();
+			return m;
+		}
+		if(durableLog==null){
+			return null;
+		}
+		while(!closed.get()){
+			DurableChannelLog.Record record = durableLog.poll();
+			if(record==null){
+				return null;
+			}
+			try{
+				Object payload = CacheSerialization.deserialize(record.data, handler.getClass().getClassLoader());
+				return new AsyncMessage(payload, record.sequence);
+			}
+			catch(Exception e){
+				//acknowledge so an unreadable message is not replayed forever
+				log.log(Level.SEVERE, "Discarding unreadable message "+record.sequence+" from durable channel "+key, e);
+				durableLog.ack(record.sequence);
+				updateMBeanForMessageDropped();
+			}
+		}
+		return null;
+	}
+
+	private boolean hasPending(){
+		if(!mailbox.isEmpty()){
+			return true;
+		}
+		return durableLog!=null && !closed.get() && durableLog.unread()>0;
+	}
+
+	int queuedMessages(){
+		if(durableLog!=null){
+			return mailbox.size() + durableLog.pending();
+		}
+		return mailbox.size();
+	}
+
+	int queueCapacity(){
+		return durableLog!=null ? Integer.MAX_VALUE : mailbox.capacity();
+	}
+
+	//called by the durable log after a message for this channel was appended
+	void durableAppended(){
+		if(asyncChannelManager!=null) {
+			asyncChannelManager.updateMBeanForMessageEnqueued();
+		}
+		if(batchSize>1){
+			wakeLingerer();
+		}
+		scheduleProcessing();
+	}
+
+	//called by the durable log when retention discarded messages this channel had not read
+	void durableDropped(long count){
+		for(long i=0;i<count;i++){
+			updateMBeanForMessageDropped();
+		}
+	}
+
 	/**
 	 * Returns a future that can be used to block and wait for this channel to close
 	 * @return
@@ -208,10 +437,14 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 	}
 	
 	@SuppressWarnings("rawtypes")
-	private AsyncChannel(DeadlockFreeExecutor asyncChannelExecutor, Object key, int queueSize, Policy policy, Closure handler, Closure closer, Object owner, Binding binding, Execution parentStack){
+	private AsyncChannel(ChannelRouter router, DurableChannelLog durableLog, ExecutorService asyncChannelExecutor, Object key, int queueSize, Policy policy, int batchSize, long lingerMillis, Closure handler, Closure closer, Object owner, Binding binding, Execution parentStack){
+		this.router = router;
+		this.durableLog = durableLog;
 		this.asyncChannelExecutor = asyncChannelExecutor;
-		this.messageQueue = new LinkedBlockingQueue<>(queueSize>0?queueSize:Integer.MAX_VALUE);
+		this.mailbox = MpscMailbox.create(queueSize);
 		this.policy=policy;
+		this.batchSize = Math.max(1, batchSize);
+		this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMillis));
 		this.key=key;
 		this.handler = handler.rehydrate(this,owner, owner);
 		this.closer=closer !=null ? closer.rehydrate(this,owner, owner) : null;
@@ -245,19 +478,52 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 	}
 	
 	@SuppressWarnings("rawtypes")
-	public static AsyncChannel open(DeadlockFreeExecutor asyncChannelExecutor, Object key, int queueSize, Policy policy, Closure handler, Closure closer, Object owner, Binding binding, Execution parentStack){
-		AsyncChannel channel = new AsyncChannel(asyncChannelExecutor, key, queueSize, policy, handler, closer, owner, binding,parentStack);
-		if(key!=null){
-			Collection<AsyncChannel> channels = ASYNC_CHANNEL_ROUTING.get(key);
-			if(channels==null) {
-				channels = ConcurrentHashMap.newKeySet();
-				Collection<AsyncChannel> oldChannels = ASYNC_CHANNEL_ROUTING.putIfAbsent(key, channels);
-				if(oldChannels!=null) {
-					channels = oldChannels;
-				}
+	public static AsyncChannel open(ExecutorService asyncChannelExecutor, Object key, int queueSize, Policy policy, Closure handler, Closure closer, Object owner, Binding binding, Execution parentStack){
+		return open(DEFAULT_ROUTER, asyncChannelExecutor, key, queueSize, policy, handler, closer, owner, binding, parentStack);
+	}
+	
+	@SuppressWarnings("rawtypes")
+	public static AsyncChannel open(ChannelRouter router, ExecutorService asyncChannelExecutor, Object key, int queueSize, Policy policy, Closure handler, Closure closer, Object owner, Binding binding, Execution parentStack){
+		return open(router, asyncChannelExecutor, key, queueSize, policy, 1, 0, handler, closer, owner, binding, parentStack);
+	}
+
+	/**
+	 * Open a channel that passes the handler a List of up to batchSize messages per call
+	 *
+	 * @param batchSize the maximum number of messages per handler call, 1 to pass individual messages rather than lists
+	 * @param lingerMillis how long to wait for more messages to fill a partial batch, 0 to pass whatever is already queued
+	 */
+	@SuppressWarnings("rawtypes")
+	public static AsyncChannel open(ChannelRouter router, ExecutorService asyncChannelExecutor, Object key, int queueSize, Policy policy, int batchSize, long lingerMillis, Closure handler, Closure closer, Object owner, Binding binding, Execution parentStack){
+		return open(router, null, asyncChannelExecutor, key, queueSize, policy, batchSize, lingerMillis, handler, closer, owner, binding, parentStack);
+	}
+
+	/**
+	 * Open a channel, optionally reading from a durable log instead of subscribing to the router; unacknowledged
+	 * messages already in the log are replayed right away
+	 *
+	 * @param durableLog the log of the named channel to consume, or null for an in-memory channel
+	 * @throws IllegalStateException if the durable log already has an open acceptor
+	 */
+	@SuppressWarnings("rawtypes")
+	public static AsyncChannel open(ChannelRouter router, DurableChannelLog durableLog, ExecutorService asyncChannelExecutor, Object key, int queueSize, Policy policy, int batchSize, long lingerMillis, Closure handler, Closure closer, Object owner, Binding binding, Execution parentStack){
+		AsyncChannel channel = new AsyncChannel(router, durableLog, asyncChannelExecutor, key, queueSize, policy, batchSize, lingerMillis, handler, closer, owner, binding,parentStack);
+		if(durableLog!=null){
+			try{
+				durableLog.attach(channel);
+			}
+			catch(IllegalStateException e){
+				channel.close();
+				throw e;
+			}
+			if(durableLog.unread()>0){
+				channel.scheduleProcessing();
 			}
-			channels.add(channel);
-		}else{
+		}
+		else if(key!=null){
+			router.register(key, channel);
+		}
+		if(key==null){
 			//update AnonymousChannel MBean when anonymous channel is opened
 			asyncChannelAnonymousManager.incrementNumberOfTotalChannelsOpened();
 		}
@@ -285,23 +551,23 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 	
 	private void close(boolean markDirty, boolean clearQueue) {
 		if(closed.compareAndSet(false, true)){
-			if(key!=null){
-				Collection<AsyncChannel> as = ASYNC_CHANNEL_ROUTING.get(key);
-				if(as!=null){
-					as.remove(this);
-					if(as.isEmpty()){
-						ASYNC_CHANNEL_ROUTING.remove(key);
-					}
-				}
+			if(key!=null && durableLog==null){
+				router.unregister(key, this);
 			}
 			if(clearQueue){
-				AsyncMessage m;
-				while((m = messageQueue.poll())!=null){
-					m.dropped();
-				}
+				//only the processor may drain the mailbox, so flag it to discard the remaining messages
+				halted.set(true);
+			}
+			for(Thread t: blockedProducers){
+				LockSupport.unpark(t);
+			}
+			Thread lingerer = lingeringThread;
+			if(lingerer!=null){
+				//flush a partial batch right away
+				LockSupport.unpark(lingerer);
 			}
 			if(markDirty){
-				markDirty();
+				scheduleProcessing();
 			}
 		}
 	}
@@ -315,33 +581,51 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 		}
 	}
 	
-	private void markDirty(){
-		//lock to force consistency of dirty state
-		boolean submit = false;
-		dirtyLock.lock();
-		try{
-			submit = dirty.compareAndSet(false, true);
-		}
-		finally{
-			dirtyLock.unlock();
-		}
-		if(submit){
+	private void scheduleProcessing(){
+		//cheap read first so busy channels don't contend on the CAS
+		if(schedule.get()==IDLE && schedule.compareAndSet(IDLE, SCHEDULED)){
 			//schedule this acceptor for processing
 			asyncChannelExecutor.submit(processor);
 		}
 	}
-	//Poll for the head of the queue, and if the queue is clear set dirty to false
-	private AsyncMessage poll(){
-		dirtyLock.lock();
+
+	//called by the processor after taking a message, to hand the freed slot to a producer waiting under the block policy
+	private void unblockProducer(){
+		if(!blockedProducers.isEmpty()){
+			Thread t = blockedProducers.peek();
+			if(t!=null){
+				LockSupport.unpark(t);
+			}
+		}
+	}
+
+	//wait for room in the mailbox under the block policy; returns false if the channel closes while waiting
+	private boolean awaitCapacity(AsyncMessage message) throws InterruptedException{
+		final long deadline = message.timeout > 0 ? System.nanoTime() + message.unit.toNanos(message.timeout) : 0;
+		final Thread current = Thread.currentThread();
+		blockedProducers.add(current);
 		try{
-			AsyncMessage o = messageQueue.poll();
-			if(o==null){
-				dirty.compareAndSet(true, false);
+			while(!mailbox.offer(message)){
+				if(closed.get()){
+					return false;
+				}
+				if(Thread.interrupted()){
+					throw new InterruptedException();
+				}
+				long park = MAX_BLOCKED_PARK_NANOS;
+				if(deadline!=0){
+					long remaining = deadline - System.nanoTime();
+					if(remaining<=0){
+						throw new InterruptedException();
+					}
+					park = Math.min(park, remaining);
+				}
+				LockSupport.parkNanos(this, park);
 			}
-			return o;
+			return true;
 		}
 		finally{
-			dirtyLock.unlock();
+			blockedProducers.remove(current);
 		}
 	}
 	
@@ -360,7 +644,7 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 			}
 		}
 	}
-	private static Object unwrapMessage(Object message){
+	static Object unwrapMessage(Object message){
 		if(message instanceof Closure){
 			try{
 				@SuppressWarnings("rawtypes")
@@ -408,6 +692,20 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 		AsyncMessage am = new AsyncMessage(message, 1, timeout, unit);
 		return offerAsync(am);
 	}
+	
+	/**
+	 * Enqueue a message for an acceptor without waiting for room in a full blocking queue
+	 * 
+	 * @throws RejectedExecutionException if the queue is full and the policy is to block
+	 */
+	boolean offerNow(Object message) throws InterruptedException{
+		AsyncMessage am = new AsyncMessage(unwrapMessage(message), 1);
+		boolean taken = offerAsync(am);
+		if(!taken && am.rejected){
+			throw new RejectedExecutionException("No room for message in acceptor queue for channel "+key);
+		}
+		return taken;
+	}
 	private boolean offerAsync(AsyncMessage message) throws InterruptedException{
 		if(!closed.get()){
 			Object payload = unwrapMessage(message.payload);
@@ -420,7 +718,26 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 				errorCondition((Throwable) payload,true);
 				return true;
 			}
-			if(!messageQueue.offer(message)){
+			if(durableLog!=null){
+				try{
+					durableLog.append(payload);
+					message.consumed();
+					return true;
+				}
+				catch(NotSerializableException e){
+					//e.g. messages carrying callback closures, deliver them from memory instead
+					if(log.isLoggable(Level.FINE)){
+						log.log(Level.FINE, "Delivering unserializable message to durable channel "+key+" from memory", e);
+					}
+				}
+				catch(IOException e){
+					log.log(Level.SEVERE, "Unable to persist message for durable channel "+key, e);
+					updateMBeanForMessageDropped();
+					message.dropped();
+					return false;
+				}
+			}
+			if(!mailbox.offer(message)){
 				if(policy==Policy.drop){
 					message.dropped();
 					//update message dropped on MBean
@@ -428,8 +745,9 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 					return false;
 				}
 				if(policy==Policy.evict){
-					while(!messageQueue.offer(message)){
-						AsyncMessage discard = messageQueue.poll();
+					//only bounded mailboxes fill up, and those allow producers to poll the oldest message
+					while(!mailbox.offer(message)){
+						AsyncMessage discard = mailbox.poll();
 						if(discard!=null){
 							discard.dropped();
 							//update message evicted on MBean
@@ -437,16 +755,19 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 						}
 					}
 				}
+				else if(!message.wait){
+					//leave it to the caller to retry later
+					message.rejected = true;
+					message.dropped();
+					return false;
+				}
 				else{
 					//we've come to blocking
 					try{
-						if(message.timeout>0) {
-							if(!messageQueue.offer(message, message.timeout, message.unit)) {
-								throw new InterruptedException();
-							}
-						}
-						else{
-							messageQueue.put(message);
+						if(!awaitCapacity(message)){
+							updateMBeanForMessageDropped();
+							message.dropped();
+							return false;
 						}
 					}
 					catch (InterruptedException e) {
@@ -462,7 +783,10 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 			if(asyncChannelManager!=null) {
 				asyncChannelManager.updateMBeanForMessageEnqueued();
 			}
-			markDirty();
+			if(batchSize>1){
+				wakeLingerer();
+			}
+			scheduleProcessing();
 			return true;
 		}
 		//update message dropped on MBean
@@ -494,17 +818,35 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 	}
 	
 	public static boolean offer(Object channelKey, Object message, long timeout, TimeUnit unit) throws InterruptedException{
-		Collection<AsyncChannel> as = ASYNC_CHANNEL_ROUTING.get(channelKey);
-		if(as!=null && as.size()>0){
-			message = unwrapMessage(message);
-			AsyncMessage am = new AsyncMessage(message, as.size(), timeout, unit);
-			boolean taken = false;
-			for(AsyncChannel sub: as){
-				taken = sub.offerAsync(am) || taken;
-			}
-			return taken;
+		return DEFAULT_ROUTER.offer(channelKey, message, timeout, unit);
+	}
+	
+	//offer an already unwrapped message to a set of subscribed channels
+	static boolean deliver(Collection<AsyncChannel> as, Object message, long timeout, TimeUnit unit) throws InterruptedException{
+		AsyncMessage am = new AsyncMessage(message, as.size(), timeout, unit);
+		boolean taken = false;
+		for(AsyncChannel sub: as){
+			taken = sub.offerAsync(am) || taken;
 		}
-		return false;
+		return taken;
+	}
+	
+	/**
+	 * Offer an already unwrapped message to a set of subscribed channels without waiting for room in blocking queues;
+	 * acceptors that had no room lose the message if any other acceptor took it
+	 * 
+	 * @throws RejectedExecutionException if no acceptor took the message because blocking queues were full
+	 */
+	static boolean deliverNow(Collection<AsyncChannel> as, Object message) throws InterruptedException{
+		AsyncMessage am = new AsyncMessage(message, as.size());
+		boolean taken = false;
+		for(AsyncChannel sub: as){
+			taken = sub.offerAsync(am) || taken;
+		}
+		if(!taken && am.rejected){
+			throw new RejectedExecutionException("No room for message in acceptor queues");
+		}
+		return taken;
 	}
 	
 	private static class AsyncMessage{
@@ -512,11 +854,34 @@ public class AsyncChannel implements Closeable, GroovityConstants{
 		final AtomicInteger consumers;
 		final long timeout;
 		final TimeUnit unit;
+		//false for messages that are rejected rather than wait for room in a blocking queue
+		final boolean wait;
+		volatile boolean rejected = false;
+		//position in the durable log, or -1 for messages delivered from memory
+		final long sequence;
 		public AsyncMessage(Object payload, int numConsumers, long timeout, TimeUnit unit){
 			this.payload=payload;
 			this.consumers = new AtomicInteger(numConsumers);
 			this.timeout=timeout;
 			this.unit=unit;
+			this.wait=true;
+			this.sequence=-1;
+		}
+		public AsyncMessage(Object payload, int numConsumers){
+			this.payload=payload;
+			this.consumers = new AtomicInteger(numConsumers);
+			this.timeout=-1;
+			this.unit=TimeUnit.SECONDS;
+			this.wait=false;
+			this.sequence=-1;
+		}
+		public AsyncMessage(Object payload, long sequence){
+			this.payload=payload;
+			this.consumers = new AtomicInteger(1);
+			this.timeout=-1;
+			this.unit=TimeUnit.SECONDS;
+			this.wait=true;
+			this.sequence=sequence;
 		}
 		public void consumed(){
 			this.consumers.decrementAndGet();
@@ -23,6 +23,9 @@
  *******************************************************************************/
 package com.disney.groovity.util;
 
+import com.disney.groovity.stats.GroovityMetrics;
+import com.disney.groovity.stats.MetricCollector;
+
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
@@ -56,6 +59,7 @@ public class AsyncChannelAnonymousManager implements AsyncChannelAnonymousManage
     public AsyncChannelAnonymousManager() {
         this.mbeanObjectName = getObjectName();
         this.registerAnonymousChannelMBean();
+        GroovityMetrics.register(mbeanObjectName.toString(), this::collect);
     }
 
     @Override
@@ -109,6 +113,14 @@ public class AsyncChannelAnonymousManager implements AsyncChannelAnonymousManage
         }
     }
 
+    /**
+     * reports anonymous channel counts to the metrics registry
+     */
+    public void collect(MetricCollector collector){
+        collector.counter("groovity_anonymous_channels_opened_total", "Anonymous channels opened", aggregateTotalChannelsOpened.get());
+        collector.counter("groovity_anonymous_channels_closed_total", "Anonymous channels closed", aggregateTotalChannelsClosed.get());
+    }
+
     /**
      * returns object name to be used for MBean registration
      */
@@ -23,7 +23,9 @@
  *******************************************************************************/
 package com.disney.groovity.util;
 
+import com.disney.groovity.stats.GroovityMetrics;
 import com.disney.groovity.stats.GroovityStatistics;
+import com.disney.groovity.stats.MetricCollector;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectInstance;
@@ -32,15 +34,17 @@ import javax.management.ObjectName;
 import java.io.UnsupportedEncodingException;
 import java.lang.management.ManagementFactory;
 import java.net.URLEncoder;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Implements {@link AsyncChannelManagerMBean}
+ * Implements {@link AsyncChannelManagerMBean}; times are kept as epoch milliseconds so that recording a message
+ * does not allocate, and are only converted to LocalDateTime when read.  Also reports to {@link GroovityMetrics}.
  *
  * @author Avi Herbstman
  */
@@ -54,37 +58,37 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
      */
     private final String channelName;
     /**
-     * stores the LocalDateTime when a named channel is opened
+     * stores the local date and time when a named channel is opened
      */
     private final LocalDateTime channelDateTimeOpened;
     /**
-     * stores the LocalDateTime when the last message was enqueued in a named channel
+     * stores the epoch millis when the last message was enqueued in a named channel
      */
-    private final AtomicReference<LocalDateTime> lastMessageEnqueuedTime;
+    private final AtomicLong lastMessageEnqueuedTime = new AtomicLong(0);
     /**
-     * stores the LocalDateTime when the first message was processed in a named channel
+     * stores the epoch millis when the first message was processed in a named channel
      */
-    private final AtomicReference<LocalDateTime> firstMessageProcessedTime;
+    private final AtomicLong firstMessageProcessedTime = new AtomicLong(0);
     /**
-     * stores the LocalDateTime when the last message was processed in a named channel
+     * stores the epoch millis when the last message was processed in a named channel
      */
-    private final AtomicReference<LocalDateTime> lastMessageProcessedTime;
+    private final AtomicLong lastMessageProcessedTime = new AtomicLong(0);
     /**
-     * stores the LocalDateTime when the first message was dropped from a named channel
+     * stores the epoch millis when the first message was dropped from a named channel
      */
-    private final AtomicReference<LocalDateTime> firstMessageDroppedTime;
+    private final AtomicLong firstMessageDroppedTime = new AtomicLong(0);
     /**
-     * stores the LocalDateTime when the last message was dropped from a named channel
+     * stores the epoch millis when the last message was dropped from a named channel
      */
-    private final AtomicReference<LocalDateTime> lastMessageDroppedTime;
+    private final AtomicLong lastMessageDroppedTime = new AtomicLong(0);
     /**
-     * stores the LocalDateTime when the first message was evicted from a named channel
+     * stores the epoch millis when the first message was evicted from a named channel
      */
-    private final AtomicReference<LocalDateTime> firstMessageEvictedTime;
+    private final AtomicLong firstMessageEvictedTime = new AtomicLong(0);
     /**
-     * stores the LocalDateTime when the last message was evicted from a named channel
+     * stores the epoch millis when the last message was evicted from a named channel
      */
-    private final AtomicReference<LocalDateTime> lastMessageEvictedTime;
+    private final AtomicLong lastMessageEvictedTime = new AtomicLong(0);
     /**
      * stores the AsyncChannel object of a named channel
      */
@@ -125,6 +129,30 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
      * stores in millis the max processing time of a message from a named channel
      */
     private final AtomicLong maxMessageProcessingTimeToMillis = new AtomicLong(0);
+    /**
+     * stores the maximum number of messages per handler call of a named channel
+     */
+    private final int batchSize;
+    /**
+     * stores the number of handler calls made with a batch of messages
+     */
+    private final AtomicInteger totalBatchesProcessed = new AtomicInteger(0);
+    /**
+     * stores the number of messages in the last batch
+     */
+    private final AtomicInteger lastBatchSize = new AtomicInteger(0);
+    /**
+     * stores the largest number of messages in a batch
+     */
+    private final AtomicInteger maxBatchSize = new AtomicInteger(0);
+    /**
+     * stores in millis the total time spent lingering to fill batches
+     */
+    private final AtomicLong totalBatchWaitTimeToMillis = new AtomicLong(0);
+    /**
+     * stores in millis the longest time spent lingering to fill a batch
+     */
+    private final AtomicLong maxBatchWaitTimeToMillis = new AtomicLong(0);
     /**
      * log
      */
@@ -140,14 +168,8 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
         this.asc = asyncChannel;
         this.channelName = asc.getKey().toString();
         this.channelDateTimeOpened = LocalDateTime.now();
-        this.firstMessageProcessedTime = new AtomicReference<>(null);
-        this.lastMessageProcessedTime = new AtomicReference<>(null);
-        this.lastMessageEnqueuedTime = new AtomicReference<>(null);
-        this.firstMessageDroppedTime = new AtomicReference<>(null);
-        this.lastMessageDroppedTime = new AtomicReference<>(null);
-        this.firstMessageEvictedTime = new AtomicReference<>(null);
-        this.lastMessageEvictedTime = new AtomicReference<>(null);
-        this.queueCapacity = asc.messageQueue.size()+asc.messageQueue.remainingCapacity();
+        this.queueCapacity = asc.queueCapacity();
+        this.batchSize = asc.batchSize;
         String mBeanName = asc.getKey().toString();
 		try {
 			mBeanName = URLEncoder.encode(mBeanName,"UTF-8");
@@ -173,41 +195,41 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
 
     @Override
     public int getCurrentNumOfMessages(){
-        return asc.messageQueue.size();
+        return asc.queuedMessages();
     }
     @Override
     public LocalDateTime getLastMessageProcessedTime(){
-        return lastMessageProcessedTime.get();
+        return toLocalDateTime(lastMessageProcessedTime.get());
     }
 
     @Override
     public LocalDateTime getLastMessageEnqueuedTime(){
-        return lastMessageEnqueuedTime.get();
+        return toLocalDateTime(lastMessageEnqueuedTime.get());
     }
 
     @Override
     public LocalDateTime getFirstMessageProcessedTime(){
-        return firstMessageProcessedTime.get();
+        return toLocalDateTime(firstMessageProcessedTime.get());
     }
 
     @Override
     public LocalDateTime getLastMessageDroppedTime(){
-        return lastMessageDroppedTime.get();
+        return toLocalDateTime(lastMessageDroppedTime.get());
     }
 
     @Override
     public LocalDateTime getFirstMessageDroppedTime(){
-        return firstMessageDroppedTime.get();
+        return toLocalDateTime(firstMessageDroppedTime.get());
     }
 
     @Override
     public LocalDateTime getLastMessageEvictedTime(){
-        return lastMessageEvictedTime.get();
+        return toLocalDateTime(lastMessageEvictedTime.get());
     }
 
     @Override
     public LocalDateTime getFirstMessageEvictedTime(){
-        return firstMessageEvictedTime.get();
+        return toLocalDateTime(firstMessageEvictedTime.get());
     }
 
     @Override
@@ -255,53 +277,101 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
         return channelContext;
     }
 
+    @Override
+    public int getBatchSize(){
+        return batchSize;
+    }
+
+    @Override
+    public int getTotalBatchesProcessed(){
+        return totalBatchesProcessed.get();
+    }
+
+    @Override
+    public int getLastBatchSize(){
+        return lastBatchSize.get();
+    }
+
+    @Override
+    public int getMaxBatchSize(){
+        return maxBatchSize.get();
+    }
+
+    @Override
+    public double getMeanBatchSize(){
+        int batches = totalBatchesProcessed.get();
+        if(batches==0){
+            return 0;
+        }
+        return (double) totalMessagesProcessed.get()/batches;
+    }
+
+    @Override
+    public double getTotalBatchWaitTimeToMillis(){
+        return (double) totalBatchWaitTimeToMillis.get();
+    }
+
+    @Override
+    public double getMaxBatchWaitTimeToMillis(){
+        return (double) maxBatchWaitTimeToMillis.get();
+    }
+
+    @Override
+    public double getMeanBatchWaitTimeToMillis(){
+        int batches = totalBatchesProcessed.get();
+        if(batches==0){
+            return 0;
+        }
+        return (double) totalBatchWaitTimeToMillis.get()/batches;
+    }
+
     /**
      * sets the LocalDateTime of the last message processed in a named channel
      */
     public void setLastMessageProcessedTime(LocalDateTime ldt){
-        this.lastMessageProcessedTime.set(ldt);
+        lastMessageProcessedTime.set(toEpochMillis(ldt));
     }
 
     /**
      * updates when latest message was Enqueued to a named channel
      */
     public void setLastMessageEnqueuedTime(LocalDateTime current){
-        this.lastMessageEnqueuedTime.set(current);
+        lastMessageEnqueuedTime.set(toEpochMillis(current));
     }
 
     /**
      * sets the LocalDateTime of the first message processed in a named channel
      */
     public void setFirstMessageProcessedTime(LocalDateTime current){
-        this.firstMessageProcessedTime.set(current);
+        firstMessageProcessedTime.set(toEpochMillis(current));
     }
 
     /**
      * updates when latest message dropped from a named channel
      */
     public void setLastMessageDroppedTime(LocalDateTime current){
-        this.lastMessageDroppedTime.set(current);
+        lastMessageDroppedTime.set(toEpochMillis(current));
     }
 
     /**
      * sets the DateTime of the first message dropped from a named channel
      */
     public void setFirstMessageDroppedTime(LocalDateTime current){
-        this.firstMessageDroppedTime.set(current);
+        firstMessageDroppedTime.set(toEpochMillis(current));
     }
 
     /**
      * updates when latest message is evicted from a named channel
      */
     public void setLastMessageEvictedTime(LocalDateTime current){
-        this.lastMessageEvictedTime.set(current);
+        lastMessageEvictedTime.set(toEpochMillis(current));
     }
 
     /**
      * sets the DateTime of the first message is evicted from a named channel
      */
     public void setFirstMessageEvictedTime(LocalDateTime current){
-        this.firstMessageEvictedTime.set(current);
+        firstMessageEvictedTime.set(toEpochMillis(current));
     }
 
     /**
@@ -359,9 +429,7 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
      * and lastMessageProcessing time after a message is processed
      */
     public void updateMBeanForMessageProcessingTime(long l){
-        if(l > maxMessageProcessingTimeToMillis.get()){
-            maxMessageProcessingTimeToMillis.set(l);
-        }
+        maxMessageProcessingTimeToMillis.accumulateAndGet(l, Math::max);
         addTotalMessageProcessingTimeMillis(l);
         setLastMessageProcessingTimeToMillis(l);
     }
@@ -373,22 +441,32 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
      */
     public void updateMBeanForMessageProcessed(){
         //updating time of LastMessage in MBean and number of Messages in Queue
-        LocalDateTime current = LocalDateTime.now();
+        long current = System.currentTimeMillis();
         incrementTotalMessagesProcessed();
-        setLastMessageProcessedTime(current);
-        if(getTotalMessagesProcessed()==1){
-            this.setFirstMessageProcessedTime(current);
+        lastMessageProcessedTime.lazySet(current);
+        if(firstMessageProcessedTime.get()==0){
+            firstMessageProcessedTime.compareAndSet(0, current);
         }
     }
 
+    /**
+     * updates mBean values for batch count, size and linger time after a batch of messages is passed to the handler
+     */
+    public void updateMBeanForBatchProcessed(int size, long waitTimeMillis){
+        totalBatchesProcessed.incrementAndGet();
+        lastBatchSize.lazySet(size);
+        maxBatchSize.accumulateAndGet(size, Math::max);
+        totalBatchWaitTimeToMillis.addAndGet(waitTimeMillis);
+        maxBatchWaitTimeToMillis.accumulateAndGet(waitTimeMillis, Math::max);
+    }
+
     /**
      * updates mBean values for totalMessagesEnqueued after an offer occurs to a named channel
      */
     public void updateMBeanForMessageEnqueued(){
         //updating time of LastMessage in MBean and number of Messages in Queue
-            LocalDateTime current = LocalDateTime.now();
             incrementTotalMessagesEnqueued();
-            setLastMessageEnqueuedTime(current);
+            lastMessageEnqueuedTime.lazySet(System.currentTimeMillis());
     }
 
     /**
@@ -397,11 +475,11 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
      */
     public void updateMBeanForMessagesDropped(){
         //updating time of LastMessage failure in MBean and number of failed Messages to reach Queue
-        LocalDateTime current = LocalDateTime.now();
+        long current = System.currentTimeMillis();
         incrementTotalMessagesDropped();
-        setLastMessageDroppedTime(current);
-        if(getTotalMessagesDropped()==1){
-            setFirstMessageDroppedTime(current);
+        lastMessageDroppedTime.lazySet(current);
+        if(firstMessageDroppedTime.get()==0){
+            firstMessageDroppedTime.compareAndSet(0, current);
         }
     }
 
@@ -411,11 +489,11 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
      */
     public void updateMBeanForMessagesEvicted(){
         //updating time of LastMessage failure in MBean and number of failed Messages to reach Queue
-        LocalDateTime current = LocalDateTime.now();
+        long current = System.currentTimeMillis();
         incrementTotalMessagesEvicted();
-        setLastMessageEvictedTime(current);
-        if(getTotalMessagesEvicted()==1){
-            setFirstMessageEvictedTime(current);
+        lastMessageEvictedTime.lazySet(current);
+        if(firstMessageEvictedTime.get()==0){
+            firstMessageEvictedTime.compareAndSet(0, current);
         }
     }
 
@@ -431,6 +509,7 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
             MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
             //register the MBean
             mbeanRegistration = mbs.registerMBean(this, mbeanObjectName);
+            GroovityMetrics.register(mbeanObjectName.toString(), this::collect);
             if(log.isLoggable(Level.FINE)){
                 log.log(Level.FINE, "MBean succesfully registered with name: "+asc.getKey().toString());
             }
@@ -448,6 +527,7 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
 	    		return;
 	    	}
         try {
+            GroovityMetrics.unregister(mbeanObjectName.toString());
             MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
             mbs.unregisterMBean(mbeanObjectName);
             if(log.isLoggable(Level.FINE)){
@@ -462,6 +542,39 @@ public class AsyncChannelManager implements AsyncChannelManagerMBean {
         }
     }
 
+    /**
+     * reports the counters of this channel to the metrics registry; channels sharing a name are summed
+     */
+    public void collect(MetricCollector collector){
+        final String[] labels = { "channel", channelName };
+        collector.counter("groovity_channel_messages_enqueued_total", "Messages offered to named channels", totalMessagesEnqueued.get(), labels);
+        collector.counter("groovity_channel_messages_processed_total", "Messages accepted from named channels", totalMessagesProcessed.get(), labels);
+        collector.counter("groovity_channel_messages_dropped_total", "Messages dropped from full named channels", totalMessagesDropped.get(), labels);
+        collector.counter("groovity_channel_messages_evicted_total", "Messages evicted from full named channels", totalMessagesEvicted.get(), labels);
+        collector.counter("groovity_channel_processing_seconds_total", "Time spent processing messages from named channels", totalMessageProcessingTimeToMillis.get()/1000.0, labels);
+        if(batchSize>1){
+            collector.counter("groovity_channel_batches_total", "Batches of messages accepted from named channels", totalBatchesProcessed.get(), labels);
+            collector.counter("groovity_channel_batch_wait_seconds_total", "Time spent lingering to fill batches from named channels", totalBatchWaitTimeToMillis.get()/1000.0, labels);
+        }
+        collector.gauge("groovity_channel_queued_messages", "Messages waiting in named channels", getCurrentNumOfMessages(), labels);
+        collector.gauge("groovity_channel_capacity", "Queue capacity of named channels", queueCapacity, labels);
+        collector.gauge("groovity_channels_open", "Open named channels", 1, labels);
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis){
+        if(millis==0){
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static long toEpochMillis(LocalDateTime ldt){
+        if(ldt==null){
+            return 0;
+        }
+        return ldt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     /**
      * method to adjust the ObjectName by concatenating
      * an increment of 1 to the channel name of each new MBean
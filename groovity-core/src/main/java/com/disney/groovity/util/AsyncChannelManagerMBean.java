@@ -130,4 +130,44 @@ public interface AsyncChannelManagerMBean {
      * returns stack key of a channel context to be used to append to MBean name
      */
     public String getChannelContext();
+
+    /**
+     * returns the maximum number of messages passed to each handler call, 1 if the channel does not batch
+     */
+    public int getBatchSize();
+
+    /**
+     * returns the total number of batches passed to the handler
+     */
+    public int getTotalBatchesProcessed();
+
+    /**
+     * returns the number of messages in the last batch
+     */
+    public int getLastBatchSize();
+
+    /**
+     * returns the largest number of messages in a batch
+     */
+    public int getMaxBatchSize();
+
+    /**
+     * returns the mean number of messages per batch
+     */
+    public double getMeanBatchSize();
+
+    /**
+     * returns totalBatchWaitTime, spent lingering to fill batches, in Milliseconds
+     */
+    public double getTotalBatchWaitTimeToMillis();
+
+    /**
+     * returns maxBatchWaitTime in Milliseconds
+     */
+    public double getMaxBatchWaitTimeToMillis();
+
+    /**
+     * returns meanBatchWaitTime in Milliseconds
+     */
+    public double getMeanBatchWaitTimeToMillis();
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The thread pool implementations available to run async and await tags, and for VIRTUAL also channel processors 
+ * and async http calls
+ *
+ * @author Alex Vigdor
+ */
+public enum AsyncExecutorType {
+	/**
+	 * A shared-queue {@link DeadlockFreeExecutor}, suited to blocking workloads; the default
+	 */
+	DEADLOCK_FREE{
+		@Override
+		public ExecutorService create(InterruptFactory interruptFactory, int maxThreads) {
+			return new DeadlockFreeExecutor(interruptFactory, maxThreads);
+		}
+	},
+	/**
+	 * A {@link WorkStealingExecutor} with per-worker deques, suited to deeply nested fan-outs
+	 */
+	WORK_STEALING{
+		@Override
+		public ExecutorService create(InterruptFactory interruptFactory, int maxThreads) {
+			return new WorkStealingExecutor(interruptFactory, maxThreads);
+		}
+	},
+	/**
+	 * A {@link VirtualThreadExecutor} running every task on its own virtual thread, suited to blocking I/O; 
+	 * requires JDK 21 or later, check {@link #isAvailable()}
+	 */
+	VIRTUAL{
+		@Override
+		public ExecutorService create(InterruptFactory interruptFactory, int maxThreads) {
+			return new VirtualThreadExecutor("GroovityVirtual-", interruptFactory, maxThreads);
+		}
+
+		@Override
+		public ExecutorService create(InterruptFactory interruptFactory) {
+			return new VirtualThreadExecutor("GroovityVirtual-", interruptFactory);
+		}
+
+		@Override
+		public ExecutorService createChannelExecutor(InterruptFactory interruptFactory) {
+			return new VirtualThreadExecutor("GroovityChannel-", interruptFactory);
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return VirtualThreadExecutor.isSupported();
+		}
+	};
+
+	/**
+	 * Create a pool limited to maxThreads concurrent tasks, e.g. for the pool attribute of async and await
+	 */
+	public abstract ExecutorService create(InterruptFactory interruptFactory, int maxThreads);
+
+	/**
+	 * Create the default shared pool for async and await
+	 */
+	public ExecutorService create(InterruptFactory interruptFactory) {
+		return create(interruptFactory, Runtime.getRuntime().availableProcessors()*8);
+	}
+
+	/**
+	 * Create the pool that runs channel acceptor processors
+	 */
+	public ExecutorService createChannelExecutor(InterruptFactory interruptFactory) {
+		return new DeadlockFreeExecutor(interruptFactory);
+	}
+
+	/**
+	 * @return false if this executor type cannot run on the current JVM
+	 */
+	public boolean isAvailable() {
+		return true;
+	}
+}
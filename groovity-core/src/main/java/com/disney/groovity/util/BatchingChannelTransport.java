@@ -0,0 +1,523 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Base class for channel transports that send batches of java-serialized messages to a dynamic set of peers; each peer
+ * has its own bounded outbound queue, so a slow or unreachable peer does not hold up delivery to the others.
+ * <p>
+ * A message is serialized at most once no matter how many peers it goes to, and messages that cannot be serialized are
+ * counted as failed and skipped.  Queued messages are sent after lingering briefly to build up a batch, and a peer whose
+ * transmission fails is skipped for a backoff period, during which messages for it are dropped once its queue is full.
+ * A peer whose acceptors have no room rejects the rest of a batch with a {@link RejectedBatchException}, and those
+ * messages are sent again after a shorter backpressure delay.
+ * Subclasses supply the peer list and the actual transmission, and must pass received batches to {@link #receive(byte[])}.
+ * <p>
+ * Since received messages are deserialized, transmissions must be authenticated so that only trusted peers can deliver;
+ * as a second line of defense only classes matching the allowed patterns are deserialized, resolved against the classloader
+ * of the router, and messages for channels the router does not forward are skipped without deserializing them.
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public abstract class BatchingChannelTransport implements ChannelTransport{
+	private static final Logger log = Logger.getLogger(BatchingChannelTransport.class.getName());
+	/**
+	 * Class patterns allowed in received messages by default: JDK value and collection types and groovy strings
+	 */
+	public static final List<String> DEFAULT_ALLOWED_CLASSES = Collections.unmodifiableList(Arrays.asList(
+			"java.lang.*", "java.math.*", "java.util.*", "java.util.concurrent.*", "java.time.**", 
+			"java.net.URI", "java.net.URL", "groovy.lang.GString", "org.codehaus.groovy.runtime.GStringImpl"));
+	private final ConcurrentHashMap<Object, Peer> peers = new ConcurrentHashMap<>();
+	private volatile ChannelRouter router;
+	private ScheduledExecutorService executor;
+	private int maxBatch = 256;
+	private int maxQueue = 10000;
+	private long lingerMillis = 5;
+	private long backoffMillis = 5000;
+	private long backpressureMillis = 1000;
+	private long peerRefreshMillis = 5000;
+	private int senderThreads = 2;
+	private volatile List<String> allowedClasses = DEFAULT_ALLOWED_CLASSES;
+	
+	/**
+	 * @return the current set of peer nodes to send to, excluding this node
+	 */
+	protected abstract Collection<?> getPeers();
+	
+	/**
+	 * Send an encoded batch of messages to a peer, which must pass it to {@link #receive(byte[])} on its transport
+	 * 
+	 * @throws RejectedBatchException if the peer only accepted part of the batch, carrying the number it accepted
+	 * @throws Exception if the batch could not be delivered
+	 */
+	protected abstract void transmit(Object peer, byte[] batch) throws Exception;
+	
+	@Override
+	public void start(ChannelRouter router) {
+		this.router = router;
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(senderThreads, r -> {
+			Thread t = new Thread(r);
+			t.setName("Groovity Channel Transport "+t.getName());
+			t.setDaemon(true);
+			return t;
+		});
+		executor.setRemoveOnCancelPolicy(true);
+		this.executor = executor;
+		executor.scheduleWithFixedDelay(this::refreshPeers, 0, peerRefreshMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void stop() {
+		router = null;
+		if(executor!=null){
+			executor.shutdownNow();
+			executor = null;
+		}
+		peers.clear();
+	}
+	
+	@Override
+	public void send(Object channelKey, Object message, ChannelRouter.TopicStats stats) {
+		if(peers.isEmpty()){
+			return;
+		}
+		OutboundMessage outbound = new OutboundMessage(channelKey, message, stats);
+		for(Peer peer: peers.values()){
+			peer.offer(outbound);
+		}
+	}
+	
+	/**
+	 * Deliver a batch received from a peer to local acceptors, without waiting for room in their queues
+	 * 
+	 * @return the number of messages in the batch
+	 * @throws RejectedBatchException if local acceptors had no room for a message; it and the rest of the batch
+	 * were not delivered, and the peer should send them again later
+	 */
+	public int receive(byte[] batch) throws IOException{
+		final ChannelRouter router = this.router;
+		if(router==null){
+			throw new IllegalStateException("Channel transport is not started");
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(batch));
+		int count = in.readInt();
+		for(int i=0; i<count; i++){
+			byte[] encoded = new byte[in.readInt()];
+			in.readFully(encoded);
+			try(ObjectInputStream ois = new MessageInputStream(new ByteArrayInputStream(encoded), router.getClassLoader(), allowedClasses)){
+				Object channelKey = ois.readObject();
+				if(!router.isForwarded(channelKey)){
+					log.fine("Skipping message received from peer for channel "+channelKey+" that is not forwarded");
+					continue;
+				}
+				Object message = ois.readObject();
+				router.receive(channelKey, message);
+			}
+			catch(RejectedExecutionException e){
+				throw new RejectedBatchException(i, e);
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted delivering channel messages", e);
+			}
+			catch(Exception e){
+				log.log(Level.WARNING, "Unable to deliver channel message received from peer", e);
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Synchronize the known peers with getPeers(); called periodically while started
+	 */
+	public void refreshPeers(){
+		try{
+			HashSet<Object> current = new HashSet<>(getPeers());
+			for(Object peer: current){
+				if(!peers.containsKey(peer)){
+					peers.put(peer, new Peer(peer));
+				}
+			}
+			for(Iterator<Entry<Object, Peer>> iter = peers.entrySet().iterator(); iter.hasNext();){
+				Entry<Object, Peer> entry = iter.next();
+				if(!current.contains(entry.getKey())){
+					iter.remove();
+					entry.getValue().discard();
+				}
+			}
+		}
+		catch(Exception e){
+			log.log(Level.WARNING, "Error refreshing channel transport peers", e);
+		}
+	}
+	
+	private void schedule(Runnable task, long delayMillis){
+		ScheduledExecutorService executor = this.executor;
+		if(executor!=null && !executor.isShutdown()){
+			executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Resolves classes against a given classloader, rejecting any that don't match the allowed patterns: "name" for
+	 * a class, "package.*" for the classes in a package or "package.**" for those in its subpackages too
+	 */
+	private final static class MessageInputStream extends ObjectInputStream{
+		private final ClassLoader classLoader;
+		private final List<String> allowedClasses;
+		
+		MessageInputStream(InputStream in, ClassLoader classLoader, List<String> allowedClasses) throws IOException{
+			super(in);
+			this.classLoader=classLoader;
+			this.allowedClasses=allowedClasses;
+		}
+		
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			String name = desc.getName();
+			if(!isAllowed(name)){
+				throw new InvalidClassException(name, "Class is not allowed in channel messages");
+			}
+			if(classLoader!=null){
+				try{
+					return Class.forName(name, false, classLoader);
+				}
+				catch(ClassNotFoundException e){
+					//fall through to default resolution
+				}
+			}
+			return super.resolveClass(desc);
+		}
+		
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+			throw new InvalidClassException(Arrays.toString(interfaces), "Proxy classes are not allowed in channel messages");
+		}
+		
+		private boolean isAllowed(String name){
+			int start = name.lastIndexOf('[')+1;
+			if(start>0){
+				if(name.charAt(start)!='L'){
+					//primitive array
+					return true;
+				}
+				name = name.substring(start+1, name.length()-1);
+			}
+			int dot = name.lastIndexOf('.');
+			String pkg = dot>0 ? name.substring(0, dot) : "";
+			for(String pattern: allowedClasses){
+				if(pattern.endsWith(".**")){
+					String prefix = pattern.substring(0, pattern.length()-2);
+					if(name.startsWith(prefix)){
+						return true;
+					}
+				}
+				else if(pattern.endsWith(".*")){
+					if(pkg.equals(pattern.substring(0, pattern.length()-2))){
+						return true;
+					}
+				}
+				else if(pattern.equals(name)){
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private final static class OutboundMessage{
+		final Object channelKey;
+		final Object message;
+		final ChannelRouter.TopicStats stats;
+		private byte[] encoded;
+		private boolean encodingFailed = false;
+		
+		OutboundMessage(Object channelKey, Object message, ChannelRouter.TopicStats stats){
+			this.channelKey=channelKey;
+			this.message=message;
+			this.stats=stats;
+		}
+		
+		synchronized byte[] encode(){
+			if(encoded==null && !encodingFailed){
+				try{
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					try(ObjectOutputStream oos = new ObjectOutputStream(bytes)){
+						oos.writeObject(channelKey);
+						oos.writeObject(message);
+					}
+					encoded = bytes.toByteArray();
+				}
+				catch(IOException e){
+					encodingFailed = true;
+					log.log(Level.FINE, "Not forwarding unserializable message for channel "+channelKey, e);
+				}
+			}
+			return encoded;
+		}
+	}
+	
+	/**
+	 * Thrown when a peer had no room to deliver part of a batch; the messages after the accepted ones should be sent again
+	 */
+	public static class RejectedBatchException extends IOException{
+		private static final long serialVersionUID = 1L;
+		private final int accepted;
+		
+		public RejectedBatchException(int accepted, Throwable cause){
+			super("Channel batch rejected after "+accepted+" messages", cause);
+			this.accepted=accepted;
+		}
+		
+		/**
+		 * @return the number of messages at the start of the batch that were accepted
+		 */
+		public int getAccepted(){
+			return accepted;
+		}
+	}
+	
+	private final class Peer implements Runnable{
+		final Object peer;
+		final LinkedBlockingQueue<OutboundMessage> queue = new LinkedBlockingQueue<>(maxQueue);
+		//messages a peer rejected for backpressure, sent again ahead of the queue
+		final ConcurrentLinkedQueue<OutboundMessage> rejected = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean scheduled = new AtomicBoolean(false);
+		volatile long retryAfter = 0;
+		
+		Peer(Object peer){
+			this.peer=peer;
+		}
+		
+		void offer(OutboundMessage message){
+			if(!queue.offer(message)){
+				message.stats.failed(1);
+				return;
+			}
+			if(scheduled.compareAndSet(false, true)){
+				schedule(this, Math.max(lingerMillis, retryAfter-System.currentTimeMillis()));
+			}
+		}
+		
+		void discard(){
+			List<OutboundMessage> dropped = new ArrayList<>();
+			for(OutboundMessage message; (message = rejected.poll())!=null;){
+				dropped.add(message);
+			}
+			queue.drainTo(dropped);
+			for(OutboundMessage message: dropped){
+				message.stats.failed(1);
+			}
+		}
+
+		@Override
+		public void run() {
+			final List<OutboundMessage> batch = new ArrayList<>();
+			for(OutboundMessage message; batch.size()<maxBatch && (message = rejected.poll())!=null;){
+				batch.add(message);
+			}
+			queue.drainTo(batch, maxBatch-batch.size());
+			if(!batch.isEmpty()){
+				transmitBatch(batch);
+			}
+			scheduled.set(false);
+			if((!queue.isEmpty() || !rejected.isEmpty()) && scheduled.compareAndSet(false, true)){
+				schedule(this, Math.max(0, retryAfter-System.currentTimeMillis()));
+			}
+		}
+		
+		private void transmitBatch(List<OutboundMessage> batch){
+			final List<OutboundMessage> encodedMessages = new ArrayList<>(batch.size());
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(bytes);
+			try{
+				for(OutboundMessage message: batch){
+					if(message.encode()!=null){
+						encodedMessages.add(message);
+					}
+					else{
+						message.stats.failed(1);
+					}
+				}
+				if(encodedMessages.isEmpty()){
+					return;
+				}
+				out.writeInt(encodedMessages.size());
+				for(OutboundMessage message: encodedMessages){
+					byte[] encoded = message.encode();
+					out.writeInt(encoded.length);
+					out.write(encoded);
+				}
+				out.flush();
+				transmit(peer, bytes.toByteArray());
+				retryAfter = 0;
+				for(OutboundMessage message: encodedMessages){
+					message.stats.sent(1);
+				}
+			}
+			catch(RejectedBatchException e){
+				retryAfter = System.currentTimeMillis()+backpressureMillis;
+				int accepted = Math.max(0, Math.min(e.getAccepted(), encodedMessages.size()));
+				for(int i=0; i<accepted; i++){
+					encodedMessages.get(i).stats.sent(1);
+				}
+				rejected.addAll(encodedMessages.subList(accepted, encodedMessages.size()));
+				log.fine("Peer "+peer+" rejected "+(encodedMessages.size()-accepted)+" channel messages, retrying in "+backpressureMillis+" ms");
+			}
+			catch(Exception e){
+				retryAfter = System.currentTimeMillis()+backoffMillis;
+				for(OutboundMessage message: encodedMessages){
+					message.stats.failed(1);
+				}
+				log.log(Level.WARNING, "Error sending "+encodedMessages.size()+" channel messages to "+peer+", backing off for "+backoffMillis+" ms", e);
+			}
+		}
+	}
+
+	public int getMaxBatch() {
+		return maxBatch;
+	}
+
+	/**
+	 * @param maxBatch the maximum number of messages to send to a peer at once
+	 */
+	public void setMaxBatch(int maxBatch) {
+		this.maxBatch = maxBatch;
+	}
+
+	public int getMaxQueue() {
+		return maxQueue;
+	}
+
+	/**
+	 * @param maxQueue the number of messages that may wait for each peer before new ones are dropped; takes effect for peers discovered afterwards
+	 */
+	public void setMaxQueue(int maxQueue) {
+		this.maxQueue = maxQueue;
+	}
+
+	public long getLingerMillis() {
+		return lingerMillis;
+	}
+
+	/**
+	 * @param lingerMillis how long to wait for more messages before sending a batch to a peer
+	 */
+	public void setLingerMillis(long lingerMillis) {
+		this.lingerMillis = lingerMillis;
+	}
+
+	public long getBackoffMillis() {
+		return backoffMillis;
+	}
+
+	/**
+	 * @param backoffMillis how long to wait before retrying a peer after a failed transmission
+	 */
+	public void setBackoffMillis(long backoffMillis) {
+		this.backoffMillis = backoffMillis;
+	}
+
+	public long getBackpressureMillis() {
+		return backpressureMillis;
+	}
+
+	/**
+	 * @param backpressureMillis how long to wait before sending messages again that a peer had no room for
+	 */
+	public void setBackpressureMillis(long backpressureMillis) {
+		this.backpressureMillis = backpressureMillis;
+	}
+
+	public long getPeerRefreshMillis() {
+		return peerRefreshMillis;
+	}
+
+	/**
+	 * @param peerRefreshMillis how often to call getPeers() to discover new peers; takes effect on start
+	 */
+	public void setPeerRefreshMillis(long peerRefreshMillis) {
+		this.peerRefreshMillis = peerRefreshMillis;
+	}
+
+	public int getSenderThreads() {
+		return senderThreads;
+	}
+
+	/**
+	 * @param senderThreads the number of threads used to transmit batches; takes effect on start
+	 */
+	public void setSenderThreads(int senderThreads) {
+		this.senderThreads = senderThreads;
+	}
+	
+	public List<String> getAllowedClasses() {
+		return allowedClasses;
+	}
+
+	/**
+	 * @param allowedClasses patterns of classes that may be deserialized from received messages, in addition to 
+	 * primitive arrays; "name" allows a class, "package.*" the classes in a package and "package.**" the classes in it and its subpackages
+	 */
+	public void setAllowedClasses(List<String> allowedClasses) {
+		this.allowedClasses = Collections.unmodifiableList(new ArrayList<>(allowedClasses));
+	}
+	
+	/**
+	 * @return the peers currently known to this transport
+	 */
+	public Collection<Object> getKnownPeers(){
+		return new ArrayList<>(peers.keySet());
+	}
+}
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.disney.groovity.GroovityConstants;
+
+/**
+ * A copy-on-write binding map for async code: the variables visible when the snapshot was taken live in a frozen
+ * base map that is shared with the parent and with sibling snapshots, while writes go to a small private overlay.
+ * A snapshot whose overlay grows large, or whose entries are iterated, copies the base once and from then on
+ * behaves like a plain HashMap until it is itself snapshotted again.
+ * <p>
+ * Internal variables (prefixed with {@link GroovityConstants#INTERNAL_BINDING_PREFIX}) are never shared, so each
+ * snapshot starts without them, just like the HashMap copies made by earlier versions of the async tag.
+ *
+ * @author Alex Vigdor
+ */
+public final class BindingSnapshot extends AbstractMap<String, Object> implements GroovityConstants {
+	//remembers the frozen base taken from a plain parent map, so fan-outs from an unchanged parent share one copy
+	private static final String FROZEN_BASE = INTERNAL_BINDING_PREFIX.concat("BindingSnapshot$base");
+	private static final Object REMOVED = new Object();
+	private static final int MIN_OVERLAY = 8;
+	//treated as immutable unless owned
+	private Map<String, Object> base;
+	private boolean owned;
+	//local writes over a shared base, REMOVED marks deletions
+	private HashMap<String, Object> overlay;
+	//internal variables, never shared
+	private HashMap<String, Object> internal;
+
+	private BindingSnapshot(Map<String, Object> base, HashMap<String, Object> overlay) {
+		this.base = base;
+		this.overlay = overlay;
+	}
+
+	/**
+	 * Take a snapshot of binding variables for use by async code; snapshots of snapshots share structure directly,
+	 * while a plain map is copied once and that copy is reused for as long as the parent's variables are unchanged
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static BindingSnapshot of(final Map variables) {
+		if(variables instanceof BindingSnapshot) {
+			return ((BindingSnapshot) variables).snapshot();
+		}
+		FrozenBase frozen = (FrozenBase) variables.get(FROZEN_BASE);
+		if(frozen==null || !frozen.matches(variables)) {
+			frozen = new FrozenBase(variables);
+			variables.put(FROZEN_BASE, frozen);
+		}
+		HashMap<String, Object> overlay = null;
+		//out changes with every async boundary so it is kept out of the shared base
+		Object out = variables.get(OUT);
+		if(out!=null || variables.containsKey(OUT)) {
+			overlay = new HashMap<>();
+			overlay.put(OUT, out);
+		}
+		return new BindingSnapshot(frozen.variables, overlay);
+	}
+
+	/**
+	 * Create a new snapshot sharing this map's current variables; this map continues with copy-on-write semantics
+	 */
+	public BindingSnapshot snapshot() {
+		if(owned) {
+			//freeze our private map and share it
+			owned = false;
+			return new BindingSnapshot(base, null);
+		}
+		return new BindingSnapshot(base, overlay==null ? null : new HashMap<>(overlay));
+	}
+
+	private static boolean isInternal(Object key) {
+		return key instanceof String && ((String) key).startsWith(INTERNAL_BINDING_PREFIX);
+	}
+
+	@Override
+	public Object get(Object key) {
+		if(isInternal(key)) {
+			return internal==null ? null : internal.get(key);
+		}
+		if(overlay!=null) {
+			Object value = overlay.get(key);
+			if(value!=null || overlay.containsKey(key)) {
+				return value==REMOVED ? null : value;
+			}
+		}
+		return base.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if(isInternal(key)) {
+			return internal!=null && internal.containsKey(key);
+		}
+		if(overlay!=null) {
+			Object value = overlay.get(key);
+			if(value!=null || overlay.containsKey(key)) {
+				return value!=REMOVED;
+			}
+		}
+		return base.containsKey(key);
+	}
+
+	@Override
+	public Object put(String key, Object value) {
+		if(isInternal(key)) {
+			if(internal==null) {
+				internal = new HashMap<>();
+			}
+			return internal.put(key, value);
+		}
+		if(owned) {
+			return base.put(key, value);
+		}
+		final Object old = get(key);
+		if(old==value && (value!=null || containsKey(key))) {
+			//e.g. decorators re-applying the same defaults
+			return old;
+		}
+		if(overlay==null) {
+			overlay = new HashMap<>();
+		}
+		overlay.put(key, value);
+		if(overlay.size() > MIN_OVERLAY && overlay.size() > (base.size() >> 1)) {
+			own();
+		}
+		return old;
+	}
+
+	@Override
+	public Object remove(Object key) {
+		if(isInternal(key)) {
+			return internal==null ? null : internal.remove(key);
+		}
+		if(owned) {
+			return base.remove(key);
+		}
+		if(!containsKey(key)) {
+			return null;
+		}
+		final Object old = get(key);
+		if(base.containsKey(key)) {
+			if(overlay==null) {
+				overlay = new HashMap<>();
+			}
+			overlay.put((String) key, REMOVED);
+		}
+		else {
+			overlay.remove(key);
+		}
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		base = new HashMap<>();
+		owned = true;
+		overlay = null;
+		internal = null;
+	}
+
+	@Override
+	public int size() {
+		int size = internal==null ? 0 : internal.size();
+		if(owned || overlay==null) {
+			return size + base.size();
+		}
+		size += base.size();
+		for(Entry<String, Object> entry: overlay.entrySet()) {
+			boolean inBase = base.containsKey(entry.getKey());
+			if(entry.getValue()==REMOVED) {
+				if(inBase) {
+					size--;
+				}
+			}
+			else if(!inBase) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Iterating or modifying through the entry set makes this map take a private copy of its shared variables
+	 */
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		own();
+		return new EntrySet();
+	}
+
+	private void own() {
+		if(owned) {
+			return;
+		}
+		int size = base.size() + (overlay==null ? 0 : overlay.size());
+		HashMap<String, Object> copy = new HashMap<>((int) (size / .75f) + 1);
+		copy.putAll(base);
+		if(overlay!=null) {
+			for(Entry<String, Object> entry: overlay.entrySet()) {
+				if(entry.getValue()==REMOVED) {
+					copy.remove(entry.getKey());
+				}
+				else {
+					copy.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		base = copy;
+		overlay = null;
+		owned = true;
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<String, Object>> {
+		@Override
+		public Iterator<Entry<String, Object>> iterator() {
+			final Iterator<Entry<String, Object>> first = base.entrySet().iterator();
+			final Iterator<Entry<String, Object>> second = internal==null ? null : internal.entrySet().iterator();
+			return new Iterator<Entry<String, Object>>() {
+				Iterator<Entry<String, Object>> current = first;
+
+				@Override
+				public boolean hasNext() {
+					if(current.hasNext()) {
+						return true;
+					}
+					return current==first && second!=null && second.hasNext();
+				}
+
+				@Override
+				public Entry<String, Object> next() {
+					if(!current.hasNext()) {
+						if(current!=first || second==null) {
+							throw new NoSuchElementException();
+						}
+						current = second;
+					}
+					return current.next();
+				}
+
+				@Override
+				public void remove() {
+					current.remove();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return BindingSnapshot.this.size();
+		}
+	}
+
+	private static final class FrozenBase {
+		final HashMap<String, Object> variables;
+
+		@SuppressWarnings("unchecked")
+		FrozenBase(Map<Object, Object> parent) {
+			variables = new HashMap<>((int) (parent.size() / .75f) + 1);
+			for(Entry<Object, Object> entry: parent.entrySet()) {
+				Object key = entry.getKey();
+				if(isShared(key)) {
+					variables.put((String) key, entry.getValue());
+				}
+			}
+		}
+
+		private static boolean isShared(Object key) {
+			return key instanceof String && !isInternal(key) && !OUT.equals(key);
+		}
+
+		//true if the parent still holds exactly the same values, compared by identity
+		boolean matches(Map<Object, Object> parent) {
+			int count = 0;
+			for(Entry<Object, Object> entry: parent.entrySet()) {
+				Object key = entry.getKey();
+				if(!isShared(key)) {
+					continue;
+				}
+				Object value = entry.getValue();
+				if(variables.get(key)!=value || (value==null && !variables.containsKey(key))) {
+					return false;
+				}
+				count++;
+			}
+			return count==variables.size();
+		}
+	}
+}
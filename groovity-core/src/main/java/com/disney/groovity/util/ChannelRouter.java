@@ -0,0 +1,360 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.disney.groovity.stats.GroovityMetrics;
+import com.disney.groovity.stats.MetricCollector;
+
+/**
+ * Routes messages offered to named channels to the AsyncChannels accepting them; by default all groovity instances in
+ * a JVM share AsyncChannel.DEFAULT_ROUTER, but a groovity built with a ChannelTransport gets a router of its own, so
+ * several instances in one JVM behave like separate nodes.
+ * <p>
+ * When a transport is attached, messages offered on this node to channels that opt in to forwarding are also sent to
+ * peers, and messages received from peers are delivered to local acceptors only, and only for channels that opt in here
+ * too.  Null termination messages and errors are never forwarded, so a producer can only close acceptors on its own
+ * node.  Received messages never wait for room in blocking acceptor queues; they are rejected instead so the transport
+ * can ask the sending peer to retry later.  Per-topic delivery statistics are kept and reported to GroovityMetrics.
+ * <p>
+ * Channels with an open {@link DurableChannelLog} have their messages appended to the log instead, where the
+ * durable acceptor, if any, reads them from.
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class ChannelRouter {
+	private static final Logger log = Logger.getLogger(ChannelRouter.class.getName());
+	//bound statistics memory when channel keys are highly variable, e.g. per-user topics
+	private static final int MAX_TOPICS = 10000;
+	private static final String OTHER_TOPICS = "[other]";
+	final ConcurrentHashMap<Object, Collection<AsyncChannel>> routes = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<Object, DurableChannelLog> durableLogs = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Object, TopicStats> topics = new ConcurrentHashMap<>();
+	private final String metricsId = "ChannelRouter@"+Integer.toHexString(System.identityHashCode(this));
+	private final Set<Object> forwardedChannels = ConcurrentHashMap.newKeySet();
+	private volatile ChannelTransport transport;
+	private volatile ClassLoader classLoader;
+	
+	public ChannelRouter(){
+		GroovityMetrics.register(metricsId, this::collect);
+	}
+	
+	public ConcurrentHashMap<Object, Collection<AsyncChannel>> getRoutes(){
+		return routes;
+	}
+	
+	public ChannelTransport getTransport(){
+		return transport;
+	}
+	
+	/**
+	 * Attach a transport to forward messages to peer nodes, replacing and stopping any previous transport; pass null
+	 * to route locally only
+	 */
+	public synchronized void setTransport(ChannelTransport transport){
+		ChannelTransport old = this.transport;
+		if(old==transport){
+			return;
+		}
+		this.transport = null;
+		if(old!=null){
+			old.stop();
+		}
+		if(transport!=null){
+			transport.start(this);
+			this.transport = transport;
+		}
+	}
+	
+	/**
+	 * Opt a channel in to forwarding, so messages offered to it are sent to peers and messages for it received from
+	 * peers are delivered
+	 */
+	public void forward(Object channelKey){
+		forwardedChannels.add(channelKey);
+	}
+	
+	/**
+	 * Replace the set of channels that are forwarded to and received from peers
+	 */
+	public void setForwardedChannels(Collection<?> channelKeys){
+		forwardedChannels.retainAll(channelKeys);
+		forwardedChannels.addAll(channelKeys);
+	}
+	
+	public Set<Object> getForwardedChannels(){
+		return Collections.unmodifiableSet(forwardedChannels);
+	}
+	
+	public boolean isForwarded(Object channelKey){
+		return forwardedChannels.contains(channelKey);
+	}
+	
+	public ClassLoader getClassLoader(){
+		return classLoader;
+	}
+	
+	/**
+	 * @param classLoader the classloader transports resolve the classes of messages received from peers against
+	 */
+	public void setClassLoader(ClassLoader classLoader){
+		this.classLoader = classLoader;
+	}
+	
+	/**
+	 * Detach the transport and stop reporting metrics
+	 */
+	public void close(){
+		setTransport(null);
+		GroovityMetrics.unregister(metricsId);
+	}
+	
+	void register(Object key, AsyncChannel channel){
+		Collection<AsyncChannel> channels = routes.get(key);
+		if(channels==null) {
+			channels = ConcurrentHashMap.newKeySet();
+			Collection<AsyncChannel> oldChannels = routes.putIfAbsent(key, channels);
+			if(oldChannels!=null) {
+				channels = oldChannels;
+			}
+		}
+		channels.add(channel);
+	}
+	
+	void registerDurable(Object key, DurableChannelLog durableLog){
+		DurableChannelLog old = durableLogs.putIfAbsent(key, durableLog);
+		if(old!=null && old!=durableLog){
+			log.warning("Channel "+key+" already has a durable log at "+old.getDirectory()+", ignoring "+durableLog.getDirectory());
+		}
+	}
+	
+	void unregisterDurable(Object key, DurableChannelLog durableLog){
+		durableLogs.remove(key, durableLog);
+	}
+	
+	public DurableChannelLog getDurableLog(Object key){
+		return durableLogs.get(key);
+	}
+	
+	void unregister(Object key, AsyncChannel channel){
+		Collection<AsyncChannel> channels = routes.get(key);
+		if(channels!=null){
+			channels.remove(channel);
+			if(channels.isEmpty()){
+				routes.remove(key, channels);
+			}
+		}
+	}
+	
+	/**
+	 * Offer a message to all local acceptors of a channel, and forward it to peers if a transport is attached and the
+	 * channel is forwarded
+	 * 
+	 * @return true if the message was taken by at least one local acceptor or forwarded to peers
+	 */
+	public boolean offer(Object channelKey, Object message, long timeout, TimeUnit unit) throws InterruptedException{
+		final ChannelTransport transport = forwardedChannels.contains(channelKey) ? this.transport : null;
+		final Collection<AsyncChannel> channels = routes.get(channelKey);
+		final boolean local = channels!=null && !channels.isEmpty();
+		final DurableChannelLog durableLog = durableLogs.get(channelKey);
+		if(!local && transport==null && durableLog==null){
+			return false;
+		}
+		message = AsyncChannel.unwrapMessage(message);
+		final TopicStats stats = getStats(channelKey);
+		stats.offered.increment();
+		boolean taken = false;
+		if(local){
+			taken = AsyncChannel.deliver(channels, message, timeout, unit);
+			stats.delivered.add(channels.size());
+		}
+		if(durableLog!=null){
+			taken = deliverDurable(durableLog, message, true, timeout, unit, stats) || taken;
+		}
+		if(transport!=null && message!=null && !(message instanceof Throwable)){
+			try{
+				transport.send(channelKey, message, stats);
+				taken = true;
+			}
+			catch(Exception e){
+				stats.failed.increment();
+				log.log(Level.WARNING, "Error forwarding message for channel "+channelKey, e);
+			}
+		}
+		return taken;
+	}
+	
+	/**
+	 * Deliver a message received from a peer node to local acceptors, without forwarding it again; messages for
+	 * channels that are not forwarded are dropped
+	 * 
+	 * @return true if the message was taken by at least one local acceptor
+	 * @throws RejectedExecutionException if no local acceptor took the message because their blocking queues were full,
+	 * in which case the peer should retry it later
+	 */
+	public boolean receive(Object channelKey, Object message) throws InterruptedException{
+		if(!forwardedChannels.contains(channelKey)){
+			return false;
+		}
+		final TopicStats stats = getStats(channelKey);
+		boolean taken = false;
+		final DurableChannelLog durableLog = durableLogs.get(channelKey);
+		if(durableLog!=null){
+			taken = deliverDurable(durableLog, message, false, 0, TimeUnit.SECONDS, stats);
+		}
+		final Collection<AsyncChannel> channels = routes.get(channelKey);
+		if(channels!=null && !channels.isEmpty()){
+			try{
+				taken = AsyncChannel.deliverNow(channels, message) || taken;
+				stats.delivered.add(channels.size());
+			}
+			catch(RejectedExecutionException e){
+				if(!taken){
+					throw e;
+				}
+				//already persisted for the durable acceptor, a retry would duplicate it there
+			}
+		}
+		stats.received.increment();
+		return taken;
+	}
+	
+	//persist a message to a durable log, via the attached acceptor if there is one
+	private boolean deliverDurable(DurableChannelLog durableLog, Object message, boolean wait, long timeout, TimeUnit unit, TopicStats stats) throws InterruptedException{
+		AsyncChannel consumer = durableLog.getConsumer();
+		if(consumer!=null && !consumer.isClosed()){
+			boolean taken = wait ? consumer.offer(message, timeout, unit) : consumer.offerNow(message);
+			stats.delivered.increment();
+			return taken;
+		}
+		if(message==null || message instanceof Throwable){
+			return false;
+		}
+		try{
+			durableLog.append(message);
+			stats.delivered.increment();
+			return true;
+		}
+		catch(IOException e){
+			log.log(Level.SEVERE, "Unable to persist message for durable channel "+durableLog.getKey(), e);
+			return false;
+		}
+	}
+	
+	public Map<Object, TopicStats> getTopicStats(){
+		return Collections.unmodifiableMap(topics);
+	}
+	
+	public TopicStats getStats(Object channelKey){
+		TopicStats stats = topics.get(channelKey);
+		if(stats==null){
+			if(topics.size() >= MAX_TOPICS){
+				channelKey = OTHER_TOPICS;
+			}
+			stats = topics.computeIfAbsent(channelKey, TopicStats::new);
+		}
+		return stats;
+	}
+	
+	public void resetStats(){
+		topics.clear();
+	}
+	
+	private void collect(MetricCollector collector){
+		for(TopicStats stats: topics.values()){
+			String topic = String.valueOf(stats.topic);
+			collector.counter("groovity_channel_route_offered_total", "Messages offered to channel topics on this node", stats.getOffered(), "channel", topic);
+			collector.counter("groovity_channel_route_delivered_total", "Deliveries to local acceptors of channel topics", stats.getDelivered(), "channel", topic);
+			collector.counter("groovity_channel_route_sent_total", "Channel messages sent to peer nodes", stats.getSent(), "channel", topic);
+			collector.counter("groovity_channel_route_failed_total", "Channel messages that could not be sent to peer nodes", stats.getFailed(), "channel", topic);
+			collector.counter("groovity_channel_route_received_total", "Channel messages received from peer nodes", stats.getReceived(), "channel", topic);
+		}
+	}
+	
+	/**
+	 * Delivery counters for one channel topic
+	 */
+	public static final class TopicStats{
+		final Object topic;
+		final LongAdder offered = new LongAdder();
+		final LongAdder delivered = new LongAdder();
+		final LongAdder sent = new LongAdder();
+		final LongAdder failed = new LongAdder();
+		final LongAdder received = new LongAdder();
+		
+		TopicStats(Object topic){
+			this.topic=topic;
+		}
+		
+		public Object getTopic(){
+			return topic;
+		}
+		
+		public long getOffered(){
+			return offered.sum();
+		}
+		
+		public long getDelivered(){
+			return delivered.sum();
+		}
+		
+		public long getSent(){
+			return sent.sum();
+		}
+		
+		public long getFailed(){
+			return failed.sum();
+		}
+		
+		public long getReceived(){
+			return received.sum();
+		}
+		
+		/**
+		 * Record messages successfully sent to a peer
+		 */
+		public void sent(int count){
+			sent.add(count);
+		}
+		
+		/**
+		 * Record messages that could not be sent to a peer
+		 */
+		public void failed(int count){
+			failed.add(count);
+		}
+	}
+}
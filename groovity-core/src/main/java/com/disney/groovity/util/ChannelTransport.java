@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+/**
+ * Service provider interface for carrying channel messages between groovity nodes; a transport is attached to a
+ * ChannelRouter, which hands it every message offered to a named channel on this node, and the transport in turn
+ * passes messages received from peers back to the router with {@link ChannelRouter#receive(Object, Object)} for
+ * local delivery only.
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public interface ChannelTransport {
+	/**
+	 * Called when the transport is attached to a router
+	 */
+	public void start(ChannelRouter router);
+	/**
+	 * Forward a message to peer nodes; implementations must not block the caller for network I/O
+	 * 
+	 * @param channelKey the channel topic the message was offered to
+	 * @param message the unwrapped message value
+	 * @param stats the delivery statistics for the topic, to record sent and failed messages
+	 */
+	public void send(Object channelKey, Object message, ChannelRouter.TopicStats stats);
+	/**
+	 * Called when the transport is detached from its router
+	 */
+	public void stop();
+}
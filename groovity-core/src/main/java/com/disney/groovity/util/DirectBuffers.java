@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Releases the native memory or file mapping behind a direct or memory-mapped buffer as soon as it is no longer
+ * used, rather than whenever the garbage collector gets to the buffer; uses Unsafe.invokeCleaner on java 9 and later,
+ * and the buffer's own cleaner on java 8, both found reflectively, and does nothing if neither is available.
+ * <p>
+ * The buffer and every view of it must not be touched again after it is released.
+ *
+ * @author Alex Vigdor
+ */
+public final class DirectBuffers {
+	private static final Logger log = Logger.getLogger(DirectBuffers.class.getName());
+	//Unsafe.invokeCleaner on java 9+, DirectBuffer.cleaner on java 8
+	private static final Object UNSAFE;
+	private static final Method UNMAPPER;
+	private static final Method CLEAN;
+
+	static{
+		Object unsafe = null;
+		Method unmapper = null;
+		Method clean = null;
+		try{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+			unmapper = invokeCleaner;
+		}
+		catch(Exception e){
+			try{
+				unmapper = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+				clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			}
+			catch(Exception e2){
+				unmapper = null;
+				log.log(Level.FINE, "Direct buffers will be released by garbage collection", e2);
+			}
+		}
+		UNSAFE = unsafe;
+		UNMAPPER = unmapper;
+		CLEAN = clean;
+	}
+
+	private DirectBuffers(){
+	}
+
+	/**
+	 * Release a direct or mapped buffer; must be the buffer that was allocated or mapped, not a duplicate or slice
+	 */
+	public static void release(ByteBuffer buffer){
+		if(UNMAPPER==null || buffer==null || !buffer.isDirect()){
+			return;
+		}
+		try{
+			if(UNSAFE!=null){
+				UNMAPPER.invoke(UNSAFE, buffer);
+			}
+			else{
+				Object cleaner = UNMAPPER.invoke(buffer);
+				if(cleaner!=null){
+					CLEAN.invoke(cleaner);
+				}
+			}
+		}
+		catch(Exception e){
+			log.log(Level.FINE, "Unable to release direct buffer", e);
+		}
+	}
+}
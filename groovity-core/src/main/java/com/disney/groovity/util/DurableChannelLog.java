@@ -0,0 +1,606 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.disney.groovity.cache.CacheSerialization;
+
+/**
+ * Append-only, segmented, memory-mapped message log backing a durable named channel.
+ * <p>
+ * Producers append Java-serialized messages under a lock, a ReentrantLock so virtual thread producers waiting on it
+ * do not pin their carriers; a single attached {@link AsyncChannel} reads them back in
+ * order and acknowledges each one after its handler succeeds.  The acknowledged position is kept in a small mapped
+ * file, so after a restart the next acceptor to attach replays everything that was appended but not acknowledged.
+ * Segments are deleted once fully acknowledged, and older segments are also discarded when the log exceeds the
+ * retention size or age configured on the {@link DurableChannelStore}, whether or not they were consumed.
+ * <p>
+ * Each record is a 4 byte length, an 8 byte append timestamp and the serialized message; the length is written last so
+ * a record torn by a crash reads as the end of the segment.
+ *
+ * @author Alex Vigdor
+ */
+public class DurableChannelLog implements Closeable {
+	private static final Logger log = Logger.getLogger(DurableChannelLog.class.getName());
+	static final int HEADER_BYTES = 12;
+	static final String SEGMENT_SUFFIX = ".log";
+	private final DurableChannelStore store;
+	private final Object key;
+	private final File directory;
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+	private final FileChannel ackChannel;
+	private final MappedByteBuffer ackBuffer;
+	private final ReentrantLock stateLock = new ReentrantLock();
+	//guarded by stateLock
+	private final ArrayList<Segment> segments = new ArrayList<>();
+	private Segment writeSegment;
+	private volatile boolean closed = false;
+	private volatile long writeSequence;
+	private volatile long ackSequence;
+	//sequence of the oldest retained message
+	private volatile long firstSequence;
+	private volatile AsyncChannel consumer;
+	//read cursor, confined to the attached consumer's processor
+	private Segment readSegment;
+	private int readPosition;
+	private volatile long readSequence;
+	private long cleanedBelow = -1;
+
+	DurableChannelLog(DurableChannelStore store, Object key, File directory) throws IOException {
+		this.store = store;
+		this.key = key;
+		this.directory = directory;
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("Unable to create durable channel directory "+directory.getAbsolutePath());
+		}
+		lockChannel = new RandomAccessFile(new File(directory, "lock"), "rw").getChannel();
+		FileLock fl = null;
+		try{
+			fl = lockChannel.tryLock();
+		}
+		catch(OverlappingFileLockException e){
+		}
+		if(fl==null){
+			lockChannel.close();
+			throw new IOException("Durable channel "+key+" at "+directory.getAbsolutePath()+" is already open");
+		}
+		lock = fl;
+		ackChannel = new RandomAccessFile(new File(directory, "ack"), "rw").getChannel();
+		ackBuffer = ackChannel.map(MapMode.READ_WRITE, 0, 8);
+		ackSequence = ackBuffer.getLong(0);
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+		Arrays.sort(files);
+		for(File file: files){
+			long base;
+			try{
+				base = Long.parseLong(file.getName().substring(0, file.getName().length()-SEGMENT_SUFFIX.length()));
+			}
+			catch(NumberFormatException e){
+				continue;
+			}
+			segments.add(Segment.open(file, base));
+		}
+		if(segments.isEmpty()){
+			segments.add(Segment.create(directory, ackSequence, segmentBytes(0)));
+		}
+		writeSegment = segments.get(segments.size()-1);
+		writeSequence = writeSegment.base + writeSegment.count;
+		long first = segments.get(0).base;
+		firstSequence = first;
+		if(ackSequence < first || ackSequence > writeSequence){
+			ackSequence = Math.max(first, Math.min(ackSequence, writeSequence));
+			ackBuffer.putLong(0, ackSequence);
+		}
+		stateLock.lock();
+		try{
+			deleteAcknowledged();
+			enforceRetention();
+		}
+		finally{
+			stateLock.unlock();
+		}
+		if(log.isLoggable(Level.FINE)){
+			log.fine("Opened durable channel "+key+" with "+pending()+" unacknowledged messages");
+		}
+	}
+
+	public Object getKey(){
+		return key;
+	}
+
+	public File getDirectory(){
+		return directory;
+	}
+
+	public AsyncChannel getConsumer(){
+		return consumer;
+	}
+
+	/**
+	 * @return the number of messages appended but not yet acknowledged
+	 */
+	public int pending(){
+		return (int) Math.min(Integer.MAX_VALUE, writeSequence - Math.max(ackSequence, firstSequence));
+	}
+
+	/**
+	 * @return the number of messages appended but not yet read by the consumer
+	 */
+	public int unread(){
+		return (int) Math.max(0, Math.min(Integer.MAX_VALUE, writeSequence - readSequence));
+	}
+
+	public long getWriteSequence(){
+		return writeSequence;
+	}
+
+	public long getAckSequence(){
+		return ackSequence;
+	}
+
+	public int getSegmentCount(){
+		stateLock.lock();
+		try{
+			return segments.size();
+		}
+		finally{
+			stateLock.unlock();
+		}
+	}
+
+	public long getSize(){
+		stateLock.lock();
+		try{
+			long size = 0;
+			for(Segment s: segments){
+				size += s.writePosition;
+			}
+			return size;
+		}
+		finally{
+			stateLock.unlock();
+		}
+	}
+
+	/**
+	 * Serialize and append a message to the log, and schedule the attached consumer if any
+	 *
+	 * @return the sequence number of the appended message
+	 * @throws IOException if the message cannot be serialized or the log is closed
+	 */
+	public long append(Object message) throws IOException{
+		byte[] data = CacheSerialization.serialize(message);
+		final long sequence;
+		final AsyncChannel c;
+		stateLock.lock();
+		try{
+			if(closed){
+				throw new IOException("Durable channel "+key+" is closed");
+			}
+			Segment s = writeSegment;
+			if(s.capacity - s.writePosition < HEADER_BYTES + data.length){
+				s = roll(data.length);
+			}
+			int pos = s.writePosition;
+			long now = System.currentTimeMillis();
+			ByteBuffer writer = s.writer;
+			writer.position(pos+4);
+			writer.putLong(now);
+			writer.put(data);
+			//length goes last to publish the record
+			writer.putInt(pos, data.length);
+			s.writePosition = pos + HEADER_BYTES + data.length;
+			s.lastTimestamp = now;
+			s.count++;
+			sequence = writeSequence;
+			writeSequence = sequence+1;
+			c = consumer;
+		}
+		finally{
+			stateLock.unlock();
+		}
+		if(c!=null){
+			c.durableAppended();
+		}
+		return sequence;
+	}
+
+	/**
+	 * Attach the consumer that will read from this log, rewinding the read cursor to the first unacknowledged message;
+	 * waits briefly for a closed previous consumer to finish
+	 *
+	 * @throws IllegalStateException if another open acceptor is already attached
+	 */
+	void attach(AsyncChannel channel){
+		AsyncChannel previous = consumer;
+		if(previous!=null && previous!=channel && previous.isClosed()){
+			try{
+				previous.getFuture().get(10, TimeUnit.SECONDS);
+			}
+			catch(Exception e){
+			}
+		}
+		stateLock.lock();
+		try{
+			if(closed){
+				throw new IllegalStateException("Durable channel "+key+" is closed");
+			}
+			if(consumer!=null && consumer!=channel){
+				throw new IllegalStateException("Durable channel "+key+" already has an open acceptor");
+			}
+			consumer = channel;
+			seek(ackSequence);
+		}
+		finally{
+			stateLock.unlock();
+		}
+	}
+
+	void detach(AsyncChannel channel){
+		stateLock.lock();
+		try{
+			if(consumer==channel){
+				consumer = null;
+			}
+		}
+		finally{
+			stateLock.unlock();
+		}
+	}
+
+	/**
+	 * Read the next unread message; only called by the attached consumer
+	 *
+	 * @return the next record, or null if all appended messages have been read
+	 */
+	Record poll(){
+		while(readSequence < writeSequence){
+			while(readSegment==null || readSequence >= readSegment.base + readSegment.count){
+				Segment next = nextSegment(readSegment);
+				if(next==null){
+					return null;
+				}
+				if(next.base > readSequence){
+					//retention discarded messages we had not read yet
+					dropped(next.base - readSequence);
+					readSequence = next.base;
+				}
+				readSegment = next;
+				readPosition = 0;
+			}
+			byte[] data = readSegment.read(readPosition);
+			if(data==null){
+				if(closed){
+					return null;
+				}
+				//retention discarded the segment we were reading
+				long end = readSegment.base + readSegment.count;
+				dropped(end - readSequence);
+				readSequence = end;
+				continue;
+			}
+			readPosition += HEADER_BYTES + data.length;
+			long sequence = readSequence;
+			readSequence = sequence+1;
+			return new Record(sequence, data);
+		}
+		return null;
+	}
+
+	private void dropped(long lost){
+		log.warning("Retention discarded "+lost+" unconsumed messages from durable channel "+key);
+		AsyncChannel c = consumer;
+		if(c!=null){
+			c.durableDropped(lost);
+		}
+	}
+
+	/**
+	 * Acknowledge that a message and all messages before it have been consumed; only called by the attached consumer
+	 */
+	void ack(long sequence){
+		if(sequence < ackSequence){
+			return;
+		}
+		ackSequence = sequence+1;
+		ackBuffer.putLong(0, sequence+1);
+		Segment rs = readSegment;
+		if(rs!=null && rs.base > cleanedBelow && sequence >= rs.base){
+			//the consumer has moved into a new segment, so earlier ones may now be fully acknowledged
+			cleanedBelow = rs.base;
+			stateLock.lock();
+			try{
+				deleteAcknowledged();
+			}
+			finally{
+				stateLock.unlock();
+			}
+		}
+	}
+
+	@Override
+	public void close(){
+		stateLock.lock();
+		try{
+			if(closed){
+				return;
+			}
+			closed = true;
+			for(Segment s: segments){
+				s.close();
+			}
+			segments.clear();
+		}
+		finally{
+			stateLock.unlock();
+		}
+		try{
+			ackBuffer.force();
+			ackChannel.close();
+		}
+		catch(Exception e){
+			log.log(Level.WARNING, "Error closing durable channel "+key, e);
+		}
+		try{
+			lock.release();
+			lockChannel.close();
+		}
+		catch(Exception e){
+			log.log(Level.WARNING, "Error unlocking durable channel "+key, e);
+		}
+	}
+
+	private Segment nextSegment(Segment current){
+		stateLock.lock();
+		try{
+			for(int i=0;i<segments.size();i++){
+				Segment s = segments.get(i);
+				if(current==null || s.base > current.base){
+					return s;
+				}
+			}
+			return null;
+		}
+		finally{
+			stateLock.unlock();
+		}
+	}
+
+	//position the read cursor at a sequence; caller holds the lock
+	private void seek(long sequence){
+		readSegment = null;
+		readPosition = 0;
+		readSequence = sequence;
+		for(int i=0;i<segments.size();i++){
+			Segment s = segments.get(i);
+			if(sequence < s.base + s.count || s==writeSegment){
+				if(sequence < s.base){
+					sequence = readSequence = s.base;
+				}
+				int pos = 0;
+				for(long skip = sequence - s.base; skip>0; skip--){
+					pos += HEADER_BYTES + s.reader.getInt(pos);
+				}
+				readSegment = s;
+				readPosition = pos;
+				return;
+			}
+		}
+	}
+
+	//caller holds the lock
+	private Segment roll(int dataLength) throws IOException{
+		writeSegment.mapped.force();
+		Segment s = Segment.create(directory, writeSequence, segmentBytes(dataLength));
+		segments.add(s);
+		writeSegment = s;
+		enforceRetention();
+		return s;
+	}
+
+	private int segmentBytes(int dataLength){
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(store.getSegmentBytes(), HEADER_BYTES + (long) dataLength));
+	}
+
+	//caller holds the lock
+	private void deleteAcknowledged(){
+		while(segments.size()>1){
+			Segment oldest = segments.get(0);
+			if(oldest==writeSegment || oldest.base + oldest.count > ackSequence){
+				return;
+			}
+			segments.remove(0);
+			oldest.delete();
+			firstSequence = segments.get(0).base;
+		}
+	}
+
+	//caller holds the lock; the consumer notices skipped messages when it moves to the next remaining segment
+	private void enforceRetention(){
+		final long maxBytes = store.getRetentionBytes();
+		final long maxMillis = store.getRetentionMillis();
+		final long cutoff = maxMillis > 0 ? System.currentTimeMillis() - maxMillis : Long.MIN_VALUE;
+		long total = 0;
+		for(Segment s: segments){
+			total += s.writePosition;
+		}
+		while(segments.size()>1){
+			Segment oldest = segments.get(0);
+			if(oldest==writeSegment){
+				return;
+			}
+			boolean oversize = maxBytes > 0 && total > maxBytes;
+			boolean expired = oldest.lastTimestamp < cutoff;
+			if(!oversize && !expired){
+				return;
+			}
+			segments.remove(0);
+			total -= oldest.writePosition;
+			oldest.delete();
+			firstSequence = segments.get(0).base;
+		}
+	}
+
+	/**
+	 * A message read back from the log
+	 */
+	static final class Record{
+		final long sequence;
+		final byte[] data;
+
+		Record(long sequence, byte[] data){
+			this.sequence = sequence;
+			this.data = data;
+		}
+	}
+
+	static final class Segment{
+		final long base;
+		final File file;
+		final FileChannel channel;
+		final int capacity;
+		final MappedByteBuffer mapped;
+		//separate views so the appending producer and the reading consumer never share a buffer position
+		final ByteBuffer writer;
+		final ByteBuffer reader;
+		volatile int count;
+		int writePosition;
+		//guards the mapping against release while a read copies from it
+		private final ReentrantLock lock = new ReentrantLock();
+		private boolean released = false;
+		long lastTimestamp;
+
+		private Segment(File file, long base, FileChannel channel, MappedByteBuffer buffer){
+			this.file = file;
+			this.base = base;
+			this.channel = channel;
+			this.capacity = buffer.capacity();
+			this.mapped = buffer;
+			this.writer = buffer;
+			this.reader = buffer.duplicate();
+		}
+
+		static Segment create(File directory, long base, int capacity) throws IOException{
+			File file = new File(directory, String.format("%020d", base).concat(SEGMENT_SUFFIX));
+			FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+			return new Segment(file, base, channel, channel.map(MapMode.READ_WRITE, 0, capacity));
+		}
+
+		static Segment open(File file, long base) throws IOException{
+			FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+			MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, channel.size());
+			Segment s = new Segment(file, base, channel, buffer);
+			int pos = 0;
+			int count = 0;
+			while(pos + HEADER_BYTES <= s.capacity){
+				int length = buffer.getInt(pos);
+				if(length <= 0 || pos + HEADER_BYTES + length > s.capacity){
+					break;
+				}
+				s.lastTimestamp = buffer.getLong(pos+4);
+				pos += HEADER_BYTES + length;
+				count++;
+			}
+			s.writePosition = pos;
+			s.count = count;
+			return s;
+		}
+
+		//caller holds the log lock
+		void close(){
+			lock.lock();
+			try{
+				released = true;
+				mapped.force();
+				channel.close();
+			}
+			catch(IOException e){
+				log.log(Level.WARNING, "Error closing durable channel segment "+file, e);
+			}
+			finally{
+				//don't leave the segment mapped until the buffer happens to be collected
+				DirectBuffers.release(mapped);
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Copy out the record at a position, or return null if the segment has already been closed or deleted
+		 */
+		byte[] read(int position){
+			lock.lock();
+			try{
+				if(released){
+					return null;
+				}
+				int length = reader.getInt(position);
+				byte[] data = new byte[length];
+				reader.position(position + HEADER_BYTES);
+				reader.get(data);
+				return data;
+			}
+			finally{
+				lock.unlock();
+			}
+		}
+
+		//caller holds the log lock; the segment lock keeps a concurrent read from touching the unmapped buffer
+		void delete(){
+			lock.lock();
+			try{
+				released = true;
+				try{
+					channel.close();
+				}
+				catch(IOException e){
+				}
+				//release the mapping now rather than whenever the buffer is collected, so the file can be removed
+				DirectBuffers.release(mapped);
+				if(!file.delete()){
+					log.warning("Unable to delete durable channel segment "+file);
+				}
+			}
+			finally{
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages the {@link DurableChannelLog}s of a groovity instance under one directory, one subdirectory per channel
+ * name, and registers open logs with the {@link ChannelRouter} so messages offered to those channels are persisted.
+ * Logs stay open, accumulating messages offered with the durable option, until the store is closed even if no
+ * acceptor is attached.
+ *
+ * @author Alex Vigdor
+ */
+public class DurableChannelStore implements Closeable {
+	public static final long DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+	public static final long DEFAULT_RETENTION_BYTES = 1024l * 1024 * 1024;
+	public static final long DEFAULT_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+	private final ChannelRouter router;
+	private final File directory;
+	private final ConcurrentHashMap<Object, DurableChannelLog> logs = new ConcurrentHashMap<>();
+	private volatile long segmentBytes = DEFAULT_SEGMENT_BYTES;
+	private volatile long retentionBytes = DEFAULT_RETENTION_BYTES;
+	private volatile long retentionMillis = DEFAULT_RETENTION_MILLIS;
+	private boolean closed = false;
+
+	public DurableChannelStore(ChannelRouter router, File directory){
+		this.router = router;
+		this.directory = directory;
+	}
+
+	/**
+	 * Open or get the log for a channel, replaying nothing until an acceptor attaches
+	 */
+	public DurableChannelLog open(Object key) throws IOException{
+		DurableChannelLog log = logs.get(key);
+		if(log!=null){
+			return log;
+		}
+		synchronized(this){
+			if(closed){
+				throw new IOException("Durable channel store "+directory+" is closed");
+			}
+			log = logs.get(key);
+			if(log==null){
+				log = new DurableChannelLog(this, key, new File(directory, fileName(key)));
+				logs.put(key, log);
+				router.registerDurable(key, log);
+			}
+			return log;
+		}
+	}
+
+	public DurableChannelLog get(Object key){
+		return logs.get(key);
+	}
+
+	public Collection<DurableChannelLog> getLogs(){
+		return Collections.unmodifiableCollection(logs.values());
+	}
+
+	public File getDirectory(){
+		return directory;
+	}
+
+	public long getSegmentBytes() {
+		return segmentBytes;
+	}
+
+	/**
+	 * Size of newly created log segments; a single message larger than this gets a segment of its own
+	 */
+	public void setSegmentBytes(long segmentBytes) {
+		this.segmentBytes = segmentBytes;
+	}
+
+	public long getRetentionBytes() {
+		return retentionBytes;
+	}
+
+	/**
+	 * Maximum size of each channel log, beyond which the oldest segments are discarded even if unconsumed; 0 for no limit
+	 */
+	public void setRetentionBytes(long retentionBytes) {
+		this.retentionBytes = retentionBytes;
+	}
+
+	public long getRetentionMillis() {
+		return retentionMillis;
+	}
+
+	/**
+	 * Maximum age of log segments, checked as segments roll over and when a log is opened; 0 for no limit
+	 */
+	public void setRetentionMillis(long retentionMillis) {
+		this.retentionMillis = retentionMillis;
+	}
+
+	@Override
+	public synchronized void close(){
+		closed = true;
+		for(DurableChannelLog log: logs.values()){
+			router.unregisterDurable(log.getKey(), log);
+			log.close();
+		}
+		logs.clear();
+	}
+
+	private static String fileName(Object key){
+		String name;
+		try {
+			name = URLEncoder.encode(key.toString(), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		if(name.startsWith(".")){
+			name = "%2E".concat(name.substring(1));
+		}
+		return name;
+	}
+}
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free multi-producer, single-consumer mailbox used to buffer messages for an {@link AsyncChannel}.
+ * <p>
+ * Bounded mailboxes are backed by a ring buffer of sequenced slots sized to the next power of two, and enforce
+ * the exact requested capacity; a bounded mailbox also tolerates {@link #poll()} from producer threads so that
+ * the evict policy can discard the oldest message without a lock.  Unbounded mailboxes are a linked chain of
+ * fixed size segments, so producers only allocate once per segment rather than once per message; only the
+ * consumer may poll an unbounded mailbox.
+ * <p>
+ * Producers never block; {@link #offer(Object)} returns false when a bounded mailbox is full, leaving the
+ * caller to apply its own drop, evict or block policy.
+ *
+ * @author Alex Vigdor
+ */
+public abstract class MpscMailbox<E> {
+	static final int SEGMENT_SIZE = 1024;
+
+	/**
+	 * Create a mailbox
+	 *
+	 * @param capacity the maximum number of messages to buffer, or a value less than 1 for an unbounded mailbox
+	 * @return a new empty mailbox
+	 */
+	public static <E> MpscMailbox<E> create(int capacity){
+		if(capacity>0 && capacity<Integer.MAX_VALUE){
+			return new Ring<E>(capacity);
+		}
+		return new Linked<E>();
+	}
+
+	/**
+	 * Add a message to the tail of the mailbox; safe to call from any number of threads
+	 *
+	 * @param e a non-null message
+	 * @return true if the message was added, false if the mailbox is full
+	 */
+	public abstract boolean offer(E e);
+
+	/**
+	 * Remove the message at the head of the mailbox
+	 *
+	 * @return the head message, or null if the mailbox is empty or the next message has not been fully published yet
+	 */
+	public abstract E poll();
+
+	/**
+	 * @return the approximate number of buffered messages
+	 */
+	public abstract int size();
+
+	/**
+	 * @return the maximum number of buffered messages, Integer.MAX_VALUE for unbounded mailboxes
+	 */
+	public abstract int capacity();
+
+	/**
+	 * @return true if there is no fully published message waiting at the head of the mailbox
+	 */
+	public abstract boolean isEmpty();
+
+	/**
+	 * Bounded ring of sequenced slots; each slot's sequence tells producers and consumers whose turn it is, so
+	 * claiming a slot is a single CAS on the tail or head index
+	 */
+	static final class Ring<E> extends MpscMailbox<E>{
+		final int capacity;
+		final int mask;
+		final AtomicReferenceArray<E> elements;
+		final AtomicLongArray sequences;
+		final AtomicLong head = new AtomicLong();
+		final AtomicLong tail = new AtomicLong();
+
+		Ring(int capacity){
+			int size = 1;
+			while(size<capacity){
+				size <<= 1;
+			}
+			this.capacity = capacity;
+			this.mask = size-1;
+			this.elements = new AtomicReferenceArray<>(size);
+			this.sequences = new AtomicLongArray(size);
+			for(int i=0;i<size;i++){
+				sequences.lazySet(i, i);
+			}
+		}
+
+		@Override
+		public boolean offer(E e) {
+			if(e==null){
+				throw new NullPointerException();
+			}
+			while(true){
+				long t = tail.get();
+				if(t - head.get() >= capacity){
+					return false;
+				}
+				int index = (int) t & mask;
+				long delta = sequences.get(index) - t;
+				if(delta==0){
+					if(tail.compareAndSet(t, t+1)){
+						elements.lazySet(index, e);
+						//volatile store publishes the element, and orders it before the producer checks whether the consumer is idle
+						sequences.set(index, t+1);
+						return true;
+					}
+				}
+				//otherwise another producer claimed this index, or a consumer has claimed the previous lap but not yet released the slot
+			}
+		}
+
+		@Override
+		public E poll() {
+			while(true){
+				long h = head.get();
+				int index = (int) h & mask;
+				long delta = sequences.get(index) - (h+1);
+				if(delta==0){
+					if(head.compareAndSet(h, h+1)){
+						E e = elements.get(index);
+						elements.lazySet(index, null);
+						sequences.lazySet(index, h+mask+1);
+						return e;
+					}
+				}
+				else if(delta<0){
+					return null;
+				}
+			}
+		}
+
+		@Override
+		public boolean isEmpty(){
+			long h = head.get();
+			return sequences.get((int) h & mask) != h+1;
+		}
+
+		@Override
+		public int size() {
+			long s = tail.get() - head.get();
+			return (int) Math.max(0, Math.min(s, capacity));
+		}
+
+		@Override
+		public int capacity() {
+			return capacity;
+		}
+	}
+
+	/**
+	 * Unbounded chain of array segments; producers claim an index with a single atomic increment and link a new
+	 * segment when they run off the end of the last one
+	 */
+	static final class Linked<E> extends MpscMailbox<E>{
+		final AtomicLong tail = new AtomicLong();
+		final AtomicLong head = new AtomicLong();
+		volatile Segment<E> producerSegment;
+		//only advanced by the consumer
+		volatile Segment<E> consumerSegment;
+
+		Linked(){
+			Segment<E> first = new Segment<E>(0);
+			this.producerSegment = first;
+			this.consumerSegment = first;
+		}
+
+		@Override
+		public boolean offer(E e) {
+			if(e==null){
+				throw new NullPointerException();
+			}
+			//read the segment before claiming an index, so the segment can never be past our index
+			Segment<E> segment = producerSegment;
+			long t = tail.getAndIncrement();
+			while(t >= segment.base+SEGMENT_SIZE){
+				Segment<E> next = segment.next.get();
+				if(next==null){
+					Segment<E> created = new Segment<E>(segment.base+SEGMENT_SIZE);
+					if(!segment.next.compareAndSet(null, created)){
+						created = segment.next.get();
+					}
+					next = created;
+				}
+				segment = next;
+			}
+			Segment<E> current = producerSegment;
+			if(current.base < segment.base){
+				//best effort, a lagging producer will simply walk forward from an older segment
+				producerSegment = segment;
+			}
+			segment.slots.set((int) (t - segment.base), e);
+			return true;
+		}
+
+		@Override
+		public E poll() {
+			long h = head.get();
+			Segment<E> segment = consumerSegment;
+			int index = (int) (h - segment.base);
+			if(index == SEGMENT_SIZE){
+				Segment<E> next = segment.next.get();
+				if(next==null){
+					return null;
+				}
+				consumerSegment = segment = next;
+				index = 0;
+			}
+			E e = segment.slots.get(index);
+			if(e==null){
+				return null;
+			}
+			segment.slots.lazySet(index, null);
+			head.lazySet(h+1);
+			return e;
+		}
+
+		@Override
+		public boolean isEmpty(){
+			long h = head.get();
+			Segment<E> segment = consumerSegment;
+			if(h < segment.base){
+				//the consumer moved on since we read the head
+				return false;
+			}
+			while(h >= segment.base+SEGMENT_SIZE){
+				segment = segment.next.get();
+				if(segment==null){
+					return true;
+				}
+			}
+			return segment.slots.get((int) (h - segment.base))==null;
+		}
+
+		@Override
+		public int size() {
+			long s = tail.get() - head.get();
+			return (int) Math.max(0, Math.min(s, Integer.MAX_VALUE));
+		}
+
+		@Override
+		public int capacity() {
+			return Integer.MAX_VALUE;
+		}
+
+		static final class Segment<E>{
+			final long base;
+			final AtomicReferenceArray<E> slots = new AtomicReferenceArray<>(SEGMENT_SIZE);
+			final AtomicReference<Segment<E>> next = new AtomicReference<>();
+
+			Segment(long base){
+				this.base=base;
+			}
+		}
+	}
+}
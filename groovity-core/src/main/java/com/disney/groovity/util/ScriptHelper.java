@@ -152,6 +152,11 @@ public class ScriptHelper implements GroovyObject, GroovityConstants {
 		return groovity.tag(tagName,Collections.EMPTY_MAP, closure);
 	}
 	
+	@SuppressWarnings("rawtypes")
+	public Object tag(final TagCallSite site, final Map attributes, Closure closure) throws Exception{
+		return site.call(groovity, attributes, closure);
+	}
+	
 	@SuppressWarnings("rawtypes")
 	protected final Object tag(final String tagName, final Object[] argsArray) throws Exception{
 		Map tagParams = null;
@@ -327,6 +332,9 @@ public class ScriptHelper implements GroovyObject, GroovityConstants {
 			if(o instanceof Writable){
 				((Writable)o).writeTo(writer);
 			}
+			else if(o instanceof TemplateFragment && writer instanceof FragmentWriter){
+				((FragmentWriter)writer).writeFragment((TemplateFragment)o);
+			}
 			else if(o instanceof CharSequence){
 				writer.append((CharSequence)o);
 			}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.util.Map;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.Taggables.TagBinding;
+
+import groovy.lang.Closure;
+
+/**
+ * A tag call site compiled into a script class as a static field, which resolves its tag binding
+ * on first use so that subsequent calls skip the lookup by name
+ *
+ * @author Alex Vigdor
+ */
+public final class TagCallSite {
+	private final String tagName;
+	private volatile TagBinding binding;
+
+	public TagCallSite(final String tagName) {
+		this.tagName = tagName;
+	}
+
+	public String getTagName() {
+		return tagName;
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Object call(final Groovity groovity, final Map attributes, final Closure body) throws Exception {
+		TagBinding b = binding;
+		if(b==null) {
+			b = groovity.getTaggables().bind(tagName);
+			binding = b;
+		}
+		return b.tag(attributes, body);
+	}
+
+	public String toString() {
+		return "TagCallSite(".concat(tagName).concat(")");
+	}
+}
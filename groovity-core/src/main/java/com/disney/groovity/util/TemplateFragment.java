@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A static text fragment of a template, compiled into a static field of the script class so that
+ * its encoded bytes can be computed once and copied directly by a {@link FragmentWriter}; UTF-8
+ * bytes are encoded up front, and the bytes for the most recently requested other charset are cached.
+ * The returned byte arrays are shared and must not be modified.  Only the text is serialized; the UTF-8 bytes
+ * are encoded again when a fragment is deserialized.
+ *
+ * @author Alex Vigdor
+ */
+public final class TemplateFragment implements CharSequence, Serializable {
+	private static final long serialVersionUID = 6424018365521730294L;
+	private final String text;
+	private transient byte[] utf8;
+	private transient volatile Encoded encoded;
+
+	public TemplateFragment(final String text) {
+		this.text = text;
+		this.utf8 = text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	public byte[] getBytes(final Charset charset) {
+		if(StandardCharsets.UTF_8.equals(charset)) {
+			return utf8;
+		}
+		Encoded e = encoded;
+		if(e==null || !e.charset.equals(charset)) {
+			e = new Encoded(charset, text.getBytes(charset));
+			encoded = e;
+		}
+		return e.bytes;
+	}
+
+	@Override
+	public int length() {
+		return text.length();
+	}
+
+	@Override
+	public char charAt(int index) {
+		return text.charAt(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return text.subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.utf8 = text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static final class Encoded {
+		final Charset charset;
+		final byte[] bytes;
+
+		Encoded(final Charset charset, final byte[] bytes) {
+			this.charset = charset;
+			this.bytes = bytes;
+		}
+	}
+}
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.disney.groovity.stats.GroovityStatistics;
+
+/**
+ * Runs each task on its own virtual thread when the JVM supports them (JDK 21 and later), so that tasks that
+ * mostly block on I/O do not tie up platform threads; the virtual thread API is looked up reflectively so groovity
+ * still compiles and runs on Java 8, check {@link #isSupported()} before constructing one.
+ * <p>
+ * An optional concurrency limit bounds how many tasks run at once; as with {@link DeadlockFreeExecutor}, waiting on a
+ * task that has not started yet runs it on the waiting thread, so nested tasks cannot deadlock on the limit.
+ * Each virtual thread retires its groovity statistics when its task completes.
+ *
+ * @author Alex Vigdor
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+	private static final Logger log = Logger.getLogger(VirtualThreadExecutor.class.getName());
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_FACTORY;
+	static {
+		Method ofVirtual = null;
+		Method builderName = null;
+		Method builderFactory = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			builderName = builder.getMethod("name", String.class, long.class);
+			builderFactory = builder.getMethod("factory");
+			//preview releases expose the API but refuse to build threads unless enabled
+			builderFactory.invoke(ofVirtual.invoke(null));
+		}
+		catch(Exception e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = builderName;
+		BUILDER_FACTORY = builderFactory;
+	}
+	private final InterruptFactory interruptFactory;
+	private final ThreadFactory threadFactory;
+	private final Semaphore permits;
+	private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+	private final Object termination = new Object();
+	private volatile boolean shutdown = false;
+
+	/**
+	 * @return true if this JVM can create virtual threads
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	public VirtualThreadExecutor(String name, InterruptFactory interruptFactory) {
+		this(name, interruptFactory, 0);
+	}
+
+	/**
+	 * @param name prefix for the names of the virtual threads
+	 * @param maxConcurrency the maximum number of tasks to run at once, or 0 for no limit
+	 * @throws UnsupportedOperationException if this JVM does not support virtual threads
+	 */
+	public VirtualThreadExecutor(String name, InterruptFactory interruptFactory, int maxConcurrency) {
+		if(!isSupported()) {
+			throw new UnsupportedOperationException("Virtual threads require JDK 21 or later, running "+System.getProperty("java.version"));
+		}
+		this.interruptFactory = interruptFactory;
+		this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = BUILDER_NAME.invoke(builder, name, 0l);
+			this.threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+		}
+		catch(Exception e) {
+			throw new UnsupportedOperationException("Unable to create virtual thread factory", e);
+		}
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+		return new VirtualThreadFuture<T>(callable);
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+		return new VirtualThreadFuture<T>(runnable, value);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if(shutdown) {
+			throw new RejectedExecutionException("VirtualThreadExecutor has been shut down");
+		}
+		Thread thread = threadFactory.newThread(() -> runTask(command));
+		threads.add(thread);
+		if(shutdown) {
+			threads.remove(thread);
+			signalTermination();
+			throw new RejectedExecutionException("VirtualThreadExecutor has been shut down");
+		}
+		thread.start();
+	}
+
+	private void runTask(Runnable command) {
+		try {
+			if(permits==null) {
+				command.run();
+				return;
+			}
+			if(command instanceof Future && ((Future<?>)command).isDone()) {
+				//a waiter already ran it inline
+				return;
+			}
+			permits.acquire();
+			try {
+				command.run();
+			}
+			finally {
+				permits.release();
+			}
+		}
+		catch(InterruptedException e) {
+			if(command instanceof Future) {
+				((Future<?>)command).cancel(false);
+			}
+		}
+		catch(Throwable e) {
+			//execute() callers have no future to report to
+			log.log(Level.SEVERE, "Error in virtual thread", e);
+		}
+		finally {
+			GroovityStatistics.retireCurrentThread();
+			threads.remove(Thread.currentThread());
+			if(shutdown) {
+				signalTermination();
+			}
+		}
+	}
+
+	private void signalTermination() {
+		if(threads.isEmpty()) {
+			synchronized(termination) {
+				termination.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		signalTermination();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown();
+		for(Thread thread: threads) {
+			thread.interrupt();
+		}
+		return new ArrayList<>();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return shutdown && threads.isEmpty();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized(termination) {
+			while(!isTerminated()) {
+				long remaining = deadline - System.nanoTime();
+				if(remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(termination, remaining);
+			}
+		}
+		return true;
+	}
+
+	public final class VirtualThreadFuture<V> extends FutureTask<V> {
+
+		public VirtualThreadFuture(final Callable<V> callable) {
+			super(callable);
+		}
+
+		public VirtualThreadFuture(final Runnable runnable, final V result) {
+			super(runnable, result);
+		}
+
+		public V get() throws InterruptedException, ExecutionException {
+			//a task still waiting for a permit runs here, the virtual thread then finds it done
+			if(permits!=null) {
+				run();
+			}
+			return super.get();
+		}
+
+		public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if(permits!=null && !isDone()) {
+				//use an interrupt to enforce timeout
+				ScheduledFuture<?> interrupt = interruptFactory.scheduleInterrupt(timeout, unit);
+				try {
+					run();
+				}
+				finally {
+					interrupt.cancel(true);
+				}
+			}
+			return super.get(timeout, unit);
+		}
+	}
+}
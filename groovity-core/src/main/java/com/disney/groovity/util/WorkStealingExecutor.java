@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.util;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An alternative to {@link DeadlockFreeExecutor} built on a {@link ForkJoinPool}, so that tasks submitted from
+ * pool threads go to that worker's own deque and idle workers steal from the others instead of contending on one
+ * shared queue.  Waiting on a task that has not started yet runs it on the waiting thread, whether or not the pool
+ * is busy, and waiting on a task that is running elsewhere is reported to the pool as a managed block so it can
+ * compensate with a spare worker; deeply nested async/await fan-outs therefore neither deadlock nor park pool threads.
+ *
+ * @author Alex Vigdor
+ */
+public class WorkStealingExecutor extends AbstractExecutorService {
+	private final InterruptFactory interruptFactory;
+	private final ForkJoinPool pool;
+
+	public WorkStealingExecutor(InterruptFactory interruptFactory) {
+		this(interruptFactory, Runtime.getRuntime().availableProcessors()*8);
+	}
+
+	public WorkStealingExecutor(InterruptFactory interruptFactory, int maxThreads) {
+		this.interruptFactory = interruptFactory;
+		//LIFO local processing so a worker goes depth-first through its own fan-out, thieves take the oldest tasks
+		this.pool = new ForkJoinPool(maxThreads, p -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			t.setName("WorkStealing"+t.getName());
+			return t;
+		}, null, false);
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+		return new WorkStealingFuture<T>(callable);
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+		return new WorkStealingFuture<T>(runnable, value);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		pool.execute(command);
+	}
+
+	@Override
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return pool.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return pool.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return pool.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return pool.awaitTermination(timeout, unit);
+	}
+
+	public final class WorkStealingFuture<V> extends FutureTask<V> {
+
+		public WorkStealingFuture(final Callable<V> callable) {
+			super(callable);
+		}
+
+		public WorkStealingFuture(final Runnable runnable, final V result) {
+			super(runnable, result);
+		}
+
+		public V get() throws InterruptedException, ExecutionException {
+			//help rather than wait: a task nobody has claimed yet runs here, the stale queue entry becomes a no-op
+			run();
+			if(!isDone() && Thread.currentThread() instanceof ForkJoinWorkerThread) {
+				ForkJoinPool.managedBlock(new Waiter(false, 0));
+			}
+			return super.get();
+		}
+
+		public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			final long deadline = System.nanoTime() + unit.toNanos(timeout);
+			if(!isDone()) {
+				//use an interrupt to enforce timeout
+				ScheduledFuture<?> interrupt = interruptFactory.scheduleInterrupt(timeout, unit);
+				try {
+					run();
+				}
+				finally {
+					interrupt.cancel(true);
+				}
+			}
+			if(!isDone() && Thread.currentThread() instanceof ForkJoinWorkerThread) {
+				ForkJoinPool.managedBlock(new Waiter(true, deadline));
+			}
+			return super.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+
+		//nanoTime values may be negative, so whether there is a deadline is passed separately
+		private void await(boolean timed, long deadline) throws InterruptedException {
+			try {
+				if(!timed) {
+					super.get();
+				}
+				else {
+					super.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				}
+			}
+			catch(ExecutionException | TimeoutException e) {
+				//reported by the caller's final get
+			}
+		}
+
+		private final class Waiter implements ForkJoinPool.ManagedBlocker {
+			private final boolean timed;
+			private final long deadline;
+
+			Waiter(boolean timed, long deadline) {
+				this.timed = timed;
+				this.deadline = deadline;
+			}
+
+			@Override
+			public boolean block() throws InterruptedException {
+				await(timed, deadline);
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				return isDone() || (timed && System.nanoTime() - deadline >= 0);
+			}
+		}
+	}
+}
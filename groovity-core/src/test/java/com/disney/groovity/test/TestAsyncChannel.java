@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.disney.groovity.stats.GroovityStatistics;
+import com.disney.groovity.util.AsyncChannel;
+import com.disney.groovity.util.AsyncChannel.Policy;
+import com.disney.groovity.util.DeadlockFreeExecutor;
+import com.disney.groovity.util.InterruptFactory;
+import com.disney.groovity.util.MpscMailbox;
+
+import groovy.lang.Binding;
+import groovy.lang.Closure;
+
+/**
+ * Exercise the lock-free channel mailbox and the drop, evict and block policies of AsyncChannel
+ *
+ * @author Alex Vigdor
+ */
+public class TestAsyncChannel {
+	static final DeadlockFreeExecutor executor = new DeadlockFreeExecutor(new InterruptFactory());
+
+	@AfterClass
+	public static void teardown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testRingCapacity() {
+		MpscMailbox<Integer> mailbox = MpscMailbox.create(3);
+		Assert.assertEquals(3, mailbox.capacity());
+		Assert.assertTrue(mailbox.isEmpty());
+		for(int i=0;i<3;i++) {
+			Assert.assertTrue(mailbox.offer(i));
+		}
+		Assert.assertFalse(mailbox.offer(3));
+		Assert.assertEquals(3, mailbox.size());
+		Assert.assertEquals(Integer.valueOf(0), mailbox.poll());
+		Assert.assertTrue(mailbox.offer(3));
+		for(int i=1;i<4;i++) {
+			Assert.assertEquals(Integer.valueOf(i), mailbox.poll());
+		}
+		Assert.assertNull(mailbox.poll());
+		Assert.assertTrue(mailbox.isEmpty());
+		Assert.assertEquals(Integer.MAX_VALUE, MpscMailbox.create(0).capacity());
+	}
+
+	@Test
+	public void testMailboxConcurrency() throws Exception {
+		//a small ring forces producers to wrap many times, the unbounded mailbox crosses many segments
+		for(int capacity: Arrays.asList(16, 0)) {
+			final MpscMailbox<long[]> mailbox = MpscMailbox.create(capacity);
+			final int producers = 8;
+			final int perProducer = 20000;
+			ExecutorService pool = Executors.newFixedThreadPool(producers);
+			List<Future<?>> futures = new ArrayList<>();
+			for(int p=0;p<producers;p++) {
+				final long producer = p;
+				futures.add(pool.submit(() -> {
+					for(long i=0;i<perProducer;i++) {
+						long[] message = new long[] {producer, i};
+						while(!mailbox.offer(message)) {
+							Thread.yield();
+						}
+					}
+				}));
+			}
+			long[] next = new long[producers];
+			int received = 0;
+			long deadline = System.currentTimeMillis()+30000;
+			while(received < producers*perProducer && System.currentTimeMillis() < deadline) {
+				long[] message = mailbox.poll();
+				if(message==null) {
+					Thread.yield();
+					continue;
+				}
+				Assert.assertEquals("Out of order message from producer "+message[0], next[(int)message[0]], message[1]);
+				next[(int)message[0]]++;
+				received++;
+			}
+			for(Future<?> f: futures) {
+				f.get();
+			}
+			pool.shutdown();
+			Assert.assertEquals(producers*perProducer, received);
+			Assert.assertNull(mailbox.poll());
+			Assert.assertEquals(0, mailbox.size());
+		}
+	}
+
+	@Test
+	public void testDropPolicy() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+		AsyncChannel channel = open("testDropPolicy", Policy.drop, started, release, processed);
+		Assert.assertTrue(channel.offer(0));
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(channel.offer(1));
+		Assert.assertTrue(channel.offer(2));
+		Assert.assertFalse(channel.offer(3));
+		Assert.assertEquals(2, channel.asyncChannelManager.getCurrentNumOfMessages());
+		release.countDown();
+		channel.close();
+		channel.getFuture().get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(Arrays.asList(0, 1, 2), processed);
+		Assert.assertEquals(1, channel.asyncChannelManager.getTotalMessagesDropped());
+		Assert.assertEquals(3, channel.asyncChannelManager.getTotalMessagesProcessed());
+	}
+
+	@Test
+	public void testEvictPolicy() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+		AsyncChannel channel = open("testEvictPolicy", Policy.evict, started, release, processed);
+		Assert.assertTrue(channel.offer(0));
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		for(int i=1;i<5;i++) {
+			Assert.assertTrue(channel.offer(i));
+		}
+		release.countDown();
+		channel.close();
+		channel.getFuture().get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(Arrays.asList(0, 3, 4), processed);
+		Assert.assertEquals(2, channel.asyncChannelManager.getTotalMessagesEvicted());
+		Assert.assertEquals(5, channel.asyncChannelManager.getTotalMessagesEnqueued());
+	}
+
+	@Test
+	public void testBlockPolicy() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+		AsyncChannel channel = open("testBlockPolicy", Policy.block, started, release, processed);
+		Assert.assertTrue(channel.offer(0));
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(channel.offer(1));
+		Assert.assertTrue(channel.offer(2));
+		ExecutorService producer = Executors.newSingleThreadExecutor();
+		Future<Boolean> blocked = producer.submit(() -> channel.offer(3));
+		Thread.sleep(100);
+		Assert.assertFalse("Producer should be blocked on a full channel", blocked.isDone());
+		release.countDown();
+		Assert.assertTrue(blocked.get(5, TimeUnit.SECONDS));
+		producer.shutdown();
+		channel.close();
+		channel.getFuture().get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(Arrays.asList(0, 1, 2, 3), processed);
+		Assert.assertEquals(0, channel.asyncChannelManager.getTotalMessagesDropped());
+	}
+
+	@Test
+	public void testBlockTimeout() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+		AsyncChannel channel = open("testBlockTimeout", Policy.block, started, release, processed);
+		Assert.assertTrue(channel.offer(0));
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(channel.offer(1));
+		Assert.assertTrue(channel.offer(2));
+		InterruptedException timedOut = null;
+		try {
+			channel.offer(3, 50, TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException e) {
+			timedOut = e;
+		}
+		Assert.assertNotNull("Expected blocked offer to time out", timedOut);
+		Assert.assertTrue("A timed out offer on a blocking channel is fatal", channel.isClosed());
+		release.countDown();
+		try {
+			channel.getFuture().get(5, TimeUnit.SECONDS);
+			Assert.fail("Expected channel to complete exceptionally");
+		}
+		catch(Exception e) {
+		}
+		//the running handler is interrupted and queued messages are discarded
+		Assert.assertFalse(processed.contains(1));
+		Assert.assertFalse(processed.contains(2));
+	}
+
+	@Test
+	public void testManyProducers() throws Exception {
+		final List<Object> processed = new ArrayList<>();
+		final AsyncChannel channel = open("testManyProducers", 64, Policy.block, null, null, processed);
+		final int producers = 16;
+		final int perProducer = 2000;
+		ExecutorService pool = Executors.newFixedThreadPool(producers);
+		List<Future<?>> futures = new ArrayList<>();
+		for(int p=0;p<producers;p++) {
+			futures.add(pool.submit(() -> {
+				for(int i=0;i<perProducer;i++) {
+					channel.offer(i);
+				}
+				return null;
+			}));
+		}
+		for(Future<?> f: futures) {
+			f.get(30, TimeUnit.SECONDS);
+		}
+		pool.shutdown();
+		channel.close();
+		channel.getFuture().get(30, TimeUnit.SECONDS);
+		//the handler only ever runs on one thread at a time, so an unsynchronized list must see every message
+		Assert.assertEquals(producers*perProducer, processed.size());
+		Assert.assertEquals(producers*perProducer, channel.asyncChannelManager.getTotalMessagesProcessed());
+	}
+
+	@Test
+	public void testBatchMeansBeforeFirstBatch() throws Exception {
+		AsyncChannel channel = open("testBatchMeansBeforeFirstBatch", Policy.block, null, null, new ArrayList<>());
+		Assert.assertEquals(0, channel.asyncChannelManager.getMeanBatchSize(), 0);
+		Assert.assertEquals(0, channel.asyncChannelManager.getMeanBatchWaitTimeToMillis(), 0);
+		channel.close();
+		channel.getFuture().get(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testCloseWhileProcessing() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+		AsyncChannel channel = open("testCloseWhileProcessing", Policy.block, started, release, processed);
+		Assert.assertTrue(channel.offer(0));
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		channel.close();
+		release.countDown();
+		channel.getFuture().get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(Arrays.asList(0), processed);
+		//race closes against the processor going idle, every close must still complete the channel
+		ExecutorService closer = Executors.newSingleThreadExecutor();
+		try {
+			for(int i=0;i<2000;i++) {
+				final AsyncChannel racing = open(null, 16, Policy.block, null, null, new ArrayList<>());
+				racing.offer(i);
+				Future<?> closed = closer.submit(() -> racing.close());
+				racing.offer(i);
+				closed.get(5, TimeUnit.SECONDS);
+				racing.getFuture().get(5, TimeUnit.SECONDS);
+			}
+		}
+		finally {
+			closer.shutdown();
+		}
+	}
+
+	private AsyncChannel open(String key, Policy policy, CountDownLatch started, CountDownLatch release, List<Object> processed) {
+		return open(key, 2, policy, started, release, processed);
+	}
+
+	@SuppressWarnings("serial")
+	private AsyncChannel open(String key, int queueSize, Policy policy, CountDownLatch started, CountDownLatch release, List<Object> processed) {
+		Closure<Object> handler = new Closure<Object>(this) {
+			@SuppressWarnings("unused")
+			public Object doCall(Object message) throws InterruptedException {
+				if(started!=null) {
+					started.countDown();
+					release.await(5, TimeUnit.SECONDS);
+				}
+				processed.add(message);
+				return message;
+			}
+		};
+		GroovityStatistics.startExecution("TestAsyncChannel");
+		try {
+			return AsyncChannel.open(executor, key, queueSize, policy, handler, null, this, new Binding(), null);
+		}
+		finally {
+			GroovityStatistics.endExecution();
+		}
+	}
+}
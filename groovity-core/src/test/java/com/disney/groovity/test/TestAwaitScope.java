@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.stats.GroovityStatistics;
+import com.disney.groovity.tags.Offer;
+import com.disney.groovity.tags.Await.AwaitContext;
+import com.disney.groovity.util.AsyncExecutorType;
+import com.disney.groovity.util.ScriptHelper;
+
+import groovy.lang.Binding;
+/**
+ * Verify that await scopes propagate deadlines and cancel all nested work when one async fails
+ *
+ * @author Alex Vigdor
+ */
+public class TestAwaitScope {
+	static Groovity groovity;
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(new File("src/test/resources/scopes").toURI()))
+				//make sure siblings really run in parallel, even on a single cpu
+				.setAsyncExecutorType(AsyncExecutorType.WORK_STEALING)
+				.build();
+	}
+
+	@AfterClass
+	public static void teardown() {
+		groovity.destroy();
+	}
+
+	private String run(String script) throws Exception {
+		Binding binding = new Binding();
+		StringWriter writer = new StringWriter();
+		binding.setVariable("out", writer);
+		groovity.run(script, binding);
+		return writer.toString();
+	}
+
+	@Test
+	public void testFailFast() throws Exception {
+		GroovityStatistics.reset();
+		long start = System.currentTimeMillis();
+		Assert.assertEquals("boom", run("/failFast"));
+		Assert.assertTrue("await should not wait for cancelled siblings", System.currentTimeMillis() - start < 10000);
+		Long cancelled = GroovityStatistics.getCancellations().get("async");
+		//the slow sibling, the one running the nested await, and the nested async
+		Assert.assertNotNull(cancelled);
+		Assert.assertTrue("Expected at least 2 cancellations, got "+cancelled, cancelled >= 2);
+	}
+
+	@Test
+	public void testNestedDeadline() throws Exception {
+		long start = System.currentTimeMillis();
+		Assert.assertEquals("true", run("/deadline"));
+		Assert.assertTrue("nested await should honor the outer deadline", System.currentTimeMillis() - start < 10000);
+	}
+
+	@Test
+	public void testScopeLinks() {
+		Map<String, Object> variables = new HashMap<>();
+		AwaitContext outer = AwaitContext.create(variables, 1);
+		AwaitContext inner = AwaitContext.create(variables, 60);
+		Assert.assertEquals(outer.getDeadline(), inner.getDeadline());
+		Assert.assertTrue(inner.remainingMillis(5000) <= 1000);
+		Assert.assertEquals(100, inner.remainingMillis(100));
+		AtomicBoolean aborted = new AtomicBoolean();
+		AtomicBoolean completed = new AtomicBoolean();
+		Future<?> abortable = inner.linkAction("test", () -> aborted.set(true));
+		Future<?> done = inner.linkAction("test", () -> completed.set(true));
+		inner.unlink(done);
+		IllegalStateException failure = new IllegalStateException();
+		outer.fail(failure);
+		Assert.assertTrue(inner.isCancelled());
+		Assert.assertSame(failure, inner.getFailure());
+		Assert.assertTrue(aborted.get());
+		Assert.assertFalse(completed.get());
+		Assert.assertTrue(abortable.isDone());
+		try {
+			inner.checkCancelled();
+			Assert.fail("Expected CancellationException");
+		}
+		catch(CancellationException e) {
+			Assert.assertSame(failure, e.getCause());
+		}
+		inner.close(variables);
+		Assert.assertSame(outer, AwaitContext.get(variables));
+		outer.close(variables);
+		Assert.assertNull(AwaitContext.get(variables));
+	}
+
+	@Test
+	public void testOfferWithoutBody() throws Exception {
+		Binding binding = new Binding();
+		AwaitContext scope = AwaitContext.create(binding.getVariables());
+		IllegalStateException failure = new IllegalStateException();
+		scope.fail(failure);
+		Binding oldBinding = ScriptHelper.THREAD_BINDING.get();
+		ScriptHelper.THREAD_BINDING.set(binding);
+		try {
+			Map<String, Object> attributes = new HashMap<>();
+			attributes.put("channel", "testOfferWithoutBody");
+			attributes.put("value", "message");
+			new Offer().tag(attributes, null);
+			Assert.fail("Expected CancellationException");
+		}
+		catch(CancellationException e) {
+			Assert.assertSame(failure, e.getCause());
+		}
+		finally {
+			ScriptHelper.THREAD_BINDING.set(oldBinding);
+			scope.close(binding.getVariables());
+		}
+		Assert.assertFalse(Thread.interrupted());
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.disney.groovity.util.BindingSnapshot;
+
+/**
+ * Verify copy-on-write isolation between async binding snapshots and their parents
+ *
+ * @author Alex Vigdor
+ */
+public class TestBindingSnapshot {
+
+	private Map<String, Object> parent() {
+		Map<String, Object> parent = new HashMap<>();
+		parent.put("a", "A");
+		parent.put("b", null);
+		parent.put("out", new StringWriter());
+		parent.put("._internal", "secret");
+		return parent;
+	}
+
+	@Test
+	public void testIsolation() {
+		Map<String, Object> parent = parent();
+		BindingSnapshot child = BindingSnapshot.of(parent);
+		Assert.assertEquals("A", child.get("a"));
+		Assert.assertTrue(child.containsKey("b"));
+		Assert.assertSame(parent.get("out"), child.get("out"));
+		Assert.assertFalse(child.containsKey("._internal"));
+		Assert.assertEquals(3, child.size());
+		child.put("a", "X");
+		child.put("c", "C");
+		child.remove("b");
+		child.put("._mine", 1);
+		Assert.assertEquals("A", parent.get("a"));
+		Assert.assertTrue(parent.containsKey("b"));
+		Assert.assertFalse(parent.containsKey("c"));
+		Assert.assertEquals("X", child.get("a"));
+		Assert.assertFalse(child.containsKey("b"));
+		Assert.assertEquals(1, child.get("._mine"));
+		Assert.assertEquals(4, child.size());
+		BindingSnapshot grandchild = child.snapshot();
+		Assert.assertEquals("X", grandchild.get("a"));
+		Assert.assertEquals("C", grandchild.get("c"));
+		Assert.assertFalse(grandchild.containsKey("b"));
+		Assert.assertFalse(grandchild.containsKey("._mine"));
+		grandchild.put("c", "G");
+		child.put("c", "D");
+		Assert.assertEquals("G", grandchild.get("c"));
+		Assert.assertEquals("D", child.get("c"));
+		Map<String, Object> copy = new HashMap<>(child);
+		Assert.assertEquals(4, copy.size());
+		Assert.assertEquals("D", copy.get("c"));
+		Assert.assertEquals(1, copy.get("._mine"));
+	}
+
+	@Test
+	public void testParentChanges() {
+		Map<String, Object> parent = parent();
+		BindingSnapshot first = BindingSnapshot.of(parent);
+		parent.put("a", "B");
+		parent.put("out", new StringWriter());
+		BindingSnapshot second = BindingSnapshot.of(parent);
+		Assert.assertEquals("A", first.get("a"));
+		Assert.assertEquals("B", second.get("a"));
+		Assert.assertNotSame(first.get("out"), second.get("out"));
+		parent.remove("b");
+		Assert.assertFalse(BindingSnapshot.of(parent).containsKey("b"));
+		Assert.assertTrue(first.containsKey("b"));
+	}
+
+	@Test
+	public void testOwnedCopy() {
+		Map<String, Object> parent = parent();
+		BindingSnapshot child = BindingSnapshot.of(parent);
+		for(int i = 0; i < 100; i++) {
+			child.put("v" + i, i);
+		}
+		BindingSnapshot grandchild = child.snapshot();
+		child.put("v0", "changed");
+		child.entrySet().removeIf(e -> e.getKey().equals("a"));
+		Assert.assertEquals(0, grandchild.get("v0"));
+		Assert.assertEquals("A", grandchild.get("a"));
+		Assert.assertEquals("changed", child.get("v0"));
+		Assert.assertFalse(child.containsKey("a"));
+		Assert.assertEquals(103, grandchild.size());
+		Assert.assertEquals(102, child.size());
+		Assert.assertFalse(parent.containsKey("v0"));
+	}
+}
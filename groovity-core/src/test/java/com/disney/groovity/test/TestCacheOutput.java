@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.util.FragmentWriter;
+import com.disney.groovity.util.TemplateFragment;
+
+import groovy.lang.Binding;
+import groovy.lang.Closure;
+/**
+ * validate that cacheOutput renders its body once per key and splices cached output, with invalidation through
+ * the existing cacheRemove and cacheRefresh tags
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class TestCacheOutput {
+	static Groovity groovity;
+	static AtomicInteger renders = new AtomicInteger();
+	
+	@BeforeClass
+	public static void setup() throws Exception {
+		groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(new File("src/test/resources/outputcache").toURI()))
+				.build();
+	}
+	
+	@AfterClass
+	public static void teardown() {
+		groovity.destroy();
+	}
+	
+	@Test
+	public void testCacheOutput() throws Exception {
+		String first = render("home", new StringWriter(), null);
+		int rendered = renders.get();
+		Assert.assertEquals("<header><nav>home:"+rendered+"</nav></header>", first);
+		Assert.assertEquals(first, render("home", new StringWriter(), null));
+		Assert.assertEquals(rendered, renders.get());
+		Assert.assertEquals("<header><nav>news:"+(rendered+1)+"</nav></header>", render("news", new StringWriter(), null));
+		
+		RecordingWriter writer = new RecordingWriter();
+		Assert.assertEquals(first, render("home", writer, null));
+		Assert.assertEquals(rendered+1, renders.get());
+		Assert.assertTrue(writer.fragments.contains("<nav>home:"+rendered+"</nav>"));
+	}
+	
+	@Test
+	public void testCacheRemove() throws Exception {
+		String first = render("sports", new StringWriter(), null);
+		Assert.assertEquals(first, render("sports", new StringWriter(), null));
+		String removed = render("sports", new StringWriter(), "remove");
+		Assert.assertNotEquals(first, removed);
+		Assert.assertEquals(removed, render("sports", new StringWriter(), null));
+	}
+	
+	@Test
+	public void testCacheRefresh() throws Exception {
+		String first = render("weather", new StringWriter(), null);
+		render("weather", new StringWriter(), "refresh");
+		String refreshed = first;
+		for(int i=0; i<100 && refreshed.equals(first); i++) {
+			Thread.sleep(100);
+			refreshed = render("weather", new StringWriter(), null);
+		}
+		Assert.assertNotEquals(first, refreshed);
+		Assert.assertEquals(refreshed, render("weather", new StringWriter(), null));
+	}
+	
+	@Test
+	public void testConcurrentMiss() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			int before = renders.get();
+			List<Future<String>> results = new ArrayList<>();
+			for(int i=0; i<4; i++) {
+				results.add(executor.submit(() -> renderSlowly("sale")));
+			}
+			String first = results.get(0).get();
+			for(Future<String> result: results) {
+				Assert.assertEquals(first, result.get());
+			}
+			Assert.assertEquals("concurrent misses should wait for one render", before+1, renders.get());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test(timeout=10000)
+	public void testNestedSameKey() throws Exception {
+		Binding binding = new Binding();
+		StringWriter writer = new StringWriter();
+		binding.setVariable("out", writer);
+		binding.setVariable("section", "nested");
+		binding.setVariable("renders", renders);
+		groovity.run("/nestedNav", binding);
+		Assert.assertTrue(writer.toString().startsWith("<header><nav>nested:"));
+	}
+	
+	@Test
+	public void testBoundedWait() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> slow = executor.submit(() -> renderSlowly("/hungNav", "stuck", 5000));
+			Thread.sleep(500);
+			long start = System.currentTimeMillis();
+			Future<String> waiting = executor.submit(() -> renderSlowly("/hungNav", "stuck", 0));
+			Assert.assertTrue(waiting.get().startsWith("<header><nav>stuck:"));
+			long waited = System.currentTimeMillis() - start;
+			Assert.assertTrue("Waited "+waited+" ms for a hung render", waited < 4000);
+			Assert.assertFalse(slow.isDone());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private String renderSlowly(String section) throws Exception {
+		return renderSlowly("/slowNav", section, 500);
+	}
+	
+	@SuppressWarnings("serial")
+	private String renderSlowly(String script, String section, long pause) throws Exception {
+		Binding binding = new Binding();
+		StringWriter writer = new StringWriter();
+		binding.setVariable("out", writer);
+		binding.setVariable("section", section);
+		binding.setVariable("renders", renders);
+		binding.setVariable("pause", new Closure<String>(null) {
+			@SuppressWarnings("unused")
+			public String doCall() throws InterruptedException {
+				Thread.sleep(pause);
+				return "";
+			}
+		});
+		groovity.run(script, binding);
+		return writer.toString();
+	}
+	
+	private String render(String section, StringWriter writer, String invalidate) throws Exception {
+		Binding binding = new Binding();
+		binding.setVariable("out", writer);
+		binding.setVariable("section", section);
+		binding.setVariable("renders", renders);
+		if(invalidate!=null) {
+			binding.setVariable(invalidate, true);
+		}
+		groovity.run("/nav", binding);
+		return writer.toString();
+	}
+	
+	private static class RecordingWriter extends StringWriter implements FragmentWriter{
+		final List<String> fragments = new ArrayList<>();
+		
+		@Override
+		public void writeFragment(TemplateFragment fragment) throws IOException {
+			fragments.add(fragment.toString());
+			write(new String(fragment.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+		}
+	}
+}
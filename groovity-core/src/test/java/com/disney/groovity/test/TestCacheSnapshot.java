@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.GroovityPhase;
+
+import groovy.lang.Binding;
+/**
+ * Verify caches with a snapshot option survive a groovity restart
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class TestCacheSnapshot {
+	
+	@SuppressWarnings("rawtypes")
+	private Map run(File snapshotDirectory) throws Exception{
+		Groovity groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(new File("src/test/resources/snapshot").toURI()))
+				.setSourcePhases(EnumSet.of(GroovityPhase.STARTUP))
+				.setCacheSnapshotDirectory(snapshotDirectory)
+				.build();
+		try{
+			Binding binding = new Binding();
+			binding.setVariable("keys", Arrays.asList("a","b","c"));
+			return (Map) groovity.run("/snapshotCache", binding);
+		}
+		finally{
+			groovity.destroy();
+		}
+	}
+	
+	@SuppressWarnings("rawtypes")
+	@Test
+	public void testWarmRestart() throws Exception{
+		File snapshotDirectory = Files.createTempDirectory("groovity-snapshot").toFile();
+		Map first = run(snapshotDirectory);
+		Assert.assertEquals(3, ((Map)first.get("values")).size());
+		Assert.assertEquals(0, first.get("restoredValues"));
+		Assert.assertTrue(new File(snapshotDirectory, "snapshotCache/snapValues.snapshot").exists());
+		Assert.assertTrue(new File(snapshotDirectory, "snapshotCache/snapKeys.snapshot").exists());
+		Assert.assertTrue(new File(snapshotDirectory, "snapshotCache/snap%2Fshared.snapshot").exists());
+		Assert.assertTrue(new File(snapshotDirectory, "snapshotCache/snap_shared.snapshot").exists());
+		Map second = run(snapshotDirectory);
+		Assert.assertEquals(first.get("values"), second.get("values"));
+		Assert.assertEquals(3, second.get("restoredValues"));
+		Assert.assertEquals(3, second.get("restoredKeys"));
+		Assert.assertEquals("slashed", second.get("slashed"));
+		Assert.assertEquals("underscored", second.get("underscored"));
+	}
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.GroovityPhase;
+import com.disney.groovity.util.AsyncChannel;
+import com.disney.groovity.util.BatchingChannelTransport;
+import com.disney.groovity.util.ChannelRouter;
+import com.disney.groovity.util.ChannelRouter.TopicStats;
+
+import groovy.lang.Binding;
+/**
+ * Verify channel messages are routed between several groovity instances acting as cluster nodes in one JVM
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class TestChannelRouting {
+	static List<LoopbackTransport> cluster = new CopyOnWriteArrayList<>();
+	static List<Groovity> nodes = new ArrayList<>();
+	
+	static class LoopbackTransport extends BatchingChannelTransport{
+		@Override
+		protected Collection<?> getPeers() {
+			ArrayList<LoopbackTransport> peers = new ArrayList<>(cluster);
+			peers.remove(this);
+			return peers;
+		}
+
+		@Override
+		protected void transmit(Object peer, byte[] batch) throws Exception {
+			((LoopbackTransport)peer).receive(batch);
+		}
+	}
+	
+	@BeforeClass
+	public static void setup() throws Exception{
+		for(int i=0;i<3;i++){
+			LoopbackTransport transport = new LoopbackTransport();
+			transport.setBackpressureMillis(50);
+			cluster.add(transport);
+			nodes.add(new GroovityBuilder()
+					.setSourceLocations(Arrays.asList(new File("src/test/resources/cluster").toURI()))
+					.setSourcePhases(EnumSet.of(GroovityPhase.STARTUP))
+					.setChannelTransport(transport)
+					.setForwardedChannels(Arrays.asList("clusterTopic", "filteredTopic", "pressureTopic"))
+					.build());
+		}
+		for(LoopbackTransport transport: cluster){
+			transport.refreshPeers();
+		}
+	}
+	
+	@AfterClass
+	public static void teardown(){
+		for(Groovity node: nodes){
+			node.destroy();
+		}
+	}
+	
+	@Test
+	public void testClusterRouting() throws Exception{
+		List<List<Object>> received = new ArrayList<>();
+		List<AsyncChannel> channels = new ArrayList<>();
+		for(Groovity node: nodes){
+			List<Object> list = new CopyOnWriteArrayList<>();
+			received.add(list);
+			Binding binding = new Binding();
+			binding.setVariable("received", list);
+			channels.add((AsyncChannel) node.run("/listen", binding));
+		}
+		Assert.assertNull(AsyncChannel.ASYNC_CHANNEL_ROUTING.get("clusterTopic"));
+		Binding binding = new Binding();
+		binding.setVariable("message", "hello");
+		nodes.get(0).run("/send", binding);
+		binding = new Binding();
+		binding.setVariable("message", new Object());
+		nodes.get(1).run("/send", binding);
+		for(int i=0; i<100 && (received.get(1).isEmpty() || received.get(2).isEmpty()); i++){
+			Thread.sleep(20);
+		}
+		//give any duplicates a chance to show up
+		Thread.sleep(100);
+		Assert.assertEquals(Arrays.asList("hello"), received.get(0));
+		Assert.assertEquals(Arrays.asList("hello"), received.get(2));
+		//the unserializable message is only delivered locally
+		Assert.assertEquals(2, received.get(1).size());
+		Assert.assertTrue(received.get(1).contains("hello"));
+		TopicStats sender = nodes.get(0).getChannelRouter().getStats("clusterTopic");
+		Assert.assertEquals(1, sender.getOffered());
+		Assert.assertEquals(2, sender.getSent());
+		TopicStats other = nodes.get(1).getChannelRouter().getStats("clusterTopic");
+		Assert.assertEquals(1, other.getReceived());
+		Assert.assertEquals(2, other.getFailed());
+		for(AsyncChannel channel: channels){
+			channel.close();
+		}
+	}
+	
+	@Test
+	public void testUnforwardedChannel() throws Exception{
+		ChannelRouter router = nodes.get(0).getChannelRouter();
+		Assert.assertFalse(router.offer("localTopic", "stays here", 1, TimeUnit.SECONDS));
+		Assert.assertEquals(0, router.getStats("localTopic").getSent());
+		//peers drop messages for channels they don't forward
+		Assert.assertFalse(nodes.get(1).getChannelRouter().receive("localTopic", "injected"));
+		Assert.assertEquals(0, nodes.get(1).getChannelRouter().getStats("localTopic").getReceived());
+	}
+	
+	@Test
+	public void testFilteredClasses() throws Exception{
+		ChannelRouter router = nodes.get(0).getChannelRouter();
+		Assert.assertTrue(router.offer("filteredTopic", "allowed", 1, TimeUnit.SECONDS));
+		//serializable, but not an allowed class
+		Assert.assertTrue(router.offer("filteredTopic", new File("not allowed"), 1, TimeUnit.SECONDS));
+		TopicStats peer = nodes.get(1).getChannelRouter().getStats("filteredTopic");
+		for(int i=0; i<100 && router.getStats("filteredTopic").getSent() < 4; i++){
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(4, router.getStats("filteredTopic").getSent());
+		Assert.assertEquals(1, peer.getReceived());
+	}
+	
+	@Test
+	public void testBackpressure() throws Exception{
+		List<Object> received = new CopyOnWriteArrayList<>();
+		CountDownLatch gate = new CountDownLatch(1);
+		Binding binding = new Binding();
+		binding.setVariable("received", received);
+		binding.setVariable("gate", gate);
+		AsyncChannel channel = (AsyncChannel) nodes.get(1).run("/slowListen", binding);
+		ChannelRouter router = nodes.get(0).getChannelRouter();
+		for(int i=0; i<5; i++){
+			Assert.assertTrue(router.offer("pressureTopic", i, 1, TimeUnit.SECONDS));
+		}
+		TopicStats sender = router.getStats("pressureTopic");
+		//the peer without acceptors takes everything, the one with a full queue pushes back instead of blocking
+		for(int i=0; i<100 && sender.getSent() < 5; i++){
+			Thread.sleep(20);
+		}
+		Thread.sleep(200);
+		Assert.assertTrue(sender.getSent() < 10);
+		Assert.assertEquals(0, sender.getFailed());
+		long start = System.currentTimeMillis();
+		try{
+			nodes.get(1).getChannelRouter().receive("pressureTopic", "rejected");
+			Assert.fail("Expected full acceptor to reject message");
+		}
+		catch(RejectedExecutionException e){
+		}
+		Assert.assertTrue(System.currentTimeMillis()-start < 1000);
+		gate.countDown();
+		for(int i=0; i<200 && received.size() < 5; i++){
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), received);
+		Assert.assertEquals(10, sender.getSent());
+		Assert.assertEquals(0, sender.getFailed());
+		Assert.assertEquals(5, nodes.get(1).getChannelRouter().getStats("pressureTopic").getReceived());
+		channel.close();
+	}
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Map.Entry;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.GroovityPhase;
+import com.disney.groovity.compile.CompiledClassCache;
+import com.disney.groovity.compile.GroovityCompilerEvent;
+
+import groovy.lang.Binding;
+/**
+ * validate that the compiled class cache skips compilation for unchanged sources
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class TestCompiledClassCache {
+	Path sourceDir;
+	Path cacheDir;
+	
+	@Before
+	public void setup() throws IOException {
+		sourceDir = Files.createTempDirectory("groovity-cache-sources");
+		cacheDir = Files.createTempDirectory("groovity-cache");
+		try(Stream<Path> sources = Files.list(new File("src/test/resources/traits").toPath())){
+			for(Path source: (Iterable<Path>) sources::iterator) {
+				Files.copy(source, sourceDir.resolve(source.getFileName()));
+			}
+		}
+	}
+	
+	@After
+	public void teardown() throws IOException {
+		delete(sourceDir);
+		delete(cacheDir);
+	}
+	
+	@Test
+	public void testCacheHits() throws Exception {
+		String expected;
+		Groovity first = build(false);
+		try {
+			CompiledClassCache cache = first.getCompiledClassCache();
+			Assert.assertEquals(0, cache.getHits());
+			//sources compiled before the traits they depend on are retried, so may miss twice
+			Assert.assertTrue(cache.getMisses() >= 10);
+			Assert.assertEquals(10, cache.getStores());
+			expected = run(first, "/testSwallow");
+		}
+		finally {
+			first.destroy();
+		}
+		Groovity second = build(false);
+		try {
+			CompiledClassCache cache = second.getCompiledClassCache();
+			Assert.assertEquals(10, cache.getHits());
+			Assert.assertEquals(0, cache.getStores());
+			Assert.assertEquals(expected, run(second, "/testSwallow"));
+		}
+		finally {
+			second.destroy();
+		}
+		//a changed trait must invalidate the scripts compiled against it
+		Path feathered = sourceDir.resolve("feathered.grvt");
+		String trait = new String(Files.readAllBytes(feathered), StandardCharsets.UTF_8);
+		Files.write(feathered, trait.replace("int numFeathers", "int numFeathers\n\tint numMolts").getBytes(StandardCharsets.UTF_8));
+		Groovity third = build(false);
+		try {
+			CompiledClassCache cache = third.getCompiledClassCache();
+			Assert.assertTrue("Expected trait change to cause misses", cache.getMisses() > 1);
+			Assert.assertTrue("Expected recompiled sources to be stored", cache.getStores() > 1);
+			Assert.assertEquals(expected, run(third, "/testSwallow"));
+		}
+		finally {
+			third.destroy();
+		}
+	}
+	
+	@Test
+	public void testReadOnly() throws Exception {
+		Groovity groovity = build(true);
+		try {
+			CompiledClassCache cache = groovity.getCompiledClassCache();
+			Assert.assertTrue(cache.getMisses() >= 10);
+			Assert.assertEquals(0, cache.getStores());
+			try(Stream<Path> entries = Files.list(cacheDir)){
+				Assert.assertEquals(0, entries.count());
+			}
+		}
+		finally {
+			groovity.destroy();
+		}
+	}
+	
+	private Groovity build(boolean readOnly) throws Exception {
+		Groovity groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(sourceDir.toUri()))
+				.setSourcePhases(EnumSet.of(GroovityPhase.STARTUP))
+				.setCompiledClassCacheDirectory(cacheDir.toFile())
+				.setCompiledClassCacheReadOnly(readOnly)
+				.build();
+		for(Entry<String, GroovityCompilerEvent> event: groovity.getCompilerEvents().entrySet()) {
+			Assert.assertNull("Error compiling "+event.getKey(), event.getValue().getError());
+		}
+		return groovity;
+	}
+	
+	private String run(Groovity groovity, String path) throws Exception {
+		Binding binding = new Binding();
+		StringWriter writer = new StringWriter();
+		binding.setVariable("out", writer);
+		groovity.run(path, binding);
+		return writer.toString();
+	}
+	
+	private static void delete(Path dir) throws IOException {
+		try(Stream<Path> paths = Files.walk(dir)){
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.disney.groovity.stats.GroovityStatistics;
+import com.disney.groovity.util.AsyncChannel;
+import com.disney.groovity.util.AsyncChannel.Policy;
+import com.disney.groovity.util.ChannelRouter;
+import com.disney.groovity.util.DeadlockFreeExecutor;
+import com.disney.groovity.util.DurableChannelLog;
+import com.disney.groovity.util.DurableChannelStore;
+import com.disney.groovity.util.InterruptFactory;
+
+import groovy.lang.Binding;
+import groovy.lang.Closure;
+
+/**
+ * Verify durable channels persist messages across restarts, acknowledge processed messages and apply retention
+ *
+ * @author Alex Vigdor
+ */
+public class TestDurableChannel {
+	static final DeadlockFreeExecutor executor = new DeadlockFreeExecutor(new InterruptFactory());
+
+	@AfterClass
+	public static void teardown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testReplayAfterRestart() throws Exception {
+		File directory = Files.createTempDirectory("groovity-channels").toFile();
+		ChannelRouter router = new ChannelRouter();
+		DurableChannelStore store = new DurableChannelStore(router, directory);
+		store.open("orders");
+		for(int i=0;i<5;i++) {
+			Assert.assertTrue(router.offer("orders", "order"+i, -1, TimeUnit.SECONDS));
+		}
+		store.close();
+		store = new DurableChannelStore(router, directory);
+		DurableChannelLog log = store.open("orders");
+		Assert.assertEquals(5, log.pending());
+		List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+		AsyncChannel channel = open(router, log, "orders", 1, processed, null);
+		Assert.assertTrue(router.offer("orders", "order5", -1, TimeUnit.SECONDS));
+		awaitSize(processed, 6);
+		channel.close();
+		channel.getFuture().get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(Arrays.asList("order0", "order1", "order2", "order3", "order4", "order5"), processed);
+		Assert.assertEquals(0, log.pending());
+		store.close();
+		store = new DurableChannelStore(router, directory);
+		Assert.assertEquals(0, store.open("orders").pending());
+		store.close();
+	}
+
+	@Test
+	public void testFailedMessageIsNotAcknowledged() throws Exception {
+		File directory = Files.createTempDirectory("groovity-channels").toFile();
+		ChannelRouter router = new ChannelRouter();
+		DurableChannelStore store = new DurableChannelStore(router, directory);
+		DurableChannelLog log = store.open("payments");
+		List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+		AsyncChannel channel = open(router, log, "payments", 1, processed, "bad");
+		for(String message: Arrays.asList("a", "b", "bad", "c")) {
+			router.offer("payments", message, -1, TimeUnit.SECONDS);
+		}
+		try {
+			channel.getFuture().get(5, TimeUnit.SECONDS);
+			Assert.fail("Expected handler failure");
+		}
+		catch(ExecutionException e) {
+			Assert.assertEquals(IllegalArgumentException.class, e.getCause().getClass());
+		}
+		Assert.assertEquals(Arrays.asList("a", "b"), processed);
+		//the failed message and everything after it is replayed to the next acceptor
+		Assert.assertEquals(2, log.pending());
+		processed.clear();
+		channel = open(router, log, "payments", 1, processed, null);
+		awaitSize(processed, 2);
+		channel.close();
+		channel.getFuture().get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(Arrays.asList("bad", "c"), processed);
+		store.close();
+	}
+
+	@Test
+	public void testRetention() throws Exception {
+		File directory = Files.createTempDirectory("groovity-channels").toFile();
+		ChannelRouter router = new ChannelRouter();
+		DurableChannelStore store = new DurableChannelStore(router, directory);
+		store.setSegmentBytes(1024);
+		store.setRetentionBytes(4096);
+		DurableChannelLog log = store.open("clicks");
+		for(int i=0;i<500;i++) {
+			router.offer("clicks", i, -1, TimeUnit.SECONDS);
+		}
+		Assert.assertTrue("Log exceeds retention: "+log.getSize(), log.getSize() <= 4096 + 1024);
+		Assert.assertTrue("Too many segments: "+log.getSegmentCount(), log.getSegmentCount() <= 5);
+		Assert.assertTrue("Retention discarded nothing", log.pending() < 500);
+		Assert.assertEquals(log.getSegmentCount(), log.getDirectory().list((dir, name) -> name.endsWith(".log")).length);
+		int retained = log.pending();
+		List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+		AsyncChannel channel = open(router, log, "clicks", 1, processed, null);
+		awaitSize(processed, retained);
+		channel.close();
+		channel.getFuture().get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(499, processed.get(processed.size()-1));
+		Assert.assertEquals(retained, processed.size());
+		Assert.assertEquals(1, log.getSegmentCount());
+		store.close();
+	}
+
+	@Test
+	public void testRetentionWhileConsuming() throws Exception {
+		File directory = Files.createTempDirectory("groovity-channels").toFile();
+		ChannelRouter router = new ChannelRouter();
+		DurableChannelStore store = new DurableChannelStore(router, directory);
+		store.setSegmentBytes(256);
+		store.setRetentionBytes(1024);
+		DurableChannelLog log = store.open("views");
+		List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+		AsyncChannel channel = open(router, log, "views", 1, processed, null);
+		//segments are deleted and unmapped underneath the consumer as it reads
+		for(int i=0;i<5000;i++) {
+			router.offer("views", i, -1, TimeUnit.SECONDS);
+		}
+		long deadline = System.currentTimeMillis()+5000;
+		while(log.unread() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		awaitSize(processed, processed.size());
+		channel.close();
+		channel.getFuture().get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(4999, processed.get(processed.size()-1));
+		Assert.assertEquals(log.getSegmentCount(), log.getDirectory().list((dir, name) -> name.endsWith(".log")).length);
+		store.close();
+	}
+
+	@Test
+	public void testUnserializableFallback() throws Exception {
+		File directory = Files.createTempDirectory("groovity-channels").toFile();
+		ChannelRouter router = new ChannelRouter();
+		DurableChannelStore store = new DurableChannelStore(router, directory);
+		DurableChannelLog log = store.open("callbacks");
+		List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+		AsyncChannel channel = open(router, log, "callbacks", 1, processed, null);
+		Object unserializable = new Object();
+		Assert.assertTrue(router.offer("callbacks", unserializable, -1, TimeUnit.SECONDS));
+		Assert.assertTrue(router.offer("callbacks", "serializable", -1, TimeUnit.SECONDS));
+		awaitSize(processed, 2);
+		channel.close();
+		channel.getFuture().get(5, TimeUnit.SECONDS);
+		Assert.assertTrue(processed.contains(unserializable));
+		Assert.assertTrue(processed.contains("serializable"));
+		Assert.assertEquals(1, log.getWriteSequence());
+		Assert.assertEquals(0, log.pending());
+		store.close();
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testSingleAcceptor() throws Exception {
+		File directory = Files.createTempDirectory("groovity-channels").toFile();
+		ChannelRouter router = new ChannelRouter();
+		DurableChannelStore store = new DurableChannelStore(router, directory);
+		DurableChannelLog log = store.open("exclusive");
+		AsyncChannel channel = open(router, log, "exclusive", 1, new ArrayList<>(), null);
+		try {
+			open(router, log, "exclusive", 1, new ArrayList<>(), null);
+		}
+		finally {
+			channel.close();
+			store.close();
+		}
+	}
+
+	private static void awaitSize(List<Object> processed, int size) throws InterruptedException {
+		long deadline = System.currentTimeMillis()+5000;
+		while(processed.size() < size && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(size, processed.size());
+	}
+
+	@SuppressWarnings("serial")
+	private AsyncChannel open(ChannelRouter router, DurableChannelLog log, String key, int batch, List<Object> processed, Object failOn) {
+		Closure<Object> handler = new Closure<Object>(this) {
+			@SuppressWarnings("unused")
+			public Object doCall(Object message) {
+				if(failOn!=null && failOn.equals(message)) {
+					throw new IllegalArgumentException("Failed on "+message);
+				}
+				processed.add(message);
+				return message;
+			}
+		};
+		GroovityStatistics.startExecution("TestDurableChannel");
+		try {
+			return AsyncChannel.open(router, log, executor, key, -1, Policy.block, batch, 0, handler, null, this, new Binding(), null);
+		}
+		finally {
+			GroovityStatistics.endExecution();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.disney.groovity.stats.GroovityMetrics;
+import com.disney.groovity.stats.GroovityProfiler;
+import com.disney.groovity.stats.GroovityStatistics;
+import com.disney.groovity.stats.GroovityStatistics.Execution;
+import com.disney.groovity.stats.GroovityStatistics.Statistics;
+import com.disney.groovity.stats.LatencyHistogram;
+/**
+ * Verify per-thread statistics are merged correctly, including executions whose parent runs on another thread
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class TestGroovityStatistics {
+	
+	private Statistics find(String key){
+		List<Statistics> stats = GroovityStatistics.getStatistics();
+		Optional<Statistics> found = stats.stream().filter(s -> s.key.equals(key)).findFirst();
+		return found.orElse(null);
+	}
+	
+	@Test
+	public void testMergedStatistics() throws Exception{
+		GroovityStatistics.reset();
+		for(int i=0;i<3;i++){
+			GroovityStatistics.startExecution("statsOuter");
+			GroovityStatistics.startExecution("statsInner");
+			Thread.sleep(2);
+			GroovityStatistics.endExecution();
+			GroovityStatistics.endExecution();
+		}
+		Assert.assertNull(GroovityStatistics.currentStackKey());
+		GroovityStatistics.startExecution("statsOuter");
+		final Execution parent = GroovityStatistics.snapshot();
+		Thread thread = new Thread(() -> {
+			Execution restore = GroovityStatistics.registerStack(parent);
+			GroovityStatistics.startExecution("statsInner");
+			try {
+				Thread.sleep(2);
+			} catch (InterruptedException e) {
+			}
+			GroovityStatistics.endExecution();
+			GroovityStatistics.registerStack(restore);
+		});
+		thread.start();
+		thread.join();
+		Assert.assertEquals("statsOuter", GroovityStatistics.currentStackKey());
+		GroovityStatistics.endExecution();
+		Statistics outer = find("statsOuter");
+		Statistics inner = find("statsInner");
+		Assert.assertEquals(4, outer.executionCount.get());
+		Assert.assertEquals(4, inner.executionCount.get());
+		Assert.assertEquals(inner.grossTime.get(), outer.callees.get("statsInner").get());
+		Assert.assertEquals(outer.grossTime.get() - inner.grossTime.get(), outer.netTime.get());
+		Assert.assertTrue(outer.maxTime.get() >= inner.maxTime.get());
+		GroovityStatistics.reset();
+		Assert.assertNull(find("statsOuter"));
+	}
+	
+	@Test
+	public void testLatencyHistogram() throws Exception{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i=1;i<=1000;i++){
+			histogram.record(i*1000000L);
+		}
+		Assert.assertEquals(1000, histogram.getCount());
+		long p50 = histogram.getPercentile(0.5);
+		long p99 = histogram.getPercentile(0.99);
+		Assert.assertTrue("p50 was "+p50, p50 >= 500000000L && p50 < 500000000L*1.2);
+		Assert.assertTrue("p99 was "+p99, p99 >= 990000000L && p99 < 990000000L*1.2);
+		for(long nanos = 1; nanos < 100000000000L; nanos = nanos*3+1){
+			Assert.assertTrue(LatencyHistogram.upperBound(LatencyHistogram.bucket(nanos)) >= nanos);
+		}
+		LatencyHistogram earlier = histogram.trim();
+		histogram.record(5000000000L);
+		LatencyHistogram merged = LatencyHistogram.fromMap(histogram.toMap());
+		merged.subtract(earlier);
+		Assert.assertEquals(1, merged.getCount());
+		Assert.assertTrue(merged.getPercentile(0.5) >= 5000000000L);
+	}
+	
+	@Test
+	public void testIntervalPercentiles() throws Exception{
+		GroovityStatistics.reset();
+		for(int i=0;i<10;i++){
+			GroovityStatistics.startExecution("statsSlow");
+			Thread.sleep(5);
+			GroovityStatistics.endExecution();
+		}
+		GroovityStatistics.recordInterval();
+		Thread.sleep(20);
+		for(int i=0;i<10;i++){
+			GroovityStatistics.startExecution("statsSlow");
+			GroovityStatistics.endExecution();
+		}
+		Statistics all = find("statsSlow");
+		Assert.assertEquals(20, all.histogram.getCount());
+		Assert.assertTrue(all.histogram.getPercentile(0.9) >= 5000000L);
+		Statistics recent = GroovityStatistics.getStatistics(1).stream().filter(s -> s.key.equals("statsSlow")).findFirst().get();
+		Assert.assertEquals(10, recent.histogram.getCount());
+		Assert.assertTrue(recent.histogram.getPercentile(0.9) < 5000000L);
+		GroovityStatistics.reset();
+	}
+	
+	@Test
+	public void testProfiler() throws Exception{
+		GroovityProfiler.reset();
+		Thread thread = new Thread(() -> {
+			GroovityStatistics.startExecution("profileOuter");
+			GroovityStatistics.startExecution("profile;Inner");
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException e) {
+			}
+			GroovityStatistics.endExecution();
+			GroovityStatistics.endExecution();
+		});
+		thread.start();
+		Thread.sleep(50);
+		for(int i=0;i<5;i++){
+			GroovityProfiler.sample();
+		}
+		thread.join();
+		GroovityProfiler.sample();
+		Map<String, Long> stacks = GroovityProfiler.getCollapsedStacks();
+		Assert.assertEquals(Long.valueOf(5), stacks.get("profileOuter;profile,Inner;[waiting]"));
+		StringWriter writer = new StringWriter();
+		GroovityProfiler.writeCollapsedStacks(writer);
+		Assert.assertTrue(writer.toString().contains("profileOuter;profile,Inner;[waiting] 5\n"));
+		GroovityProfiler.start(1);
+		Assert.assertTrue(GroovityProfiler.isRunning());
+		GroovityProfiler.stop();
+		Assert.assertFalse(GroovityProfiler.isRunning());
+		GroovityProfiler.reset();
+		Assert.assertEquals(0, GroovityProfiler.getSampleCount());
+	}
+	
+	@Test
+	public void testMetrics() throws Exception{
+		GroovityStatistics.reset();
+		GroovityStatistics.startExecution("metrics\"Key");
+		GroovityStatistics.endExecution();
+		GroovityMetrics.register("testSource", collector -> {
+			collector.counter("test_widgets_total", "Widgets made", 2, "shop", "a");
+			collector.counter("test_widgets_total", "Widgets made", 3, "shop", "a");
+			collector.gauge("test_temperature", "Shop temperature", 21.5);
+		});
+		try{
+			StringWriter writer = new StringWriter();
+			GroovityMetrics.writePrometheus(writer);
+			String text = writer.toString();
+			Assert.assertTrue(text.contains("# TYPE test_widgets_total counter\ntest_widgets_total{shop=\"a\"} 5\n"));
+			Assert.assertTrue(text.contains("# HELP test_temperature Shop temperature\n# TYPE test_temperature gauge\ntest_temperature 21.5\n"));
+			Assert.assertTrue(text.contains("groovity_executions_total{key=\"metrics\\\"Key\"} 1\n"));
+			Assert.assertTrue(text.contains("# TYPE groovity_execution_latency_seconds histogram\n"));
+			Assert.assertTrue(text.contains("groovity_execution_latency_seconds_bucket{key=\"metrics\\\"Key\",le=\"0.000004\"} "));
+			Assert.assertTrue(text.contains("groovity_execution_latency_seconds_bucket{key=\"metrics\\\"Key\",le=\"+Inf\"} 1\n"));
+			Assert.assertTrue(text.contains("groovity_execution_latency_seconds_count{key=\"metrics\\\"Key\"} 1\n"));
+			Assert.assertTrue(text.contains("groovity_execution_latency_seconds_sum{key=\"metrics\\\"Key\"} "));
+			Assert.assertEquals(Double.valueOf(1), GroovityMetrics.getInstance().getMetrics().get("groovity_execution_latency_seconds_bucket{key=\"metrics\\\"Key\",le=\"67.108864\"}"));
+			Assert.assertEquals(Double.valueOf(5), GroovityMetrics.getInstance().getMetrics().get("test_widgets_total{shop=\"a\"}"));
+			Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("com.disney.groovity:type=GroovityMetrics")));
+		}
+		finally{
+			GroovityMetrics.unregister("testSource");
+			GroovityStatistics.reset();
+		}
+	}
+}
@@ -434,6 +434,37 @@ public class TestGroovityTags {
 		//System.out.println("Output is "+output);
 	}
 	
+	@Test
+	public void testCacheLfu() throws Exception{
+		run("/cacheLfu");
+	}
+	
+	@Test
+	public void testCacheOffHeap() throws Exception{
+		run("/cacheOffHeap");
+	}
+	
+	@Test
+	public void testCacheRefreshRate() throws Exception{
+		run("/cacheRefreshRate");
+	}
+	
+	@Test
+	public void testCacheErrors() throws Exception{
+		run("/cacheErrors");
+	}
+	
+	@Test
+	public void testCacheCarryOver() throws Exception{
+		String[] first = run("/cacheCarryOver").split("\\|");
+		groovity.compile(true, true, Arrays.asList("/cacheCarryOver.grvt"));
+		String[] second = run("/cacheCarryOver").split("\\|");
+		Assert.assertEquals(first[0], second[0]);
+		Assert.assertNotEquals(first[1], second[1]);
+		Assert.assertNotEquals(first[2], second[2]);
+		Assert.assertEquals(first[3], second[3]);
+	}
+	
 	@Test
 	public void testTagMethods() throws Exception{
 		String output = run("/tagMethods");
@@ -560,6 +591,12 @@ public class TestGroovityTags {
 		boolean success = channelLatch.await(5, TimeUnit.SECONDS);
 		Assert.assertEquals(true, success);
 	}
+	@Test
+	public void testAcceptBatch() throws Exception{
+		String output = run("/acceptBatch");
+		Assert.assertEquals("[[1], [2, 3, 4], [5, 6, 7], [8]]|[[1, 2, 3, 4, 5]]|100|1|5|5", output);
+	}
+
 	@Test
 	public void testWriteXml() throws Exception{
 		run("/writeXml");
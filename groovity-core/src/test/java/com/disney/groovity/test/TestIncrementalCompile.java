@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.GroovityPhase;
+
+import groovy.lang.Binding;
+/**
+ * validate that incremental compilation only recompiles changed sources and scripts bound to their traits
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class TestIncrementalCompile {
+	Path sourceDir;
+	Groovity groovity;
+	
+	@Before
+	public void setup() throws Exception {
+		sourceDir = Files.createTempDirectory("groovity-incremental");
+		try(Stream<Path> sources = Files.list(new File("src/test/resources/traits").toPath())){
+			for(Path source: (Iterable<Path>) sources::iterator) {
+				Files.copy(source, sourceDir.resolve(source.getFileName()));
+			}
+		}
+		groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(sourceDir.toUri()))
+				.setSourcePhases(EnumSet.of(GroovityPhase.STARTUP))
+				.build();
+	}
+	
+	@After
+	public void teardown() throws IOException {
+		groovity.destroy();
+		try(Stream<Path> paths = Files.walk(sourceDir)){
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+	
+	@Test
+	public void testDependencyGraph() throws Exception {
+		Assert.assertEquals(Arrays.asList("Volant"), Arrays.asList(groovity.getDependencyGraph().getTraitsDefined("/volant").toArray()));
+		Assert.assertTrue(groovity.getDependencyGraph().getTraitsUsed("/swallow").contains("Volant"));
+		Assert.assertTrue(groovity.getDependencyGraph().getTraitsUsed("/swallow").contains("Feathered"));
+		Assert.assertTrue(groovity.getDependencyGraph().getTraitsUsed("/testSwallow").isEmpty());
+		//only referenced from a method body
+		Assert.assertEquals(Arrays.asList("Volant"), Arrays.asList(groovity.getDependencyGraph().getTraitsUsed("/flightCheck").toArray()));
+		Assert.assertEquals(Arrays.asList("/avian", "/ostritch", "/swallow"), Arrays.asList(groovity.getDependencyGraph().getDependents(Arrays.asList("/feathered")).toArray()));
+	}
+	
+	@Test
+	public void testTraitChange() throws Exception {
+		Class<?> volant = scriptClass("/volant");
+		Class<?> swallow = scriptClass("/swallow");
+		Class<?> ostritch = scriptClass("/ostritch");
+		Class<?> avian = scriptClass("/avian");
+		Class<?> testSwallow = scriptClass("/testSwallow");
+		Class<?> flightCheck = scriptClass("/flightCheck");
+		Path volantSource = sourceDir.resolve("volant.grvt");
+		String trait = new String(Files.readAllBytes(volantSource), StandardCharsets.UTF_8);
+		Files.write(volantSource, trait.replace("c('maxAltitude', maxAltitude)", "c('ceiling', maxAltitude)").getBytes(StandardCharsets.UTF_8));
+		volantSource.toFile().setLastModified(System.currentTimeMillis()+2000);
+		groovity.compileAll(false, true);
+		Assert.assertNotSame(volant, scriptClass("/volant"));
+		Assert.assertNotSame(swallow, scriptClass("/swallow"));
+		Assert.assertSame(ostritch, scriptClass("/ostritch"));
+		Assert.assertSame(avian, scriptClass("/avian"));
+		Assert.assertSame(testSwallow, scriptClass("/testSwallow"));
+		Assert.assertNotSame(flightCheck, scriptClass("/flightCheck"));
+		Binding binding = new Binding();
+		StringWriter writer = new StringWriter();
+		binding.setVariable("out", writer);
+		groovity.run("/testSwallow", binding);
+		Assert.assertTrue(writer.toString(), writer.toString().contains("\"ceiling\":3500"));
+	}
+	
+	private Class<?> scriptClass(String path) throws Exception {
+		return groovity.load(path, new Binding()).getClass();
+	}
+	
+	@Test
+	public void testUnchanged() throws Exception {
+		Class<?> swallow = scriptClass("/swallow");
+		groovity.compileAll(false, true);
+		Assert.assertSame(swallow, scriptClass("/swallow"));
+		Assert.assertTrue(groovity.getCompilerEvents().isEmpty());
+	}
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.GroovityPhase;
+
+import groovy.lang.Binding;
+/**
+ * validate that lazy compilation defers scripts that don't participate in startup until first use
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class TestLazyCompile {
+	static Groovity groovity;
+	
+	@BeforeClass
+	public static void setup() throws Exception {
+		groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(new File("src/test/resources/lazy").toURI()))
+				.setSourcePhases(EnumSet.of(GroovityPhase.STARTUP))
+				.setLazyCompile(true)
+				.build();
+	}
+	
+	@AfterClass
+	public static void teardown() {
+		groovity.destroy();
+	}
+	
+	@Test
+	public void testStartup() throws Exception {
+		//greeting is lazy but is needed by the static init of startup
+		Assert.assertTrue(groovity.getGroovityScriptNames().contains("/startup"));
+		Assert.assertTrue(groovity.getGroovityScriptNames().contains("/greeting"));
+		Assert.assertEquals("hello", run("/startup"));
+	}
+	
+	@Test
+	public void testFirstUse() throws Exception {
+		Assert.assertFalse(groovity.getGroovityScriptNames().contains("/unused"));
+		Assert.assertEquals("unused", run("/unused"));
+		Assert.assertTrue(groovity.getGroovityScriptNames().contains("/unused"));
+		Assert.assertTrue(groovity.getFirstRequestMillis() >= 0);
+	}
+	
+	@Test
+	public void testConcurrentFirstUse() throws Exception {
+		Assert.assertFalse(groovity.getGroovityScriptNames().contains("/concurrent"));
+		int numThreads = 8;
+		CountDownLatch latch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<Class<?>>> futures = new ArrayList<>();
+			for(int i=0; i<numThreads; i++) {
+				futures.add(executor.submit(new Callable<Class<?>>() {
+					public Class<?> call() throws Exception {
+						latch.await();
+						return groovity.load("/concurrent", new Binding()).getClass();
+					}
+				}));
+			}
+			latch.countDown();
+			Class<?> first = futures.get(0).get();
+			for(Future<Class<?>> future: futures) {
+				Assert.assertSame("Expected a single compile", first, future.get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals("concurrent", run("/concurrent"));
+	}
+	
+	@Test
+	public void testWaitForFullCompile() throws Exception {
+		Assert.assertFalse(groovity.getGroovityScriptNames().contains("/waiting"));
+		CountDownLatch blocking = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+		blocked = blocking;
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			//blocker's init holds up a full compile until released
+			Future<?> compile = executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					groovity.compile(true, true, Arrays.asList("/blocker.grvt"));
+					return null;
+				}
+			});
+			blocking.await();
+			Future<String> lazy = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return run("/waiting");
+				}
+			});
+			Thread.sleep(200);
+			Assert.assertFalse("Lazy compile should wait for the full compile", lazy.isDone());
+			release.countDown();
+			compile.get();
+			Assert.assertEquals("waiting", lazy.get());
+		}
+		finally {
+			release.countDown();
+			release = null;
+			blocked = null;
+			executor.shutdown();
+		}
+	}
+	
+	static volatile CountDownLatch blocked;
+	static volatile CountDownLatch release;
+	
+	public static void awaitRelease() throws InterruptedException {
+		CountDownLatch r = release;
+		if(r != null) {
+			blocked.countDown();
+			r.await();
+		}
+	}
+	
+	private String run(String path) throws Exception {
+		Binding binding = new Binding();
+		StringWriter writer = new StringWriter();
+		binding.setVariable("out", writer);
+		groovity.run(path, binding);
+		return writer.toString();
+	}
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.Taggable;
+import com.disney.groovity.util.TagCallSite;
+
+import groovy.lang.Binding;
+import groovy.lang.Closure;
+/**
+ * validate that tag calls are bound to static call sites that follow tag replacement, and that constant
+ * attributes are shared and read-only
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class TestTagCallSite {
+	Groovity groovity;
+	
+	@Before
+	public void setup() throws Exception {
+		groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(new File("src/test/resources/tagsites").toURI()))
+				.build();
+		//the shout tag is only registered after the first compile, so recompile the caller to bind to it
+		groovity.compile(true, true, Arrays.asList("/caller.grvt"));
+	}
+	
+	@After
+	public void teardown() {
+		groovity.destroy();
+	}
+	
+	@Test
+	public void testBoundSite() throws Exception {
+		Class<?> callerClass = groovity.load("/caller", new Binding()).getClass();
+		Field siteField = callerClass.getField("$tagSite$shout");
+		Assert.assertTrue(Modifier.isStatic(siteField.getModifiers()));
+		TagCallSite site = (TagCallSite) siteField.get(null);
+		Assert.assertEquals("shout", site.getTagName());
+		Assert.assertEquals("HIHIHI2", run("/caller").toString());
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Test
+	public void testConstantAttributes() throws Exception {
+		List<Map> attributeMaps = (List<Map>) run("/caller").getVariable("attributeMaps");
+		Assert.assertEquals(3, attributeMaps.size());
+		Assert.assertSame(attributeMaps.get(0), attributeMaps.get(1));
+		Assert.assertEquals("hi", attributeMaps.get(0).get("value"));
+		try {
+			attributeMaps.get(0).put("value", "bye");
+			Assert.fail("Expected constant attributes to be read-only");
+		}
+		catch(UnsupportedOperationException e) {
+		}
+		Assert.assertNotSame(attributeMaps.get(1), attributeMaps.get(2));
+		attributeMaps.get(2).put("value", "bye");
+	}
+	
+	@Test
+	public void testRebind() throws Exception {
+		Assert.assertEquals("HIHIHI2", run("/caller").toString());
+		groovity.getTaggables().add(new Shout());
+		Assert.assertEquals("hi!hi!hi2!", run("/caller").toString());
+	}
+	
+	private Output run(String path) throws Exception {
+		Binding binding = new Binding();
+		StringWriter writer = new StringWriter();
+		binding.setVariable("out", writer);
+		groovity.run(path, binding);
+		return new Output(binding, writer);
+	}
+	
+	private static class Output {
+		final Binding binding;
+		final StringWriter writer;
+		
+		Output(Binding binding, StringWriter writer){
+			this.binding = binding;
+			this.writer = writer;
+		}
+		
+		Object getVariable(String name) {
+			return binding.getVariable(name);
+		}
+		
+		public String toString() {
+			return writer.toString();
+		}
+	}
+	
+	public static class Shout implements Taggable{
+		@SuppressWarnings("rawtypes")
+		@Override
+		public Object tag(Map attributes, Closure body) throws Exception {
+			Object out = get(body, "out");
+			((StringWriter) out).append(resolve(attributes, "value", String.class)).append("!");
+			return attributes;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.cache.CacheSerialization;
+import com.disney.groovity.util.FragmentWriter;
+import com.disney.groovity.util.TemplateFragment;
+
+import groovy.lang.Binding;
+/**
+ * validate that static template text is delivered to fragment writers pre-encoded, and as plain text to other writers
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class TestTemplateFragment {
+	static Groovity groovity;
+	static final String EXPECTED = "<ul>\n<li>a</li><li>é</li>\n</ul>";
+	
+	@BeforeClass
+	public static void setup() throws Exception {
+		groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(new File("src/test/resources/fragments").toURI()))
+				.build();
+	}
+	
+	@AfterClass
+	public static void teardown() {
+		groovity.destroy();
+	}
+	
+	@Test
+	public void testPlainWriter() throws Exception {
+		StringWriter writer = new StringWriter();
+		run(writer);
+		Assert.assertEquals(EXPECTED, writer.toString());
+	}
+	
+	@Test
+	public void testFragmentWriter() throws Exception {
+		RecordingWriter writer = new RecordingWriter();
+		run(writer);
+		Assert.assertEquals(EXPECTED, writer.toString());
+		Assert.assertEquals(Arrays.asList("<ul>\n", "<li>", "</li>", "<li>", "</li>", "\n</ul>"), writer.fragments);
+	}
+	
+	@Test
+	public void testEncoding() {
+		TemplateFragment fragment = new TemplateFragment("café");
+		Assert.assertSame(fragment.getBytes(StandardCharsets.UTF_8), fragment.getBytes(StandardCharsets.UTF_8));
+		Assert.assertEquals(5, fragment.getBytes(StandardCharsets.UTF_8).length);
+		Assert.assertSame(fragment.getBytes(StandardCharsets.ISO_8859_1), fragment.getBytes(StandardCharsets.ISO_8859_1));
+		Assert.assertEquals(4, fragment.getBytes(StandardCharsets.ISO_8859_1).length);
+	}
+	
+	@Test
+	public void testSerialization() throws Exception {
+		TemplateFragment fragment = new TemplateFragment("café");
+		byte[] serialized = CacheSerialization.serialize(fragment);
+		TemplateFragment copy = (TemplateFragment) CacheSerialization.deserialize(serialized, getClass().getClassLoader());
+		Assert.assertEquals("café", copy.toString());
+		Assert.assertArrayEquals(fragment.getBytes(StandardCharsets.UTF_8), copy.getBytes(StandardCharsets.UTF_8));
+		Assert.assertFalse("UTF-8 bytes should not be serialized", new String(serialized, StandardCharsets.ISO_8859_1).contains("[B"));
+	}
+	
+	private void run(StringWriter writer) throws Exception {
+		Binding binding = new Binding();
+		binding.setVariable("out", writer);
+		binding.setVariable("items", Arrays.asList("a", "é"));
+		groovity.run("/list", binding);
+	}
+	
+	private static class RecordingWriter extends StringWriter implements FragmentWriter{
+		final List<String> fragments = new ArrayList<>();
+		
+		@Override
+		public void writeFragment(TemplateFragment fragment) throws IOException {
+			fragments.add(fragment.toString());
+			write(new String(fragment.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+		}
+	}
+}
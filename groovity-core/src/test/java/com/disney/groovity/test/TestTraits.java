@@ -30,6 +30,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.Map.Entry;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -39,6 +40,7 @@ import org.junit.Test;
 import com.disney.groovity.Groovity;
 import com.disney.groovity.GroovityBuilder;
 import com.disney.groovity.GroovityPhase;
+import com.disney.groovity.compile.GroovityCompilerEvent;
 
 import groovy.lang.Binding;
 /**
@@ -79,6 +81,29 @@ public class TestTraits {
 		Assert.assertEquals(message,result);
 	}
 	
+	@Test
+	public void testParallelCompile() throws Exception {
+		//traits that depend on other traits must still resolve when compiled concurrently
+		Groovity parallel = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(new File("src/test/resources/traits").toURI()))
+				.setSourcePhases(EnumSet.of(GroovityPhase.STARTUP))
+				.setCompilerThreads(4)
+				.build();
+		try {
+			for(Entry<String, GroovityCompilerEvent> event: parallel.getCompilerEvents().entrySet()) {
+				Assert.assertNull("Error compiling "+event.getKey(), event.getValue().getError());
+			}
+			Binding binding = new Binding();
+			StringWriter writer = new StringWriter();
+			binding.setVariable("out", writer);
+			parallel.run("/testSwallow", binding);
+			Assert.assertEquals(run("/testSwallow", new Binding()), writer.toString());
+		}
+		finally {
+			parallel.destroy();
+		}
+	}
+	
 	protected String run(String path, Binding binding) throws InstantiationException, IllegalAccessException, ClassNotFoundException, IOException{
 		StringWriter writer = new StringWriter();
 		binding.setVariable("out", writer);
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.stats.GroovityStatistics;
+import com.disney.groovity.stats.GroovityThreadProfile;
+import com.disney.groovity.util.AsyncExecutorType;
+import com.disney.groovity.util.InterruptFactory;
+import com.disney.groovity.util.ScriptHelper;
+import com.disney.groovity.util.VirtualThreadExecutor;
+
+import groovy.lang.Binding;
+/**
+ * Exercise the virtual thread backend where the JVM supports it, and the fallback where it does not
+ *
+ * @author Alex Vigdor
+ */
+public class VirtualThreadExecutorTest {
+	static final InterruptFactory interruptFactory = new InterruptFactory();
+
+	@AfterClass
+	public static void teardown() {
+		interruptFactory.destroy();
+	}
+
+	@Test public void testFallback() throws Exception{
+		Groovity groovity = new GroovityBuilder()
+				.setAsyncExecutorType(AsyncExecutorType.VIRTUAL)
+				.build();
+		try {
+			AsyncExecutorType expected = VirtualThreadExecutor.isSupported() ? AsyncExecutorType.VIRTUAL : AsyncExecutorType.DEADLOCK_FREE;
+			Assert.assertEquals(expected, groovity.getAsyncExecutorType());
+		}
+		finally {
+			groovity.destroy();
+		}
+	}
+
+	@Test public void testManyBlockingTasks() throws Exception{
+		Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+		ExecutorService executor = new VirtualThreadExecutor("test-", interruptFactory);
+		List<Future<Boolean>> futures = new ArrayList<>();
+		//far more concurrent sleepers than any platform pool here would allow
+		for(int i=0;i<10000;i++) {
+			futures.add(executor.submit(() -> {
+				Thread.sleep(200);
+				return Thread.currentThread().getName().startsWith("test-");
+			}));
+		}
+		long start = System.currentTimeMillis();
+		for(Future<Boolean> f: futures) {
+			Assert.assertTrue(f.get());
+		}
+		Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	@Test public void testBoundedNesting() throws Exception{
+		Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+		ExecutorService executor = new VirtualThreadExecutor("test-", interruptFactory, 2);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		Callable<Integer> leaf = () -> {
+			int r = running.incrementAndGet();
+			maxRunning.accumulateAndGet(r, Math::max);
+			Thread.sleep(10);
+			running.decrementAndGet();
+			return 1;
+		};
+		//nested waits on a limit of 2 would deadlock without running unstarted tasks inline
+		Future<Integer> top = executor.submit(() -> {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for(int i=0;i<4;i++) {
+				futures.add(executor.submit(() -> {
+					List<Future<Integer>> leaves = new ArrayList<>();
+					for(int j=0;j<4;j++) {
+						leaves.add(executor.submit(leaf));
+					}
+					int sum = 0;
+					for(Future<Integer> f: leaves) {
+						sum += f.get();
+					}
+					return sum;
+				}));
+			}
+			int sum = 0;
+			for(Future<Integer> f: futures) {
+				sum += f.get();
+			}
+			return sum;
+		});
+		Assert.assertEquals(16, top.get(10, TimeUnit.SECONDS).intValue());
+		executor.shutdown();
+	}
+
+	@Test public void testStatisticsRetirement() throws Exception{
+		Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+		ExecutorService executor = new VirtualThreadExecutor("test-", interruptFactory);
+		int numTasks = 10000;
+		for(int i=0;i<numTasks;i++) {
+			executor.execute(() -> {
+				GroovityStatistics.startExecution("virtualRetired");
+				GroovityStatistics.endExecution();
+			});
+		}
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		long count = 0;
+		for(GroovityStatistics.Statistics statistics: GroovityStatistics.getStatistics()) {
+			if("virtualRetired".equals(statistics.key)) {
+				count = statistics.executionCount.get();
+			}
+		}
+		Assert.assertEquals(numTasks, count);
+		for(GroovityThreadProfile profile: GroovityStatistics.getThreadProfiles()) {
+			Assert.assertFalse(profile.getName().startsWith("test-"));
+		}
+	}
+
+	@Test public void testContextPropagation() throws Exception{
+		Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+		ExecutorService executor = new VirtualThreadExecutor("test-", interruptFactory);
+		GroovityStatistics.startExecution("virtualParent");
+		final GroovityStatistics.Execution parent = GroovityStatistics.snapshot();
+		final Binding binding = new Binding();
+		try {
+			Future<Object> f = executor.submit(() -> {
+				ScriptHelper.THREAD_BINDING.set(binding);
+				GroovityStatistics.Execution restore = GroovityStatistics.registerStack(parent);
+				GroovityStatistics.startExecution("virtualChild");
+				try {
+					return ScriptHelper.THREAD_BINDING.get() == binding ? GroovityStatistics.currentStackKey() : null;
+				}
+				finally {
+					GroovityStatistics.endExecution();
+					GroovityStatistics.registerStack(restore);
+					ScriptHelper.THREAD_BINDING.remove();
+				}
+			});
+			Assert.assertEquals("virtualChild", f.get());
+		}
+		finally {
+			GroovityStatistics.endExecution();
+		}
+		Future<Object> sleeper = executor.submit(() -> {
+			Thread.sleep(5000);
+			return null;
+		});
+		try {
+			interruptFactory.scheduleInterrupt(100);
+			sleeper.get();
+			Assert.fail("Expected interrupt");
+		}
+		catch(InterruptedException e) {
+		}
+		executor.shutdownNow();
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		try {
+			sleeper.get(1, TimeUnit.SECONDS);
+		}
+		catch(ExecutionException | TimeoutException e) {
+			Assert.assertEquals(InterruptedException.class, e.getCause().getClass());
+		}
+	}
+}
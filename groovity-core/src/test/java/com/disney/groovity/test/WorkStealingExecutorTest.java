@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.disney.groovity.Groovity;
+import com.disney.groovity.GroovityBuilder;
+import com.disney.groovity.util.AsyncExecutorType;
+import com.disney.groovity.util.InterruptFactory;
+import com.disney.groovity.util.WorkStealingExecutor;
+
+import groovy.lang.Binding;
+/**
+ * Prove that WorkStealingExecutor handles recursive fan-outs that overflow the number of allowed threads, and
+ * that async and await tags behave the same on it
+ *
+ * @author Alex Vigdor
+ */
+public class WorkStealingExecutorTest {
+	static final InterruptFactory interruptFactory = new InterruptFactory();
+	ExecutorService executor = new WorkStealingExecutor(interruptFactory, 2);
+
+	@AfterClass
+	public static void teardown() {
+		interruptFactory.destroy();
+	}
+
+	@Test public void testDeadlockPrevention() throws InterruptedException, ExecutionException{
+		Future<Integer> ft = executor.submit(new NestedCall(new NestedCall(new NestedCall(new NestedCall(new NestedCall(new NestedCall(new NestedCall())))))));
+		Assert.assertEquals(7l,ft.get().longValue());
+		executor.shutdown();
+	}
+
+	@Test public void testNestedFanOut() throws InterruptedException, ExecutionException{
+		Future<Integer> ft = executor.submit(new FanOut(5, 4));
+		Assert.assertEquals(1024, ft.get().intValue());
+		executor.shutdown();
+	}
+
+	@Test public void testTimeout() throws InterruptedException, ExecutionException{
+		Future<Object> ft = executor.submit(() -> {
+			Thread.sleep(2000);
+			return null;
+		});
+		long start = System.currentTimeMillis();
+		try {
+			ft.get(100, TimeUnit.MILLISECONDS);
+			Assert.fail("Expected timeout");
+		}
+		catch(TimeoutException | ExecutionException e) {
+			//either we interrupted the task running inline or a worker had already claimed it
+		}
+		Assert.assertTrue(System.currentTimeMillis() - start < 1500);
+		executor.shutdownNow();
+	}
+
+	@Test public void testAwaitTags() throws Exception{
+		Groovity groovity = new GroovityBuilder()
+				.setSourceLocations(Arrays.asList(new File("src/test/resources/workStealing").toURI()))
+				.setAsyncExecutorType(AsyncExecutorType.WORK_STEALING)
+				.build();
+		try {
+			Binding binding = new Binding();
+			StringWriter writer = new StringWriter();
+			binding.setVariable("out", writer);
+			groovity.run("/fanOut", binding);
+			//sum over a,b,c in 1..4 of 100a+10b+c
+			Assert.assertEquals("17760 true", writer.toString());
+		}
+		finally {
+			groovity.destroy();
+		}
+		executor.shutdown();
+	}
+
+	private class NestedCall implements Callable<Integer>{
+		private Callable<Integer> nested;
+		NestedCall(){
+
+		}
+
+		NestedCall(Callable<Integer> nested){
+			this.nested = nested;
+		}
+
+		@Override
+		public Integer call() throws Exception {
+			Integer rval = 1;
+			if(nested!=null){
+				Future<Integer> ft = executor.submit(nested);
+				rval += ft.get();
+			}
+			return rval;
+		}
+	}
+
+	private class FanOut implements Callable<Integer>{
+		private final int depth;
+		private final int width;
+
+		FanOut(int depth, int width){
+			this.depth = depth;
+			this.width = width;
+		}
+
+		@Override
+		public Integer call() throws Exception {
+			if(depth==0){
+				return 1;
+			}
+			List<Future<Integer>> futures = new ArrayList<>(width);
+			for(int i=0;i<width;i++){
+				futures.add(executor.submit(new FanOut(depth-1, width)));
+			}
+			int sum = 0;
+			for(Future<Integer> f: futures){
+				sum += f.get();
+			}
+			return sum;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * © 2019 Disney | ABC Television Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "Apache License")
+ * with the following modification; you may not use this file except in
+ * compliance with the Apache License and the following modification to it:
+ * Section 6. Trademarks. is deleted and replaced with:
+ *
+ * 6. Trademarks. This License does not grant permission to use the trade
+ *     names, trademarks, service marks, or product names of the Licensor
+ *     and its affiliates, except as required to comply with Section 4(c) of
+ *     the License and to reproduce the content of the NOTICE file.
+ *
+ * You may obtain a copy of the Apache License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Apache License with the above modification is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the Apache License for the specific
+ * language governing permissions and limitations under the Apache License.
+ *******************************************************************************/
+package com.disney.groovity.servlet.admin;
+
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.EntityUtils;
+
+import com.disney.groovity.util.BatchingChannelTransport;
+import com.disney.http.auth.client.signer.HttpSignatureSigner;
+
+/**
+ * Default cluster channel transport, which posts signed batches of channel messages over HTTP to the servlet admin
+ * API of every other member known to the ClusterProvider, where they are delivered to local acceptors.  A member whose
+ * acceptors have no room responds 503 with the number of messages it accepted in a header, and the rest are sent again.
+ * 
+ * @author Alex Vigdor
+ *
+ */
+public class ClusterChannelTransport extends BatchingChannelTransport {
+	public static final String DELIVERY_PATH = "/groovity/servlet/admin/api/channels/deliver";
+	public static final String ACCEPTED_HEADER = "X-Groovity-Channel-Accepted";
+	private final ClusterClient clusterClient;
+	private final HttpClient httpClient;
+	private final HttpSignatureSigner signer;
+	
+	public ClusterChannelTransport(ClusterClient clusterClient, HttpClient httpClient, String keyId, Callable<? extends Key> keyLoader){
+		this.clusterClient=clusterClient;
+		this.httpClient=httpClient;
+		this.signer = new HttpSignatureSigner();
+		signer.setKeyId(keyId);
+		signer.setKeyLoader(keyLoader);
+		signer.setHeaders(Arrays.asList("(request-target)","date","host"));
+	}
+
+	@Override
+	protected Collection<?> getPeers() {
+		ArrayList<ClusterMember> peers = new ArrayList<>();
+		ClusterMember local = clusterClient.getLocalMember();
+		for(ClusterMember member: clusterClient.getClusterProvider().getMembers()){
+			if(!member.equals(local)){
+				peers.add(member);
+			}
+		}
+		return peers;
+	}
+
+	@Override
+	protected void transmit(Object peer, byte[] batch) throws Exception {
+		ClusterMember member = (ClusterMember) peer;
+		HttpPost post = new HttpPost("http://"+member.getAddress().getHostAddress()+":"+member.getPort()+DELIVERY_PATH);
+		post.setEntity(new ByteArrayEntity(batch, ContentType.APPLICATION_OCTET_STREAM));
+		signer.process(post, new BasicHttpContext());
+		HttpResponse response = httpClient.execute(post);
+		try{
+			int status = response.getStatusLine().getStatusCode();
+			Header accepted = response.getFirstHeader(ACCEPTED_HEADER);
+			if(status==503 && accepted!=null){
+				throw new RejectedBatchException(Integer.parseInt(accepted.getValue()), null);
+			}
+			if(status!=200){
+				throw new RuntimeException("Error delivering channel messages to "+member+": "+response.getStatusLine());
+			}
+		}
+		finally{
+			EntityUtils.consumeQuietly(response.getEntity());
+		}
+	}
+
+}
@@ -78,6 +78,12 @@ public class ClusterClient {
 		}
 		clusterProvider.leave(localMember);
 	}
+	/**
+	 * @return the member representing this host, available after init()
+	 */
+	public ClusterMember getLocalMember() {
+		return localMember;
+	}
 	public ClusterProvider getClusterProvider() {
 		return clusterProvider;
 	}
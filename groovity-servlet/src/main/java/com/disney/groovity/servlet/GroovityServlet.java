@@ -85,10 +85,19 @@ import java.util.logging.Logger;
  * Options:
  * <ul>
  * <li><b>asyncThreads</b> - max number of async HTTP workers</li>
+ * <li><b>asyncExecutor</b> - thread pool for async and await tags, DEADLOCK_FREE (default), WORK_STEALING or VIRTUAL (JDK 21+)</li>
  * <li><b>caseSensitive</b> - whether to force case-sensitive template loading</li>
+ * <li><b>compilerThreads</b> - max number of threads used to compile sources in parallel, defaults to the number of processors</li>
+ * <li><b>lazyCompile</b> - whether to defer compiling scripts without static init, web, conf or start methods until first use</li>
  * <li><b>maxConnPerRoute</b> - maximum number of HTTP client connections per route</li>
  * <li><b>maxConnTotal</b> - maximum number of total HTTP client connections</li>
  * <li><b>jarDirectory</b> - folder for reading and/or writing jar files of compiled scripts</li>
+ * <li><b>cacheSnapshotDirectory</b> - folder where caches declared with a snapshot option are persisted across restarts</li>
+ * <li><b>compileCacheDirectory</b> - folder where compiled classes are cached by source hash, may be shared between nodes</li>
+ * <li><b>compileCacheReadOnly</b> - whether to only read from the compile cache, e.g. when it is populated by a build step</li>
+ * <li><b>channelDirectory</b> - folder where durable channels log their messages for replay across restarts</li>
+ * <li><b>channelRetentionBytes</b> - maximum size of each durable channel log, defaults to 1 GB</li>
+ * <li><b>channelRetentionMillis</b> - maximum age of messages in durable channel logs, defaults to 7 days</li>
  * <li><b>jarPhases</b> - lifecycle phases for jar files, STARTUP to read, RUNTIME to write</li>
  * <li><b>scriptBaseClass</b> - class name of base class for groovity scripts (must descend from groovy.lang.Script)</li>
  * <li><b>sourcePhases</b> - phases for automatic source compilation, STARTUP and/or RUNTIME</li>
@@ -110,11 +119,20 @@ import java.util.logging.Logger;
 public class GroovityServlet extends HttpServlet implements Servlet {
 	private static final long serialVersionUID = -385204301640186889L;
 	public static final String ASYNC_THREADS_PARAM = "asyncThreads";
+	public static final String ASYNC_EXECUTOR_PARAM = "asyncExecutor";
 	public static final String CASE_SENSITIVE_PARAM = "caseSensitive";
+	public static final String COMPILER_THREADS_PARAM = "compilerThreads";
+	public static final String LAZY_COMPILE_PARAM = "lazyCompile";
 	public static final String MAX_CONN_PER_ROUTE_PARAM = "maxConnPerRoute";
 	public static final String MAX_CONN_TOTAL_PARAM = "maxConnTotal";
 	public static final String JAR_DIRECTORY_PARAM = "jarDirectory";
 	public static final String JAR_DIRECTORY_PARAM_DEFAULT_VALUE = "WEB-INF/groovity-classes";
+	public static final String CACHE_SNAPSHOT_DIRECTORY_PARAM = "cacheSnapshotDirectory";
+	public static final String COMPILE_CACHE_DIRECTORY_PARAM = "compileCacheDirectory";
+	public static final String COMPILE_CACHE_READ_ONLY_PARAM = "compileCacheReadOnly";
+	public static final String CHANNEL_DIRECTORY_PARAM = "channelDirectory";
+	public static final String CHANNEL_RETENTION_BYTES_PARAM = "channelRetentionBytes";
+	public static final String CHANNEL_RETENTION_MILLIS_PARAM = "channelRetentionMillis";
 	public static final String JAR_PHASES_PARAM = "jarPhases";
 	public static final String SCRIPT_BASE_CLASS_PARAM = "scriptBaseClass";
 	public static final String SOURCE_PHASES_PARAM = "sourcePhases";
@@ -251,10 +269,22 @@ public class GroovityServlet extends HttpServlet implements Servlet {
 				if (isNotBlank(async)) {
 					builder.setAsyncThreads(Integer.parseInt(async));
 				}
+				String asyncExecutor = getParam(ASYNC_EXECUTOR_PARAM);
+				if (isNotBlank(asyncExecutor)) {
+					builder.setAsyncExecutorType(asyncExecutor);
+				}
 				String caseSens = getParam(CASE_SENSITIVE_PARAM);
 				if (isNotBlank(caseSens)) {
 					builder.setCaseSensitive(Boolean.parseBoolean(caseSens));
 				}
+				String compilerThreads = getParam(COMPILER_THREADS_PARAM);
+				if (isNotBlank(compilerThreads)) {
+					builder.setCompilerThreads(Integer.parseInt(compilerThreads));
+				}
+				String lazyCompile = getParam(LAZY_COMPILE_PARAM);
+				if (isNotBlank(lazyCompile)) {
+					builder.setLazyCompile(Boolean.parseBoolean(lazyCompile));
+				}
 				String maxPerRoute = getParam(MAX_CONN_PER_ROUTE_PARAM);
 				if (isNotBlank(maxPerRoute)) {
 					builder.setMaxHttpConnPerRoute(Integer.parseInt(maxPerRoute));
@@ -272,6 +302,30 @@ public class GroovityServlet extends HttpServlet implements Servlet {
 					jarDirectory = new File(getServletContext().getRealPath("/"), JAR_DIRECTORY_PARAM_DEFAULT_VALUE);
 				}
 				builder.setJarDirectory(jarDirectory);
+				String cacheSnapshotDir = getParam(CACHE_SNAPSHOT_DIRECTORY_PARAM);
+				if (isNotBlank(cacheSnapshotDir)) {
+					builder.setCacheSnapshotDirectory(new File(cacheSnapshotDir));
+				}
+				String compileCacheDir = getParam(COMPILE_CACHE_DIRECTORY_PARAM);
+				if (isNotBlank(compileCacheDir)) {
+					builder.setCompiledClassCacheDirectory(new File(compileCacheDir));
+				}
+				String compileCacheReadOnly = getParam(COMPILE_CACHE_READ_ONLY_PARAM);
+				if (isNotBlank(compileCacheReadOnly)) {
+					builder.setCompiledClassCacheReadOnly(Boolean.parseBoolean(compileCacheReadOnly));
+				}
+				String channelDir = getParam(CHANNEL_DIRECTORY_PARAM);
+				if (isNotBlank(channelDir)) {
+					builder.setChannelDirectory(new File(channelDir));
+				}
+				String channelRetentionBytes = getParam(CHANNEL_RETENTION_BYTES_PARAM);
+				if (isNotBlank(channelRetentionBytes)) {
+					builder.setChannelRetentionBytes(Long.parseLong(channelRetentionBytes));
+				}
+				String channelRetentionMillis = getParam(CHANNEL_RETENTION_MILLIS_PARAM);
+				if (isNotBlank(channelRetentionMillis)) {
+					builder.setChannelRetentionMillis(Long.parseLong(channelRetentionMillis));
+				}
 				String jarPhase = getParam(JAR_PHASES_PARAM);
 				if (isNotBlank(jarPhase)) {
 					builder.setJarPhase(jarPhase);
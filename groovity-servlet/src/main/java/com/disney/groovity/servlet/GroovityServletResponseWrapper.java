@@ -24,7 +24,6 @@
 package com.disney.groovity.servlet;
 
 import java.io.ByteArrayOutputStream;
-import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
@@ -32,6 +31,7 @@ import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
@@ -46,6 +46,8 @@ import javax.servlet.http.HttpServletResponseWrapper;
 import org.apache.http.impl.EnglishReasonPhraseCatalog;
 
 import com.disney.groovity.servlet.error.GroovityError;
+import com.disney.groovity.util.FragmentWriter;
+import com.disney.groovity.util.TemplateFragment;
 
 /**
  * Custom response wrapper that leverages GroovyErrorHandlers for error
@@ -108,7 +110,7 @@ public class GroovityServletResponseWrapper extends HttpServletResponseWrapper {
 			}
 			bufferOutputStream.commit();
 		} else if (bufferWriter != null) {
-			ResponseMeta rm = bufferWriter.getResponseMeta(getCharacterEncoding());
+			ResponseMeta rm = bufferWriter.getResponseMeta();
 			if(rm!=null && !shouldContinue(rm)) {
 				return;
 			}
@@ -151,7 +153,11 @@ public class GroovityServletResponseWrapper extends HttpServletResponseWrapper {
 					throw new IllegalStateException(
 							"Cannot get Writer on response after OutputStream has already been acquired");
 				}
-				bufferWriter = new BufferWriter(getResponse().getWriter(), buffer);
+				// the writer encodes to the underlying output stream itself, so fix the
+				// charset on the response as acquiring its writer would
+				String encoding = getCharacterEncoding();
+				getResponse().setCharacterEncoding(encoding);
+				bufferWriter = new BufferWriter(new BufferOutputStream(getResponse().getOutputStream(), buffer), Charset.forName(encoding));
 			}
 			return bufferWriter;
 		}
@@ -235,44 +241,89 @@ public class GroovityServletResponseWrapper extends HttpServletResponseWrapper {
 
 	}
 
-	private static class BufferWriter extends PrintWriter {
+	/**
+	 * Buffering writer that encodes characters as they are written into a byte buffer, so static template
+	 * fragments can be copied in their pre-encoded form and the buffered response never has to be re-encoded
+	 */
+	private static class BufferWriter extends PrintWriter implements FragmentWriter {
 		private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
-		final PrintWriter rawWriter;
-		final int buffer;
-		CharsWriter caw;
-		private boolean flushed = false;
+		final BufferOutputStream stream;
+		final Charset charset;
+		final CharsetEncoder encoder;
+		final ByteBuffer encoded = ByteBuffer.allocate(1024);
+		//a high surrogate left over at the end of a write, waiting for its pair
+		char leftover = 0;
+
+		public BufferWriter(BufferOutputStream stream, Charset charset) {
+			super(stream);
+			this.stream = stream;
+			this.charset = charset;
+			this.encoder = charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+
+		private void encode(CharBuffer in) throws IOException {
+			if (leftover != 0 && in.hasRemaining()) {
+				CharBuffer pair = CharBuffer.wrap(new char[] { leftover, in.get() });
+				leftover = 0;
+				encode(pair);
+			}
+			while (true) {
+				CoderResult cr = encoder.encode(in, encoded, false);
+				drain();
+				if (cr.isUnderflow()) {
+					if (in.hasRemaining()) {
+						leftover = in.get();
+					}
+					return;
+				}
+				if (!cr.isOverflow()) {
+					cr.throwException();
+				}
+			}
+		}
 
-		public BufferWriter(PrintWriter out, int buffer) {
-			super(out);
-			rawWriter = out;
-			caw = new CharsWriter();
-			this.buffer = buffer;
+		private void endLeftover() throws IOException {
+			if (leftover != 0) {
+				CharBuffer in = CharBuffer.wrap(new char[] { leftover });
+				leftover = 0;
+				encoder.encode(in, encoded, true);
+				encoder.flush(encoded);
+				encoder.reset();
+				drain();
+			}
+		}
+
+		private void drain() throws IOException {
+			if (encoded.position() > 0) {
+				stream.write(encoded.array(), 0, encoded.position());
+				encoded.clear();
+			}
+		}
+
+		@Override
+		public void writeFragment(TemplateFragment fragment) throws IOException {
+			endLeftover();
+			stream.write(fragment.getBytes(charset));
 		}
 
 		@Override
 		public void write(int b) {
-			if (!flushed) {
-				if (caw.size() + 1 > buffer) {
-					commit();
-				} else {
-					caw.write(b);
-					return;
-				}
+			try {
+				encode(CharBuffer.wrap(new char[] { (char) b }));
+			} catch (IOException e) {
+				setError();
 			}
-			rawWriter.write(b);
 		}
 
 		@Override
 		public void write(char[] cbuf, int off, int len) {
-			if (!flushed) {
-				if (caw.size() + len > buffer) {
-					commit();
-				} else {
-					caw.write(cbuf, off, len);
-					return;
-				}
+			try {
+				encode(CharBuffer.wrap(cbuf, off, len));
+			} catch (IOException e) {
+				setError();
 			}
-			rawWriter.write(cbuf, off, len);
 		}
 
 		@Override
@@ -287,42 +338,49 @@ public class GroovityServletResponseWrapper extends HttpServletResponseWrapper {
 
 		@Override
 		public void write(String s, int off, int len) {
-			if (flushed) {
-				rawWriter.write(s, off, len);
-			} else {
-				write(s.toCharArray(), off, len);
+			try {
+				encode(CharBuffer.wrap(s, off, off + len));
+			} catch (IOException e) {
+				setError();
 			}
 		}
 
 		@Override
 		public void flush() {
-			if (flushed) {
-				rawWriter.flush();
+			try {
+				endLeftover();
+				stream.flush();
+			} catch (IOException e) {
+				setError();
 			}
 		}
 
-		protected ResponseMeta getResponseMeta(String encoding) {
-			if (caw != null) {
-				return caw.process(encoding);
+		protected ResponseMeta getResponseMeta() {
+			try {
+				endLeftover();
+			} catch (IOException e) {
+				setError();
 			}
-			return null;
+			return stream.getResponseMeta();
 		}
 
 		protected void commit() {
-			if (!flushed) {
-				try {
-					caw.writeTo(rawWriter);
-				} catch (IOException e) {
-					setError();
-				}
-				flushed = true;
-				caw = null;
+			try {
+				endLeftover();
+				stream.commit();
+			} catch (IOException e) {
+				setError();
 			}
 		}
 
 		@Override
 		public void close() {
-			rawWriter.close();
+			try {
+				endLeftover();
+				stream.close();
+			} catch (IOException e) {
+				setError();
+			}
 		}
 
 		@Override
@@ -438,35 +496,6 @@ public class GroovityServletResponseWrapper extends HttpServletResponseWrapper {
 
 	}
 	
-	private static class CharsWriter extends CharArrayWriter{
-
-		public ResponseMeta process(String encoding){
-			CharsetEncoder encoder = Charset.forName(encoding).newEncoder();
-			MessageDigest md;
-			try {
-				md = MessageDigest.getInstance("md5");
-			} catch (NoSuchAlgorithmException e) {
-				throw new RuntimeException(e);
-			}
-			int length = 0;
-			ByteBuffer out = ByteBuffer.allocate(8192);
-			CharBuffer cb = CharBuffer.wrap(this.buf, 0, this.count);
-			CoderResult cr = null;
-			while(cr==null || cr.isOverflow()) {
-				cr = encoder.encode(cb, out, false);
-				length+= out.position();
-				out.flip();
-				md.update(out);
-				out.clear();
-			}
-			encoder.encode(CharBuffer.allocate(0),out,true);
-			ResponseMeta rm = new ResponseMeta();
-			rm.hash = md.digest();
-			rm.length = length;
-			return rm;
-		}
-	}
-
 	private static class BytesWriter extends ByteArrayOutputStream{
 		public ResponseMeta process() {
 			MessageDigest md;
@@ -24,6 +24,7 @@
 package com.disney.groovity.servlet.test;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Base64;
@@ -189,4 +190,17 @@ public class GroovityServletTest {
 		return response;
 	}
 
+	@Test
+	public void testBufferedTemplate() throws Exception{
+		MockHttpServletRequest request = makereq("GET", "/bufferTemplate/abc");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		groovity.service(request, response);
+		Charset charset = Charset.forName(response.getCharacterEncoding());
+		byte[] body = response.getContentAsByteArray();
+		assertEquals("<p>Caf\u00e9 abc</p>", new String(body, charset));
+		assertEquals(body.length, response.getContentLength());
+		byte[] hash = MessageDigest.getInstance("MD5").digest(body);
+		assertEquals("\""+Base64.getEncoder().encodeToString(hash)+"\"", response.getHeader("ETag"));
+	}
+
 }